@@ -0,0 +1,199 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine;
+
+import android.app.Activity;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Bundle;
+import android.preference.PreferenceManager;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.rule.ActivityTestRule;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.example.android.sunshine.data.ForecastRepository;
+import com.example.android.sunshine.data.ForecastSnapshot;
+import com.example.android.sunshine.data.LaunchSnapshotStore;
+import com.example.android.sunshine.data.SunshinePreferences;
+import com.example.android.sunshine.data.SyncState;
+import com.example.android.sunshine.data.WeatherContract.WeatherEntry;
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+import com.example.android.sunshine.utils.PollingCheck;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertNull;
+
+/**
+ * Startup instrumentation for the launch snapshot. Launches MainActivity repeatedly with and
+ * without a snapshot and compares the time from onCreate to the first frame with the forecast in
+ * it. The medians are logged and reported as instrumentation status, so they show up in the
+ * output of "adb shell am instrument -r".
+ * <p>
+ * The activity is launched into a process that is already running, so this measures what the
+ * snapshot saves the activity, not the whole cold start. For that, run
+ * "adb shell am start -W -S" and compare the "Fully drawn" line MainActivity makes
+ * ActivityManager log, with and without launch_snapshot.bin in the app's files.
+ * <p>
+ * The forecast is recorded as freshly synced, so that MainActivity doesn't start a sync that
+ * would rewrite the data (and the snapshot) while the launches are being timed.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TestLaunchSnapshotStartup {
+
+    private static final String TAG = TestLaunchSnapshotStartup.class.getSimpleName();
+
+    private static final int DAYS_TO_INSERT = 14;
+    private static final int LAUNCHES = 5;
+    private static final long FIRST_FRAME_TIMEOUT = 10000;
+
+    @Rule
+    public final ActivityTestRule<MainActivity> mActivityRule =
+            new ActivityTestRule<>(MainActivity.class, false, false);
+
+    private Context mContext;
+
+    @Before
+    public void setUp() {
+        mContext = InstrumentationRegistry.getTargetContext();
+
+        ContentValues[] forecast = createForecastFromToday();
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, forecast);
+        ForecastRepository.publish(forecast);
+        SyncState.record(mContext, SunshinePreferences.getPreferredWeatherLocation(mContext),
+                System.currentTimeMillis(), forecast, "");
+    }
+
+    private static ContentValues[] createForecastFromToday() {
+        ContentValues[] values = new ContentValues[DAYS_TO_INSERT];
+        long today = SunshineDateUtils.normalizeDate(System.currentTimeMillis());
+
+        for (int i = 0; i < DAYS_TO_INSERT; i++) {
+            ContentValues day = new ContentValues();
+            day.put(WeatherEntry.COLUMN_DATE,
+                    SunshineDateUtils.toEpochDay(today + i * SunshineDateUtils.DAY_IN_MILLIS));
+            day.put(WeatherEntry.COLUMN_WEATHER_ID, 800);
+            day.put(WeatherEntry.COLUMN_MAX_TEMP, 20 + i);
+            day.put(WeatherEntry.COLUMN_MIN_TEMP, 10 + i);
+            day.put(WeatherEntry.COLUMN_HUMIDITY, 50);
+            day.put(WeatherEntry.COLUMN_PRESSURE, 1013);
+            day.put(WeatherEntry.COLUMN_WIND_SPEED, 3.5);
+            day.put(WeatherEntry.COLUMN_DEGREES, 180);
+            values[i] = day;
+        }
+        return values;
+    }
+
+    /* Writes the snapshot the way the sync's fan-out does */
+    private void writeSnapshot() {
+        ForecastSnapshot forecast = ForecastRepository.getSnapshot(mContext);
+        int today = forecast.indexOfDate(
+                SunshineDateUtils.normalizeDate(System.currentTimeMillis()));
+        LaunchSnapshotStore.write(mContext, forecast, today);
+    }
+
+    /**
+     * Launches MainActivity, waits for the first frame with the forecast in it and finishes it.
+     *
+     * @param expectSnapshot Whether the launch should have drawn from the snapshot
+     * @return Milliseconds from onCreate to that frame
+     */
+    private long launchAndTimeFirstFrame(boolean expectSnapshot) throws Exception {
+        final MainActivity activity = mActivityRule.launchActivity(null);
+        PollingCheck.check("The forecast was never drawn", FIRST_FRAME_TIMEOUT,
+                new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() {
+                        return activity.getTimeToForecastFrameMillis() != -1;
+                    }
+                });
+        assertEquals(expectSnapshot, activity.wasStartedFromSnapshot());
+        long time = activity.getTimeToForecastFrameMillis();
+        finish(activity);
+        return time;
+    }
+
+    private static void finish(Activity activity) throws InterruptedException {
+        activity.finish();
+        while (!activity.isDestroyed()) {
+            Thread.sleep(20);
+        }
+    }
+
+    private static long median(long[] times) {
+        long[] sorted = times.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+
+    @Test
+    public void testTimeToFirstFrameWithAndWithoutSnapshot() throws Exception {
+        long[] withSnapshot = new long[LAUNCHES];
+        long[] withoutSnapshot = new long[LAUNCHES];
+
+        /* Alternate, so that anything else warming up affects both equally */
+        for (int i = 0; i < LAUNCHES; i++) {
+            writeSnapshot();
+            withSnapshot[i] = launchAndTimeFirstFrame(true);
+
+            LaunchSnapshotStore.delete(mContext);
+            withoutSnapshot[i] = launchAndTimeFirstFrame(false);
+        }
+
+        Log.i(TAG, "Time to first forecast frame with snapshot: " + Arrays.toString(withSnapshot)
+                + " ms, without: " + Arrays.toString(withoutSnapshot) + " ms");
+
+        Bundle results = new Bundle();
+        results.putLong("first_frame_with_snapshot_ms", median(withSnapshot));
+        results.putLong("first_frame_without_snapshot_ms", median(withoutSnapshot));
+        InstrumentationRegistry.getInstrumentation().sendStatus(0, results);
+    }
+
+    /**
+     * A snapshot formatted with other units must not be drawn; the user would briefly see the
+     * wrong temperatures.
+     */
+    @Test
+    public void testSnapshotIsIgnoredAfterUnitsChange() throws Exception {
+        writeSnapshot();
+        assertNotNull(LaunchSnapshotStore.read(mContext));
+
+        String unitsKey = mContext.getString(R.string.pref_units_key);
+        String metric = mContext.getString(R.string.pref_units_metric);
+        String imperial = mContext.getString(R.string.pref_units_imperial);
+        SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(mContext);
+        String units = preferences.getString(unitsKey, metric);
+        try {
+            preferences.edit()
+                    .putString(unitsKey, metric.equals(units) ? imperial : metric)
+                    .commit();
+            assertNull(LaunchSnapshotStore.read(mContext));
+        } finally {
+            preferences.edit().putString(unitsKey, units).commit();
+        }
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.example.android.sunshine.data.WeatherContract.WeatherEntry;
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Tests {@link ForecastRepository} and compares the cost of reading today's weather from the
+ * published snapshot against querying the same row through the ContentProvider.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TestForecastRepository {
+
+    private static final String TAG = TestForecastRepository.class.getSimpleName();
+
+    /* How many reads to time for each path in the latency comparison */
+    private static final int READS_PER_PATH = 200;
+
+    private final Context mContext = InstrumentationRegistry.getTargetContext();
+
+    private ContentValues[] mTestValues;
+
+    @Before
+    public void setUp() {
+        ContentResolver resolver = mContext.getContentResolver();
+        resolver.delete(WeatherEntry.CONTENT_URI, null, null);
+
+        mTestValues = TestUtilities.createBulkInsertTestWeatherValues();
+        resolver.bulkInsert(WeatherEntry.CONTENT_URI, mTestValues);
+    }
+
+    /**
+     * A published snapshot holds exactly the rows that were handed to it.
+     */
+    @Test
+    public void testPublishedSnapshotMatchesValues() {
+        ForecastRepository.publish(mTestValues);
+        ForecastSnapshot snapshot = ForecastRepository.getSnapshot(mContext);
+
+        assertEquals(mTestValues.length, snapshot.size());
+        for (ContentValues expected : mTestValues) {
+            int index = snapshot.indexOfDate(
+                    SunshineDateUtils.fromEpochDay(expected.getAsLong(WeatherEntry.COLUMN_DATE)));
+            assertTrue("Published day missing from the snapshot", index != -1);
+            assertEquals(expected.getAsInteger(WeatherEntry.COLUMN_WEATHER_ID).intValue(),
+                    snapshot.getWeatherId(index));
+            assertEquals(expected.getAsDouble(WeatherEntry.COLUMN_MAX_TEMP),
+                    snapshot.getMaxTemp(index), 0.0001);
+            assertEquals(expected.getAsDouble(WeatherEntry.COLUMN_MIN_TEMP),
+                    snapshot.getMinTemp(index), 0.0001);
+        }
+    }
+
+    /**
+     * Writing through the provider drops the snapshot, so readers never see rows that the
+     * database doesn't have anymore.
+     */
+    @Test
+    public void testProviderWriteInvalidatesSnapshot() {
+        ForecastRepository.publish(mTestValues);
+
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+
+        assertEquals("Snapshot should be reloaded (and empty) after a delete",
+                0, ForecastRepository.getSnapshot(mContext).size());
+    }
+
+    /**
+     * Times reading one day's weather from the snapshot and from the ContentProvider, and logs
+     * the median of each. The snapshot read is an array scan while the provider read is a URI
+     * match, an SQLite query and a CursorWindow fill, so the snapshot should be far cheaper.
+     */
+    @Test
+    public void testSnapshotReadLatencyAgainstProviderQuery() {
+        long date = SunshineDateUtils.fromEpochDay(
+                mTestValues[0].getAsLong(WeatherEntry.COLUMN_DATE));
+        Uri dayUri = WeatherEntry.buildWeatherUriWithDate(date);
+        String[] projection = {
+                WeatherEntry.COLUMN_WEATHER_ID,
+                WeatherEntry.COLUMN_MAX_TEMP,
+                WeatherEntry.COLUMN_MIN_TEMP
+        };
+
+        long[] providerNanos = new long[READS_PER_PATH];
+        for (int i = 0; i < READS_PER_PATH; i++) {
+            long start = System.nanoTime();
+            Cursor cursor = mContext.getContentResolver()
+                    .query(dayUri, projection, null, null, null);
+            assertTrue(cursor != null && cursor.moveToFirst());
+            cursor.getInt(0);
+            cursor.getDouble(1);
+            cursor.getDouble(2);
+            cursor.close();
+            providerNanos[i] = System.nanoTime() - start;
+        }
+
+        ForecastRepository.publish(mTestValues);
+        long[] snapshotNanos = new long[READS_PER_PATH];
+        for (int i = 0; i < READS_PER_PATH; i++) {
+            long start = System.nanoTime();
+            ForecastSnapshot snapshot = ForecastRepository.getSnapshot(mContext);
+            int index = snapshot.indexOfDate(date);
+            assertTrue(index != -1);
+            snapshot.getWeatherId(index);
+            snapshot.getMaxTemp(index);
+            snapshot.getMinTemp(index);
+            snapshotNanos[i] = System.nanoTime() - start;
+        }
+
+        long providerMedian = median(providerNanos);
+        long snapshotMedian = median(snapshotNanos);
+        Log.i(TAG, "Median read latency: provider " + providerMedian + "ns, snapshot "
+                + snapshotMedian + "ns");
+
+        assertTrue("Snapshot reads should be cheaper than provider queries",
+                snapshotMedian < providerMedian);
+    }
+
+    private static long median(long[] samples) {
+        long[] sorted = samples.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+}
@@ -32,7 +32,6 @@ import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.HashSet;
-import java.util.concurrent.TimeUnit;
 
 import static com.example.android.sunshine.data.TestUtilities.getConstantNameByStringValue;
 import static com.example.android.sunshine.data.TestUtilities.getStaticIntegerField;
@@ -193,7 +192,7 @@ public class TestSunshineDatabase {
 
     @Test
     public void testDatabaseVersionWasIncremented() {
-        int expectedDatabaseVersion = 3;
+        int expectedDatabaseVersion = 5;
         String databaseVersionShouldBe1 = "Database version should be "
                 + expectedDatabaseVersion + " but isn't."
                 + "\n Database version: ";
@@ -366,7 +365,7 @@ public class TestSunshineDatabase {
          * Now we need to change the date associated with our test content values because the
          * database policy is to replace identical dates on conflict.
          */
-        long dayAfterOriginalDate = originalDate + TimeUnit.DAYS.toMillis(1);
+        long dayAfterOriginalDate = originalDate + 1;
         testWeatherValues.put(REFLECTED_COLUMN_DATE, dayAfterOriginalDate);
 
         /* Insert ContentValues into database and get another row ID back */
@@ -382,9 +381,11 @@ public class TestSunshineDatabase {
     }
 
     /**
-     * This method tests the {@link WeatherDbHelper#onUpgrade(SQLiteDatabase, int, int)}. The proper
-     * behavior for this method in our case is to simply DROP (or delete) the weather table from
-     * the database and then have the table recreated.
+     * This method tests the {@link WeatherDbHelper#onUpgrade(SQLiteDatabase, int, int)}. When
+     * there is no migration path between the two versions (there is none from 13 to 14), the
+     * proper behavior for this method is to simply DROP (or delete) the weather table from the
+     * database and then have the table recreated. Upgrades that do have a migration path are
+     * covered by {@link TestWeatherDbMigrations}.
      */
     @Test
     public void testOnUpgradeBehavesCorrectly() {
@@ -454,8 +455,9 @@ public class TestSunshineDatabase {
          */
         final HashSet<String> tableNameHashSet = new HashSet<>();
 
-        /* Here, we add the name of our only table in this particular database */
+        /* Here, we add the names of the weather table and the sync_state table */
         tableNameHashSet.add(REFLECTED_TABLE_NAME);
+        tableNameHashSet.add(WeatherContract.SyncStateEntry.TABLE_NAME);
         /* Students, here is where you would add any other table names if you had them */
 //        tableNameHashSet.add(MyAwesomeSuperCoolTableName);
 //        tableNameHashSet.add(MyOtherCoolTableNameThatContainsOtherCoolData);
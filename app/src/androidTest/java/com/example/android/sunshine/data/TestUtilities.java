@@ -120,7 +120,7 @@ class TestUtilities {
 
         ContentValues testWeatherValues = new ContentValues();
 
-        testWeatherValues.put(COLUMN_DATE, DATE_NORMALIZED);
+        testWeatherValues.put(COLUMN_DATE, SunshineDateUtils.toEpochDay(DATE_NORMALIZED));
         testWeatherValues.put(COLUMN_DEGREES, 1.1);
         testWeatherValues.put(COLUMN_HUMIDITY, 1.2);
         testWeatherValues.put(COLUMN_PRESSURE, 1.3);
@@ -157,7 +157,7 @@ class TestUtilities {
 
             ContentValues weatherValues = new ContentValues();
 
-            weatherValues.put(COLUMN_DATE, normalizedTestDate);
+            weatherValues.put(COLUMN_DATE, SunshineDateUtils.toEpochDay(normalizedTestDate));
             weatherValues.put(COLUMN_DEGREES, 1.1);
             weatherValues.put(COLUMN_HUMIDITY, 1.2 + 0.01 * (float) i);
             weatherValues.put(COLUMN_PRESSURE, 1.3 - 0.01 * (float) i);
@@ -0,0 +1,314 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.SparseArray;
+
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Tests the step-wise migrations in {@link WeatherDbMigrations}. For every schema version that
+ * Sunshine has shipped, we build that exact schema in a scratch database, fill it with weather
+ * rows, upgrade it to the current version and make sure the rows are still there.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TestWeatherDbMigrations {
+
+    /*
+     * The CREATE statements of every schema version we have shipped, keyed by version. These are
+     * deliberately copied here rather than referenced from WeatherDbHelper, as WeatherDbHelper
+     * only ever knows about the newest schema.
+     */
+    private static final SparseArray<String[]> HISTORICAL_SCHEMAS = new SparseArray<>();
+
+    static {
+        HISTORICAL_SCHEMAS.put(3, new String[]{
+                "CREATE TABLE weather (" +
+                        "_id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                        "date INTEGER NOT NULL, " +
+                        "weather_id INTEGER NOT NULL," +
+                        "min REAL NOT NULL, " +
+                        "max REAL NOT NULL, " +
+                        "humidity REAL NOT NULL, " +
+                        "pressure REAL NOT NULL, " +
+                        "wind REAL NOT NULL, " +
+                        "degrees REAL NOT NULL, " +
+                        " UNIQUE (date) ON CONFLICT REPLACE);"
+        });
+        /* The same table as version 3; only what the date column holds changed */
+        HISTORICAL_SCHEMAS.put(4, new String[]{
+                "CREATE TABLE weather (" +
+                        "_id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                        "date INTEGER NOT NULL, " +
+                        "weather_id INTEGER NOT NULL," +
+                        "min REAL NOT NULL, " +
+                        "max REAL NOT NULL, " +
+                        "humidity REAL NOT NULL, " +
+                        "pressure REAL NOT NULL, " +
+                        "wind REAL NOT NULL, " +
+                        "degrees REAL NOT NULL, " +
+                        " UNIQUE (date) ON CONFLICT REPLACE);"
+        });
+    }
+
+    /* The first schema version that stores dates as day numbers rather than milliseconds */
+    private static final int FIRST_EPOCH_DAY_VERSION = 4;
+
+    private final Context mContext = InstrumentationRegistry.getTargetContext();
+
+    private WeatherDbHelper mDbHelper;
+    private SQLiteDatabase mDatabase;
+
+    @Before
+    public void setUp() {
+        mDbHelper = new WeatherDbHelper(mContext);
+        /* An in-memory database keeps the real weather.db out of these tests */
+        mDatabase = SQLiteDatabase.create(null);
+    }
+
+    @After
+    public void tearDown() {
+        mDatabase.close();
+    }
+
+    /**
+     * @param rows    Rows as the current schema stores them
+     * @param version A historical schema version
+     * @return The same rows as that version of the schema stored them
+     */
+    private static ContentValues[] asStoredInVersion(ContentValues[] rows, int version) {
+        ContentValues[] stored = new ContentValues[rows.length];
+        for (int i = 0; i < rows.length; i++) {
+            stored[i] = new ContentValues(rows[i]);
+            if (version < FIRST_EPOCH_DAY_VERSION) {
+                long epochDay = rows[i].getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE);
+                stored[i].put(WeatherContract.WeatherEntry.COLUMN_DATE,
+                        SunshineDateUtils.fromEpochDay(epochDay));
+            }
+        }
+        return stored;
+    }
+
+    /**
+     * Builds each historical schema, upgrades it to WeatherDbHelper.DATABASE_VERSION and checks
+     * that every row we stored before the upgrade can still be read afterwards.
+     */
+    @Test
+    public void testEveryHistoricalSchemaKeepsItsRows() {
+        for (int i = 0; i < HISTORICAL_SCHEMAS.size(); i++) {
+            int version = HISTORICAL_SCHEMAS.keyAt(i);
+
+            SQLiteDatabase database = SQLiteDatabase.create(null);
+            for (String statement : HISTORICAL_SCHEMAS.valueAt(i)) {
+                database.execSQL(statement);
+            }
+
+            ContentValues[] rows = TestUtilities.createBulkInsertTestWeatherValues();
+            for (ContentValues row : asStoredInVersion(rows, version)) {
+                database.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, row);
+            }
+
+            if (version < WeatherDbHelper.DATABASE_VERSION) {
+                mDbHelper.onUpgrade(database, version, WeatherDbHelper.DATABASE_VERSION);
+            }
+
+            Cursor cursor = database.query(
+                    WeatherContract.WeatherEntry.TABLE_NAME,
+                    null,
+                    null,
+                    null,
+                    null,
+                    null,
+                    WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+
+            String rowsLost = "Upgrading from schema version " + version + " lost weather rows.";
+            assertEquals(rowsLost, rows.length, cursor.getCount());
+
+            for (ContentValues expected : rows) {
+                assertTrue(rowsLost, cursor.moveToNext());
+                TestUtilities.validateCurrentRecord(
+                        "Row changed while upgrading from schema version " + version,
+                        cursor,
+                        expected);
+            }
+
+            cursor.close();
+            database.close();
+        }
+    }
+
+    /**
+     * Upgrading from version 3 turns every date in milliseconds into the day number that
+     * WeatherContract.WeatherEntry.buildWeatherUriWithDate now looks rows up by.
+     */
+    @Test
+    public void testVersion3DatesBecomeDayNumbers() {
+        mDatabase.execSQL(HISTORICAL_SCHEMAS.get(3)[0]);
+        ContentValues[] rows = TestUtilities.createBulkInsertTestWeatherValues();
+        for (ContentValues row : asStoredInVersion(rows, 3)) {
+            mDatabase.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, row);
+        }
+
+        assertTrue(WeatherDbMigrations.migrate(mDatabase, 3, FIRST_EPOCH_DAY_VERSION));
+
+        for (ContentValues row : rows) {
+            long epochDay = row.getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE);
+            Cursor cursor = mDatabase.query(WeatherContract.WeatherEntry.TABLE_NAME,
+                    new String[]{WeatherContract.WeatherEntry.COLUMN_WEATHER_ID},
+                    WeatherContract.WeatherEntry.COLUMN_DATE + " = ?",
+                    new String[]{Long.toString(epochDay)},
+                    null, null, null);
+            assertEquals("No row for day " + epochDay + " after the upgrade",
+                    1, cursor.getCount());
+            cursor.close();
+        }
+    }
+
+    /**
+     * Upgrading from version 4 adds an empty sync_state table that a sync can record itself in,
+     * one row per location.
+     */
+    @Test
+    public void testVersion4GainsSyncStateTable() {
+        mDatabase.execSQL(HISTORICAL_SCHEMAS.get(4)[0]);
+
+        assertTrue(WeatherDbMigrations.migrate(mDatabase, 4, 5));
+
+        Cursor empty = mDatabase.query(WeatherContract.SyncStateEntry.TABLE_NAME,
+                null, null, null, null, null, null);
+        assertEquals("The sync_state table should start out empty", 0, empty.getCount());
+        empty.close();
+
+        ContentValues state = new ContentValues();
+        state.put(WeatherContract.SyncStateEntry.COLUMN_LOCATION, "94043,USA");
+        state.put(WeatherContract.SyncStateEntry.COLUMN_LAST_SYNC, 1);
+        state.put(WeatherContract.SyncStateEntry.COLUMN_ROW_COUNT, 14);
+        state.put(WeatherContract.SyncStateEntry.COLUMN_FIRST_DATE, 17066);
+        state.put(WeatherContract.SyncStateEntry.COLUMN_LAST_DATE, 17079);
+        mDatabase.insert(WeatherContract.SyncStateEntry.TABLE_NAME, null, state);
+        state.put(WeatherContract.SyncStateEntry.COLUMN_LAST_SYNC, 2);
+        mDatabase.insert(WeatherContract.SyncStateEntry.TABLE_NAME, null, state);
+
+        Cursor cursor = mDatabase.query(WeatherContract.SyncStateEntry.TABLE_NAME,
+                new String[]{WeatherContract.SyncStateEntry.COLUMN_LAST_SYNC},
+                null, null, null, null, null);
+        assertEquals("A location's row should be replaced, not duplicated",
+                1, cursor.getCount());
+        assertTrue(cursor.moveToFirst());
+        assertEquals(2, cursor.getLong(0));
+        cursor.close();
+    }
+
+    /**
+     * Every version between the oldest migratable version and the current one needs its own
+     * step. A gap would silently send users down the drop-and-recreate path.
+     */
+    @Test
+    public void testMigrationPathHasNoGaps() {
+        for (int version = WeatherDbMigrations.OLDEST_MIGRATABLE_VERSION;
+             version < WeatherDbHelper.DATABASE_VERSION;
+             version++) {
+
+            int stepsFromVersion = 0;
+            for (WeatherDbMigrations.Migration migration : WeatherDbMigrations.MIGRATIONS) {
+                if (migration.startVersion == version) stepsFromVersion++;
+            }
+
+            assertEquals("Expected exactly one migration from version " + version,
+                    1, stepsFromVersion);
+        }
+    }
+
+    /**
+     * Steps are applied one version at a time, in order, no matter how they are declared.
+     */
+    @Test
+    public void testStepsRunInVersionOrder() {
+        mDatabase.execSQL(HISTORICAL_SCHEMAS.get(3)[0]);
+        mDatabase.insert(WeatherContract.WeatherEntry.TABLE_NAME, null,
+                TestUtilities.createTestWeatherContentValues());
+
+        final List<Integer> applied = new ArrayList<>();
+        WeatherDbMigrations.Migration[] migrations = {
+                new WeatherDbMigrations.Migration(4) {
+                    @Override
+                    void migrate(SQLiteDatabase db) {
+                        applied.add(startVersion);
+                        db.execSQL("ALTER TABLE weather ADD COLUMN feels_like REAL");
+                    }
+                },
+                new WeatherDbMigrations.Migration(3) {
+                    @Override
+                    void migrate(SQLiteDatabase db) {
+                        applied.add(startVersion);
+                        db.execSQL("ALTER TABLE weather ADD COLUMN uv_index REAL");
+                    }
+                }
+        };
+
+        assertTrue(WeatherDbMigrations.migrate(mDatabase, 3, 5, migrations));
+        assertEquals(2, applied.size());
+        assertEquals(3, (int) applied.get(0));
+        assertEquals(4, (int) applied.get(1));
+
+        Cursor cursor = mDatabase.query(WeatherContract.WeatherEntry.TABLE_NAME,
+                null, null, null, null, null, null);
+        assertEquals("Migrated row went missing", 1, cursor.getCount());
+        assertTrue(cursor.getColumnIndex("uv_index") != -1);
+        assertTrue(cursor.getColumnIndex("feels_like") != -1);
+        cursor.close();
+    }
+
+    /**
+     * If any step is missing, nothing should be applied so the helper can fall back to
+     * recreating the table from a clean slate.
+     */
+    @Test
+    public void testMissingStepAppliesNothing() {
+        mDatabase.execSQL(HISTORICAL_SCHEMAS.get(3)[0]);
+
+        final List<Integer> applied = new ArrayList<>();
+        WeatherDbMigrations.Migration[] migrations = {
+                new WeatherDbMigrations.Migration(3) {
+                    @Override
+                    void migrate(SQLiteDatabase db) {
+                        applied.add(startVersion);
+                    }
+                }
+        };
+
+        assertFalse(WeatherDbMigrations.migrate(mDatabase, 3, 5, migrations));
+        assertTrue("No step should run when the path is incomplete", applied.isEmpty());
+    }
+}
@@ -0,0 +1,246 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.sync;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.ContextWrapper;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.CancellationSignal;
+import android.support.annotation.NonNull;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.test.mock.MockContentResolver;
+
+import com.example.android.sunshine.data.ForecastRepository;
+import com.example.android.sunshine.data.ForecastSnapshot;
+import com.example.android.sunshine.data.SunshinePreferences;
+import com.example.android.sunshine.data.SyncState;
+import com.example.android.sunshine.data.WeatherContract;
+import com.example.android.sunshine.data.WeatherContract.WeatherEntry;
+import com.example.android.sunshine.data.WeatherProvider;
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Verifies that the post-sync fan-out reads the forecast from the ContentProvider at most once
+ * per sync, no matter how many artifacts are built from it, including a full sync that builds
+ * today's artifacts before storing the rest of the forecast.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TestForecastFanOut {
+
+    private static final int DAYS_TO_INSERT = 14;
+
+    private CountingWeatherProvider mProvider;
+    private Context mCountingContext;
+
+    /**
+     * A WeatherProvider that counts how many queries of the weather table it has served. The
+     * sync_state lookups a sync makes are single rows, and aren't reads of the forecast.
+     */
+    public static class CountingWeatherProvider extends WeatherProvider {
+        int queryCount;
+
+        @Override
+        public Cursor query(@NonNull Uri uri, String[] projection, String selection,
+                            String[] selectionArgs, String sortOrder) {
+            if (uri.getPathSegments().get(0).equals(WeatherContract.PATH_WEATHER)) {
+                queryCount++;
+            }
+            return super.query(uri, projection, selection, selectionArgs, sortOrder);
+        }
+    }
+
+    /**
+     * Records the snapshot it was handed, standing in for the notification and watch face.
+     */
+    private static class RecordingConsumer implements ForecastFanOut.Consumer {
+        final List<ForecastSnapshot> received = new ArrayList<>();
+
+        @Override
+        public void onForecastUpdated(Context context, ForecastSnapshot forecast, int today) {
+            received.add(forecast);
+        }
+    }
+
+    @Before
+    public void setUp() {
+        Context targetContext = InstrumentationRegistry.getTargetContext();
+
+        mProvider = new CountingWeatherProvider();
+        mProvider.attachInfo(targetContext, null);
+
+        final MockContentResolver resolver = new MockContentResolver(targetContext);
+        resolver.addProvider(WeatherContract.CONTENT_AUTHORITY, mProvider);
+
+        mCountingContext = new ContextWrapper(targetContext) {
+            @Override
+            public ContentResolver getContentResolver() {
+                return resolver;
+            }
+        };
+
+        resolver.delete(WeatherEntry.CONTENT_URI, null, null);
+        resolver.bulkInsert(WeatherEntry.CONTENT_URI, createForecastFromToday());
+        mProvider.queryCount = 0;
+    }
+
+    private static ContentValues[] createForecastFromToday() {
+        ContentValues[] values = new ContentValues[DAYS_TO_INSERT];
+        long today = SunshineDateUtils.normalizeDate(System.currentTimeMillis());
+
+        for (int i = 0; i < DAYS_TO_INSERT; i++) {
+            ContentValues day = new ContentValues();
+            day.put(WeatherEntry.COLUMN_DATE,
+                    SunshineDateUtils.toEpochDay(today + i * SunshineDateUtils.DAY_IN_MILLIS));
+            day.put(WeatherEntry.COLUMN_WEATHER_ID, 800);
+            day.put(WeatherEntry.COLUMN_MAX_TEMP, 20 + i);
+            day.put(WeatherEntry.COLUMN_MIN_TEMP, 10 + i);
+            day.put(WeatherEntry.COLUMN_HUMIDITY, 50);
+            day.put(WeatherEntry.COLUMN_PRESSURE, 1013);
+            day.put(WeatherEntry.COLUMN_WIND_SPEED, 3.5);
+            day.put(WeatherEntry.COLUMN_DEGREES, 180);
+            values[i] = day;
+        }
+        return values;
+    }
+
+    /**
+     * With nothing published in memory (for example, after a process restart), the fan-out
+     * still reads the provider only once, and every consumer sees that same snapshot.
+     */
+    @Test
+    public void testColdFanOutQueriesProviderOnce() {
+        ForecastRepository.invalidate();
+
+        RecordingConsumer notification = new RecordingConsumer();
+        RecordingConsumer watchFace = new RecordingConsumer();
+        RecordingConsumer widget = new RecordingConsumer();
+
+        int called = ForecastFanOut.dispatch(mCountingContext, notification, watchFace, widget);
+
+        assertEquals("Every consumer should be called", 3, called);
+        assertEquals("Fan-out should query the provider exactly once", 1, mProvider.queryCount);
+        assertSame(notification.received.get(0), watchFace.received.get(0));
+        assertSame(notification.received.get(0), widget.received.get(0));
+    }
+
+    /**
+     * A normal sync publishes what it wrote, so the fan-out shouldn't query the provider at all.
+     */
+    @Test
+    public void testSyncFanOutMakesNoProviderQueries() {
+        ContentValues[] forecast = createForecastFromToday();
+        ForecastRepository.publish(forecast);
+
+        RecordingConsumer notification = new RecordingConsumer();
+        RecordingConsumer watchFace = new RecordingConsumer();
+
+        ForecastFanOut.dispatch(mCountingContext, notification, watchFace);
+
+        assertEquals("Fan-out after a sync should not query the provider",
+                0, mProvider.queryCount);
+        assertEquals(1, notification.received.size());
+        assertEquals(DAYS_TO_INSERT, watchFace.received.get(0).size());
+    }
+
+    /**
+     * A full sync of a location whose forecast is stored stores and announces today's weather
+     * first, then stores the rest. Neither step reads the forecast back from the provider, and
+     * today's artifacts see the new today beside the days already stored.
+     */
+    @Test
+    public void testTodayFirstSyncMakesNoProviderQueries() {
+        storeForecastOfPreferredLocation();
+        mProvider.queryCount = 0;
+
+        SyncTrace trace = SunshineSyncTask.syncWeather(mCountingContext,
+                respondWith(forecastJson(25.0)), new CancellationSignal());
+
+        assertEquals(SyncTrace.OUTCOME_STORED, trace.getOutcome());
+        assertTrue("Today should be shown before the rest is stored",
+                trace.getTodayVisibleMicros() >= 0);
+        assertEquals("A today-first sync should not query the provider",
+                0, mProvider.queryCount);
+        ForecastSnapshot published = ForecastRepository.getSnapshot(mCountingContext);
+        assertEquals(DAYS_TO_INSERT, published.size());
+        assertEquals(25.0, published.getMaxTemp(0), 0.001);
+    }
+
+    /**
+     * With nothing published in memory, a today-first sync still reads the provider only once,
+     * for the forecast that today's row joins.
+     */
+    @Test
+    public void testColdTodayFirstSyncQueriesProviderOnce() {
+        storeForecastOfPreferredLocation();
+        ForecastRepository.invalidate();
+        mProvider.queryCount = 0;
+
+        SyncTrace trace = SunshineSyncTask.syncWeather(mCountingContext,
+                respondWith(forecastJson(25.0)), new CancellationSignal());
+
+        assertEquals(SyncTrace.OUTCOME_STORED, trace.getOutcome());
+        assertEquals("A today-first sync should query the provider exactly once",
+                1, mProvider.queryCount);
+    }
+
+    /* Makes the stored forecast the preferred location's, as a sync of it would have */
+    private void storeForecastOfPreferredLocation() {
+        ContentValues[] forecast = createForecastFromToday();
+        String location = SunshinePreferences.getPreferredWeatherLocation(mCountingContext);
+        SunshinePreferences.setStoredLocation(mCountingContext, location);
+        SyncState.record(mCountingContext, location, System.currentTimeMillis(), forecast, "");
+        ForecastRepository.publish(forecast);
+    }
+
+    private static SunshineSyncTask.ForecastSource respondWith(final String json) {
+        return new SunshineSyncTask.ForecastSource() {
+            @Override
+            public String fetchForecastJson(Context context, SyncTrace trace,
+                                            CancellationSignal signal) {
+                return json;
+            }
+        };
+    }
+
+    /* A response with as many days as are stored, today's with the given maximum */
+    private static String forecastJson(double todayMaxTemp) {
+        StringBuilder json = new StringBuilder(
+                "{\"city\":{\"coord\":{\"lon\":-122.0838,\"lat\":37.3861}},\"list\":[");
+        for (int i = 0; i < DAYS_TO_INSERT; i++) {
+            json.append(i == 0 ? "" : ",")
+                    .append("{\"pressure\":1013,\"humidity\":50,")
+                    .append("\"weather\":[{\"id\":800}],\"speed\":3.5,\"deg\":180,")
+                    .append("\"temp\":{\"min\":").append(10 + i)
+                    .append(",\"max\":").append(i == 0 ? todayMaxTemp : 20 + i).append("}}");
+        }
+        return json.append("]}").toString();
+    }
+}
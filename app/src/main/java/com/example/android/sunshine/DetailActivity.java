@@ -255,14 +255,16 @@ public class DetailActivity extends AppCompatActivity implements
          ****************/
         /*
          * Read the date from the cursor. It is important to note that the date from the cursor
-         * is the same date from the weather SQL table. The date that is stored is a GMT
-         * representation at midnight of the date when the weather information was loaded for.
+         * is the same date from the weather SQL table. The date that is stored is the number of
+         * the day since the epoch, which we convert to a GMT representation at midnight of the
+         * date when the weather information was loaded for.
          *
          * When displaying this date, one must add the GMT offset (in milliseconds) to acquire
          * the date representation for the local date in local time.
          * SunshineDateUtils#getFriendlyDateString takes care of this for us.
          */
-        long localDateMidnightGmt = data.getLong(INDEX_WEATHER_DATE);
+        long localDateMidnightGmt =
+                SunshineDateUtils.fromEpochDay(data.getLong(INDEX_WEATHER_DATE));
         String dateText = SunshineDateUtils.getFriendlyDateString(this, localDateMidnightGmt, true);
 
         mDetailBinding.primaryInfo.date.setText(dateText);
@@ -25,6 +25,7 @@ import android.view.ViewGroup;
 import android.widget.ImageView;
 import android.widget.TextView;
 
+import com.example.android.sunshine.data.LaunchSnapshot;
 import com.example.android.sunshine.utilities.SunshineDateUtils;
 import com.example.android.sunshine.utilities.SunshineWeatherUtils;
 
@@ -65,6 +66,12 @@ class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapt
 
     private Cursor mCursor;
 
+    /*
+     * The list as the last sync formatted it, shown on a cold start until the loader delivers
+     * mCursor. Once there is a cursor, the snapshot is no longer used.
+     */
+    private LaunchSnapshot mSnapshot;
+
     /**
      * Creates a ForecastAdapter.
      *
@@ -129,12 +136,78 @@ class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapt
      */
     @Override
     public void onBindViewHolder(ForecastAdapterViewHolder forecastAdapterViewHolder, int position) {
+        /* Until the loader delivers its first cursor, draw the snapshot written by the last sync */
+        if (mCursor == null) {
+            bindSnapshotRow(forecastAdapterViewHolder, position);
+            return;
+        }
+
         mCursor.moveToPosition(position);
 
+        int weatherId = mCursor.getInt(MainActivity.INDEX_WEATHER_CONDITION_ID);
+
+        /****************
+         * Weather Date *
+         ****************/
+         /* Read date from the cursor, where it is stored as a day number */
+        long dateInMillis = SunshineDateUtils.fromEpochDay(
+                mCursor.getLong(MainActivity.INDEX_WEATHER_DATE));
+         /* Get human readable string using our utility method */
+        String dateString = SunshineDateUtils.getFriendlyDateString(mContext, dateInMillis, false);
+
+        /***********************
+         * Weather Description *
+         ***********************/
+        String description = SunshineWeatherUtils.getStringForWeatherCondition(mContext, weatherId);
+
+        /**************************
+         * High (max) temperature *
+         **************************/
+         /* Read high temperature from the cursor (in degrees celsius) */
+        double highInCelsius = mCursor.getDouble(MainActivity.INDEX_WEATHER_MAX_TEMP);
+         /*
+          * If the user's preference for weather is fahrenheit, formatTemperature will convert
+          * the temperature. This method will also append either °C or °F to the temperature
+          * String.
+          */
+        String highString = SunshineWeatherUtils.formatTemperature(mContext, highInCelsius);
+
+        /*************************
+         * Low (min) temperature *
+         *************************/
+         /* Read low temperature from the cursor (in degrees celsius) */
+        double lowInCelsius = mCursor.getDouble(MainActivity.INDEX_WEATHER_MIN_TEMP);
+        String lowString = SunshineWeatherUtils.formatTemperature(mContext, lowInCelsius);
+
+        bindRow(forecastAdapterViewHolder, position, weatherId, dateString, description,
+                highString, lowString);
+    }
+
+    /**
+     * Binds a row of the launch snapshot, whose strings were formatted when it was written.
+     *
+     * @param forecastAdapterViewHolder The ViewHolder to update
+     * @param position                  The position of the item within the snapshot
+     */
+    private void bindSnapshotRow(ForecastAdapterViewHolder forecastAdapterViewHolder,
+                                 int position) {
+        bindRow(forecastAdapterViewHolder, position,
+                mSnapshot.getWeatherId(position),
+                mSnapshot.getDate(position),
+                mSnapshot.getDescription(position),
+                mSnapshot.getHigh(position),
+                mSnapshot.getLow(position));
+    }
+
+    /**
+     * Puts one day's icon and strings into its views, wherever they were read from.
+     */
+    private void bindRow(ForecastAdapterViewHolder forecastAdapterViewHolder, int position,
+                         int weatherId, String dateString, String description,
+                         String highString, String lowString) {
         /****************
          * Weather Icon *
          ****************/
-        int weatherId = mCursor.getInt(MainActivity.INDEX_WEATHER_CONDITION_ID);
         int weatherImageId;
 
         int viewType = getItemViewType(position);
@@ -157,21 +230,9 @@ class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapt
 
         forecastAdapterViewHolder.iconView.setImageResource(weatherImageId);
 
-        /****************
-         * Weather Date *
-         ****************/
-         /* Read date from the cursor */
-        long dateInMillis = mCursor.getLong(MainActivity.INDEX_WEATHER_DATE);
-         /* Get human readable string using our utility method */
-        String dateString = SunshineDateUtils.getFriendlyDateString(mContext, dateInMillis, false);
-
          /* Display friendly date string */
         forecastAdapterViewHolder.dateView.setText(dateString);
 
-        /***********************
-         * Weather Description *
-         ***********************/
-        String description = SunshineWeatherUtils.getStringForWeatherCondition(mContext, weatherId);
          /* Create the accessibility (a11y) String from the weather description */
         String descriptionA11y = mContext.getString(R.string.a11y_forecast, description);
 
@@ -179,17 +240,6 @@ class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapt
         forecastAdapterViewHolder.descriptionView.setText(description);
         forecastAdapterViewHolder.descriptionView.setContentDescription(descriptionA11y);
 
-        /**************************
-         * High (max) temperature *
-         **************************/
-         /* Read high temperature from the cursor (in degrees celsius) */
-        double highInCelsius = mCursor.getDouble(MainActivity.INDEX_WEATHER_MAX_TEMP);
-         /*
-          * If the user's preference for weather is fahrenheit, formatTemperature will convert
-          * the temperature. This method will also append either °C or °F to the temperature
-          * String.
-          */
-        String highString = SunshineWeatherUtils.formatTemperature(mContext, highInCelsius);
          /* Create the accessibility (a11y) String from the weather description */
         String highA11y = mContext.getString(R.string.a11y_high_temp, highString);
 
@@ -197,17 +247,6 @@ class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapt
         forecastAdapterViewHolder.highTempView.setText(highString);
         forecastAdapterViewHolder.highTempView.setContentDescription(highA11y);
 
-        /*************************
-         * Low (min) temperature *
-         *************************/
-         /* Read low temperature from the cursor (in degrees celsius) */
-        double lowInCelsius = mCursor.getDouble(MainActivity.INDEX_WEATHER_MIN_TEMP);
-         /*
-          * If the user's preference for weather is fahrenheit, formatTemperature will convert
-          * the temperature. This method will also append either °C or °F to the temperature
-          * String.
-          */
-        String lowString = SunshineWeatherUtils.formatTemperature(mContext, lowInCelsius);
         String lowA11y = mContext.getString(R.string.a11y_low_temp, lowString);
 
          /* Set the text and content description (for accessibility purposes) */
@@ -223,8 +262,9 @@ class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapt
      */
     @Override
     public int getItemCount() {
-        if (null == mCursor) return 0;
-        return mCursor.getCount();
+        if (null != mCursor) return mCursor.getCount();
+        if (null != mSnapshot) return mSnapshot.size();
+        return 0;
     }
 
     /**
@@ -256,6 +296,19 @@ class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapt
      */
     void swapCursor(Cursor newCursor) {
         mCursor = newCursor;
+        /* The cursor is what the provider holds now; the snapshot has served its purpose */
+        if (newCursor != null) mSnapshot = null;
+        notifyDataSetChanged();
+    }
+
+    /**
+     * Shows the forecast from a launch snapshot while there is no cursor yet. MainActivity calls
+     * this from onCreate, so that the first frame already has the list in it.
+     *
+     * @param snapshot The snapshot written by the last sync
+     */
+    void swapSnapshot(LaunchSnapshot snapshot) {
+        mSnapshot = snapshot;
         notifyDataSetChanged();
     }
 
@@ -294,8 +347,14 @@ class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapt
         @Override
         public void onClick(View v) {
             int adapterPosition = getAdapterPosition();
-            mCursor.moveToPosition(adapterPosition);
-            long dateInMillis = mCursor.getLong(MainActivity.INDEX_WEATHER_DATE);
+            long epochDay;
+            if (mCursor != null) {
+                mCursor.moveToPosition(adapterPosition);
+                epochDay = mCursor.getLong(MainActivity.INDEX_WEATHER_DATE);
+            } else {
+                epochDay = mSnapshot.getEpochDay(adapterPosition);
+            }
+            long dateInMillis = SunshineDateUtils.fromEpochDay(epochDay);
             mClickHandler.onClick(dateInMillis);
         }
     }
@@ -20,6 +20,7 @@ import android.content.Intent;
 import android.database.Cursor;
 import android.net.Uri;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.support.v4.app.LoaderManager;
 import android.support.v4.content.CursorLoader;
 import android.support.v4.content.Loader;
@@ -31,11 +32,17 @@ import android.view.Menu;
 import android.view.MenuInflater;
 import android.view.MenuItem;
 import android.view.View;
+import android.view.ViewTreeObserver;
 import android.widget.ProgressBar;
 
+import com.example.android.sunshine.data.LaunchSnapshot;
+import com.example.android.sunshine.data.LaunchSnapshotStore;
 import com.example.android.sunshine.data.SunshinePreferences;
 import com.example.android.sunshine.data.WeatherContract;
+import com.example.android.sunshine.sync.ForecastWindow;
+import com.example.android.sunshine.sync.LocationSwitchTimer;
 import com.example.android.sunshine.sync.SunshineSyncUtils;
+import com.example.android.sunshine.sync.SyncFreshnessPolicy;
 
 public class MainActivity extends AppCompatActivity implements
         LoaderManager.LoaderCallbacks<Cursor>,
@@ -78,11 +85,28 @@ public class MainActivity extends AppCompatActivity implements
     private RecyclerView mRecyclerView;
     private int mPosition = RecyclerView.NO_POSITION;
 
+    /*
+     * The furthest day the list has shown since the activity was last paused, today being 0, or
+     * -1 if it hasn't shown any. Each visit's is counted by ForecastWindow, which uses them to
+     * decide how many days a sync over a metered connection fetches.
+     */
+    private int mDeepestVisibleDay = -1;
+
     private ProgressBar mLoadingIndicator;
 
+    /*
+     * Startup instrumentation. When onCreate started, whether the list was drawn from the launch
+     * snapshot, and how long it took until the first frame with the forecast in it was drawn (-1
+     * until it has been). Each launch logs the latter two, and TestLaunchSnapshotStartup compares
+     * launches with and without a snapshot.
+     */
+    private long mCreateUptimeMillis;
+    private boolean mStartedFromSnapshot;
+    private long mTimeToForecastFrameMillis = -1;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
+        mCreateUptimeMillis = SystemClock.uptimeMillis();
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_forecast);
         getSupportActionBar().setElevation(0f);
@@ -143,8 +167,31 @@ public class MainActivity extends AppCompatActivity implements
         /* Setting the adapter attaches it to the RecyclerView in our layout. */
         mRecyclerView.setAdapter(mForecastAdapter);
 
+        /*
+         * Also called after each layout, with dy 0, so the days on the first screen count as
+         * seen even if the list is never scrolled.
+         */
+        mRecyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                onForecastScrolled(dy > 0);
+            }
+        });
 
-        showLoading();
+        /*
+         * The last sync left the list, already formatted, in a small file. Drawing it now means
+         * the first frame shows the forecast rather than a spinner; the loader replaces it with
+         * what's in the database as soon as its query is done. Without a usable snapshot (first
+         * launch, a new day, or different units) we show the loading indicator as before.
+         */
+        LaunchSnapshot snapshot = LaunchSnapshotStore.read(this);
+        if (snapshot != null && snapshot.size() != 0) {
+            mStartedFromSnapshot = true;
+            mForecastAdapter.swapSnapshot(snapshot);
+            showWeatherDataView();
+        } else {
+            showLoading();
+        }
 
         /*
          * Ensures a loader is initialized and active. If the loader doesn't already exist, one is
@@ -154,8 +201,41 @@ public class MainActivity extends AppCompatActivity implements
         getSupportLoaderManager().initLoader(ID_FORECAST_LOADER, null, this);
 
         SunshineSyncUtils.initialize(this);
-        SunshineSyncUtils.startImmediateSync(this);
+        /*
+         * onCreate also runs for every rotation and every return from the details, so the sync
+         * is only requested here; it is skipped while the weather is fresh.
+         */
+        SunshineSyncUtils.requestSync(this, SyncFreshnessPolicy.REASON_LAUNCH);
+
+    }
+
+    @Override
+    protected void onPause() {
+        super.onPause();
+        if (mDeepestVisibleDay >= 0) {
+            ForecastWindow.recordVisit(this, mDeepestVisibleDay);
+            mDeepestVisibleDay = -1;
+        }
+    }
 
+    /**
+     * Notes how far down the list is showing, and fetches the rest of the forecast if the user
+     * scrolled down to one of the last few days stored and the server has more. A layout that
+     * happens to show those days doesn't fetch anything, or every launch with a short window
+     * on a tall screen would.
+     *
+     * @param scrolledDown Whether the list was scrolled down, rather than laid out
+     */
+    private void onForecastScrolled(boolean scrolledDown) {
+        LinearLayoutManager layoutManager = (LinearLayoutManager) mRecyclerView.getLayoutManager();
+        int lastVisibleDay = layoutManager.findLastVisibleItemPosition();
+        if (lastVisibleDay == RecyclerView.NO_POSITION) {
+            return;
+        }
+        mDeepestVisibleDay = Math.max(mDeepestVisibleDay, lastVisibleDay);
+        if (scrolledDown) {
+            ForecastWindow.extendIfNeeded(this, lastVisibleDay, mForecastAdapter.getItemCount());
+        }
     }
 
     /**
@@ -242,6 +322,25 @@ public class MainActivity extends AppCompatActivity implements
         if (mPosition == RecyclerView.NO_POSITION) mPosition = 0;
         mRecyclerView.smoothScrollToPosition(mPosition);
         if (data.getCount() != 0) showWeatherDataView();
+        if (data.getCount() != 0 && LocationSwitchTimer.isWaitingForFrame()) {
+            timeLocationSwitch();
+        }
+    }
+
+    /**
+     * Ends the timing of a location switch when the next frame, the first one with the new
+     * location's forecast in it, is drawn.
+     */
+    private void timeLocationSwitch() {
+        mRecyclerView.getViewTreeObserver().addOnPreDrawListener(
+                new ViewTreeObserver.OnPreDrawListener() {
+                    @Override
+                    public boolean onPreDraw() {
+                        mRecyclerView.getViewTreeObserver().removeOnPreDrawListener(this);
+                        LocationSwitchTimer.onForecastDrawn();
+                        return true;
+                    }
+                });
     }
 
     /**
@@ -285,6 +384,48 @@ public class MainActivity extends AppCompatActivity implements
         mLoadingIndicator.setVisibility(View.INVISIBLE);
         /* Finally, make sure the weather data is visible */
         mRecyclerView.setVisibility(View.VISIBLE);
+
+        if (mTimeToForecastFrameMillis == -1) {
+            timeNextFrame();
+        }
+    }
+
+    /**
+     * Records how long after onCreate the next frame, the first one with the forecast in it, is
+     * drawn, and tells the system the activity is fully drawn, which makes ActivityManager log
+     * "Fully drawn" with the time since the process was started.
+     */
+    private void timeNextFrame() {
+        final ViewTreeObserver observer = mRecyclerView.getViewTreeObserver();
+        observer.addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                mRecyclerView.getViewTreeObserver().removeOnPreDrawListener(this);
+                if (mTimeToForecastFrameMillis == -1) {
+                    mTimeToForecastFrameMillis = SystemClock.uptimeMillis() - mCreateUptimeMillis;
+                    Log.i(TAG, "Forecast drawn " + mTimeToForecastFrameMillis + " ms after onCreate"
+                            + (mStartedFromSnapshot ? ", from the launch snapshot"
+                            : ", from the loader"));
+                    reportFullyDrawn();
+                }
+                return true;
+            }
+        });
+    }
+
+    /**
+     * @return Whether this launch drew its first list from the launch snapshot
+     */
+    boolean wasStartedFromSnapshot() {
+        return mStartedFromSnapshot;
+    }
+
+    /**
+     * @return Milliseconds from onCreate to the first frame with the forecast in it, or -1 if
+     * that frame hasn't been drawn yet
+     */
+    long getTimeToForecastFrameMillis() {
+        return mTimeToForecastFrameMillis;
     }
 
     /**
@@ -318,6 +459,8 @@ public class MainActivity extends AppCompatActivity implements
         MenuInflater inflater = getMenuInflater();
         /* Use the inflater's inflate method to inflate our menu layout to this menu */
         inflater.inflate(R.menu.forecast, menu);
+        /* The sync diagnostics are for us, not for the people using the app */
+        menu.findItem(R.id.action_sync_debug).setVisible(BuildConfig.DEBUG);
         /* Return true so that the menu is displayed in the Toolbar */
         return true;
     }
@@ -342,6 +485,15 @@ public class MainActivity extends AppCompatActivity implements
             openPreferredLocationInMap();
             return true;
         }
+        if (id == R.id.action_sync_debug) {
+            startActivity(new Intent(this, SyncDebugActivity.class));
+            return true;
+        }
+        if (id == R.id.action_refresh) {
+            /* The user asked for it, so this sync happens however fresh the weather is */
+            SunshineSyncUtils.requestSync(this, SyncFreshnessPolicy.REASON_USER_REFRESH);
+            return true;
+        }
 
         return super.onOptionsItemSelected(item);
     }
@@ -24,8 +24,10 @@ import android.support.v7.preference.Preference;
 import android.support.v7.preference.PreferenceFragmentCompat;
 import android.support.v7.preference.PreferenceScreen;
 
+import com.example.android.sunshine.data.LaunchSnapshotStore;
 import com.example.android.sunshine.data.SunshinePreferences;
 import com.example.android.sunshine.data.WeatherContract;
+import com.example.android.sunshine.sync.LocationSwitchTimer;
 import com.example.android.sunshine.sync.SunshineSyncUtils;
 
 /**
@@ -88,6 +90,8 @@ public class SettingsFragment extends PreferenceFragmentCompat implements
         // register the preference change listener
         getPreferenceScreen().getSharedPreferences()
                 .registerOnSharedPreferenceChangeListener(this);
+        // The user may be about to switch back to a recent location, so have it ready
+        SunshineSyncUtils.prefetchRecentLocations(getActivity());
     }
 
     @Override
@@ -98,7 +102,13 @@ public class SettingsFragment extends PreferenceFragmentCompat implements
             // we've changed the location
             // Wipe out any potential PlacePicker latlng values so that we can use this text entry.
             SunshinePreferences.resetLocationCoordinates(activity);
-            SunshineSyncUtils.startImmediateSync(activity);
+            // The snapshot shows the old location's weather, so don't start up with it
+            LaunchSnapshotStore.delete(activity);
+            // Time how long until the new location's forecast is on screen
+            LocationSwitchTimer.onLocationSelected(
+                    SunshinePreferences.getPreferredWeatherLocation(activity));
+            // A quick run of changes is synced once, for the last location
+            SunshineSyncUtils.requestLocationChangeSync(activity);
         } else if (key.equals(getString(R.string.pref_units_key))) {
             // units have changed. update lists of weather entries accordingly
             activity.getContentResolver().notifyChange(WeatherContract.WeatherEntry.CONTENT_URI, null);
@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine;
+
+import android.content.Context;
+import android.os.AsyncTask;
+import android.os.Bundle;
+import android.support.v7.app.AppCompatActivity;
+import android.widget.TextView;
+
+import com.example.android.sunshine.sync.SyncDiagnostics;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+/**
+ * Shows what {@link SyncDiagnostics} knows: the per-stage timings of every sync this process has
+ * run and the traces of the last few syncs, which survive restarts. It's the same text the sync
+ * service prints for dumpsys, for when there's no computer at hand. Only debug builds show the
+ * menu item that opens it.
+ */
+public class SyncDebugActivity extends AppCompatActivity {
+
+    private TextView mDiagnosticsTextView;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_sync_debug);
+        getSupportActionBar().setDisplayHomeAsUpEnabled(true);
+
+        mDiagnosticsTextView = (TextView) findViewById(R.id.tv_sync_diagnostics);
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        /* The first dump of the process reads the trace log from disk */
+        new DumpTask(getApplicationContext(), mDiagnosticsTextView)
+                .executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+    }
+
+    /* Formats the diagnostics off the main thread and shows them */
+    private static class DumpTask extends AsyncTask<Void, Void, String> {
+
+        private final Context mContext;
+        private final TextView mTextView;
+
+        DumpTask(Context context, TextView textView) {
+            mContext = context;
+            mTextView = textView;
+        }
+
+        @Override
+        protected String doInBackground(Void... params) {
+            StringWriter dump = new StringWriter();
+            SyncDiagnostics.dump(mContext, new PrintWriter(dump));
+            return dump.toString();
+        }
+
+        @Override
+        protected void onPostExecute(String dump) {
+            mTextView.setText(dump);
+        }
+    }
+}
@@ -0,0 +1,245 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.support.annotation.NonNull;
+
+import com.example.android.sunshine.data.WeatherContract.WeatherEntry;
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+
+/**
+ * In-process access to the forecast. The sync task publishes the rows it has just written as a
+ * {@link ForecastSnapshot}, and code running in Sunshine's own process (notifications, the watch
+ * face sender) reads from that snapshot instead of going through ContentResolver.query. This
+ * saves the URI matching, the SQLite query and the CursorWindow copy for data we already have in
+ * memory.
+ * <p>
+ * {@link WeatherProvider} remains the interface for everything outside of this process, and for
+ * the CursorLoaders that need change notifications. Whenever the provider's data changes, it
+ * drops the snapshot so readers never see rows the provider no longer has.
+ */
+public final class ForecastRepository {
+
+    /*
+     * The columns we read when we have to rebuild the snapshot from the provider. The order
+     * matches the INDEX_ constants below.
+     */
+    static final String[] FORECAST_PROJECTION = {
+            WeatherEntry.COLUMN_DATE,
+            WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherEntry.COLUMN_HUMIDITY,
+            WeatherEntry.COLUMN_PRESSURE,
+            WeatherEntry.COLUMN_WIND_SPEED,
+            WeatherEntry.COLUMN_DEGREES
+    };
+
+    private static final int INDEX_DATE = 0;
+    private static final int INDEX_WEATHER_ID = 1;
+    private static final int INDEX_MAX_TEMP = 2;
+    private static final int INDEX_MIN_TEMP = 3;
+    private static final int INDEX_HUMIDITY = 4;
+    private static final int INDEX_PRESSURE = 5;
+    private static final int INDEX_WIND_SPEED = 6;
+    private static final int INDEX_DEGREES = 7;
+
+    /*
+     * The most recently published snapshot, or null if there isn't one yet (or it was
+     * invalidated). Snapshots are immutable, so readers only ever need this one volatile read.
+     */
+    private static volatile ForecastSnapshot sSnapshot;
+
+    /*
+     * Counts every publish and invalidate, so that a snapshot loaded from the provider is only
+     * kept if nothing changed the data while it was being loaded. Guarded by LOCK, as are the
+     * writes to sSnapshot.
+     */
+    private static int sGeneration;
+    private static final Object LOCK = new Object();
+
+    private ForecastRepository() {
+    }
+
+    /**
+     * Publishes the rows that were just written to the database. This is called by the sync
+     * task right after a successful bulkInsert.
+     *
+     * @param weatherValues The rows that were inserted
+     */
+    public static void publish(@NonNull ContentValues[] weatherValues) {
+        publish(fromContentValues(weatherValues));
+    }
+
+    /**
+     * Publishes an already built snapshot.
+     *
+     * @param snapshot The snapshot that now reflects the database
+     */
+    public static void publish(@NonNull ForecastSnapshot snapshot) {
+        synchronized (LOCK) {
+            sGeneration++;
+            sSnapshot = snapshot;
+        }
+    }
+
+    /**
+     * Publishes today's row, just written on its own, over the forecast that was stored before
+     * it. The insert dropped the snapshot, but the rest of the forecast hasn't changed, so this
+     * puts it back with today's row in it instead of leaving the next reader to load it again.
+     *
+     * @param stored The snapshot from before today's row was written, as
+     *               {@link #getSnapshot(Context)} returned it
+     * @param today  The row that was inserted
+     * @return The snapshot that was published
+     */
+    @NonNull
+    public static ForecastSnapshot publishToday(@NonNull ForecastSnapshot stored,
+                                                @NonNull ContentValues today) {
+        ForecastSnapshot snapshot =
+                stored.withDay(fromContentValues(new ContentValues[]{today}), 0);
+        publish(snapshot);
+        return snapshot;
+    }
+
+    /**
+     * Drops the current snapshot. The next call to {@link #getSnapshot(Context)} will rebuild it
+     * from the ContentProvider.
+     */
+    public static void invalidate() {
+        synchronized (LOCK) {
+            sGeneration++;
+            sSnapshot = null;
+        }
+    }
+
+    /**
+     * Returns the forecast from today onwards. If nothing has been published in this process
+     * yet (for example, the process was restarted since the last sync), the snapshot is loaded
+     * once from the ContentProvider and kept for later readers.
+     * <p>
+     * A load is only kept if nothing was published or invalidated while it ran; otherwise it
+     * may hold rows the provider has since replaced, so it is handed to this caller alone and
+     * the next reader loads again.
+     * <p>
+     * This may query the ContentProvider, so don't call it from the main thread.
+     *
+     * @param context Used to access the ContentResolver if the snapshot needs to be loaded
+     * @return The current forecast snapshot. Never null, but may be empty.
+     */
+    @NonNull
+    public static ForecastSnapshot getSnapshot(@NonNull Context context) {
+        ForecastSnapshot snapshot = sSnapshot;
+        if (snapshot != null) {
+            return snapshot;
+        }
+
+        int generation;
+        synchronized (LOCK) {
+            generation = sGeneration;
+        }
+        snapshot = loadFromProvider(context);
+        synchronized (LOCK) {
+            if (generation == sGeneration) {
+                sSnapshot = snapshot;
+            }
+        }
+        return snapshot;
+    }
+
+    private static ForecastSnapshot loadFromProvider(Context context) {
+        Cursor cursor = context.getContentResolver().query(
+                WeatherEntry.CONTENT_URI,
+                FORECAST_PROJECTION,
+                WeatherEntry.getSqlSelectForTodayOnwards(),
+                null,
+                WeatherEntry.COLUMN_DATE + " ASC");
+
+        if (cursor == null) {
+            return ForecastSnapshot.EMPTY;
+        }
+
+        try {
+            return fromCursor(cursor);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static ForecastSnapshot fromCursor(Cursor cursor) {
+        int size = cursor.getCount();
+
+        long[] dates = new long[size];
+        int[] weatherIds = new int[size];
+        double[] maxTemps = new double[size];
+        double[] minTemps = new double[size];
+        double[] humidities = new double[size];
+        double[] pressures = new double[size];
+        double[] windSpeeds = new double[size];
+        double[] degrees = new double[size];
+
+        for (int i = 0; cursor.moveToNext(); i++) {
+            dates[i] = SunshineDateUtils.fromEpochDay(cursor.getLong(INDEX_DATE));
+            weatherIds[i] = cursor.getInt(INDEX_WEATHER_ID);
+            maxTemps[i] = cursor.getDouble(INDEX_MAX_TEMP);
+            minTemps[i] = cursor.getDouble(INDEX_MIN_TEMP);
+            humidities[i] = cursor.getDouble(INDEX_HUMIDITY);
+            pressures[i] = cursor.getDouble(INDEX_PRESSURE);
+            windSpeeds[i] = cursor.getDouble(INDEX_WIND_SPEED);
+            degrees[i] = cursor.getDouble(INDEX_DEGREES);
+        }
+
+        return new ForecastSnapshot(dates, weatherIds, maxTemps, minTemps,
+                humidities, pressures, windSpeeds, degrees);
+    }
+
+    /**
+     * Builds a snapshot from the ContentValues that the sync task hands to bulkInsert.
+     *
+     * @param weatherValues One ContentValues per day
+     * @return A snapshot holding the same rows
+     */
+    static ForecastSnapshot fromContentValues(ContentValues[] weatherValues) {
+        int size = weatherValues.length;
+
+        long[] dates = new long[size];
+        int[] weatherIds = new int[size];
+        double[] maxTemps = new double[size];
+        double[] minTemps = new double[size];
+        double[] humidities = new double[size];
+        double[] pressures = new double[size];
+        double[] windSpeeds = new double[size];
+        double[] degrees = new double[size];
+
+        for (int i = 0; i < size; i++) {
+            ContentValues values = weatherValues[i];
+            dates[i] = SunshineDateUtils.fromEpochDay(values.getAsLong(WeatherEntry.COLUMN_DATE));
+            weatherIds[i] = values.getAsInteger(WeatherEntry.COLUMN_WEATHER_ID);
+            maxTemps[i] = values.getAsDouble(WeatherEntry.COLUMN_MAX_TEMP);
+            minTemps[i] = values.getAsDouble(WeatherEntry.COLUMN_MIN_TEMP);
+            humidities[i] = values.getAsDouble(WeatherEntry.COLUMN_HUMIDITY);
+            pressures[i] = values.getAsDouble(WeatherEntry.COLUMN_PRESSURE);
+            windSpeeds[i] = values.getAsDouble(WeatherEntry.COLUMN_WIND_SPEED);
+            degrees[i] = values.getAsDouble(WeatherEntry.COLUMN_DEGREES);
+        }
+
+        return new ForecastSnapshot(dates, weatherIds, maxTemps, minTemps,
+                humidities, pressures, windSpeeds, degrees);
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data;
+
+import android.content.Context;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+import com.example.android.sunshine.utilities.SunshineWeatherUtils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Locale;
+
+/**
+ * Keeps the {@link LaunchSnapshot} of the forecast list in the app's private files. A sync writes
+ * it once it has the new forecast; MainActivity reads it on the main thread while it is being
+ * created, so that the first frame already shows the list.
+ * <p>
+ * Reading maps the file rather than streaming it, which keeps the main thread's cost to a page
+ * or two of memory that is usually still in the page cache. Writing goes to a temporary file that
+ * is then renamed over the old one, so a reader never sees half a snapshot.
+ */
+public final class LaunchSnapshotStore {
+
+    private static final String TAG = LaunchSnapshotStore.class.getSimpleName();
+
+    private static final String FILE_NAME = "launch_snapshot.bin";
+
+    private LaunchSnapshotStore() {
+    }
+
+    private static File getFile(Context context) {
+        return new File(context.getFilesDir(), FILE_NAME);
+    }
+
+    /**
+     * The snapshot's strings depend on the locale and the units preference. This is compared
+     * when reading, so a change to either in the meantime makes the snapshot unusable.
+     *
+     * @param context Used to read the units preference
+     * @return The key the snapshot's strings are formatted for
+     */
+    private static String getFormatKey(Context context) {
+        return Locale.getDefault().toString() + '|'
+                + (SunshinePreferences.isMetric(context) ? "metric" : "imperial");
+    }
+
+    private static int getTodayEpochDay() {
+        return SunshineDateUtils.toEpochDay(SunshineDateUtils.getNormalizedUtcDateForToday());
+    }
+
+    /**
+     * Formats the rows the forecast list would show, from today onwards, and writes them.
+     * Failing to write only costs the next cold start its head start, so it is logged rather
+     * than thrown.
+     *
+     * @param context  Used to format the strings and to find the file
+     * @param forecast The forecast published by the sync
+     * @param today    The index of today's row in forecast
+     */
+    public static void write(Context context, ForecastSnapshot forecast, int today) {
+        LaunchSnapshot.Builder builder =
+                new LaunchSnapshot.Builder(getTodayEpochDay(), getFormatKey(context));
+        for (int i = today; i < forecast.size(); i++) {
+            long date = forecast.getDate(i);
+            int weatherId = forecast.getWeatherId(i);
+            builder.addRow(SunshineDateUtils.toEpochDay(date), weatherId,
+                    SunshineDateUtils.getFriendlyDateString(context, date, false),
+                    SunshineWeatherUtils.getStringForWeatherCondition(context, weatherId),
+                    SunshineWeatherUtils.formatTemperature(context, forecast.getMaxTemp(i)),
+                    SunshineWeatherUtils.formatTemperature(context, forecast.getMinTemp(i)));
+        }
+
+        File file = getFile(context);
+        File temporary = new File(file.getPath() + ".tmp");
+        FileOutputStream out = null;
+        try {
+            out = new FileOutputStream(temporary);
+            builder.build().writeTo(out);
+            out.getFD().sync();
+            out.close();
+            out = null;
+            if (!temporary.renameTo(file)) {
+                throw new IOException("Couldn't rename " + temporary + " to " + file);
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Couldn't write the launch snapshot", e);
+            temporary.delete();
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    /**
+     * @param context Used to find the file and check the units preference
+     * @return The snapshot written by the last sync, or null if there is none, it can't be
+     * read, or its strings are out of date
+     */
+    @Nullable
+    public static LaunchSnapshot read(Context context) {
+        File file = getFile(context);
+        if (!file.exists()) {
+            return null;
+        }
+
+        FileInputStream in = null;
+        try {
+            in = new FileInputStream(file);
+            FileChannel channel = in.getChannel();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            LaunchSnapshot snapshot = LaunchSnapshot.read(buffer);
+            if (!snapshot.isCurrent(getTodayEpochDay(), getFormatKey(context))) {
+                return null;
+            }
+            return snapshot;
+        } catch (IOException | IllegalArgumentException e) {
+            /* Damaged or from an older version of the app; the next sync replaces it */
+            Log.w(TAG, "Ignoring an unreadable launch snapshot", e);
+            return null;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    /**
+     * Throws the snapshot away, for when the forecast it shows no longer applies, such as after
+     * the user picks another location.
+     *
+     * @param context Used to find the file
+     */
+    public static void delete(Context context) {
+        getFile(context).delete();
+    }
+}
@@ -18,9 +18,15 @@ package com.example.android.sunshine.data;
 import android.content.Context;
 import android.content.SharedPreferences;
 import android.preference.PreferenceManager;
+import android.support.annotation.Nullable;
 
 import com.example.android.sunshine.R;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
 public final class SunshinePreferences {
 
     /*
@@ -31,6 +37,21 @@ public final class SunshinePreferences {
     public static final String PREF_COORD_LAT = "coord_lat";
     public static final String PREF_COORD_LONG = "coord_long";
 
+    /* A random id for this install, which picks when in each interval it syncs */
+    private static final String PREF_INSTALL_ID = "install_id";
+
+    /* How far the forecast list was scrolled on past visits, see ForecastWindowPolicy */
+    private static final String PREF_FORECAST_VISITS = "forecast_visits";
+
+    /* The last few locations synced, most recent first, one per line */
+    private static final String PREF_RECENT_LOCATIONS = "recent_locations";
+
+    /* The number of recent locations kept */
+    private static final int RECENT_LOCATIONS_KEPT = 4;
+
+    /* The location whose forecast the weather table holds, see setStoredLocation */
+    private static final String PREF_STORED_LOCATION = "stored_location";
+
 
     public static void setTodayWeather(Context context, int id, int high, int low) {
         SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
@@ -262,4 +283,107 @@ public final class SunshinePreferences {
         editor.putLong(lastNotificationKey, timeOfNotification);
         editor.apply();
     }
-}
\ No newline at end of file
+
+    /**
+     * Returns an id that is made up the first time it is asked for and stays the same until the
+     * app's data is cleared. It identifies nothing but the install, and never leaves the device.
+     *
+     * @param context Used to access SharedPreferences
+     * @return This install's id
+     */
+    public static synchronized String getInstallId(Context context) {
+        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
+        String installId = sp.getString(PREF_INSTALL_ID, null);
+        if (installId == null) {
+            installId = UUID.randomUUID().toString();
+            sp.edit().putString(PREF_INSTALL_ID, installId).apply();
+        }
+        return installId;
+    }
+
+    /**
+     * @param context Used to access SharedPreferences
+     * @return The forecast list visit counts last saved by {@link #setForecastVisits}, or null
+     */
+    public static String getForecastVisits(Context context) {
+        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
+        return sp.getString(PREF_FORECAST_VISITS, null);
+    }
+
+    /**
+     * Saves how far the forecast list was scrolled on past visits.
+     *
+     * @param context Used to access SharedPreferences
+     * @param visits  The counts, as written by ForecastWindowPolicy.toPreference
+     */
+    public static void setForecastVisits(Context context, String visits) {
+        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
+        sp.edit().putString(PREF_FORECAST_VISITS, visits).apply();
+    }
+
+    /**
+     * @param context Used to access SharedPreferences
+     * @return The last few locations that were synced, most recent first
+     */
+    public static List<String> getRecentLocations(Context context) {
+        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
+        String recent = sp.getString(PREF_RECENT_LOCATIONS, "");
+        if (recent.isEmpty()) {
+            return new ArrayList<>();
+        }
+        return new ArrayList<>(Arrays.asList(recent.split("\n")));
+    }
+
+    /**
+     * Puts a location at the front of the recent locations, dropping the oldest one if there are
+     * too many. Nothing is written if it's already at the front.
+     *
+     * @param context  Used to access SharedPreferences
+     * @param location The location that was synced
+     */
+    public static synchronized void addRecentLocation(Context context, String location) {
+        /* Lines separate the locations, so one can't contain a line break */
+        String entry = location.replace('\n', ' ');
+        List<String> recent = getRecentLocations(context);
+        if (!recent.isEmpty() && recent.get(0).equals(entry)) {
+            return;
+        }
+        recent.remove(entry);
+        recent.add(0, entry);
+        StringBuilder value = new StringBuilder();
+        for (int i = 0; i < recent.size() && i < RECENT_LOCATIONS_KEPT; i++) {
+            value.append(i == 0 ? "" : "\n").append(recent.get(i));
+        }
+        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
+        sp.edit().putString(PREF_RECENT_LOCATIONS, value.toString()).apply();
+    }
+
+    /**
+     * @param context Used to access SharedPreferences
+     * @return The location whose forecast the weather table holds, or null if it holds none or
+     * is being replaced
+     */
+    @Nullable
+    public static String getStoredLocation(Context context) {
+        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
+        return sp.getString(PREF_STORED_LOCATION, null);
+    }
+
+    /**
+     * Records which location's forecast the weather table holds. A sync clears it before it
+     * replaces the table and sets it once the new forecast is written, so it never names a
+     * location whose forecast the table doesn't hold; that's also why it's committed before
+     * this returns, rather than applied.
+     *
+     * @param context  Used to access SharedPreferences
+     * @param location The location, or null while the table is being replaced
+     */
+    public static void setStoredLocation(Context context, @Nullable String location) {
+        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
+        if (location == null) {
+            sp.edit().remove(PREF_STORED_LOCATION).commit();
+        } else {
+            sp.edit().putString(PREF_STORED_LOCATION, location).commit();
+        }
+    }
+}
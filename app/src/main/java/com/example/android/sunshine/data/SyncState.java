@@ -0,0 +1,198 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.support.annotation.Nullable;
+
+import com.example.android.sunshine.data.WeatherContract.SyncStateEntry;
+import com.example.android.sunshine.data.WeatherContract.WeatherEntry;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * One row of the sync_state table: what the last successful sync of a location stored and when.
+ * Reading it is a primary key lookup through the provider, which is all it takes to decide at
+ * startup whether there is weather to show and whether it's fresh enough to skip a sync.
+ * <p>
+ * The location preference can be left empty in the settings. An empty location has no row of
+ * its own in the provider, since its URI would be the one for the whole table, so it is never
+ * recorded and always counts as never synced.
+ */
+public final class SyncState {
+
+    /* The columns read back, in this order */
+    private static final String[] PROJECTION = {
+            SyncStateEntry.COLUMN_LAST_SYNC,
+            SyncStateEntry.COLUMN_ROW_COUNT,
+            SyncStateEntry.COLUMN_FIRST_DATE,
+            SyncStateEntry.COLUMN_LAST_DATE,
+            SyncStateEntry.COLUMN_PAYLOAD_HASH,
+    };
+
+    private static final int INDEX_LAST_SYNC = 0;
+    private static final int INDEX_ROW_COUNT = 1;
+    private static final int INDEX_FIRST_DATE = 2;
+    private static final int INDEX_LAST_DATE = 3;
+    private static final int INDEX_PAYLOAD_HASH = 4;
+
+    private final long mLastSync;
+    private final int mRowCount;
+    private final long mFirstDate;
+    private final long mLastDate;
+    private final String mPayloadHash;
+
+    private SyncState(Cursor cursor) {
+        mLastSync = cursor.getLong(INDEX_LAST_SYNC);
+        mRowCount = cursor.getInt(INDEX_ROW_COUNT);
+        mFirstDate = cursor.getLong(INDEX_FIRST_DATE);
+        mLastDate = cursor.getLong(INDEX_LAST_DATE);
+        mPayloadHash = cursor.getString(INDEX_PAYLOAD_HASH);
+    }
+
+    /**
+     * Looks up a location's row. This touches the database, so it shouldn't be called on the
+     * main thread.
+     *
+     * @param context  Used to reach the provider
+     * @param location The location, as returned by getPreferredWeatherLocation
+     * @return The state of the last successful sync of that location, or null if there has been
+     * none (or the provider couldn't be queried, or the location is empty)
+     */
+    @Nullable
+    public static SyncState query(Context context, String location) {
+        if (isEmpty(location)) {
+            return null;
+        }
+        Cursor cursor = context.getContentResolver().query(
+                SyncStateEntry.buildSyncStateUriWithLocation(location),
+                PROJECTION,
+                null,
+                null,
+                null);
+        /* A Cursor can be null, for example if the provider's process has died */
+        if (cursor == null) {
+            return null;
+        }
+        try {
+            return cursor.moveToFirst() ? new SyncState(cursor) : null;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Records a successful sync of a location, replacing whatever was recorded for it before.
+     *
+     * @param context       Used to reach the provider
+     * @param location      The location that was synced
+     * @param time          When the sync finished, in milliseconds since the epoch
+     * @param weatherValues The rows the sync stored in the weather table
+     * @param payload       The response they were parsed from
+     */
+    public static void record(Context context, String location, long time,
+                              ContentValues[] weatherValues, String payload) {
+        if (isEmpty(location)) {
+            return;
+        }
+        long firstDate = Long.MAX_VALUE;
+        long lastDate = Long.MIN_VALUE;
+        for (ContentValues day : weatherValues) {
+            long date = day.getAsLong(WeatherEntry.COLUMN_DATE);
+            firstDate = Math.min(firstDate, date);
+            lastDate = Math.max(lastDate, date);
+        }
+
+        ContentValues state = new ContentValues();
+        state.put(SyncStateEntry.COLUMN_LOCATION, location);
+        state.put(SyncStateEntry.COLUMN_LAST_SYNC, time);
+        state.put(SyncStateEntry.COLUMN_ROW_COUNT, weatherValues.length);
+        state.put(SyncStateEntry.COLUMN_FIRST_DATE, firstDate);
+        state.put(SyncStateEntry.COLUMN_LAST_DATE, lastDate);
+        state.put(SyncStateEntry.COLUMN_PAYLOAD_HASH, hash(payload));
+        context.getContentResolver().insert(SyncStateEntry.CONTENT_URI, state);
+    }
+
+    /**
+     * Forgets the last sync of a location, so that it counts as never synced.
+     *
+     * @param context  Used to reach the provider
+     * @param location The location to forget
+     */
+    public static void forget(Context context, String location) {
+        if (isEmpty(location)) {
+            return;
+        }
+        context.getContentResolver().delete(
+                SyncStateEntry.buildSyncStateUriWithLocation(location), null, null);
+    }
+
+    /* Whether the location can't be looked up by its own URI, see the class comment */
+    private static boolean isEmpty(String location) {
+        return location == null || location.isEmpty();
+    }
+
+    /**
+     * @param payload A response from the weather server
+     * @return The SHA-1 of its UTF-8 bytes, in hex
+     */
+    public static String hash(String payload) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(payload.getBytes("UTF-8"));
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16))
+                        .append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException | UnsupportedEncodingException e) {
+            /* Every Android device has both */
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * @param epochDay A day number, like the weather table's dates
+     * @return true if the sync stored weather for that day
+     */
+    public boolean coversDay(long epochDay) {
+        return mRowCount > 0 && mFirstDate <= epochDay && epochDay <= mLastDate;
+    }
+
+    public long getLastSync() {
+        return mLastSync;
+    }
+
+    public int getRowCount() {
+        return mRowCount;
+    }
+
+    public long getFirstDate() {
+        return mFirstDate;
+    }
+
+    public long getLastDate() {
+        return mLastDate;
+    }
+
+    public String getPayloadHash() {
+        return mPayloadHash;
+    }
+}
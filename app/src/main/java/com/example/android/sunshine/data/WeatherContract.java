@@ -56,6 +56,9 @@ public class WeatherContract {
      */
     public static final String PATH_WEATHER = "weather";
 
+    /* Appended to BASE_CONTENT_URI for the bookkeeping of past syncs, see SyncStateEntry */
+    public static final String PATH_SYNC_STATE = "sync_state";
+
     /* Inner class that defines the table contents of the weather table */
     public static final class WeatherEntry implements BaseColumns {
 
@@ -64,6 +67,18 @@ public class WeatherContract {
                 .appendPath(PATH_WEATHER)
                 .build();
 
+        /* The query parameter that marks CONTENT_URI_REPLACE_ALL */
+        public static final String PARAM_REPLACE_ALL = "replace_all";
+
+        /*
+         * A bulkInsert to this URI replaces the whole weather table with the rows it inserts, in
+         * a single transaction. Readers see either the old forecast or the new one, never an
+         * empty table or one that is half written.
+         */
+        public static final Uri CONTENT_URI_REPLACE_ALL = CONTENT_URI.buildUpon()
+                .appendQueryParameter(PARAM_REPLACE_ALL, "true")
+                .build();
+
         /* Used internally as the name of our weather table. */
         public static final String TABLE_NAME = "weather";
 
@@ -77,6 +92,12 @@ public class WeatherContract {
          * column would hold the date representing September 23rd at midnight in GMT time.
          * (1474588800000)
          *
+         * The column stores that date as the number of days since the epoch (17067 for the
+         * example above) rather than in milliseconds. A day number takes three bytes in SQLite
+         * where the milliseconds take six, which keeps the unique index on this column small,
+         * and a day number can't be "not normalized" the way milliseconds can. Use
+         * SunshineDateUtils.toEpochDay and fromEpochDay to convert.
+         *
          * The reason we store GMT time and not local time is because it is best practice to have a
          * "normalized", or standard when storing the date and adjust as necessary when
          * displaying the date. Normalizing the date also allows us an easy way to convert to
@@ -113,13 +134,17 @@ public class WeatherContract {
          * Builds a URI that adds the weather date to the end of the forecast content URI path.
          * This is used to query details about a single weather entry by date. This is what we
          * use for the detail view query. We assume a normalized date is passed to this method.
+         * <p>
+         * The URI carries the date's day number, the same as the date column. WeatherProvider
+         * still accepts URIs that carry milliseconds, such as ones built before dates were
+         * stored as day numbers and kept in a pending notification.
          *
          * @param date Normalized date in milliseconds
          * @return Uri to query details about a single weather entry
          */
         public static Uri buildWeatherUriWithDate(long date) {
             return CONTENT_URI.buildUpon()
-                    .appendPath(Long.toString(date))
+                    .appendPath(Integer.toString(SunshineDateUtils.toEpochDay(date)))
                     .build();
         }
 
@@ -132,7 +157,60 @@ public class WeatherContract {
          */
         public static String getSqlSelectForTodayOnwards() {
             long normalizedUtcNow = SunshineDateUtils.normalizeDate(System.currentTimeMillis());
-            return WeatherContract.WeatherEntry.COLUMN_DATE + " >= " + normalizedUtcNow;
+            return WeatherContract.WeatherEntry.COLUMN_DATE + " >= "
+                    + SunshineDateUtils.toEpochDay(normalizedUtcNow);
+        }
+    }
+
+    /*
+     * Inner class that defines the table contents of the sync_state table. It has one row per
+     * location, describing the last successful sync of that location: when it happened, what it
+     * stored in the weather table and what the server sent. Whether the app has weather worth
+     * showing, and whether it is fresh, is then a lookup of a single row by its primary key
+     * rather than a query over the weather table.
+     */
+    public static final class SyncStateEntry {
+
+        /* The base CONTENT_URI used to query the sync_state table from the content provider */
+        public static final Uri CONTENT_URI = BASE_CONTENT_URI.buildUpon()
+                .appendPath(PATH_SYNC_STATE)
+                .build();
+
+        /* Used internally as the name of the sync_state table */
+        public static final String TABLE_NAME = "sync_state";
+
+        /*
+         * The location, as the user entered it in the settings (see
+         * SunshinePreferences.getPreferredWeatherLocation). This is the table's primary key.
+         */
+        public static final String COLUMN_LOCATION = "location";
+
+        /* When the last successful sync of this location finished, in milliseconds since epoch */
+        public static final String COLUMN_LAST_SYNC = "last_sync";
+
+        /* How many days of weather that sync stored */
+        public static final String COLUMN_ROW_COUNT = "row_count";
+
+        /*
+         * The first and last day it stored, as day numbers like WeatherEntry.COLUMN_DATE. The
+         * weather reaches today if today falls between the two.
+         */
+        public static final String COLUMN_FIRST_DATE = "first_date";
+        public static final String COLUMN_LAST_DATE = "last_date";
+
+        /* A hash of the response the weather was parsed from, to tell whether it has changed */
+        public static final String COLUMN_PAYLOAD_HASH = "payload_hash";
+
+        /**
+         * Builds a URI for the sync state of one location.
+         *
+         * @param location The location, as returned by getPreferredWeatherLocation
+         * @return Uri to query, replace or delete that location's row
+         */
+        public static Uri buildSyncStateUriWithLocation(String location) {
+            return CONTENT_URI.buildUpon()
+                    .appendPath(location)
+                    .build();
         }
     }
-}
\ No newline at end of file
+}
@@ -19,6 +19,7 @@ import android.content.Context;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 
+import com.example.android.sunshine.data.WeatherContract.SyncStateEntry;
 import com.example.android.sunshine.data.WeatherContract.WeatherEntry;
 
 /**
@@ -42,8 +43,11 @@ public class WeatherDbHelper extends SQLiteOpenHelper {
      * versions of Sunshine could cause everything to break. Although that is certainly a rare
      * use-case, we wanted to watch out for it and warn you what could happen if you mistakenly
      * version your databases.
+     *
+     * Version 4 stores dates as day numbers instead of milliseconds, and version 5 adds the
+     * sync_state table. See WeatherDbMigrations.
      */
-    private static final int DATABASE_VERSION = 3;
+    static final int DATABASE_VERSION = 5;
 
     public WeatherDbHelper(Context context) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
@@ -99,15 +103,38 @@ public class WeatherDbHelper extends SQLiteOpenHelper {
          * that SQL with the execSQL method of our SQLite database object.
          */
         sqLiteDatabase.execSQL(SQL_CREATE_WEATHER_TABLE);
+
+        /*
+         * One row per location, looked up by the location itself, so the location is the
+         * primary key. Replacing a location's row is how a sync records itself.
+         */
+        final String SQL_CREATE_SYNC_STATE_TABLE =
+
+                "CREATE TABLE " + SyncStateEntry.TABLE_NAME + " (" +
+
+                SyncStateEntry.COLUMN_LOCATION      + " TEXT PRIMARY KEY ON CONFLICT REPLACE, " +
+
+                SyncStateEntry.COLUMN_LAST_SYNC     + " INTEGER NOT NULL, "                     +
+                SyncStateEntry.COLUMN_ROW_COUNT     + " INTEGER NOT NULL, "                     +
+                SyncStateEntry.COLUMN_FIRST_DATE    + " INTEGER NOT NULL, "                     +
+                SyncStateEntry.COLUMN_LAST_DATE     + " INTEGER NOT NULL, "                     +
+
+                SyncStateEntry.COLUMN_PAYLOAD_HASH  + " TEXT);";
+
+        sqLiteDatabase.execSQL(SQL_CREATE_SYNC_STATE_TABLE);
     }
 
     /**
-     * This database is only a cache for online data, so its upgrade policy is simply to discard
-     * the data and call through to onCreate to recreate the table. Note that this only fires if
-     * you change the version number for your database (in our case, DATABASE_VERSION). It does NOT
-     * depend on the version number for your application found in your app/build.gradle file. If
-     * you want to update the schema without wiping data, commenting out the current body of this
-     * method should be your top priority before modifying this method.
+     * Although this database is only a cache for online data, wiping it on every schema change
+     * forces a cold network sync the first time the app is opened after an update. Instead, we
+     * run the step-wise migrations in {@link WeatherDbMigrations} from oldVersion up to
+     * newVersion, which keep the rows that are already stored. Only when there is no complete
+     * migration path (for example, a database from before the migrations existed) do we discard
+     * the data and call through to onCreate to recreate the table.
+     * <p>
+     * Note that this only fires if you change the version number for your database (in our case,
+     * DATABASE_VERSION). It does NOT depend on the version number for your application found in
+     * your app/build.gradle file.
      *
      * @param sqLiteDatabase Database that is being upgraded
      * @param oldVersion     The old database version
@@ -115,7 +142,12 @@ public class WeatherDbHelper extends SQLiteOpenHelper {
      */
     @Override
     public void onUpgrade(SQLiteDatabase sqLiteDatabase, int oldVersion, int newVersion) {
+        if (WeatherDbMigrations.migrate(sqLiteDatabase, oldVersion, newVersion)) {
+            return;
+        }
+
         sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + WeatherEntry.TABLE_NAME);
+        sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + SyncStateEntry.TABLE_NAME);
         onCreate(sqLiteDatabase);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+import com.example.android.sunshine.utilities.NormalizedDates;
+
+/**
+ * Holds the step-wise schema migrations for the weather database. Each {@link Migration} moves
+ * the schema from exactly one version to the next one, so an upgrade from version N to version M
+ * runs every step between them in order and keeps the rows that are already cached.
+ */
+final class WeatherDbMigrations {
+
+    private static final String TAG = WeatherDbMigrations.class.getSimpleName();
+
+    /*
+     * The oldest schema version we know how to migrate from. Anything older than this predates
+     * the migration framework and is simply dropped and recreated by WeatherDbHelper.
+     */
+    static final int OLDEST_MIGRATABLE_VERSION = 3;
+
+    /**
+     * A single step that moves the schema from {@link #startVersion} to {@link #endVersion},
+     * which is always startVersion + 1.
+     */
+    abstract static class Migration {
+
+        final int startVersion;
+        final int endVersion;
+
+        Migration(int startVersion) {
+            this.startVersion = startVersion;
+            this.endVersion = startVersion + 1;
+        }
+
+        /**
+         * Applies this step. This is called inside the transaction SQLiteOpenHelper opens for
+         * onUpgrade, so a failure part way through leaves the database at the old version.
+         *
+         * @param db The database being upgraded
+         */
+        abstract void migrate(SQLiteDatabase db);
+    }
+
+    /*
+     * Every migration Sunshine has ever shipped, in version order. When you bump
+     * WeatherDbHelper.DATABASE_VERSION, add the step from the previous version here rather than
+     * changing the body of an existing step.
+     */
+    static final Migration[] MIGRATIONS = {
+
+            /*
+             * 3 -> 4: The date column holds day numbers instead of normalized milliseconds. The
+             * column's type doesn't change, so converting the rows in place is enough; SQLite
+             * rewrites the unique index on the column as it goes. Only normalized dates could
+             * ever be inserted, so the division is exact and no two rows end up on one day.
+             */
+            new Migration(3) {
+                @Override
+                void migrate(SQLiteDatabase db) {
+                    db.execSQL("UPDATE " + WeatherContract.WeatherEntry.TABLE_NAME
+                            + " SET " + WeatherContract.WeatherEntry.COLUMN_DATE
+                            + " = " + WeatherContract.WeatherEntry.COLUMN_DATE
+                            + " / " + NormalizedDates.DAY_IN_MILLIS);
+                }
+            },
+
+            /*
+             * 4 -> 5: Adds the sync_state table. It starts out empty, so the first launch after
+             * the upgrade finds no record of a sync and syncs once, as it did before the table
+             * existed. The statement is spelled out rather than built from SyncStateEntry, so
+             * that this step keeps creating the version 5 table whatever later versions change.
+             */
+            new Migration(4) {
+                @Override
+                void migrate(SQLiteDatabase db) {
+                    db.execSQL("CREATE TABLE sync_state ("
+                            + "location TEXT PRIMARY KEY ON CONFLICT REPLACE, "
+                            + "last_sync INTEGER NOT NULL, "
+                            + "row_count INTEGER NOT NULL, "
+                            + "first_date INTEGER NOT NULL, "
+                            + "last_date INTEGER NOT NULL, "
+                            + "payload_hash TEXT)");
+                }
+            }
+    };
+
+    private WeatherDbMigrations() {
+    }
+
+    /**
+     * Runs every migration between oldVersion and newVersion against the database.
+     *
+     * @param db         The database being upgraded
+     * @param oldVersion The version the database is currently at
+     * @param newVersion The version we want the database to be at
+     * @return true if the database was migrated, false if there is no complete path between the
+     * two versions and the caller should fall back to recreating the schema
+     */
+    static boolean migrate(SQLiteDatabase db, int oldVersion, int newVersion) {
+        return migrate(db, oldVersion, newVersion, MIGRATIONS);
+    }
+
+    /**
+     * Runs the steps from the given migrations that lead from oldVersion to newVersion. This is
+     * split out from {@link #migrate(SQLiteDatabase, int, int)} so that the path finding can be
+     * tested with migrations that aren't part of the shipped schema history.
+     *
+     * @param db         The database being upgraded
+     * @param oldVersion The version the database is currently at
+     * @param newVersion The version we want the database to be at
+     * @param migrations The available steps, in any order
+     * @return true if the database was migrated, false if no complete path exists
+     */
+    static boolean migrate(SQLiteDatabase db, int oldVersion, int newVersion,
+                           Migration[] migrations) {
+        if (oldVersion < OLDEST_MIGRATABLE_VERSION || oldVersion > newVersion) {
+            return false;
+        }
+
+        /*
+         * Resolve the whole path before touching the database. If any step is missing we don't
+         * want to leave the schema half migrated.
+         */
+        Migration[] path = new Migration[newVersion - oldVersion];
+        for (int version = oldVersion; version < newVersion; version++) {
+            Migration step = findStep(migrations, version);
+            if (step == null) {
+                Log.w(TAG, "No migration from version " + version + ", recreating the schema");
+                return false;
+            }
+            path[version - oldVersion] = step;
+        }
+
+        for (Migration step : path) {
+            step.migrate(db);
+        }
+        return true;
+    }
+
+    private static Migration findStep(Migration[] migrations, int startVersion) {
+        for (Migration migration : migrations) {
+            if (migration.startVersion == startVersion) {
+                return migration;
+            }
+        }
+        return null;
+    }
+}
@@ -28,7 +28,8 @@ import com.example.android.sunshine.utilities.SunshineDateUtils;
 
 /**
  * This class serves as the ContentProvider for all of Sunshine's data. This class allows us to
- * bulkInsert data, query data, and delete data.
+ * bulkInsert data, query data, and delete data. It also serves the sync_state table, which
+ * records the last sync of each location.
  * <p>
  * Although ContentProvider implementation requires the implementation of additional methods to
  * perform single inserts, updates, and the ability to get the type of the data from a URI.
@@ -45,6 +46,8 @@ public class WeatherProvider extends ContentProvider {
      */
     public static final int CODE_WEATHER = 100;
     public static final int CODE_WEATHER_WITH_DATE = 101;
+    public static final int CODE_SYNC_STATE = 200;
+    public static final int CODE_SYNC_STATE_WITH_LOCATION = 201;
 
     /*
      * The URI Matcher used by this content provider. The leading "s" in this variable name
@@ -54,6 +57,14 @@ public class WeatherProvider extends ContentProvider {
     private static final UriMatcher sUriMatcher = buildUriMatcher();
     private WeatherDbHelper mOpenHelper;
 
+    /*
+     * The largest day number we accept in the date column: December 31st, 9999. A date in
+     * milliseconds is always far larger than this, which lets bulkInsert catch a caller that
+     * hasn't converted its dates with a single comparison, and lets query tell a URI that carries
+     * a day number from an older one that carries milliseconds.
+     */
+    private static final long MAX_EPOCH_DAY = 2932896;
+
     /**
      * Creates the UriMatcher that will match each URI to the CODE_WEATHER and
      * CODE_WEATHER_WITH_DATE constants defined above.
@@ -96,6 +107,16 @@ public class WeatherProvider extends ContentProvider {
          */
         matcher.addURI(authority, WeatherContract.PATH_WEATHER + "/#", CODE_WEATHER_WITH_DATE);
 
+        /* content://com.example.android.sunshine/sync_state/ lists the state of every location */
+        matcher.addURI(authority, WeatherContract.PATH_SYNC_STATE, CODE_SYNC_STATE);
+
+        /*
+         * content://com.example.android.sunshine/sync_state/94043%2CUSA is one location's row.
+         * The "/*" matches any text, as a location is whatever the user typed in.
+         */
+        matcher.addURI(authority, WeatherContract.PATH_SYNC_STATE + "/*",
+                CODE_SYNC_STATE_WITH_LOCATION);
+
         return matcher;
     }
 
@@ -132,6 +153,11 @@ public class WeatherProvider extends ContentProvider {
      * implement bulkInsert. In a normal ContentProvider's implementation, you will probably want
      * to provide proper functionality for the insert method as well.
      *
+     * <p>
+     * Rows replace any row with the same date. Inserting to
+     * {@link WeatherContract.WeatherEntry#CONTENT_URI_REPLACE_ALL} deletes every other row in
+     * the same transaction, so that a whole forecast is swapped for another in one step.
+     *
      * @param uri    The content:// URI of the insertion request.
      * @param values An array of sets of column_name/value pairs to add to the database.
      *               This must not be {@code null}.
@@ -145,14 +171,22 @@ public class WeatherProvider extends ContentProvider {
         switch (sUriMatcher.match(uri)) {
 
             case CODE_WEATHER:
+                boolean replaceAll = uri.getBooleanQueryParameter(
+                        WeatherContract.WeatherEntry.PARAM_REPLACE_ALL, false);
                 db.beginTransaction();
                 int rowsInserted = 0;
+                int rowsDeleted = 0;
                 try {
+                    if (replaceAll) {
+                        rowsDeleted = db.delete(WeatherContract.WeatherEntry.TABLE_NAME, "1",
+                                null);
+                    }
                     for (ContentValues value : values) {
                         long weatherDate =
                                 value.getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE);
-                        if (!SunshineDateUtils.isDateNormalized(weatherDate)) {
-                            throw new IllegalArgumentException("Date must be normalized to insert");
+                        if (weatherDate < 0 || weatherDate > MAX_EPOCH_DAY) {
+                            throw new IllegalArgumentException(
+                                    "Date must be a day number to insert, not " + weatherDate);
                         }
 
                         long _id = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, value);
@@ -165,8 +199,11 @@ public class WeatherProvider extends ContentProvider {
                     db.endTransaction();
                 }
 
-                if (rowsInserted > 0) {
-                    getContext().getContentResolver().notifyChange(uri, null);
+                if (rowsInserted > 0 || rowsDeleted > 0) {
+                    /* Any in-process snapshot no longer matches what we have stored */
+                    ForecastRepository.invalidate();
+                    getContext().getContentResolver().notifyChange(
+                            WeatherContract.WeatherEntry.CONTENT_URI, null);
                 }
 
                 return rowsInserted;
@@ -209,8 +246,9 @@ public class WeatherProvider extends ContentProvider {
              *      content://com.example.android.sunshine/weather/1472214172
              *
              * sUriMatcher's match method will return the code that indicates to us that we need
-             * to return the weather for a particular date. The date in this code is encoded in
-             * milliseconds and is at the very end of the URI (1472214172) and can be accessed
+             * to return the weather for a particular date. The date in this code is encoded as a
+             * day number (or, in URIs built before dates were stored as day numbers, in
+             * milliseconds) and is at the very end of the URI (1472214172) and can be accessed
              * programmatically using Uri's getLastPathSegment method.
              *
              * In this case, we want to return a cursor that contains one row of weather data for
@@ -221,9 +259,14 @@ public class WeatherProvider extends ContentProvider {
                 /*
                  * In order to determine the date associated with this URI, we look at the last
                  * path segment. In the comment above, the last path segment is 1472214172 and
-                 * represents the number of seconds since the epoch, or UTC time.
+                 * represents the number of seconds since the epoch, or UTC time. Anything too
+                 * large to be a day number is one of those older URIs and is converted.
                  */
-                String normalizedUtcDateString = uri.getLastPathSegment();
+                long date = Long.parseLong(uri.getLastPathSegment());
+                if (date > MAX_EPOCH_DAY) {
+                    date = SunshineDateUtils.toEpochDay(date);
+                }
+                String normalizedUtcDateString = Long.toString(date);
 
                 /*
                  * The query method accepts a string array of arguments, as there may be more
@@ -285,6 +328,36 @@ public class WeatherProvider extends ContentProvider {
                 break;
             }
 
+            /*
+             * The state of a single location. The location is the table's primary key, so this
+             * is a lookup of at most one row, however much weather is stored.
+             */
+            case CODE_SYNC_STATE_WITH_LOCATION: {
+                cursor = mOpenHelper.getReadableDatabase().query(
+                        WeatherContract.SyncStateEntry.TABLE_NAME,
+                        projection,
+                        WeatherContract.SyncStateEntry.COLUMN_LOCATION + " = ? ",
+                        new String[]{uri.getLastPathSegment()},
+                        null,
+                        null,
+                        sortOrder);
+
+                break;
+            }
+
+            case CODE_SYNC_STATE: {
+                cursor = mOpenHelper.getReadableDatabase().query(
+                        WeatherContract.SyncStateEntry.TABLE_NAME,
+                        projection,
+                        selection,
+                        selectionArgs,
+                        null,
+                        null,
+                        sortOrder);
+
+                break;
+            }
+
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
@@ -324,6 +397,15 @@ public class WeatherProvider extends ContentProvider {
                         selection,
                         selectionArgs);
 
+                if (numRowsDeleted != 0) ForecastRepository.invalidate();
+                break;
+
+            case CODE_SYNC_STATE_WITH_LOCATION:
+                numRowsDeleted = mOpenHelper.getWritableDatabase().delete(
+                        WeatherContract.SyncStateEntry.TABLE_NAME,
+                        WeatherContract.SyncStateEntry.COLUMN_LOCATION + " = ?",
+                        new String[]{uri.getLastPathSegment()});
+
                 break;
 
             default:
@@ -354,20 +436,41 @@ public class WeatherProvider extends ContentProvider {
     }
 
     /**
-     * In Sunshine, we aren't going to do anything with this method. However, we are required to
-     * override it as WeatherProvider extends ContentProvider and insert is an abstract method in
-     * ContentProvider. Rather than the single insert method, we are only going to implement
-     * {@link WeatherProvider#bulkInsert}.
+     * Weather is only ever inserted a forecast at a time, through
+     * {@link WeatherProvider#bulkInsert}. The one single-row insert is a sync recording itself in
+     * the sync_state table, which replaces the location's previous row.
      *
      * @param uri    The URI of the insertion request. This must not be null.
      * @param values A set of column_name/value pairs to add to the database.
      *               This must not be null
-     * @return nothing in Sunshine, but normally the URI for the newly inserted item.
+     * @return The URI of the location's row
      */
     @Override
     public Uri insert(@NonNull Uri uri, ContentValues values) {
-        throw new RuntimeException(
-                "We are not implementing insert in Sunshine. Use bulkInsert instead");
+        switch (sUriMatcher.match(uri)) {
+
+            case CODE_SYNC_STATE:
+                String location =
+                        values.getAsString(WeatherContract.SyncStateEntry.COLUMN_LOCATION);
+                if (location == null) {
+                    throw new IllegalArgumentException("Sync state needs a location");
+                }
+
+                long _id = mOpenHelper.getWritableDatabase().insertOrThrow(
+                        WeatherContract.SyncStateEntry.TABLE_NAME, null, values);
+                if (_id == -1) {
+                    return null;
+                }
+
+                Uri locationUri =
+                        WeatherContract.SyncStateEntry.buildSyncStateUriWithLocation(location);
+                getContext().getContentResolver().notifyChange(locationUri, null);
+                return locationUri;
+
+            default:
+                throw new RuntimeException(
+                        "We are not implementing insert in Sunshine. Use bulkInsert instead");
+        }
     }
 
     @Override
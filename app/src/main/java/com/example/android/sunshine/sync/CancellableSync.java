@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.sync;
+
+import android.content.Context;
+import android.os.CancellationSignal;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * One sync started by a scheduled job, which can be stopped from another thread.
+ * <p>
+ * A job ends exactly once, in one of two ways. Either the sync runs to its end and the
+ * {@link Listener} is told, or the job is stopped first and {@link #cancel} says so. Whichever
+ * happens first wins. A job that was stopped doesn't also report that it finished, and a job
+ * that finished isn't asked to be retried.
+ */
+final class CancellableSync implements Runnable {
+
+    /**
+     * Told when a sync that wasn't cancelled has run to its end.
+     */
+    interface Listener {
+
+        void onSyncFinished();
+    }
+
+    /*
+     * Syncs run one at a time on their own thread, rather than on AsyncTask's shared serial
+     * executor, where they would queue behind (and hold up) unrelated work.
+     */
+    private static final Executor EXECUTOR = Executors.newSingleThreadExecutor(
+            new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "SunshineSync");
+                    thread.setPriority(Thread.NORM_PRIORITY - 1);
+                    return thread;
+                }
+            });
+
+    private final Context mContext;
+    private final int mTier;
+    private final SunshineSyncTask.ForecastSource mSource;
+    private final Listener mListener;
+
+    private final CancellationSignal mSignal = new CancellationSignal();
+    private final AtomicBoolean mEnded = new AtomicBoolean();
+
+    /**
+     * @param context  The application context
+     * @param tier     Which sync to run, one of the SyncTrace.TIER constants
+     * @param source   Where to get the forecast JSON from
+     * @param listener Told if the sync runs to its end
+     */
+    CancellableSync(Context context, int tier, SunshineSyncTask.ForecastSource source,
+                    Listener listener) {
+        mContext = context;
+        mTier = tier;
+        mSource = source;
+        mListener = listener;
+    }
+
+    /**
+     * Queues the sync on the sync thread.
+     */
+    void start() {
+        EXECUTOR.execute(this);
+    }
+
+    @Override
+    public void run() {
+        if (!mSignal.isCanceled()) {
+            if (mTier == SyncTrace.TIER_TODAY) {
+                SunshineSyncTask.syncToday(mContext, mSource, mSignal);
+            } else {
+                SunshineSyncTask.syncWeather(mContext, mSource, mSignal);
+            }
+        }
+        if (mEnded.compareAndSet(false, true)) {
+            mListener.onSyncFinished();
+        }
+    }
+
+    /**
+     * Stops the sync at its next checkpoint, aborting its request if it is waiting on the
+     * network. A sync that has started writing still finishes writing.
+     *
+     * @return true if the sync hadn't ended yet, so the job should be retried; false if it had
+     * already finished and its listener has been (or is being) told
+     */
+    boolean cancel() {
+        mSignal.cancel();
+        return mEnded.compareAndSet(false, true);
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.sync;
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.text.format.DateUtils;
+
+import com.example.android.sunshine.data.ForecastRepository;
+import com.example.android.sunshine.data.ForecastSnapshot;
+import com.example.android.sunshine.data.LaunchSnapshotStore;
+import com.example.android.sunshine.data.SunshinePreferences;
+import com.example.android.sunshine.utilities.NotificationUtils;
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+
+/**
+ * The last stage of a sync. It reads the forecast once and hands that same snapshot to every
+ * consumer that builds something from it (the notification, the watch face payload, the launch
+ * snapshot, and any future widget), so no consumer has to go back to the ContentProvider for
+ * its own copy.
+ * <p>
+ * A full sync that stores today's weather first builds the today-only artifacts from the
+ * snapshot published with today's row in it, see {@link #dispatchToday}, and the rest from the
+ * one published with the whole forecast. Both are in memory, so the pair reads the provider no
+ * more than a single dispatch does.
+ */
+public final class ForecastFanOut {
+
+    /**
+     * Something that is built from the freshly synced forecast.
+     */
+    public interface Consumer {
+
+        /**
+         * Called once per sync with the forecast from today onwards.
+         *
+         * @param context  Context to build the artifact with
+         * @param forecast The forecast published by the sync
+         * @param today    The index of today's row in forecast
+         */
+        void onForecastUpdated(Context context, ForecastSnapshot forecast, int today);
+    }
+
+    /*
+     * Shows the "new weather" notification, but only if the user wants notifications and we
+     * haven't shown one in the past day. It's important that you shouldn't spam your users with
+     * notifications.
+     */
+    static final Consumer NOTIFICATION = new Consumer() {
+        @Override
+        public void onForecastUpdated(Context context, ForecastSnapshot forecast, int today) {
+            boolean notificationsEnabled = SunshinePreferences.areNotificationsEnabled(context);
+
+            long timeSinceLastNotification = SunshinePreferences
+                    .getEllapsedTimeSinceLastNotification(context);
+
+            boolean oneDayPassedSinceLastNotification =
+                    timeSinceLastNotification >= DateUtils.DAY_IN_MILLIS;
+
+            if (notificationsEnabled && oneDayPassedSinceLastNotification) {
+                NotificationUtils.notifyUserOfNewWeather(context, forecast, today);
+            }
+        }
+    };
+
+    /* Pushes today's weather to a paired watch */
+    static final Consumer WATCH_FACE = new Consumer() {
+        @Override
+        public void onForecastUpdated(Context context, ForecastSnapshot forecast, int today) {
+            NotificationUtils.sendWeatherToWatchFace(context, forecast, today);
+        }
+    };
+
+    /*
+     * Writes the pre-formatted forecast list that MainActivity draws its first frame from on the
+     * next cold start
+     */
+    static final Consumer LAUNCH_SNAPSHOT = new Consumer() {
+        @Override
+        public void onForecastUpdated(Context context, ForecastSnapshot forecast, int today) {
+            LaunchSnapshotStore.write(context, forecast, today);
+        }
+    };
+
+    /* Everything that is built after a sync, in the order it is built */
+    private static final Consumer[] DEFAULT_CONSUMERS =
+            {NOTIFICATION, WATCH_FACE, LAUNCH_SNAPSHOT};
+
+    /* The stage of a sync's trace each of the default consumers is timed as */
+    private static final int[] DEFAULT_STAGES = {
+            SyncTrace.STAGE_NOTIFY,
+            SyncTrace.STAGE_WATCH,
+            SyncTrace.STAGE_LAUNCH_SNAPSHOT,
+    };
+
+    /* What only needs today's weather, built as soon as a full sync has stored it */
+    private static final Consumer[] TODAY_CONSUMERS = {NOTIFICATION, WATCH_FACE};
+    private static final int[] TODAY_STAGES = {SyncTrace.STAGE_NOTIFY, SyncTrace.STAGE_WATCH};
+
+    /* What needs the whole forecast, built once a full sync has stored the rest of it */
+    private static final Consumer[] WINDOW_CONSUMERS = {LAUNCH_SNAPSHOT};
+    private static final int[] WINDOW_STAGES = {SyncTrace.STAGE_LAUNCH_SNAPSHOT};
+
+    private ForecastFanOut() {
+    }
+
+    /**
+     * Builds every post-sync artifact from a single read of the forecast, timing each one as a
+     * stage of the sync.
+     *
+     * @param context Context used to read the forecast and build the artifacts
+     * @param trace   The trace of the sync that published the forecast
+     */
+    public static void dispatch(@NonNull Context context, @NonNull SyncTrace trace) {
+        dispatch(context, trace, DEFAULT_STAGES, DEFAULT_CONSUMERS);
+    }
+
+    /**
+     * Builds the artifacts that only show today's weather, the notification and the watch face,
+     * for a sync that has stored today's weather but not yet the rest of the forecast. The sync
+     * publishes today's row along with it, see ForecastRepository.publishToday, so this reads
+     * that snapshot rather than the provider.
+     *
+     * @param context Context used to read the forecast and build the artifacts
+     * @param trace   The trace of the sync that stored today's weather
+     */
+    public static void dispatchToday(@NonNull Context context, @NonNull SyncTrace trace) {
+        dispatch(context, trace, TODAY_STAGES, TODAY_CONSUMERS);
+    }
+
+    /**
+     * Builds the artifacts that show the whole forecast, once a sync that has already called
+     * {@link #dispatchToday} has stored the rest of it.
+     *
+     * @param context Context used to read the forecast and build the artifacts
+     * @param trace   The trace of the sync that stored the forecast
+     */
+    public static void dispatchWindow(@NonNull Context context, @NonNull SyncTrace trace) {
+        dispatch(context, trace, WINDOW_STAGES, WINDOW_CONSUMERS);
+    }
+
+    /**
+     * Reads the forecast once and hands it to each of the given consumers. If today's weather
+     * isn't part of the forecast, there is nothing worth showing and no consumer is called.
+     *
+     * @param context   Context used to read the forecast and build the artifacts
+     * @param consumers The consumers to hand the forecast to
+     * @return The number of consumers that were called
+     */
+    static int dispatch(@NonNull Context context, Consumer... consumers) {
+        return dispatch(context, null, null, consumers);
+    }
+
+    private static int dispatch(@NonNull Context context, @Nullable SyncTrace trace,
+                                @Nullable int[] stages, Consumer[] consumers) {
+        ForecastSnapshot forecast = ForecastRepository.getSnapshot(context);
+
+        int today = forecast.indexOfDate(
+                SunshineDateUtils.normalizeDate(System.currentTimeMillis()));
+        if (today == -1) {
+            return 0;
+        }
+
+        for (int i = 0; i < consumers.length; i++) {
+            if (trace != null) {
+                trace.begin(stages[i]);
+            }
+            consumers[i].onForecastUpdated(context, forecast, today);
+            if (trace != null) {
+                trace.end();
+            }
+        }
+        return consumers.length;
+    }
+}
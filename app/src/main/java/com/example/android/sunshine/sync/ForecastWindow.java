@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.sync;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.os.Build;
+import android.util.Log;
+
+import com.example.android.sunshine.data.SunshinePreferences;
+
+/**
+ * The app's side of {@link ForecastWindowPolicy}: it tells the policy what the current
+ * connection costs and how far the forecast list is scrolled, keeps the policy's counts in the
+ * preferences, and asks for the rest of a shortened forecast when the list nears its end.
+ */
+public final class ForecastWindow {
+
+    private static final String TAG = ForecastWindow.class.getSimpleName();
+
+    /* Read from the preferences the first time it's needed; guarded by the class */
+    private static ForecastWindowPolicy sPolicy;
+
+    /*
+     * The number of stored days for which the rest of the forecast was last asked for, so that
+     * scrolling back and forth near the end asks only once for each window.
+     */
+    private static int sExtendedFrom = -1;
+
+    private ForecastWindow() {
+    }
+
+    private static synchronized ForecastWindowPolicy getPolicy(Context context) {
+        if (sPolicy == null) {
+            sPolicy = ForecastWindowPolicy.fromPreference(
+                    SunshinePreferences.getForecastVisits(context));
+        }
+        return sPolicy;
+    }
+
+    /**
+     * @param context Used to reach the ConnectivityManager
+     * @return What the active connection costs, one of the ForecastWindowPolicy.NETWORK
+     * constants. Without one, it's taken to be metered.
+     */
+    static int getNetworkClass(Context context) {
+        ConnectivityManager connectivity =
+                (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        NetworkInfo network = connectivity.getActiveNetworkInfo();
+        if (network == null) {
+            return ForecastWindowPolicy.NETWORK_METERED;
+        }
+        if (network.isRoaming()) {
+            return ForecastWindowPolicy.NETWORK_CONSTRAINED;
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N
+                && connectivity.getRestrictBackgroundStatus()
+                == ConnectivityManager.RESTRICT_BACKGROUND_STATUS_ENABLED) {
+            /* The user has turned on the data saver, and hasn't exempted Sunshine from it */
+            return ForecastWindowPolicy.NETWORK_CONSTRAINED;
+        }
+        return connectivity.isActiveNetworkMetered()
+                ? ForecastWindowPolicy.NETWORK_METERED
+                : ForecastWindowPolicy.NETWORK_UNMETERED;
+    }
+
+    /**
+     * @param context Used to check the connection and read the visit counts
+     * @return How many days a sync over the current connection should ask for
+     */
+    public static int getDaysToFetch(Context context) {
+        int network = getNetworkClass(context);
+        int days = getPolicy(context).getDaysToFetch(network);
+        Log.d(TAG, "Fetching " + days + " days over a network of class " + network);
+        return days;
+    }
+
+    /**
+     * Counts a visit to the forecast list, and saves the counts.
+     *
+     * @param context    Used to save the counts
+     * @param deepestDay The furthest day the list showed during the visit, today being 0
+     */
+    public static void recordVisit(Context context, int deepestDay) {
+        ForecastWindowPolicy policy = getPolicy(context);
+        policy.recordVisit(deepestDay);
+        SunshinePreferences.setForecastVisits(context, policy.toPreference());
+    }
+
+    /**
+     * Asks for the rest of the forecast if the list has been scrolled down to one of the last few
+     * stored days and the server has more. Each stored window is only extended once.
+     *
+     * @param context        Used to request the sync
+     * @param lastVisibleDay The furthest day the list is showing, today being 0
+     * @param storedDays     How many days, from today, the list holds
+     */
+    public static void extendIfNeeded(Context context, int lastVisibleDay, int storedDays) {
+        if (!ForecastWindowPolicy.shouldExtend(lastVisibleDay, storedDays)) {
+            return;
+        }
+        synchronized (ForecastWindow.class) {
+            if (sExtendedFrom == storedDays) {
+                return;
+            }
+            sExtendedFrom = storedDays;
+        }
+        Log.d(TAG, "Day " + lastVisibleDay + " of " + storedDays
+                + " is showing, fetching the rest");
+        SunshineSyncUtils.requestSync(context, SyncFreshnessPolicy.REASON_EXTEND_WINDOW);
+    }
+}
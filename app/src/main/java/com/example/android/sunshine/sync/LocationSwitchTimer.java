@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.sync;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.PrintWriter;
+
+/**
+ * Times how long it takes from the user choosing a location to its forecast being drawn in the
+ * list. A switch is timed in three steps: the location is selected in the settings, its forecast
+ * is stored by a sync, and the next frame of the list with it is drawn. Switches whose forecast
+ * came from the response cache, such as one that was prefetched, are counted apart from those
+ * that had to wait for the server, so the two can be compared.
+ * <p>
+ * Only the latest switch is timed; choosing another location before the first one's forecast
+ * is drawn starts the clock again.
+ */
+public final class LocationSwitchTimer {
+
+    private static final String TAG = LocationSwitchTimer.class.getSimpleName();
+
+    /* Times in microseconds, like the sync metrics */
+    private static final Histogram sCachedMicros = new Histogram();
+    private static final Histogram sFetchedMicros = new Histogram();
+
+    /* The switch being timed, if any; guarded by the class */
+    private static String sLocation;
+    private static long sSelectedAt;
+    private static boolean sStored;
+    private static boolean sFromCache;
+
+    private LocationSwitchTimer() {
+    }
+
+    /**
+     * Starts timing a switch to a location.
+     *
+     * @param location The location chosen
+     */
+    public static synchronized void onLocationSelected(String location) {
+        sLocation = location;
+        sSelectedAt = SystemClock.elapsedRealtime();
+        sStored = false;
+    }
+
+    /**
+     * Called by a sync that has stored a location's forecast.
+     *
+     * @param location  The location the forecast is for
+     * @param fromCache Whether the forecast was served without asking the server
+     */
+    static synchronized void onForecastStored(String location, boolean fromCache) {
+        if (location.equals(sLocation)) {
+            sStored = true;
+            sFromCache = fromCache;
+        }
+    }
+
+    /**
+     * @return Whether a switch's forecast has been stored but not yet drawn
+     */
+    public static synchronized boolean isWaitingForFrame() {
+        return sStored;
+    }
+
+    /**
+     * Called once the list has drawn a frame with the stored forecast in it. Ends the switch
+     * being timed, if there is one.
+     */
+    public static synchronized void onForecastDrawn() {
+        if (!sStored) {
+            return;
+        }
+        long millis = SystemClock.elapsedRealtime() - sSelectedAt;
+        (sFromCache ? sCachedMicros : sFetchedMicros).record(millis * 1000);
+        Log.d(TAG, "Switched to " + sLocation + " in " + millis + " ms"
+                + (sFromCache ? " from the cache" : ""));
+        sLocation = null;
+        sStored = false;
+    }
+
+    /**
+     * Writes how long switches took, from the cache and from the server.
+     *
+     * @param writer Where to write it
+     */
+    static void dump(PrintWriter writer) {
+        writer.println("location switch to forecast drawn (ms)");
+        dump(writer, "cached", sCachedMicros);
+        dump(writer, "fetched", sFetchedMicros);
+    }
+
+    private static void dump(PrintWriter writer, String name, Histogram micros) {
+        writer.println(name + ": count=" + micros.getCount()
+                + " mean=" + SyncTrace.formatMillis(micros.getMean())
+                + " p95<=" + SyncTrace.formatMillis(micros.getPercentile(0.95))
+                + " max=" + SyncTrace.formatMillis(micros.getMax()));
+    }
+}
@@ -15,18 +15,21 @@
  */
 package com.example.android.sunshine.sync;
 
-import android.content.Context;
-import android.os.AsyncTask;
-
 import com.firebase.jobdispatcher.Job;
 import com.firebase.jobdispatcher.JobParameters;
 import com.firebase.jobdispatcher.JobService;
 import com.firebase.jobdispatcher.RetryStrategy;
 
+import java.util.HashMap;
+import java.util.Map;
 
 public class SunshineFirebaseJobService extends JobService {
 
-    private AsyncTask<Void, Void, Void> mFetchWeatherTask;
+    /*
+     * The running sync of each job, by tag. The full and today jobs can be running at once, in
+     * which case one sync waits for the other. Only touched on the main thread.
+     */
+    private final Map<String, CancellableSync> mSyncs = new HashMap<>();
 
     /**
      * The entry point to your Job. Implementations should offload work to another thread of
@@ -41,38 +44,38 @@ public class SunshineFirebaseJobService extends JobService {
     @Override
     public boolean onStartJob(final JobParameters jobParameters) {
 
-        mFetchWeatherTask = new AsyncTask<Void, Void, Void>(){
-            @Override
-            protected Void doInBackground(Void... voids) {
-                Context context = getApplicationContext();
-                SunshineSyncTask.syncWeather(context);
-                jobFinished(jobParameters, false);
-                return null;
-            }
+        final int tier = SunshineSyncUtils.getTier(jobParameters.getTag());
+        SunshineSyncTask.ForecastSource source = tier == SyncTrace.TIER_TODAY
+                ? SunshineSyncTask.TODAY_NETWORK
+                : SunshineSyncTask.CACHE_OR_NETWORK;
 
-            @Override
-            protected void onPostExecute(Void aVoid) {
-                jobFinished(jobParameters, false);
-            }
-        };
+        CancellableSync sync = new CancellableSync(getApplicationContext(), tier, source,
+                new CancellableSync.Listener() {
+                    @Override
+                    public void onSyncFinished() {
+                        /* Only called if the job wasn't stopped first, so exactly once */
+                        jobFinished(jobParameters, false);
+                        SunshineSyncUtils.scheduleNextSync(getApplicationContext(), tier);
+                    }
+                });
 
-        mFetchWeatherTask.execute();
+        mSyncs.put(jobParameters.getTag(), sync);
+        sync.start();
         return true;
     }
 
     /**
      * Called when the scheduling engine has decided to interrupt the execution of a running job,
      * most likely because the runtime constraints associated with the job are no longer satisfied.
+     * The sync stops at its next checkpoint, and its request is aborted if it's on the network.
      *
-     * @return whether the job should be retried
+     * @return whether the job should be retried, which it should unless it already finished
      * @see Job.Builder#setRetryStrategy(RetryStrategy)
      * @see RetryStrategy
      */
     @Override
     public boolean onStopJob(JobParameters jobParameters) {
-        if (mFetchWeatherTask != null) {
-            mFetchWeatherTask.cancel(true);
-        }
-        return true;
+        CancellableSync sync = mSyncs.remove(jobParameters.getTag());
+        return sync != null && sync.cancel();
     }
-}
\ No newline at end of file
+}
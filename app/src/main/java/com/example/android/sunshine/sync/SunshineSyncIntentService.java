@@ -17,6 +17,10 @@ package com.example.android.sunshine.sync;
 
 import android.app.IntentService;
 import android.content.Intent;
+import android.os.CancellationSignal;
+
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
 
 /**
  * An {@link IntentService} subclass for handling asynchronous task requests in
@@ -30,6 +34,28 @@ public class SunshineSyncIntentService extends IntentService {
 
     @Override
     protected void onHandleIntent(Intent intent) {
-        SunshineSyncTask.syncWeather(this);
+        /* The service can't be stopped while it handles an intent, so this is never cancelled */
+        CancellationSignal signal = new CancellationSignal();
+
+        /* A cached forecast would be no answer to a user asking for the latest one */
+        int reason = intent.getIntExtra(SunshineSyncUtils.EXTRA_REASON,
+                SyncFreshnessPolicy.REASON_LAUNCH);
+        if (reason == SyncFreshnessPolicy.REASON_USER_REFRESH) {
+            SunshineSyncTask.syncWeatherFromNetwork(this, signal);
+        } else if (reason == SyncFreshnessPolicy.REASON_EXTEND_WINDOW) {
+            /* The list has been scrolled near the end of a shortened forecast */
+            SunshineSyncTask.syncWholeForecast(this, signal);
+        } else {
+            SunshineSyncTask.syncWeather(this, signal);
+        }
+    }
+
+    /**
+     * Prints the sync metrics and the recent sync traces, for
+     * "adb shell dumpsys activity service .sync.SunshineSyncIntentService".
+     */
+    @Override
+    protected void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+        SyncDiagnostics.dump(this, writer);
     }
 }
\ No newline at end of file
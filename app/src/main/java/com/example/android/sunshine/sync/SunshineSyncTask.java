@@ -15,102 +15,648 @@
  */
 package com.example.android.sunshine.sync;
 
-import android.content.ContentResolver;
 import android.content.ContentValues;
 import android.content.Context;
-import android.text.format.DateUtils;
+import android.os.CancellationSignal;
+import android.os.OperationCanceledException;
+import android.os.SystemClock;
+import android.util.Log;
 
+import com.example.android.sunshine.data.ForecastRepository;
+import com.example.android.sunshine.data.ForecastSnapshot;
 import com.example.android.sunshine.data.SunshinePreferences;
+import com.example.android.sunshine.data.SyncState;
 import com.example.android.sunshine.data.WeatherContract;
+import com.example.android.sunshine.utilities.GroupForecastParser;
+import com.example.android.sunshine.utilities.MalformedDay;
 import com.example.android.sunshine.utilities.NetworkUtils;
-import com.example.android.sunshine.utilities.NotificationUtils;
+import com.example.android.sunshine.utilities.OpenWeatherJsonParser;
 import com.example.android.sunshine.utilities.OpenWeatherJsonUtils;
+import com.example.android.sunshine.utilities.SunshineDateUtils;
 
+import org.json.JSONException;
+
+import java.io.IOException;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
 
 public class SunshineSyncTask {
 
+    private static final String TAG = SunshineSyncTask.class.getSimpleName();
+
+    /**
+     * Where a sync gets its forecast JSON from. Normally that's the weather server; local unit
+     * tests hand in a recorded response instead so that the rest of the sync runs without a
+     * network.
+     */
+    interface ForecastSource {
+
+        /**
+         * @param context Used to read the user's location preferences
+         * @param trace   Where to record the stages of the request
+         * @param signal  Cancels the request; a source should stop as soon as it can once it is
+         *                cancelled, by throwing OperationCanceledException
+         * @return The forecast JSON, or null if there was no response
+         * @throws IOException Related to network and stream reading
+         */
+        String fetchForecastJson(Context context, SyncTrace trace, CancellationSignal signal)
+                throws IOException;
+    }
+
+    /* At most this many requests per sync, so the first retry is the second request */
+    private static final int MAX_ATTEMPTS = 3;
+
+    /* Waits of up to 2, 4, 8... seconds between attempts, but never more than 30 */
+    private static final Backoff BACKOFF = new Backoff(TimeUnit.SECONDS.toMillis(2),
+            TimeUnit.SECONDS.toMillis(30), new Random());
+
+    /*
+     * Five failures in a row, which is two syncs' worth of retries, and the weather server is
+     * left alone for 15 minutes. It's shared by every sync and prefetch in the process, since
+     * they all fetch from the same server.
+     */
+    private static final CircuitBreaker BREAKER =
+            new CircuitBreaker(5, TimeUnit.MINUTES.toMillis(15));
+
+    /* How often a wait between attempts checks whether the sync has been cancelled */
+    private static final long BACKOFF_CANCEL_CHECK_MILLIS = 250;
+
+    /* Asks the forecast window how many days to fetch over the current connection */
+    private static final int DAYS_FOR_CONNECTION = 0;
+
+    /*
+     * Fetches the forecast for the user's preferred location from the weather server, as many
+     * days of it as the connection warrants; see ForecastWindowPolicy
+     */
+    static final ForecastSource NETWORK = fromServer(DAYS_FOR_CONNECTION);
+
+    /*
+     * Fetches only today's weather for the user's preferred location. Its responses aren't
+     * cached, since they could only ever serve another sync for today alone.
+     */
+    static final ForecastSource TODAY_NETWORK = fromServer(1);
+
+    /* Fetches every day of the forecast, whatever the connection */
+    static final ForecastSource WHOLE_FORECAST_NETWORK =
+            fromServer(ForecastWindowPolicy.MAX_DAYS);
+
+    /**
+     * @param days The number of days to ask for, or {@link #DAYS_FOR_CONNECTION}
+     * @return A source that fetches from the weather server, retrying failed requests
+     */
+    private static ForecastSource fromServer(final int days) {
+        return new ForecastSource() {
+            @Override
+            public String fetchForecastJson(Context context, SyncTrace trace,
+                                            CancellationSignal signal) throws IOException {
+                /*
+                 * The getUrl method will return the URL that we need to get the forecast JSON
+                 * for the weather. It will decide whether to create a URL based off of the
+                 * latitude and longitude or off of a simple location as a String.
+                 */
+                trace.begin(SyncTrace.STAGE_BUILD_URL);
+                URL weatherRequestUrl = NetworkUtils.getUrl(context, resolveDays(context, days));
+                trace.end();
+
+                return fetchWithRetries(weatherRequestUrl, trace, signal);
+            }
+        };
+    }
+
+    /**
+     * @param context Used to check the connection
+     * @param days    The number of days to ask for, or {@link #DAYS_FOR_CONNECTION}
+     * @return The number of days to ask for
+     */
+    private static int resolveDays(Context context, int days) {
+        return days == DAYS_FOR_CONNECTION ? ForecastWindow.getDaysToFetch(context) : days;
+    }
+
+    /*
+     * Uses the URL to retrieve the JSON, trying again after a timeout, a dropped connection or a
+     * server error
+     */
+    private static String fetchWithRetries(final URL weatherRequestUrl, final SyncTrace trace,
+                                           final CancellationSignal signal) throws IOException {
+        return newRetryingFetcher(signal).fetch(new RetryingFetcher.Attempt() {
+            @Override
+            public String fetch() throws IOException {
+                return NetworkUtils.getResponseFromHttpUrl(weatherRequestUrl, trace, signal);
+            }
+        });
+    }
+
+    /**
+     * @param signal Cancels the fetch, including a wait between attempts
+     * @return A fetcher for requests to the weather server, which go through {@link #BREAKER}
+     */
+    private static RetryingFetcher newRetryingFetcher(CancellationSignal signal) {
+        return new RetryingFetcher(MAX_ATTEMPTS, BACKOFF, BREAKER, new CancellableClock(signal),
+                LOG_FAILED_ATTEMPTS);
+    }
+
+    /*
+     * Responses from the last hour, for up to 8 locations. A location change to somewhere
+     * synced recently, or to coordinates in the same cell, is then served without a request.
+     */
+    static final ResponseCache RESPONSE_CACHE = new ResponseCache(8, TimeUnit.HOURS.toMillis(1));
+
+    /* The network, unless a recent response for the same location is cached */
+    static final ForecastSource CACHE_OR_NETWORK =
+            throughCache(NETWORK, DAYS_FOR_CONNECTION, true);
+
+    /* The network, whatever is cached; what it fetches is cached for later syncs */
+    static final ForecastSource NETWORK_INTO_CACHE =
+            throughCache(NETWORK, DAYS_FOR_CONNECTION, false);
+
+    /* Every day of the forecast from the network, which is then cached for later syncs */
+    static final ForecastSource WHOLE_FORECAST_INTO_CACHE =
+            throughCache(WHOLE_FORECAST_NETWORK, ForecastWindowPolicy.MAX_DAYS, false);
+
+    /**
+     * Puts {@link #RESPONSE_CACHE} in front of a source.
+     *
+     * @param source    Where to get the forecast JSON from when it isn't cached
+     * @param days      The number of days the source asks for, or {@link #DAYS_FOR_CONNECTION}.
+     *                  A cached response with fewer days isn't served.
+     * @param readCache Whether to serve a cached response; when it's false, the source is
+     *                  always asked and the cache is only written
+     * @return The source behind the cache
+     */
+    static ForecastSource throughCache(final ForecastSource source, final int days,
+                                       final boolean readCache) {
+        return new ForecastSource() {
+            @Override
+            public String fetchForecastJson(Context context, SyncTrace trace,
+                                            CancellationSignal signal) throws IOException {
+                String key = NetworkUtils.getCacheKey(context);
+                int daysWanted = resolveDays(context, days);
+                if (readCache) {
+                    String cached =
+                            RESPONSE_CACHE.get(key, daysWanted, System.currentTimeMillis());
+                    if (cached != null) {
+                        Log.d(TAG, "Serving the forecast for " + key + " from the cache");
+                        return cached;
+                    }
+                }
+                String response = source.fetchForecastJson(context, trace, signal);
+                if (response != null) {
+                    RESPONSE_CACHE.put(key, response, daysWanted, System.currentTimeMillis());
+                }
+                return response;
+            }
+        };
+    }
+
+    /**
+     * Where a prefetch gets the forecasts of several locations from. Local unit tests hand in
+     * recorded responses, like they do for a {@link ForecastSource}.
+     */
+    interface PrefetchSource {
+
+        /**
+         * @param locations Locations given by name
+         * @param sink      Takes each location's forecast as soon as it has been read; a
+         *                  location the server has no forecast for is left out
+         * @throws IOException   Related to network and stream reading. The forecasts handed to
+         *                       the sink before it are still good.
+         * @throws JSONException If a response couldn't be parsed
+         */
+        void fetchForecasts(List<String> locations, GroupForecastParser.Sink sink)
+                throws IOException, JSONException;
+    }
+
+    /*
+     * Fetches the locations' whole forecasts from the weather server, with one request for all
+     * of them if it has a group endpoint, see NetworkUtils.getForecastsForLocations. Each
+     * request is retried and counted against the server like a sync's, so a failing server
+     * isn't asked any more often for being prefetched from. A prefetch isn't traced as a sync.
+     */
+    static final PrefetchSource PREFETCH_NETWORK = new PrefetchSource() {
+        @Override
+        public void fetchForecasts(List<String> locations, GroupForecastParser.Sink sink)
+                throws IOException, JSONException {
+            CancellationSignal signal = new CancellationSignal();
+            NetworkUtils.getForecastsForLocations(locations,
+                    SunshineDateUtils.getNormalizedUtcDateForToday(), newRetryingFetcher(signal),
+                    new SyncTrace(System.currentTimeMillis()), signal, sink);
+        }
+    };
+
+    /**
+     * Fetches the forecasts of the given locations into {@link #RESPONSE_CACHE}, so that
+     * choosing one of them is answered from the cache. Locations that are already cached aren't
+     * asked for, and the rest are asked for together. A location the server has no forecast
+     * for isn't cached, since a sync would have no use for the response. This doesn't take the
+     * sync lock, so it doesn't hold up a sync.
+     *
+     * @param locations Locations given by name
+     * @param source    Where to get their forecasts from
+     * @return The number of forecasts that were fetched and cached
+     */
+    static int prefetch(List<String> locations, PrefetchSource source) {
+        List<String> missing = new ArrayList<>();
+        for (String location : locations) {
+            if (!RESPONSE_CACHE.contains(NetworkUtils.getCacheKey(location),
+                    ForecastWindowPolicy.MAX_DAYS, System.currentTimeMillis())) {
+                missing.add(location);
+            }
+        }
+        if (missing.isEmpty()) {
+            return 0;
+        }
+
+        final int[] cached = {0};
+        try {
+            source.fetchForecasts(missing, new GroupForecastParser.Sink() {
+                @Override
+                public void onForecast(String location, String json,
+                                       OpenWeatherJsonParser.ParsedForecast forecast) {
+                    RESPONSE_CACHE.put(NetworkUtils.getCacheKey(location), json,
+                            ForecastWindowPolicy.MAX_DAYS, System.currentTimeMillis());
+                    cached[0]++;
+                }
+            });
+        } catch (IOException | JSONException e) {
+            Log.d(TAG, "Couldn't prefetch the forecasts for " + missing + ": " + e);
+        }
+        return cached[0];
+    }
+
+    private static final RetryingFetcher.Listener LOG_FAILED_ATTEMPTS =
+            new RetryingFetcher.Listener() {
+                @Override
+                public void onAttemptFailed(int attempt, int kind, long retryMillis) {
+                    Log.w(TAG, "Forecast request " + attempt + " failed ("
+                            + FetchException.getKindName(kind) + ")"
+                            + (retryMillis < 0 ? "" : ", retrying in " + retryMillis + " ms"));
+                }
+            };
+
+    /**
+     * The wall clock, and waits that end early if the sync is cancelled, by throwing
+     * OperationCanceledException.
+     */
+    private static final class CancellableClock implements RetryingFetcher.Clock {
+
+        private final CancellationSignal mSignal;
+
+        CancellableClock(CancellationSignal signal) {
+            mSignal = signal;
+        }
+
+        @Override
+        public long now() {
+            return System.currentTimeMillis();
+        }
+
+        @Override
+        public void sleep(long millis) throws InterruptedException {
+            long end = SystemClock.elapsedRealtime() + millis;
+            long left;
+            while ((left = end - SystemClock.elapsedRealtime()) > 0) {
+                mSignal.throwIfCanceled();
+                Thread.sleep(Math.min(left, BACKOFF_CANCEL_CHECK_MILLIS));
+            }
+            mSignal.throwIfCanceled();
+        }
+    }
+
     /**
      * Performs the network request for updated weather, parses the JSON from that request, and
-     * inserts the new weather information into our ContentProvider. Will notify the user that new
+     * inserts the new weather information into our ContentProvider. A response fetched for the
+     * same location within the last hour is used instead of a request, see
+     * {@link #RESPONSE_CACHE}. Will notify the user that new
      * weather has been loaded if the user hasn't been notified of the weather within the last day
      * AND they haven't disabled notifications in the preferences screen.
      *
      * @param context Used to access utility methods and the ContentResolver
+     * @param signal  Cancels the sync, see {@link #syncWeather(Context, ForecastSource,
+     *                CancellationSignal)}
+     */
+    synchronized public static void syncWeather(Context context, CancellationSignal signal) {
+        syncWeather(context, CACHE_OR_NETWORK, signal);
+    }
+
+    /**
+     * Performs a sync like {@link #syncWeather(Context, CancellationSignal)}, but always asks the
+     * weather server, for when the user has asked for the latest forecast.
+     *
+     * @param context Used to access utility methods and the ContentResolver
+     * @param signal  Cancels the sync
+     */
+    synchronized public static void syncWeatherFromNetwork(Context context,
+                                                           CancellationSignal signal) {
+        syncWeather(context, NETWORK_INTO_CACHE, signal);
+    }
+
+    /**
+     * Performs a sync like {@link #syncWeatherFromNetwork(Context, CancellationSignal)}, but
+     * fetches every day of the forecast however the device is connected. It extends a forecast
+     * that was shortened to save data once the list is scrolled near its end.
+     *
+     * @param context Used to access utility methods and the ContentResolver
+     * @param signal  Cancels the sync
      */
-    synchronized public static void syncWeather(Context context) {
+    synchronized public static void syncWholeForecast(Context context,
+                                                      CancellationSignal signal) {
+        syncWeather(context, WHOLE_FORECAST_INTO_CACHE, signal);
+    }
+
+    /**
+     * Performs a current-conditions sync: fetches today's weather alone and replaces today's row
+     * with it, leaving the rest of the forecast as the last full sync stored it. The response is
+     * about a fourteenth of a full one, so this can run far more often than a full sync. See
+     * {@link #syncToday(Context, ForecastSource, CancellationSignal)}.
+     *
+     * @param context Used to access utility methods and the ContentResolver
+     * @param signal  Cancels the sync
+     */
+    synchronized public static void syncToday(Context context, CancellationSignal signal) {
+        syncToday(context, TODAY_NETWORK, signal);
+    }
+
+    /**
+     * Performs a full sync with the forecast JSON taken from the given source. Each stage of the
+     * sync is timed, and the trace is handed to {@link SyncDiagnostics} once the sync is over,
+     * however it ended.
+     * <p>
+     * The forecast is stored in two steps. Today's weather is stored first, and the
+     * notification and watch face are built from it; then the rest of the days are converted to
+     * rows and the whole forecast replaces the weather table in one transaction. If the table
+     * doesn't hold this location's forecast, there is only the second step. How long it took
+     * from the start of the sync until today's weather was stored is kept in the trace, see
+     * {@link SyncTrace#getTodayVisibleMicros()}. Only the response up to today's row is parsed
+     * before the first step, and the rest of it after, so today's weather doesn't wait for the
+     * later days to be read. A response that is malformed before today's row writes nothing; one
+     * that is malformed after it leaves the new row for today beside the days stored before. A
+     * day of it that can't be read is filled from the stored forecast or left out, and the rest
+     * of the days are stored as usual.
+     * <p>
+     * The sync can be cancelled while the forecast is being fetched, which aborts the request,
+     * or between fetching, parsing and writing. Once it has started writing, it finishes: the
+     * weather table, the published forecast and the sync_state row are only ever replaced
+     * together, never left halfway.
+     *
+     * @param context Used to access utility methods and the ContentResolver
+     * @param source  Where to get the forecast JSON from
+     * @param signal  Cancels the sync
+     * @return The trace of the sync
+     */
+    synchronized static SyncTrace syncWeather(Context context, ForecastSource source,
+                                              CancellationSignal signal) {
+        return sync(context, SyncTrace.TIER_FULL, source, signal);
+    }
+
+    /**
+     * Performs a current-conditions sync with the JSON taken from the given source, which should
+     * carry today's weather; any later days it carries are ignored. It is traced and can be
+     * cancelled like a full sync.
+     * <p>
+     * Only today's row is replaced. The sync_state row is left alone, since it describes the
+     * last full sync, which is what launch syncs and the conditional requests of full syncs go
+     * by. Without a stored forecast that reaches today for the current location, there is
+     * nothing for the row to sit in, so the sync stores nothing and leaves the weather to the
+     * next full sync.
+     *
+     * @param context Used to access utility methods and the ContentResolver
+     * @param source  Where to get today's weather JSON from
+     * @param signal  Cancels the sync
+     * @return The trace of the sync
+     */
+    synchronized static SyncTrace syncToday(Context context, ForecastSource source,
+                                            CancellationSignal signal) {
+        return sync(context, SyncTrace.TIER_TODAY, source, signal);
+    }
+
+    private static SyncTrace sync(Context context, int tier, ForecastSource source,
+                                  CancellationSignal signal) {
+        SyncTrace trace = new SyncTrace(System.currentTimeMillis(), tier);
+
+        /*
+         * The location is read before fetching, so that if the user picks another one while
+         * this sync is running, the new one isn't recorded as synced with the old one's weather.
+         */
+        String location = SunshinePreferences.getPreferredWeatherLocation(context);
 
         try {
-            /*
-             * The getUrl method will return the URL that we need to get the forecast JSON for the
-             * weather. It will decide whether to create a URL based off of the latitude and
-             * longitude or off of a simple location as a String.
-             */
-            URL weatherRequestUrl = NetworkUtils.getUrl(context);
-
-            /* Use the URL to retrieve the JSON */
-            String jsonWeatherResponse = NetworkUtils.getResponseFromHttpUrl(weatherRequestUrl);
-
-            /* Parse the JSON into a list of weather values */
-            ContentValues[] weatherValues = OpenWeatherJsonUtils
-                    .getWeatherContentValuesFromJson(context, jsonWeatherResponse);
-
-            /*
-             * In cases where our JSON contained an error code, getWeatherContentValuesFromJson
-             * would have returned null. We need to check for those cases here to prevent any
-             * NullPointerExceptions being thrown. We also have no reason to insert fresh data if
-             * there isn't any to insert.
-             */
-            if (weatherValues != null && weatherValues.length != 0) {
-                /* Get a handle on the ContentResolver to delete and insert data */
-                ContentResolver sunshineContentResolver = context.getContentResolver();
-
-                /* Delete old weather data because we don't need to keep multiple days' data */
-                sunshineContentResolver.delete(
-                        WeatherContract.WeatherEntry.CONTENT_URI,
-                        null,
-                        null);
-
-                /* Insert our new weather data into Sunshine's ContentProvider */
-                sunshineContentResolver.bulkInsert(
-                        WeatherContract.WeatherEntry.CONTENT_URI,
-                        weatherValues);
+            /* The job may have been stopped while this sync waited for the previous one */
+            signal.throwIfCanceled();
 
-                /*
-                 * Finally, after we insert data into the ContentProvider, determine whether or not
-                 * we should notify the user that the weather has been refreshed.
-                 */
-                boolean notificationsEnabled = SunshinePreferences.areNotificationsEnabled(context);
+            if (tier == SyncTrace.TIER_TODAY && !holdsForecastForToday(context, location)) {
+                Log.d(TAG, "No forecast for " + location + " to refresh today's weather in");
+            } else {
+                String jsonWeatherResponse = source.fetchForecastJson(context, trace, signal);
+                signal.throwIfCanceled();
 
                 /*
-                 * If the last notification was shown was more than 1 day ago, we want to send
-                 * another notification to the user that the weather has been updated. Remember,
-                 * it's important that you shouldn't spam your users with notifications.
+                 * Parse the JSON as far as today's weather. The rest of the days are only read
+                 * once today's are stored, see storeToday.
                  */
-                long timeSinceLastNotification = SunshinePreferences
-                        .getEllapsedTimeSinceLastNotification(context);
+                trace.begin(SyncTrace.STAGE_PARSE);
+                OpenWeatherJsonUtils.StagedForecast forecast =
+                        OpenWeatherJsonUtils.readForecast(jsonWeatherResponse);
+                ContentValues today = forecast.getToday();
+                trace.end();
 
-                boolean oneDayPassedSinceLastNotification = false;
+                /* The last chance to stop; nothing has been written yet */
+                signal.throwIfCanceled();
 
-                if (timeSinceLastNotification >= DateUtils.DAY_IN_MILLIS) {
-                    oneDayPassedSinceLastNotification = true;
-                }
+                if (tier == SyncTrace.TIER_TODAY) {
+                    /*
+                     * The response is a single day, so it is read to the end before anything is
+                     * stored. In cases where our JSON contained an error code, or today's
+                     * weather couldn't be read, there is nothing to store.
+                     */
+                    trace.resume(SyncTrace.STAGE_PARSE);
+                    boolean hasForecast = forecast.readRest();
+                    trace.end();
 
-                /*
-                 * We only want to show the notification if the user wants them shown and we
-                 * haven't shown a notification in the past day.
-                 */
-                if (notificationsEnabled && oneDayPassedSinceLastNotification) {
-                    NotificationUtils.notifyUserOfNewWeather(context);
-                }
-                NotificationUtils.sendWeatherToWatchFace(context);
-            /* If the code reaches this point, we have successfully performed our sync */
+                    if (hasForecast && today != null) {
+                        storeToday(context, today, trace);
+
+                        /* Now that the city's weather is stored, so are its coordinates */
+                        SunshinePreferences.setLocationDetails(context, forecast.getLatitude(),
+                                forecast.getLongitude());
+
+                        /*
+                         * Finally, build everything that depends on the new weather (the
+                         * notification and the watch face update) from the published snapshot.
+                         */
+                        ForecastFanOut.dispatch(context, trace);
+                    }
+                } else {
+                    /*
+                     * Today's weather doesn't wait for the rest of the forecast to be read, if
+                     * there is a forecast for this location for it to join. Otherwise, such as
+                     * just after the location was changed, the whole forecast goes in at once,
+                     * so that no reader sees a table with only today in it, or with the new
+                     * city's today beside the old city's later days.
+                     */
+                    boolean todayFirst = today != null
+                            && holdsForecastForToday(context, location);
+                    if (todayFirst) {
+                        storeToday(context, today, trace);
+                        ForecastFanOut.dispatchToday(context, trace);
+                    }
+
+                    trace.resume(SyncTrace.STAGE_PARSE);
+                    boolean hasForecast = forecast.readRest();
+                    if (hasForecast && !forecast.getMalformedDays().isEmpty()) {
+                        keepStoredDays(context, location, forecast, trace);
+                    }
+                    trace.end();
+
+                    /*
+                     * In cases where our JSON contained an error code, readRest would have
+                     * returned false. We also have no reason to insert fresh data if there isn't
+                     * any to insert. Without a day for today, the later days are still stored,
+                     * in one step.
+                     */
+                    if (hasForecast && forecast.hasDays()) {
+                        trace.resume(SyncTrace.STAGE_PARSE);
+                        ContentValues[] weatherValues = forecast.getAllDays();
+                        trace.end();
 
+                        storeForecast(context, location, weatherValues, jsonWeatherResponse,
+                                trace);
+                        if (today != null) {
+                            trace.todayVisible();
+                        }
+
+                        /* Now that the city's weather is stored, so are its coordinates */
+                        SunshinePreferences.setLocationDetails(context, forecast.getLatitude(),
+                                forecast.getLongitude());
+
+                        /* A response served from the cache never got as far as building a URL */
+                        LocationSwitchTimer.onForecastStored(location,
+                                trace.getStageMicros(SyncTrace.STAGE_BUILD_URL)
+                                        == SyncTrace.NOT_RUN);
+                        SunshinePreferences.addRecentLocation(context, location);
+
+                        /* Whatever today's row didn't already build is built from all of it */
+                        if (todayFirst) {
+                            ForecastFanOut.dispatchWindow(context, trace);
+                        } else {
+                            ForecastFanOut.dispatch(context, trace);
+                        }
+
+                        /* If the code reaches this point, we have successfully synced */
+                    }
+                }
             }
 
+        } catch (OperationCanceledException e) {
+            Log.d(TAG, "Sync cancelled");
+            trace.cancelled();
         } catch (Exception e) {
-            /* Server probably invalid */
-            e.printStackTrace();
+            /* Server probably invalid; the trace says which stage it failed in */
+            Log.e(TAG, "Sync failed (" + FetchException.getKindName(FetchException.classify(e))
+                    + ")", e);
+            trace.fail(e);
+        }
+
+        trace.finish();
+        SyncDiagnostics.record(context, trace);
+        return trace;
+    }
+
+    /**
+     * Reports the days of a response that couldn't be read, and fills them with the rows stored
+     * for the same dates if the weather table holds this location's forecast. A day that was
+     * malformed is then left as the last sync stored it, rather than failing the sync and costing
+     * another request; one with nothing stored for it is left out.
+     */
+    private static void keepStoredDays(Context context, String location,
+                                       OpenWeatherJsonUtils.StagedForecast forecast,
+                                       SyncTrace trace) {
+        List<MalformedDay> malformedDays = forecast.getMalformedDays();
+        trace.setMalformedDays(malformedDays.size());
+        for (MalformedDay day : malformedDays) {
+            Log.w(TAG, "Couldn't read the forecast for " + location + ", " + day);
+        }
+
+        int kept = holdsForecastForToday(context, location)
+                ? forecast.keepStoredDays(ForecastRepository.getSnapshot(context))
+                : 0;
+        Log.w(TAG, "Kept the stored weather for " + kept + " of " + malformedDays.size()
+                + " malformed days");
+    }
+
+    /**
+     * Replaces the weather table with a full forecast in a single transaction, publishes it and
+     * records the sync. Readers see the table as it was before, with today's row already
+     * refreshed, or with the whole new forecast; never with some of its days written.
+     */
+    private static void storeForecast(Context context, String location,
+                                      ContentValues[] weatherValues, String jsonWeatherResponse,
+                                      SyncTrace trace) {
+        /*
+         * Insert our new weather data into Sunshine's ContentProvider. The old weather goes in
+         * the same transaction, because we don't need to keep multiple days' data. Until the
+         * new weather is in, the table isn't said to hold any location's.
+         */
+        SunshinePreferences.setStoredLocation(context, null);
+        trace.resume(SyncTrace.STAGE_INSERT);
+        context.getContentResolver().bulkInsert(
+                WeatherContract.WeatherEntry.CONTENT_URI_REPLACE_ALL,
+                weatherValues);
+        trace.end();
+        SunshinePreferences.setStoredLocation(context, location);
+        trace.stored(weatherValues.length);
+
+        /*
+         * Publish what we just wrote so that in-process readers, such as the launch snapshot,
+         * don't need to query it back.
+         */
+        ForecastRepository.publish(weatherValues);
+
+        /*
+         * Record the sync in the sync_state table. Launch syncs are skipped for a while after
+         * this, see SyncFreshnessPolicy.
+         */
+        SyncState.record(context, location, System.currentTimeMillis(), weatherValues,
+                jsonWeatherResponse);
+    }
+
+    /**
+     * Stores today's row ahead of the rest of the forecast, so that the notification and the
+     * watch face can be built from it before the other days are written. The weather
+     * table replaces a row with the same date on insert, so nothing needs deleting first. The
+     * insert drops the published snapshot, so today's row is published over the snapshot from
+     * before it, and the forecast isn't read back from the provider. It is only called when the
+     * table holds this location's forecast, see {@link #holdsForecastForToday}.
+     */
+    private static void storeToday(Context context, ContentValues today, SyncTrace trace) {
+        /* Normally what the last sync published, so this reads nothing */
+        ForecastSnapshot stored = ForecastRepository.getSnapshot(context);
+
+        trace.begin(SyncTrace.STAGE_INSERT);
+        context.getContentResolver().bulkInsert(WeatherContract.WeatherEntry.CONTENT_URI,
+                new ContentValues[]{today});
+        trace.end();
+        ForecastRepository.publishToday(stored, today);
+        trace.stored(1);
+        trace.todayVisible();
+    }
+
+    /**
+     * Goes by which location the weather table was last filled for, see
+     * {@link SunshinePreferences#getStoredLocation}, rather than by the location's sync_state
+     * row alone. After switching back to a location synced before, its row is still there until
+     * the first sync of it succeeds, while the table holds the other location's forecast.
+     *
+     * @return Whether the weather table holds a full forecast for the location that reaches today
+     */
+    private static boolean holdsForecastForToday(Context context, String location) {
+        if (!location.equals(SunshinePreferences.getStoredLocation(context))) {
+            return false;
         }
+        SyncState state = SyncState.query(context, location);
+        long today = SunshineDateUtils.toEpochDay(SunshineDateUtils.getNormalizedUtcDateForToday());
+        return state != null && state.coversDay(today);
     }
 }
\ No newline at end of file
@@ -17,11 +17,15 @@ package com.example.android.sunshine.sync;
 
 import android.content.Context;
 import android.content.Intent;
-import android.database.Cursor;
-import android.net.Uri;
+import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.Looper;
 import android.support.annotation.NonNull;
+import android.util.Log;
 
-import com.example.android.sunshine.data.WeatherContract;
+import com.example.android.sunshine.data.SunshinePreferences;
+import com.example.android.sunshine.data.SyncState;
+import com.example.android.sunshine.utilities.SunshineDateUtils;
 import com.firebase.jobdispatcher.Constraint;
 import com.firebase.jobdispatcher.Driver;
 import com.firebase.jobdispatcher.FirebaseJobDispatcher;
@@ -30,28 +34,124 @@ import com.firebase.jobdispatcher.Job;
 import com.firebase.jobdispatcher.Lifetime;
 import com.firebase.jobdispatcher.Trigger;
 
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 public class SunshineSyncUtils {
 
+    private static final String TAG = SunshineSyncUtils.class.getSimpleName();
+
     /*
-     * Interval at which to sync with the weather. Use TimeUnit for convenience, rather than
+     * Intervals at which to sync with the weather, one for each tier. A full sync downloads the
+     * whole 14 day forecast, which changes slowly past today, so it runs every few hours. A today
+     * sync downloads only today's weather, which is what the notification, the watch face and
+     * the top of the list show, so it runs every hour. Use TimeUnit for convenience, rather than
      * writing out a bunch of multiplication ourselves and risk making a silly mistake.
      */
-    private static final int SYNC_INTERVAL_HOURS = 3;
-    private static final int SYNC_INTERVAL_SECONDS = (int) TimeUnit.HOURS.toSeconds(SYNC_INTERVAL_HOURS);
-    private static final int SYNC_FLEXTIME_SECONDS = SYNC_INTERVAL_SECONDS / 3;
+    private static final int FULL_SYNC_INTERVAL_HOURS = 6;
+    private static final int TODAY_SYNC_INTERVAL_HOURS = 1;
+
+    /*
+     * New forecasts are published on the hour. Nobody syncs in the first few minutes after that,
+     * and each install syncs at its own point in the rest of the interval; see SyncSchedule.
+     */
+    private static final long PUBLICATION_DELAY_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+    /*
+     * How late the dispatcher may run a sync after its time. Kept short, so that installs stay
+     * where their phases put them rather than being bunched together by a wide window.
+     */
+    private static final int SYNC_FLEXTIME_SECONDS = (int) TimeUnit.MINUTES.toSeconds(15);
 
     private static boolean sInitialized;
 
-    private static final String SUNSHINE_SYNC_TAG = "sunshine-sync";
+    /*
+     * Decides which requested syncs actually run. The periodic jobs keep the forecast at most
+     * one full sync interval old, and today's weather fresher than that, so a launch within that
+     * long of the last successful full sync has nothing to gain from syncing again. Lives as long
+     * as the process, so its counts are per session.
+     */
+    private static final SyncFreshnessPolicy sFreshnessPolicy =
+            new SyncFreshnessPolicy(TimeUnit.HOURS.toMillis(FULL_SYNC_INTERVAL_HOURS));
+
+    /* The jobs' tags, indexed by the SyncTrace.TIER constants */
+    private static final String[] SYNC_TAGS = {"sunshine-sync", "sunshine-today"};
+
+    /* Why an immediate sync was started, one of the SyncFreshnessPolicy.REASON constants */
+    static final String EXTRA_REASON = "reason";
+
+    /*
+     * How long after the last location change its sync starts. Changes that come closer
+     * together than this, such as retyping a location straight after saving it, are synced
+     * once, for the last of them.
+     */
+    private static final long LOCATION_CHANGE_DEBOUNCE_MILLIS = 750;
+
+    private static final Handler sMainHandler = new Handler(Looper.getMainLooper());
+
+    /* The application context for the pending location sync; only touched on the main thread */
+    private static Context sLocationSyncContext;
+
+    private static final Runnable LOCATION_SYNC = new Runnable() {
+        @Override
+        public void run() {
+            requestSync(sLocationSyncContext, SyncFreshnessPolicy.REASON_LOCATION_CHANGED);
+        }
+    };
+
+    private static long getIntervalMillis(int tier) {
+        return TimeUnit.HOURS.toMillis(tier == SyncTrace.TIER_TODAY
+                ? TODAY_SYNC_INTERVAL_HOURS
+                : FULL_SYNC_INTERVAL_HOURS);
+    }
+
+    /**
+     * @param tier One of the SyncTrace.TIER constants
+     * @return The tag of the job that runs that tier's periodic syncs
+     */
+    static String getTag(int tier) {
+        return SYNC_TAGS[tier];
+    }
+
+    /**
+     * @param tag The tag of a periodic sync job
+     * @return The tier of sync the job runs, one of the SyncTrace.TIER constants
+     */
+    static int getTier(String tag) {
+        return SYNC_TAGS[SyncTrace.TIER_TODAY].equals(tag)
+                ? SyncTrace.TIER_TODAY
+                : SyncTrace.TIER_FULL;
+    }
 
     /**
-     * Schedules a repeating sync of Sunshine's weather data using FirebaseJobDispatcher.
-     * @param context Context used to create the GooglePlayDriver that powers the
-     *                FirebaseJobDispatcher
+     * @param context Used to read the install id
+     * @param tier    One of the SyncTrace.TIER constants
+     * @return When this install's periodic syncs of that tier happen
      */
-    static void scheduleFirebaseJobDispatcherSync(@NonNull final Context context) {
+    static SyncSchedule getSchedule(@NonNull Context context, int tier) {
+        return new SyncSchedule(getIntervalMillis(tier), PUBLICATION_DELAY_MILLIS,
+                SunshinePreferences.getInstallId(context));
+    }
+
+    /**
+     * Schedules the next periodic sync of a tier using FirebaseJobDispatcher, at this install's
+     * first sync time for the tier that isn't before earliest. Each tier has its own job.
+     * <p>
+     * The job runs once; when it is done, {@link SunshineFirebaseJobService} schedules the next
+     * one. A recurring job would repeat every interval from whenever it was scheduled, so every
+     * install that updated or rebooted at the same moment would go on syncing together.
+     *
+     * @param context  Context used to create the GooglePlayDriver that powers the
+     *                 FirebaseJobDispatcher
+     * @param tier     One of the SyncTrace.TIER constants
+     * @param earliest The earliest time the sync may happen
+     */
+    static void scheduleFirebaseJobDispatcherSync(@NonNull final Context context, int tier,
+                                                  long earliest) {
+
+        long now = System.currentTimeMillis();
+        long next = getSchedule(context, tier).getNextSyncTime(Math.max(earliest, now));
+        int startSeconds = (int) TimeUnit.MILLISECONDS.toSeconds(next - now);
 
         Driver driver = new GooglePlayDriver(context);
         FirebaseJobDispatcher dispatcher = new FirebaseJobDispatcher(driver);
@@ -61,7 +161,7 @@ public class SunshineSyncUtils {
                 /* The Service that will be used to sync Sunshine's data */
                 .setService(SunshineFirebaseJobService.class)
                 /* Set the UNIQUE tag used to identify this Job */
-                .setTag(SUNSHINE_SYNC_TAG)
+                .setTag(getTag(tier))
                 /*
                  * Network constraints on which this Job should run. We choose to run on any
                  * network, but you can also choose to run only on un-metered networks or when the
@@ -74,23 +174,22 @@ public class SunshineSyncUtils {
                  * Job "forever" or to have it die the next time the device boots up.
                  */
                 .setLifetime(Lifetime.FOREVER)
+                /* Each run schedules the next, so that every run is at this install's time */
+                .setRecurring(false)
                 /*
-                 * We want Sunshine's weather data to stay up to date, so we tell this Job to recur.
-                 */
-                .setRecurring(true)
-                /*
-                 * We want the weather data to be synced every 3 to 4 hours. The first argument for
-                 * Trigger's static executionWindow method is the start of the time frame when the
-                 * sync should be performed. The second argument is the latest point in time at
-                 * which the data should be synced. Please note that this end time is not
-                 * guaranteed, but is more of a guideline for FirebaseJobDispatcher to go off of.
+                 * The first argument for Trigger's static executionWindow method is the start of
+                 * the time frame when the sync should be performed, in seconds from now. The
+                 * second argument is the latest point in time at which the data should be synced.
+                 * Please note that this end time is not guaranteed, but is more of a guideline for
+                 * FirebaseJobDispatcher to go off of.
                  */
                 .setTrigger(Trigger.executionWindow(
-                        SYNC_INTERVAL_SECONDS,
-                        SYNC_INTERVAL_SECONDS + SYNC_FLEXTIME_SECONDS))
+                        startSeconds,
+                        startSeconds + SYNC_FLEXTIME_SECONDS))
                 /*
                  * If a Job with the tag with provided already exists, this new job will replace
-                 * the old one.
+                 * the old one. Scheduling for the same install always gives the same time, so
+                 * rescheduling on every start of the app doesn't move it.
                  */
                 .setReplaceCurrent(true)
                 /* Once the Job is ready, call the builder's build method to return the Job */
@@ -100,11 +199,10 @@ public class SunshineSyncUtils {
         dispatcher.schedule(syncSunshineJob);
     }
     /**
-     * Creates periodic sync tasks and checks to see if an immediate sync is required. If an
-     * immediate sync is required, this method will take care of making sure that sync occurs.
+     * Creates periodic sync tasks. Whether an immediate sync is required is decided by
+     * {@link #requestSync}, which MainActivity calls on every launch.
      *
-     * @param context Context that will be passed to other methods and used to access the
-     *                ContentResolver
+     * @param context Context that will be passed to other methods
      */
     synchronized public static void initialize(@NonNull final Context context) {
 
@@ -117,76 +215,149 @@ public class SunshineSyncUtils {
         sInitialized = true;
 
         /*
-         * This method call triggers Sunshine to create its task to synchronize weather data
-         * periodically.
+         * These calls trigger Sunshine to create its tasks to synchronize weather data
+         * periodically, one for each tier.
          */
-        scheduleFirebaseJobDispatcherSync(context);
+        long now = System.currentTimeMillis();
+        scheduleFirebaseJobDispatcherSync(context, SyncTrace.TIER_FULL, now);
+        scheduleFirebaseJobDispatcherSync(context, SyncTrace.TIER_TODAY, now);
+    }
 
-        /*
-         * We need to check to see if our ContentProvider has data to display in our forecast
-         * list. However, performing a query on the main thread is a bad idea as this may
-         * cause our UI to lag. Therefore, we create a thread in which we will run the query
-         * to check the contents of our ContentProvider.
-         */
-        Thread checkForEmpty = new Thread(new Runnable() {
+    /**
+     * Schedules the periodic sync of a tier after the one that has just finished. The next one
+     * is at least half an interval ahead, so that one which finished a little early can't land
+     * on the same interval's time again.
+     *
+     * @param context Context used to schedule the job
+     * @param tier    The tier of the sync that finished, one of the SyncTrace.TIER constants
+     */
+    static void scheduleNextSync(@NonNull Context context, int tier) {
+        scheduleFirebaseJobDispatcherSync(context, tier,
+                System.currentTimeMillis() + getIntervalMillis(tier) / 2);
+    }
+
+    /**
+     * Asks for a sync, which is started unless {@link SyncFreshnessPolicy} finds it unnecessary.
+     * Launch syncs are skipped while the current location's weather is fresh; syncs for a user
+     * refresh or a location change always run.
+     * <p>
+     * Whether the weather is fresh is read from the location's row in the sync_state table. That
+     * is a single-row lookup by primary key, but it is still a database read, so the decision is
+     * made on a background thread and this method returns straight away.
+     *
+     * @param context The Context used to read preferences and start the sync
+     * @param reason  One of the SyncFreshnessPolicy.REASON constants
+     */
+    public static void requestSync(@NonNull Context context, final int reason) {
+        /* The decision can outlive an Activity that asked for it */
+        final Context appContext = context.getApplicationContext();
+
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
             @Override
             public void run() {
+                String location = SunshinePreferences.getPreferredWeatherLocation(appContext);
+                if (reason == SyncFreshnessPolicy.REASON_LOCATION_CHANGED) {
+                    /*
+                     * The weather table still holds the previous location's forecast. Even if
+                     * this location was synced recently, it isn't fresh again until this sync
+                     * has succeeded.
+                     */
+                    SyncState.forget(appContext, location);
+                }
 
-                /* URI for every row of weather data in our weather table*/
-                Uri forecastQueryUri = WeatherContract.WeatherEntry.CONTENT_URI;
-
-                /*
-                 * Since this query is going to be used only as a check to see if we have any
-                 * data (rather than to display data), we just need to PROJECT the ID of each
-                 * row. In our queries where we display data, we need to PROJECT more columns
-                 * to determine what weather details need to be displayed.
-                 */
-                String[] projectionColumns = {WeatherContract.WeatherEntry._ID};
-                String selectionStatement = WeatherContract.WeatherEntry
-                        .getSqlSelectForTodayOnwards();
-
-                /* Here, we perform the query to check to see if we have any weather data */
-                Cursor cursor = context.getContentResolver().query(
-                        forecastQueryUri,
-                        projectionColumns,
-                        selectionStatement,
-                        null,
-                        null);
                 /*
-                 * A Cursor object can be null for various different reasons. A few are
-                 * listed below.
-                 *
-                 *   1) Invalid URI
-                 *   2) A certain ContentProvider's query method returns null
-                 *   3) A RemoteException was thrown.
-                 *
-                 * Bottom line, it is generally a good idea to check if a Cursor returned
-                 * from a ContentResolver is null.
-                 *
-                 * If the Cursor was null OR if it was empty, we need to sync immediately to
-                 * be able to display data to the user.
+                 * Weather that doesn't reach today is no use however recently it was synced, so
+                 * it counts as never synced. That covers a database with no weather in it, such
+                 * as on the first launch.
                  */
-                if (null == cursor || cursor.getCount() == 0) {
-                    startImmediateSync(context);
+                long lastSuccessfulSync = SyncFreshnessPolicy.NEVER_SYNCED;
+                if (reason == SyncFreshnessPolicy.REASON_LAUNCH) {
+                    SyncState state = SyncState.query(appContext, location);
+                    long today = SunshineDateUtils.toEpochDay(
+                            SunshineDateUtils.normalizeDate(System.currentTimeMillis()));
+                    if (state != null && state.coversDay(today)) {
+                        lastSuccessfulSync = state.getLastSync();
+                    }
+                }
+
+                if (!sFreshnessPolicy.shouldSync(reason, lastSuccessfulSync,
+                        System.currentTimeMillis())) {
+                    Log.d(TAG, "Skipped a launch sync, the weather for " + location
+                            + " is fresh (" + sFreshnessPolicy.getAvoidedCount() + " of "
+                            + sFreshnessPolicy.getRequestedCount()
+                            + " syncs avoided this session)");
+                    return;
                 }
+                startImmediateSync(appContext, reason);
+            }
+        });
+    }
+
+    /**
+     * Asks for a sync of a newly chosen location, once the location has stopped changing for a
+     * moment. A change that comes before the previous one's sync has started replaces it, so a
+     * burst of changes costs one sync. Must be called on the main thread.
+     *
+     * @param context The Context used to read preferences and start the sync
+     */
+    public static void requestLocationChangeSync(@NonNull Context context) {
+        sLocationSyncContext = context.getApplicationContext();
+        sMainHandler.removeCallbacks(LOCATION_SYNC);
+        sMainHandler.postDelayed(LOCATION_SYNC, LOCATION_CHANGE_DEBOUNCE_MILLIS);
+    }
+
+    /**
+     * Fetches the forecasts of the last few locations the user had, other than the current one,
+     * into the response cache, so that switching back to one of them is answered without waiting
+     * for the server. It's only a guess, so it's only done on an unmetered connection.
+     *
+     * @param context The Context used to read preferences and check the connection
+     */
+    public static void prefetchRecentLocations(@NonNull Context context) {
+        final Context appContext = context.getApplicationContext();
 
-                /* Make sure to close the Cursor to avoid memory leaks! */
-                cursor.close();
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (ForecastWindow.getNetworkClass(appContext)
+                        != ForecastWindowPolicy.NETWORK_UNMETERED) {
+                    return;
+                }
+                List<String> locations = SunshinePreferences.getRecentLocations(appContext);
+                locations.remove(SunshinePreferences.getPreferredWeatherLocation(appContext));
+                int cached = SunshineSyncTask.prefetch(locations,
+                        SunshineSyncTask.PREFETCH_NETWORK);
+                Log.d(TAG, "Prefetched " + cached + " of " + locations.size()
+                        + " recent locations");
             }
         });
+    }
 
-        /* Finally, once the thread is prepared, fire it off to perform our checks. */
-        checkForEmpty.start();
+    /**
+     * @return How many requested syncs were skipped since the process started
+     */
+    public static int getAvoidedSyncCount() {
+        return sFreshnessPolicy.getAvoidedCount();
     }
 
     /**
      * Helper method to perform a sync immediately using an IntentService for asynchronous
-     * execution.
+     * execution. This bypasses the freshness policy and the response cache; prefer
+     * {@link #requestSync}.
      *
      * @param context The Context used to start the IntentService for the sync.
      */
     public static void startImmediateSync(@NonNull final Context context) {
+        startImmediateSync(context, SyncFreshnessPolicy.REASON_USER_REFRESH);
+    }
+
+    /**
+     * @param context The Context used to start the IntentService for the sync.
+     * @param reason  Why the sync is needed; one for a user refresh bypasses the response cache
+     */
+    private static void startImmediateSync(@NonNull Context context, int reason) {
         Intent intentToSyncImmediately = new Intent(context, SunshineSyncIntentService.class);
+        intentToSyncImmediately.putExtra(EXTRA_REASON, reason);
         context.startService(intentToSyncImmediately);
     }
 }
\ No newline at end of file
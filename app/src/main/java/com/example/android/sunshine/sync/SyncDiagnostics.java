@@ -0,0 +1,183 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.sync;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.text.DateFormat;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Where finished {@link SyncTrace}s go. Each one is added to the process's {@link SyncMetrics}
+ * for its tier, so that the small today syncs don't hide what the full ones cost, and to a
+ * {@link SyncTraceLog} of the last few syncs of either tier, which is kept in the app's private
+ * files so that it outlives the process that ran them.
+ * <p>
+ * Both can be read on the sync debug screen, or with
+ * "adb shell dumpsys activity service .sync.SunshineSyncIntentService" while a sync is running.
+ */
+public final class SyncDiagnostics {
+
+    private static final String TAG = SyncDiagnostics.class.getSimpleName();
+
+    private static final String FILE_NAME = "sync_traces.log";
+
+    /* The number of traces kept in the log */
+    private static final int TRACES_KEPT = 20;
+
+    /* One for each tier, indexed by the TIER constants */
+    private static final SyncMetrics[] sMetrics = new SyncMetrics[SyncTrace.TIER_COUNT];
+
+    static {
+        for (int tier = 0; tier < SyncTrace.TIER_COUNT; tier++) {
+            sMetrics[tier] = new SyncMetrics();
+        }
+    }
+
+    /* Read from the file the first time it's needed; guarded by the class */
+    private static SyncTraceLog sLog;
+
+    private SyncDiagnostics() {
+    }
+
+    private static File getFile(Context context) {
+        return new File(context.getFilesDir(), FILE_NAME);
+    }
+
+    private static synchronized SyncTraceLog getLog(Context context) {
+        if (sLog == null) {
+            sLog = readLog(getFile(context));
+        }
+        return sLog;
+    }
+
+    private static SyncTraceLog readLog(File file) {
+        if (!file.exists()) {
+            return new SyncTraceLog(TRACES_KEPT);
+        }
+        Reader reader = null;
+        try {
+            reader = new InputStreamReader(new FileInputStream(file), "UTF-8");
+            return SyncTraceLog.readFrom(reader, TRACES_KEPT);
+        } catch (IOException e) {
+            Log.w(TAG, "Couldn't read the sync trace log", e);
+            return new SyncTraceLog(TRACES_KEPT);
+        } finally {
+            closeQuietly(reader);
+        }
+    }
+
+    /**
+     * Adds a finished sync to the metrics and the trace log, and writes the log out. This reads
+     * and writes a file, so it shouldn't be called on the main thread.
+     *
+     * @param context Used to find the log's file
+     * @param trace   The finished sync's trace
+     */
+    public static void record(Context context, SyncTrace trace) {
+        sMetrics[trace.getTier()].record(trace);
+        Log.d(TAG, "Sync " + trace);
+
+        synchronized (SyncDiagnostics.class) {
+            SyncTraceLog log = getLog(context);
+            log.add(trace);
+
+            /* Written next to the log and renamed over it, so a crash can't leave half of it */
+            File file = getFile(context);
+            File temporary = new File(file.getPath() + ".tmp");
+            Writer writer = null;
+            try {
+                writer = new OutputStreamWriter(new FileOutputStream(temporary), "UTF-8");
+                log.writeTo(writer);
+                writer.close();
+                writer = null;
+                if (!temporary.renameTo(file)) {
+                    throw new IOException("Couldn't rename " + temporary + " to " + file);
+                }
+            } catch (IOException e) {
+                Log.w(TAG, "Couldn't write the sync trace log", e);
+                temporary.delete();
+            } finally {
+                closeQuietly(writer);
+            }
+        }
+    }
+
+    /**
+     * @param tier One of the SyncTrace.TIER constants
+     * @return The metrics of every sync of that tier this process has run
+     */
+    public static SyncMetrics getMetrics(int tier) {
+        return sMetrics[tier];
+    }
+
+    /**
+     * @param context Used to find the log's file
+     * @return The traces of the last few syncs, oldest first
+     */
+    public static List<SyncTrace> getRecentTraces(Context context) {
+        return getLog(context).getTraces();
+    }
+
+    /**
+     * Writes the metrics of each tier, payload sizes included, how long location switches took,
+     * and then the recent traces, newest first.
+     *
+     * @param context Used to find the log's file
+     * @param writer  Where to write them
+     */
+    public static void dump(Context context, PrintWriter writer) {
+        for (int tier = 0; tier < SyncTrace.TIER_COUNT; tier++) {
+            writer.println("Sync metrics since the process started, "
+                    + SyncTrace.getTierName(tier) + " syncs");
+            sMetrics[tier].dump(writer);
+            writer.println();
+        }
+
+        LocationSwitchTimer.dump(writer);
+        writer.println();
+
+        List<SyncTrace> traces = getRecentTraces(context);
+        writer.println("Last " + traces.size() + " syncs");
+        DateFormat format = DateFormat.getDateTimeInstance(DateFormat.SHORT, DateFormat.MEDIUM);
+        for (int i = traces.size() - 1; i >= 0; i--) {
+            SyncTrace trace = traces.get(i);
+            writer.println(format.format(new Date(trace.getStartedAt())) + "  " + trace);
+        }
+        writer.flush();
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+}
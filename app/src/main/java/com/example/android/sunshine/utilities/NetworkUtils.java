@@ -17,16 +17,28 @@ package com.example.android.sunshine.utilities;
 
 import android.content.Context;
 import android.net.Uri;
+import android.os.CancellationSignal;
+import android.os.OperationCanceledException;
 import android.util.Log;
 
 import com.example.android.sunshine.data.SunshinePreferences;
+import com.example.android.sunshine.sync.BatchForecastFetcher;
+import com.example.android.sunshine.sync.FetchException;
+import com.example.android.sunshine.sync.ForecastWindowPolicy;
+import com.example.android.sunshine.sync.RetryingFetcher;
+import com.example.android.sunshine.sync.SyncTrace;
 
+import org.json.JSONException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.util.Scanner;
+import java.util.List;
+import java.util.Locale;
 
 /**
  * These utilities will be used to communicate with the weather servers.
@@ -67,8 +79,28 @@ public final class NetworkUtils {
     private static final String format = "json";
     /* The units we want our API to return */
     private static final String units = "metric";
-    /* The number of days we want our API to return */
-    private static final int numDays = 14;
+    /*
+     * The most days we want our API to return. A sync over a metered connection may ask for
+     * fewer, see ForecastWindowPolicy.
+     */
+    private static final int numDays = ForecastWindowPolicy.MAX_DAYS;
+
+    /* A 14 day forecast is a few kilobytes, so this is usually read in one or two chunks */
+    private static final int RESPONSE_BUFFER_SIZE = 8192;
+
+    /*
+     * Without these a request to a server that has stopped answering would wait for as long as
+     * the operating system lets it. A timeout is retried like any other network failure.
+     */
+    private static final int CONNECT_TIMEOUT_MILLIS = 15000;
+    private static final int READ_TIMEOUT_MILLIS = 20000;
+
+    /*
+     * Coordinates are rounded to the center of their geohash cell before they are sent, which at
+     * this precision is about 5 km across. Locations a few metres apart then make the same
+     * request, and share one cached response; see getCacheKey.
+     */
+    private static final int GEO_CELL_PRECISION = 5;
 
     /* The query parameter allows us to provide a location string to the API */
     private static final String QUERY_PARAM = "q";
@@ -83,9 +115,18 @@ public final class NetworkUtils {
     /* The days parameter allows us to designate how many days of weather data we want */
     private static final String DAYS_PARAM = "cnt";
 
+    /*
+     * Fetches the forecasts for several locations at once. There is one for the process, so that
+     * once the server has shown that it has no group endpoint, it isn't asked again.
+     */
+    private static final BatchForecastFetcher BATCH_FETCHER = new BatchForecastFetcher(
+            FORECAST_BASE_URL,
+            FORMAT_PARAM + "=" + format + "&" + UNITS_PARAM + "=" + units
+                    + "&" + DAYS_PARAM + "=" + numDays);
+
     /**
      * Retrieves the proper URL to query for the weather data. The reason for both this method as
-     * well as {@link #buildUrlWithLocationQuery(String)} is two fold.
+     * well as {@link #buildUrlWithLocationQuery(String, int)} is two fold.
      * <p>
      * 1) You should be able to just use one method when you need to create the URL within the
      * app instead of calling both methods.
@@ -98,32 +139,77 @@ public final class NetworkUtils {
      * @return URL to query weather service
      */
     public static URL getUrl(Context context) {
+        return getUrl(context, numDays);
+    }
+
+    /**
+     * Retrieves the URL to query for the first few days of the forecast, like
+     * {@link #getUrl(Context)} does for all of them. Asking for one day gives today's weather
+     * alone, for the current-conditions sync.
+     *
+     * @param context used to access other Utility methods
+     * @param days    The number of days, from today, to ask for
+     * @return URL to query weather service
+     */
+    public static URL getUrl(Context context, int days) {
         if (SunshinePreferences.isLocationLatLonAvailable(context)) {
             double[] preferredCoordinates = SunshinePreferences.getLocationCoordinates(context);
             double latitude = preferredCoordinates[0];
             double longitude = preferredCoordinates[1];
-            return buildUrlWithLatitudeLongitude(latitude, longitude);
+            return buildUrlWithLatitudeLongitude(latitude, longitude, days);
         } else {
             String locationQuery = SunshinePreferences.getPreferredWeatherLocation(context);
-            return buildUrlWithLocationQuery(locationQuery);
+            return buildUrlWithLocationQuery(locationQuery, days);
         }
     }
 
+    /**
+     * Returns the key that the response to {@link #getUrl} is cached under. A location given by
+     * its coordinates is keyed by its geohash cell, so every location in the cell shares the
+     * entry; one given by name is keyed by the name, ignoring case and surrounding spaces.
+     *
+     * @param context used to access other Utility methods
+     * @return The key for the preferred location's forecast
+     */
+    public static String getCacheKey(Context context) {
+        if (SunshinePreferences.isLocationLatLonAvailable(context)) {
+            double[] preferredCoordinates = SunshinePreferences.getLocationCoordinates(context);
+            return "cell:" + GeoCell.of(preferredCoordinates[0], preferredCoordinates[1],
+                    GEO_CELL_PRECISION).getHash();
+        } else {
+            String locationQuery = SunshinePreferences.getPreferredWeatherLocation(context);
+            return getCacheKey(locationQuery);
+        }
+    }
+
+    /**
+     * @param locationQuery A location given by name
+     * @return The key that its forecast, as {@link #getForecastsForLocations} fetches it ahead
+     * of the user choosing it, is cached under. It is the one {@link #getCacheKey(Context)}
+     * gives once it is the preferred location.
+     */
+    public static String getCacheKey(String locationQuery) {
+        return "q:" + locationQuery.trim().toLowerCase(Locale.US);
+    }
+
     /**
      * Builds the URL used to talk to the weather server using latitude and longitude of a
-     * location.
+     * location. The coordinates sent are those of the center of the location's geohash cell.
      *
      * @param latitude  The latitude of the location
      * @param longitude The longitude of the location
+     * @param days      The number of days of weather to ask for
      * @return The Url to use to query the weather server.
      */
-    private static URL buildUrlWithLatitudeLongitude(Double latitude, Double longitude) {
+    private static URL buildUrlWithLatitudeLongitude(double latitude, double longitude,
+                                                     int days) {
+        GeoCell cell = GeoCell.of(latitude, longitude, GEO_CELL_PRECISION);
         Uri weatherQueryUri = Uri.parse(FORECAST_BASE_URL).buildUpon()
-                .appendQueryParameter(LAT_PARAM, String.valueOf(latitude))
-                .appendQueryParameter(LON_PARAM, String.valueOf(longitude))
+                .appendQueryParameter(LAT_PARAM, String.valueOf(cell.getCenterLatitude()))
+                .appendQueryParameter(LON_PARAM, String.valueOf(cell.getCenterLongitude()))
                 .appendQueryParameter(FORMAT_PARAM, format)
                 .appendQueryParameter(UNITS_PARAM, units)
-                .appendQueryParameter(DAYS_PARAM, Integer.toString(numDays))
+                .appendQueryParameter(DAYS_PARAM, Integer.toString(days))
                 .build();
 
         try {
@@ -141,14 +227,15 @@ public final class NetworkUtils {
      * on the query capabilities of the weather provider that we are using.
      *
      * @param locationQuery The location that will be queried for.
+     * @param days          The number of days of weather to ask for
      * @return The URL to use to query the weather server.
      */
-    private static URL buildUrlWithLocationQuery(String locationQuery) {
+    private static URL buildUrlWithLocationQuery(String locationQuery, int days) {
         Uri weatherQueryUri = Uri.parse(FORECAST_BASE_URL).buildUpon()
                 .appendQueryParameter(QUERY_PARAM, locationQuery)
                 .appendQueryParameter(FORMAT_PARAM, format)
                 .appendQueryParameter(UNITS_PARAM, units)
-                .appendQueryParameter(DAYS_PARAM, Integer.toString(numDays))
+                .appendQueryParameter(DAYS_PARAM, Integer.toString(days))
                 .build();
 
         try {
@@ -162,29 +249,115 @@ public final class NetworkUtils {
     }
 
     /**
-     * This method returns the entire result from the HTTP response.
+     * Fetches the forecasts for several locations, with one request per group of locations if the
+     * server has a group endpoint and one per location if it hasn't. Each location's forecast is
+     * handed to the sink as soon as it has been parsed, so the caller can store it with that
+     * location's data. Every request is made through the fetcher, so it is retried and counted
+     * against the weather server like a sync's, and is recorded in the trace and aborted by the
+     * signal, like {@link #getResponseFromHttpUrl}.
      *
-     * @param url The URL to fetch the HTTP response from.
+     * @param locations             The location queries to fetch the forecasts for
+     * @param normalizedUtcStartDay The normalized UTC date of the first day in the forecasts
+     * @param fetcher               Makes each request, retrying it if it fails
+     * @param trace                 The trace of the sync these requests are part of
+     * @param signal                Cancels the requests
+     * @param sink                  Takes each location's forecast
+     * @return The locations the server had no forecast for
+     * @throws IOException   Related to network and stream reading
+     * @throws JSONException If a response couldn't be parsed
+     * @throws OperationCanceledException If the signal was cancelled
+     */
+    public static List<String> getForecastsForLocations(List<String> locations,
+                                                        long normalizedUtcStartDay,
+                                                        final RetryingFetcher fetcher,
+                                                        final SyncTrace trace,
+                                                        final CancellationSignal signal,
+                                                        GroupForecastParser.Sink sink)
+            throws IOException, JSONException {
+        return BATCH_FETCHER.fetch(locations, normalizedUtcStartDay,
+                new BatchForecastFetcher.Transport() {
+                    @Override
+                    public String get(final String url) throws IOException {
+                        return fetcher.fetch(new RetryingFetcher.Attempt() {
+                            @Override
+                            public String fetch() throws IOException {
+                                return getResponseFromHttpUrl(new URL(url), trace, signal);
+                            }
+                        });
+                    }
+                }, sink);
+    }
+
+    /**
+     * This method returns the entire result from the HTTP response. The time it takes to connect,
+     * to get the first byte of the response and to download the rest are recorded in the sync's
+     * trace as separate stages, along with the size of the response.
+     * <p>
+     * Cancelling the signal disconnects the request from whichever thread cancels it, which
+     * aborts a connect or read that is blocked waiting on the network.
+     *
+     * @param url    The URL to fetch the HTTP response from.
+     * @param trace  The trace of the sync this request is part of
+     * @param signal Cancels the request
      * @return The contents of the HTTP response, null if no response
-     * @throws IOException Related to network and stream reading
+     * @throws IOException Related to network and stream reading; a response with an error
+     *                     status is thrown as a {@link FetchException}
+     * @throws OperationCanceledException If the signal was cancelled
      */
-    public static String getResponseFromHttpUrl(URL url) throws IOException {
-        HttpURLConnection urlConnection = (HttpURLConnection) url.openConnection();
+    public static String getResponseFromHttpUrl(URL url, SyncTrace trace,
+                                                CancellationSignal signal) throws IOException {
+        final HttpURLConnection urlConnection = (HttpURLConnection) url.openConnection();
+        urlConnection.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+        urlConnection.setReadTimeout(READ_TIMEOUT_MILLIS);
+        signal.setOnCancelListener(new CancellationSignal.OnCancelListener() {
+            @Override
+            public void onCancel() {
+                urlConnection.disconnect();
+            }
+        });
         try {
+            /* Cancelled before the listener was set; it has already been called */
+            signal.throwIfCanceled();
+
+            trace.begin(SyncTrace.STAGE_CONNECT);
+            urlConnection.connect();
+            trace.end();
+
+            /* getResponseCode doesn't return until the response's headers have arrived */
+            trace.begin(SyncTrace.STAGE_FIRST_BYTE);
+            int status = urlConnection.getResponseCode();
+            if (status >= HttpURLConnection.HTTP_BAD_REQUEST) {
+                throw FetchException.forStatus(status);
+            }
             InputStream in = urlConnection.getInputStream();
+            trace.end();
 
-            Scanner scanner = new Scanner(in);
-            scanner.useDelimiter("\\A");
+            trace.begin(SyncTrace.STAGE_DOWNLOAD);
+            ByteArrayOutputStream body = new ByteArrayOutputStream(RESPONSE_BUFFER_SIZE);
+            byte[] buffer = new byte[RESPONSE_BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                body.write(buffer, 0, read);
+                signal.throwIfCanceled();
+            }
+            in.close();
+            trace.end();
+            trace.setBytes(body.size());
 
-            boolean hasInput = scanner.hasNext();
-            String response = null;
-            if (hasInput) {
-                response = scanner.next();
+            /* A connection that closes early can look like the end of a shorter response */
+            long expected = urlConnection.getContentLength();
+            if (expected >= 0 && body.size() != expected) {
+                throw new EOFException("Expected " + expected + " bytes but got " + body.size());
             }
-            scanner.close();
-            return response;
+
+            return body.size() == 0 ? null : body.toString("UTF-8");
+        } catch (IOException e) {
+            /* A disconnect from the cancel listener surfaces here as some IOException */
+            signal.throwIfCanceled();
+            throw e;
         } finally {
+            signal.setOnCancelListener(null);
             urlConnection.disconnect();
         }
     }
-}
\ No newline at end of file
+}
@@ -5,7 +5,6 @@ import android.app.PendingIntent;
 import android.content.Context;
 import android.content.Intent;
 import android.content.res.Resources;
-import android.database.Cursor;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.net.Uri;
@@ -18,6 +17,7 @@ import com.example.android.sunshine.BuildConfig;
 import com.example.android.sunshine.DetailActivity;
 import com.example.android.sunshine.R;
 import com.example.android.sunshine.TodayWeatherSender;
+import com.example.android.sunshine.data.ForecastSnapshot;
 import com.example.android.sunshine.data.SunshinePreferences;
 import com.example.android.sunshine.data.WeatherContract;
 
@@ -25,25 +25,6 @@ import static android.content.ContentValues.TAG;
 
 public class NotificationUtils {
 
-    /*
-     * The columns of data that we are interested in displaying within our notification to let
-     * the user know there is new weather data available.
-     */
-    public static final String[] WEATHER_NOTIFICATION_PROJECTION = {
-            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
-            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
-            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP
-    };
-
-    /*
-     * We store the indices of the values in the array of Strings above to more quickly be able
-     * to access the data from our query. If the order of the Strings above changes, these
-     * indices must be adjusted to match the order of the Strings.
-     */
-    public static final int INDEX_WEATHER_ID = 0;
-    public static final int INDEX_MAX_TEMP = 1;
-    public static final int INDEX_MIN_TEMP = 2;
-
     /*
      * This notification ID can be used to access our notification after we've displayed it. This
      * can be handy when we need to cancel the notification, or perhaps update it. This number is
@@ -51,145 +32,118 @@ public class NotificationUtils {
      */
     private static final int WEATHER_NOTIFICATION_ID = 3004;
 
-    public static void sendWeatherToWatchFace(Context context) {
-        /* Build the URI for today's weather in order to show up to date data in notification */
-        Uri todaysWeatherUri = WeatherContract.WeatherEntry
-                .buildWeatherUriWithDate(SunshineDateUtils.normalizeDate(System.currentTimeMillis()));
+    /**
+     * Sends today's weather to the watch face, if it changed since the last time we sent it.
+     *
+     * @param context  Context used to reach the Wearable API
+     * @param forecast The forecast published by the last sync
+     * @param today    The index of today's row in forecast
+     */
+    public static void sendWeatherToWatchFace(Context context, ForecastSnapshot forecast, int today) {
+        /* Weather ID as returned by API, used to identify the icon to be used */
+        int weatherId = forecast.getWeatherId(today);
+        double high = forecast.getMaxTemp(today);
+        double low = forecast.getMinTemp(today);
 
         /*
-         * The MAIN_FORECAST_PROJECTION array passed in as the second parameter is defined in our WeatherContract
-         * class and is used to limit the columns returned in our cursor.
-         */
-        Cursor todayWeatherCursor = context.getContentResolver().query(
-                todaysWeatherUri,
-                WEATHER_NOTIFICATION_PROJECTION,
-                null,
-                null,
-                null);
-        if (todayWeatherCursor.moveToFirst()) {
-
-            /* Weather ID as returned by API, used to identify the icon to be used */
-            int weatherId = todayWeatherCursor.getInt(INDEX_WEATHER_ID);
-            double high = todayWeatherCursor.getDouble(INDEX_MAX_TEMP);
-            double low = todayWeatherCursor.getDouble(INDEX_MIN_TEMP);
-
-            /*
-            * Store today weather
-            * */
-            int[] todayWeather = SunshinePreferences.getTodayWeather(context);
-
-            if (todayWeather[0] != weatherId ||
-                    todayWeather[1] != (int) Math.floor(high) ||
-                    todayWeather[2] != (int) Math.floor(low) ||
-                    BuildConfig.DEBUG) {
-                SunshinePreferences.setTodayWeather(context, weatherId, (int) Math.floor(high), (int) Math.floor(low));
-                String message = "";
-                message = "" + weatherId;
-                message = message + " " + (int) Math.floor(high);
-                message = message + " " + (int) Math.floor(low);
-                if (BuildConfig.DEBUG) {
-                    Log.d(TAG, "notifyUserOfNewWeather: New today weather");
-                    //message = "951 44 00";
-                }
-                TodayWeatherSender sender = new TodayWeatherSender(context, message);
-                sender.connectAndSend();
+        * Store today weather
+        * */
+        int[] todayWeather = SunshinePreferences.getTodayWeather(context);
+
+        if (todayWeather[0] != weatherId ||
+                todayWeather[1] != (int) Math.floor(high) ||
+                todayWeather[2] != (int) Math.floor(low) ||
+                BuildConfig.DEBUG) {
+            SunshinePreferences.setTodayWeather(context, weatherId, (int) Math.floor(high), (int) Math.floor(low));
+            String message = WatchWeatherPayload.encode(weatherId, high, low);
+            if (BuildConfig.DEBUG) {
+                Log.d(TAG, "notifyUserOfNewWeather: New today weather");
+                //message = "951 44 00";
             }
+            TodayWeatherSender sender = new TodayWeatherSender(context, message);
+            sender.connectAndSend();
         }
     }
 
     /**
      * Constructs and displays a notification for the newly updated weather for today.
      *
-     * @param context Context used to query our ContentProvider and use various Utility methods
+     * @param context  Context used to use various Utility methods
+     * @param forecast The forecast published by the last sync
+     * @param today    The index of today's row in forecast
      */
-    public static void notifyUserOfNewWeather(Context context) {
+    public static void notifyUserOfNewWeather(Context context, ForecastSnapshot forecast, int today) {
 
-        /* Build the URI for today's weather in order to show up to date data in notification */
+        /* Build the URI for today's weather so the notification can open its details */
         Uri todaysWeatherUri = WeatherContract.WeatherEntry
-                .buildWeatherUriWithDate(SunshineDateUtils.normalizeDate(System.currentTimeMillis()));
+                .buildWeatherUriWithDate(forecast.getDate(today));
+
+        /* Weather ID as returned by API, used to identify the icon to be used */
+        int weatherId = forecast.getWeatherId(today);
+        double high = forecast.getMaxTemp(today);
+        double low = forecast.getMinTemp(today);
+
+        Resources resources = context.getResources();
+        int largeArtResourceId = SunshineWeatherUtils
+                .getLargeArtResourceIdForWeatherCondition(weatherId);
+
+        Bitmap largeIcon = BitmapFactory.decodeResource(
+                resources,
+                largeArtResourceId);
+
+        String notificationTitle = context.getString(R.string.app_name);
+
+        String notificationText = getNotificationText(context, weatherId, high, low);
+
+        /* "Today, June 8", from the same table the list and the details use */
+        String dateText = SunshineDateUtils.getFriendlyDateString(context,
+                forecast.getDate(today), true);
+
+        /* getSmallArtResourceIdForWeatherCondition returns the proper art to show given an ID */
+        int smallArtResourceId = SunshineWeatherUtils
+                .getSmallArtResourceIdForWeatherCondition(weatherId);
 
         /*
-         * The MAIN_FORECAST_PROJECTION array passed in as the second parameter is defined in our WeatherContract
-         * class and is used to limit the columns returned in our cursor.
+         * NotificationCompat Builder is a very convenient way to build backward-compatible
+         * notifications. In order to use it, we provide a context and specify a color for the
+         * notification, a couple of different icons, the title for the notification, and
+         * finally the text of the notification, which in our case in a summary of today's
+         * forecast.
          */
-        Cursor todayWeatherCursor = context.getContentResolver().query(
-                todaysWeatherUri,
-                WEATHER_NOTIFICATION_PROJECTION,
-                null,
-                null,
-                null);
+        NotificationCompat.Builder notificationBuilder = new NotificationCompat.Builder(context)
+                .setColor(ContextCompat.getColor(context,R.color.colorPrimary))
+                .setSmallIcon(smallArtResourceId)
+                .setLargeIcon(largeIcon)
+                .setContentTitle(notificationTitle)
+                .setContentText(notificationText)
+                .setSubText(dateText)
+                .setAutoCancel(true);
 
         /*
-         * If todayWeatherCursor is empty, moveToFirst will return false. If our cursor is not
-         * empty, we want to show the notification.
+         * This Intent will be triggered when the user clicks the notification. In our case,
+         * we want to open Sunshine to the DetailActivity to display the newly updated weather.
          */
-        if (todayWeatherCursor.moveToFirst()) {
-
-            /* Weather ID as returned by API, used to identify the icon to be used */
-            int weatherId = todayWeatherCursor.getInt(INDEX_WEATHER_ID);
-            double high = todayWeatherCursor.getDouble(INDEX_MAX_TEMP);
-            double low = todayWeatherCursor.getDouble(INDEX_MIN_TEMP);
-
-            Resources resources = context.getResources();
-            int largeArtResourceId = SunshineWeatherUtils
-                    .getLargeArtResourceIdForWeatherCondition(weatherId);
-
-            Bitmap largeIcon = BitmapFactory.decodeResource(
-                    resources,
-                    largeArtResourceId);
-
-            String notificationTitle = context.getString(R.string.app_name);
-
-            String notificationText = getNotificationText(context, weatherId, high, low);
-
-            /* getSmallArtResourceIdForWeatherCondition returns the proper art to show given an ID */
-            int smallArtResourceId = SunshineWeatherUtils
-                    .getSmallArtResourceIdForWeatherCondition(weatherId);
-
-            /*
-             * NotificationCompat Builder is a very convenient way to build backward-compatible
-             * notifications. In order to use it, we provide a context and specify a color for the
-             * notification, a couple of different icons, the title for the notification, and
-             * finally the text of the notification, which in our case in a summary of today's
-             * forecast.
-             */
-            NotificationCompat.Builder notificationBuilder = new NotificationCompat.Builder(context)
-                    .setColor(ContextCompat.getColor(context,R.color.colorPrimary))
-                    .setSmallIcon(smallArtResourceId)
-                    .setLargeIcon(largeIcon)
-                    .setContentTitle(notificationTitle)
-                    .setContentText(notificationText)
-                    .setAutoCancel(true);
-
-            /*
-             * This Intent will be triggered when the user clicks the notification. In our case,
-             * we want to open Sunshine to the DetailActivity to display the newly updated weather.
-             */
-            Intent detailIntentForToday = new Intent(context, DetailActivity.class);
-            detailIntentForToday.setData(todaysWeatherUri);
-
-            TaskStackBuilder taskStackBuilder = TaskStackBuilder.create(context);
-            taskStackBuilder.addNextIntentWithParentStack(detailIntentForToday);
-            PendingIntent resultPendingIntent = taskStackBuilder
-                    .getPendingIntent(0, PendingIntent.FLAG_UPDATE_CURRENT);
-
-            notificationBuilder.setContentIntent(resultPendingIntent);
-
-            NotificationManager notificationManager = (NotificationManager)
-                    context.getSystemService(Context.NOTIFICATION_SERVICE);
-
-            /* WEATHER_NOTIFICATION_ID allows you to update or cancel the notification later on */
-            notificationManager.notify(WEATHER_NOTIFICATION_ID, notificationBuilder.build());
-
-            /*
-             * Since we just showed a notification, save the current time. That way, we can check
-             * next time the weather is refreshed if we should show another notification.
-             */
-            SunshinePreferences.saveLastNotificationTime(context, System.currentTimeMillis());
-        }
+        Intent detailIntentForToday = new Intent(context, DetailActivity.class);
+        detailIntentForToday.setData(todaysWeatherUri);
 
-        /* Always close your cursor when you're done with it to avoid wasting resources. */
-        todayWeatherCursor.close();
+        TaskStackBuilder taskStackBuilder = TaskStackBuilder.create(context);
+        taskStackBuilder.addNextIntentWithParentStack(detailIntentForToday);
+        PendingIntent resultPendingIntent = taskStackBuilder
+                .getPendingIntent(0, PendingIntent.FLAG_UPDATE_CURRENT);
+
+        notificationBuilder.setContentIntent(resultPendingIntent);
+
+        NotificationManager notificationManager = (NotificationManager)
+                context.getSystemService(Context.NOTIFICATION_SERVICE);
+
+        /* WEATHER_NOTIFICATION_ID allows you to update or cancel the notification later on */
+        notificationManager.notify(WEATHER_NOTIFICATION_ID, notificationBuilder.build());
+
+        /*
+         * Since we just showed a notification, save the current time. That way, we can check
+         * next time the weather is refreshed if we should show another notification.
+         */
+        SunshinePreferences.saveLastNotificationTime(context, System.currentTimeMillis());
     }
 
     /**
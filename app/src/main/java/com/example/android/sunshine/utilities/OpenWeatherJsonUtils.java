@@ -16,96 +16,135 @@
 package com.example.android.sunshine.utilities;
 
 import android.content.ContentValues;
-import android.content.Context;
 
-import com.example.android.sunshine.data.SunshinePreferences;
+import com.example.android.sunshine.data.ForecastSnapshot;
 import com.example.android.sunshine.data.WeatherContract;
 
-import org.json.JSONArray;
 import org.json.JSONException;
-import org.json.JSONObject;
 
-import java.net.HttpURLConnection;
+import java.util.List;
 
 /**
  * Utility functions to handle OpenWeatherMap JSON data.
  */
 public final class OpenWeatherJsonUtils {
 
-    /* Location information */
-    private static final String OWM_CITY = "city";
-    private static final String OWM_COORD = "coord";
+    /**
+     * A forecast response that is read in two steps: up to today's row first, so that a sync
+     * can store and announce it straight away, and the rest of the days after that, see
+     * {@link #readRest()}. Only the first step has been taken when the forecast is handed out,
+     * so today's row is ready before the later days have even been read.
+     * <p>
+     * Days that couldn't be read are left out, see {@link #getMalformedDays()}, and can be
+     * filled from the stored forecast with {@link #keepStoredDays} once the rest is read.
+     * <p>
+     * Reading the response has no side effects. The sync stores the city's coordinates, see
+     * {@link #getLatitude()}, once it has stored the city's weather.
+     */
+    public static final class StagedForecast {
 
-    /* Location coordinate */
-    private static final String OWM_LATITUDE = "lat";
-    private static final String OWM_LONGITUDE = "lon";
+        private final ForecastJsonBinder mBinder;
+        private final ContentValues mToday;
 
-    /* Weather information. Each day's forecast info is an element of the "list" array */
-    private static final String OWM_LIST = "list";
+        /* The whole forecast, once the rest of the response has been read */
+        private OpenWeatherJsonParser.ParsedForecast mForecast;
 
-    private static final String OWM_PRESSURE = "pressure";
-    private static final String OWM_HUMIDITY = "humidity";
-    private static final String OWM_WINDSPEED = "speed";
-    private static final String OWM_WIND_DIRECTION = "deg";
+        private StagedForecast(ForecastJsonBinder binder) {
+            mBinder = binder;
 
-    /* All temperatures are children of the "temp" object */
-    private static final String OWM_TEMPERATURE = "temp";
+            /* The first day is today's, unless today's couldn't be read */
+            ForecastSnapshot firstDay = binder.getFirstDay();
+            mToday = firstDay == null ? null : toContentValues(firstDay, 0, 1)[0];
+        }
 
-    /* Max temperature for the day */
-    private static final String OWM_MAX = "max";
-    private static final String OWM_MIN = "min";
+        /**
+         * @return Today's row, ready to be inserted into the weather table, or null if the
+         * response has no day for today: it has no days at all, today's couldn't be read, or
+         * it carries an error code
+         */
+        public ContentValues getToday() {
+            return mToday;
+        }
 
-    private static final String OWM_WEATHER = "weather";
-    private static final String OWM_WEATHER_ID = "id";
+        /**
+         * Reads the rest of the response, after today's row. The methods below describe the
+         * whole forecast, so are only called once this has returned true.
+         *
+         * @return false if the response carried an error code, and so has no forecast
+         * @throws JSONException If the rest of the response cannot be properly parsed
+         */
+        public boolean readRest() throws JSONException {
+            mForecast = mBinder.finish();
+            return mForecast != null;
+        }
 
-    private static final String OWM_MESSAGE_CODE = "cod";
+        public double getLatitude() {
+            return mForecast.latitude;
+        }
 
-    /**
-     * This method parses JSON from a web response and returns an array of Strings
-     * describing the weather over various days from the forecast.
-     * <p/>
-     * Later on, we'll be parsing the JSON into structured data within the
-     * getFullWeatherDataFromJson function, leveraging the data we have stored in the JSON. For
-     * now, we just convert the JSON into human-readable strings.
-     *
-     * @param forecastJsonStr JSON response from server
-     *
-     * @return Array of Strings describing weather data
-     *
-     * @throws JSONException If JSON data cannot be properly parsed
-     */
-    public static ContentValues[] getWeatherContentValuesFromJson(Context context, String forecastJsonStr)
-            throws JSONException {
-
-        JSONObject forecastJson = new JSONObject(forecastJsonStr);
-
-        /* Is there an error? */
-        if (forecastJson.has(OWM_MESSAGE_CODE)) {
-            int errorCode = forecastJson.getInt(OWM_MESSAGE_CODE);
-
-            switch (errorCode) {
-                case HttpURLConnection.HTTP_OK:
-                    break;
-                case HttpURLConnection.HTTP_NOT_FOUND:
-                    /* Location invalid */
-                    return null;
-                default:
-                    /* Server probably down */
-                    return null;
-            }
+        public double getLongitude() {
+            return mForecast.longitude;
         }
 
-        JSONArray jsonWeatherArray = forecastJson.getJSONArray(OWM_LIST);
+        /**
+         * @return Whether the forecast has any days in it
+         */
+        public boolean hasDays() {
+            return mForecast.days.size() > 0;
+        }
+
+        /**
+         * @return The days of the response that couldn't be read, and aren't in the forecast
+         */
+        public List<MalformedDay> getMalformedDays() {
+            return mForecast.malformedDays;
+        }
 
-        JSONObject cityJson = forecastJson.getJSONObject(OWM_CITY);
+        /**
+         * Fills the days that couldn't be read with the rows stored for the same dates, see
+         * {@link OpenWeatherJsonParser.ParsedForecast#withStoredDays}.
+         *
+         * @param stored The forecast stored for the same city
+         * @return The number of days that were filled
+         */
+        public int keepStoredDays(ForecastSnapshot stored) {
+            int malformedDays = mForecast.malformedDays.size();
+            mForecast = mForecast.withStoredDays(stored);
+            return malformedDays - mForecast.malformedDays.size();
+        }
 
-        JSONObject cityCoord = cityJson.getJSONObject(OWM_COORD);
-        double cityLatitude = cityCoord.getDouble(OWM_LATITUDE);
-        double cityLongitude = cityCoord.getDouble(OWM_LONGITUDE);
+        /**
+         * @return One ContentValues per day of the forecast, today's first if there is one.
+         * Today's is the same one {@link #getToday()} returned, if it returned one; otherwise
+         * it may have been filled from the stored forecast.
+         */
+        public ContentValues[] getAllDays() {
+            if (mToday == null) {
+                return toContentValues(mForecast.days, 0, mForecast.days.size());
+            }
+            ContentValues[] laterValues = toContentValues(mForecast.days, 1, mForecast.days.size());
 
-        SunshinePreferences.setLocationDetails(context, cityLatitude, cityLongitude);
+            ContentValues[] weatherContentValues = new ContentValues[1 + laterValues.length];
+            weatherContentValues[0] = mToday;
+            System.arraycopy(laterValues, 0, weatherContentValues, 1, laterValues.length);
+            return weatherContentValues;
+        }
+    }
 
-        ContentValues[] weatherContentValues = new ContentValues[jsonWeatherArray.length()];
+    /**
+     * Starts reading a web response, up to and including today's row; see
+     * {@link StagedForecast} for how the rest is read. The response is bound by
+     * {@link ForecastJsonBinder} in a single pass, which costs less than building the
+     * JSONObject tree that {@link OpenWeatherJsonParser} reads from, and which can stop after
+     * today's row and carry on later.
+     *
+     * @param forecastJsonStr JSON response from server
+     *
+     * @return The forecast, of which only today's row has been read
+     *
+     * @throws JSONException If the JSON up to today's row cannot be properly parsed
+     */
+    public static StagedForecast readForecast(String forecastJsonStr) throws JSONException {
 
         /*
          * OWM returns daily forecasts based upon the local time of the city that is being asked
@@ -113,72 +152,38 @@ public final class OpenWeatherJsonUtils {
          * Since this data is also sent in-order and the first day is always the current day, we're
          * going to take advantage of that to get a nice normalized UTC date for all of our weather.
          */
-//        long now = System.currentTimeMillis();
-//        long normalizedUtcStartDay = SunshineDateUtils.normalizeDate(now);
-
         long normalizedUtcStartDay = SunshineDateUtils.getNormalizedUtcDateForToday();
 
-        for (int i = 0; i < jsonWeatherArray.length(); i++) {
-
-            long dateTimeMillis;
-            double pressure;
-            int humidity;
-            double windSpeed;
-            double windDirection;
-
-            double high;
-            double low;
-
-            int weatherId;
-
-            /* Get the JSON object representing the day */
-            JSONObject dayForecast = jsonWeatherArray.getJSONObject(i);
-
-            /*
-             * We ignore all the datetime values embedded in the JSON and assume that
-             * the values are returned in-order by day (which is not guaranteed to be correct).
-             */
-            dateTimeMillis = normalizedUtcStartDay + SunshineDateUtils.DAY_IN_MILLIS * i;
-
-            pressure = dayForecast.getDouble(OWM_PRESSURE);
-            humidity = dayForecast.getInt(OWM_HUMIDITY);
-            windSpeed = dayForecast.getDouble(OWM_WINDSPEED);
-            windDirection = dayForecast.getDouble(OWM_WIND_DIRECTION);
-
-            /*
-             * Description is in a child array called "weather", which is 1 element long.
-             * That element also contains a weather code.
-             */
-            JSONObject weatherObject =
-                    dayForecast.getJSONArray(OWM_WEATHER).getJSONObject(0);
-
-            weatherId = weatherObject.getInt(OWM_WEATHER_ID);
-
-            /*
-             * Temperatures are sent by Open Weather Map in a child object called "temp".
-             *
-             * Editor's Note: Try not to name variables "temp" when working with temperature.
-             * It confuses everybody. Temp could easily mean any number of things, including
-             * temperature, temporary variable, temporary folder, temporary employee, or many
-             * others, and is just a bad variable name.
-             */
-            JSONObject temperatureObject = dayForecast.getJSONObject(OWM_TEMPERATURE);
-            high = temperatureObject.getDouble(OWM_MAX);
-            low = temperatureObject.getDouble(OWM_MIN);
+        return new StagedForecast(ForecastJsonBinder.begin(forecastJsonStr, normalizedUtcStartDay));
+    }
+
+    /**
+     * Converts parsed forecast days into the ContentValues that WeatherProvider's bulkInsert
+     * expects.
+     *
+     * @param days The parsed days
+     * @param from The index of the first day to convert
+     * @param to   The index after the last day to convert
+     * @return One ContentValues per day converted
+     */
+    static ContentValues[] toContentValues(ForecastSnapshot days, int from, int to) {
+        ContentValues[] weatherContentValues = new ContentValues[to - from];
 
+        for (int i = from; i < to; i++) {
             ContentValues weatherValues = new ContentValues();
-            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DATE, dateTimeMillis);
-            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_HUMIDITY, humidity);
-            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_PRESSURE, pressure);
-            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED, windSpeed);
-            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DEGREES, windDirection);
-            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, high);
-            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP, low);
-            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID, weatherId);
-
-            weatherContentValues[i] = weatherValues;
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DATE,
+                    SunshineDateUtils.toEpochDay(days.getDate(i)));
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_HUMIDITY, days.getHumidity(i));
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_PRESSURE, days.getPressure(i));
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED, days.getWindSpeed(i));
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DEGREES, days.getDegrees(i));
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, days.getMaxTemp(i));
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP, days.getMinTemp(i));
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID, days.getWeatherId(i));
+
+            weatherContentValues[i - from] = weatherValues;
         }
 
         return weatherContentValues;
     }
-}
\ No newline at end of file
+}
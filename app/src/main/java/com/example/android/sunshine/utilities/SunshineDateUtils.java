@@ -20,9 +20,8 @@ import android.text.format.DateUtils;
 
 import com.example.android.sunshine.R;
 
-import java.text.SimpleDateFormat;
+import java.util.Locale;
 import java.util.TimeZone;
-import java.util.concurrent.TimeUnit;
 
 /**
  * Class for handling date conversions that are useful for Sunshine.
@@ -30,7 +29,48 @@ import java.util.concurrent.TimeUnit;
 public final class SunshineDateUtils {
 
     /* Milliseconds in a day */
-    public static final long DAY_IN_MILLIS = TimeUnit.DAYS.toMillis(1);
+    public static final long DAY_IN_MILLIS = NormalizedDates.DAY_IN_MILLIS;
+
+    /*
+     * Today's date, offsets and weekday formatter for the device's time zone and locale. It
+     * refreshes itself when the day rolls over; TimeZoneChangedReceiver throws it away when the
+     * time zone changes, and getDayContext replaces it when the locale changes.
+     */
+    private static DayContext sDayContext;
+
+    /* How many days, starting with today, the friendly date table covers */
+    private static final int FRIENDLY_DATE_TABLE_DAYS = 16;
+
+    /*
+     * The friendly date strings of the forecast window, built for sDayContext's "today". The list,
+     * the details, the text they share and anything else that shows a forecast date look their
+     * strings up here, so each one is only formatted once a day.
+     */
+    private static FriendlyDateTable sFriendlyDateTable;
+
+    /**
+     * @return The DayContext for the device's current time zone and locale
+     */
+    static synchronized DayContext getDayContext() {
+        /*
+         * Locale.getDefault() just returns a field, so it's cheap to check on every call.
+         * TimeZone.getDefault() clones the time zone, which is what we're trying to avoid.
+         */
+        Locale locale = Locale.getDefault();
+        if (sDayContext == null || !sDayContext.matches(locale)) {
+            sDayContext = new DayContext(DayContext.SYSTEM_CLOCK, TimeZone.getDefault(), locale);
+        }
+        return sDayContext;
+    }
+
+    /**
+     * Forgets everything cached about today. Called when the device's time zone changes, after
+     * the system has already updated TimeZone.getDefault().
+     */
+    public static synchronized void onTimeZoneChanged() {
+        sDayContext = null;
+        sFriendlyDateTable = null;
+    }
 
     /**
      * This method returns the number of milliseconds (UTC time) for today's date at midnight in
@@ -56,57 +96,13 @@ public final class SunshineDateUtils {
      * time zone
      */
     public static long getNormalizedUtcDateForToday() {
-
         /*
-         * This number represents the number of milliseconds that have elapsed since January
-         * 1st, 1970 at midnight in the GMT time zone.
+         * The arithmetic lives in NormalizedDates so that it can be run without a device. The
+         * DayContext supplies the current UTC time and the device's current time zone, and only
+         * redoes the arithmetic when the day (or the time zone's offset, for daylight savings
+         * time) changes.
          */
-        long utcNowMillis = System.currentTimeMillis();
-
-        /*
-         * This TimeZone represents the device's current time zone. It provides us with a means
-         * of acquiring the offset for local time from a UTC time stamp.
-         */
-        TimeZone currentTimeZone = TimeZone.getDefault();
-
-        /*
-         * The getOffset method returns the number of milliseconds to add to UTC time to get the
-         * elapsed time since the epoch for our current time zone. We pass the current UTC time
-         * into this method so it can determine changes to account for daylight savings time.
-         */
-        long gmtOffsetMillis = currentTimeZone.getOffset(utcNowMillis);
-
-        /*
-         * UTC time is measured in milliseconds from January 1, 1970 at midnight from the GMT
-         * time zone. Depending on your time zone, the time since January 1, 1970 at midnight (GMT)
-         * will be greater or smaller. This variable represents the number of milliseconds since
-         * January 1, 1970 (GMT) time.
-         */
-        long timeSinceEpochLocalTimeMillis = utcNowMillis + gmtOffsetMillis;
-
-        /* This method simply converts milliseconds to days, disregarding any fractional days */
-        long daysSinceEpochLocal = TimeUnit.MILLISECONDS.toDays(timeSinceEpochLocalTimeMillis);
-
-        /*
-         * Finally, we convert back to milliseconds. This time stamp represents today's date at
-         * midnight in GMT time. We will need to account for local time zone offsets when
-         * extracting this information from the database.
-         */
-        long normalizedUtcMidnightMillis = TimeUnit.DAYS.toMillis(daysSinceEpochLocal);
-
-        return normalizedUtcMidnightMillis;
-    }
-
-    /**
-     * This method returns the number of days since the epoch (January 01, 1970, 12:00 Midnight UTC)
-     * in UTC time from the current date.
-     *
-     * @param utcDate A date in milliseconds in UTC time.
-     *
-     * @return The number of days from the epoch to the date argument.
-     */
-    private static long elapsedDaysSinceEpoch(long utcDate) {
-        return TimeUnit.MILLISECONDS.toDays(utcDate);
+        return getDayContext().getNormalizedUtcDateForToday();
     }
 
     /**
@@ -136,9 +132,7 @@ public final class SunshineDateUtils {
      * @return The UTC date at 12 midnight of the date
      */
     public static long normalizeDate(long date) {
-        long daysSinceEpoch = elapsedDaysSinceEpoch(date);
-        long millisFromEpochToTodayAtMidnightUtc = daysSinceEpoch * DAY_IN_MILLIS;
-        return millisFromEpochToTodayAtMidnightUtc;
+        return NormalizedDates.normalize(date);
     }
 
     /**
@@ -151,32 +145,32 @@ public final class SunshineDateUtils {
      * @return true if the date represents the beginning of a day in Unix time, false otherwise
      */
     public static boolean isDateNormalized(long millisSinceEpoch) {
-        boolean isDateNormalized = false;
-        if (millisSinceEpoch % DAY_IN_MILLIS == 0) {
-            isDateNormalized = true;
-        }
+        return NormalizedDates.isNormalized(millisSinceEpoch);
+    }
 
-        return isDateNormalized;
+    /**
+     * The weather table stores each date as the number of its day since the epoch rather than as
+     * milliseconds, which takes half the space and can't be "not normalized". Use this to convert
+     * a normalized date before storing it or querying for it.
+     *
+     * @param normalizedUtcMidnight The date in milliseconds (UTC midnight)
+     *
+     * @return The number of days from the epoch to that date
+     */
+    public static int toEpochDay(long normalizedUtcMidnight) {
+        return NormalizedDates.toEpochDay(normalizedUtcMidnight);
     }
 
     /**
-     * This method will return the local time midnight for the provided normalized UTC date.
+     * Converts a date read from the weather table back to the normalized milliseconds the rest of
+     * Sunshine works with.
      *
-     * @param normalizedUtcDate UTC time at midnight for a given date. This number comes from the
-     *                          database
+     * @param epochDay The number of days since the epoch
      *
-     * @return The local date corresponding to the given normalized UTC date
+     * @return The date in milliseconds (UTC midnight)
      */
-    private static long getLocalMidnightFromNormalizedUtcDate(long normalizedUtcDate) {
-        /* The timeZone object will provide us the current user's time zone offset */
-        TimeZone timeZone = TimeZone.getDefault();
-        /*
-         * This offset, in milliseconds, when added to a UTC date time, will produce the local
-         * time.
-         */
-        long gmtOffset = timeZone.getOffset(normalizedUtcDate);
-        long localMidnightMillis = normalizedUtcDate - gmtOffset;
-        return localMidnightMillis;
+    public static long fromEpochDay(long epochDay) {
+        return NormalizedDates.fromEpochDay(epochDay);
     }
 
     /**
@@ -198,64 +192,53 @@ public final class SunshineDateUtils {
      * @return A user-friendly representation of the date such as "Today, June 8", "Tomorrow",
      * or "Friday"
      */
-    public static String getFriendlyDateString(Context context, long normalizedUtcMidnight, boolean showFullDate) {
+    public static synchronized String getFriendlyDateString(Context context,
+                                                            long normalizedUtcMidnight,
+                                                            boolean showFullDate) {
+        DayContext day = getDayContext();
+        if (sFriendlyDateTable == null || !sFriendlyDateTable.isCurrent(day)) {
+            /* The table outlives whoever asked first, so it mustn't hold on to an Activity */
+            sFriendlyDateTable = new FriendlyDateTable(
+                    new AndroidLabels(context.getApplicationContext()), day,
+                    FRIENDLY_DATE_TABLE_DAYS);
+        }
+        return sFriendlyDateTable.get(normalizedUtcMidnight, showFullDate);
+    }
 
-        /*
-         * NOTE: localDate should be localDateMidnightMillis and should be straight from the
-         * database
-         *
-         * Since we normalized the date when we inserted it into the database, we need to take
-         * that normalized date and produce a date (in UTC time) that represents the local time
-         * zone at midnight.
-         */
-        long localDate = getLocalMidnightFromNormalizedUtcDate(normalizedUtcMidnight);
+    /**
+     * Supplies FriendlyDates with Sunshine's localized "Today" and "Tomorrow" and with
+     * DateUtils-formatted dates for the current locale.
+     */
+    private static final class AndroidLabels implements FriendlyDates.Labels {
+        private final Context mContext;
 
-        /*
-         * In order to determine which day of the week we are creating a date string for, we need
-         * to compare the number of days that have passed since the epoch (January 1, 1970 at
-         * 00:00 GMT)
-         */
-        long daysFromEpochToProvidedDate = elapsedDaysSinceEpoch(localDate);
+        AndroidLabels(Context context) {
+            mContext = context;
+        }
 
-        /*
-         * As a basis for comparison, we use the number of days that have passed from the epoch
-         * until today.
-         */
-        long daysFromEpochToToday = elapsedDaysSinceEpoch(System.currentTimeMillis());
+        @Override
+        public String today() {
+            return mContext.getString(R.string.today);
+        }
 
-        if (daysFromEpochToProvidedDate == daysFromEpochToToday || showFullDate) {
-            /*
-             * If the date we're building the String for is today's date, the format
-             * is "Today, June 24"
-             */
-            String dayName = getDayName(context, localDate);
-            String readableDate = getReadableDateString(context, localDate);
-            if (daysFromEpochToProvidedDate - daysFromEpochToToday < 2) {
-                /*
-                 * Since there is no localized format that returns "Today" or "Tomorrow" in the API
-                 * levels we have to support, we take the name of the day (from SimpleDateFormat)
-                 * and use it to replace the date from DateUtils. This isn't guaranteed to work,
-                 * but our testing so far has been conclusively positive.
-                 *
-                 * For information on a simpler API to use (on API > 18), please check out the
-                 * documentation on DateFormat#getBestDateTimePattern(Locale, String)
-                 * https://developer.android.com/reference/android/text/format/DateFormat.html#getBestDateTimePattern
-                 */
-                String localizedDayName = new SimpleDateFormat("EEEE").format(localDate);
-                return readableDate.replace(localizedDayName, dayName);
-            } else {
-                return readableDate;
-            }
-        } else if (daysFromEpochToProvidedDate < daysFromEpochToToday + 7) {
-            /* If the input date is less than a week in the future, just return the day name. */
-            return getDayName(context, localDate);
-        } else {
+        @Override
+        public String tomorrow() {
+            return mContext.getString(R.string.tomorrow);
+        }
+
+        @Override
+        public String readableDate(long localDateMillis) {
+            return getReadableDateString(mContext, localDateMillis);
+        }
+
+        @Override
+        public String abbreviatedDate(long localDateMillis) {
             int flags = DateUtils.FORMAT_SHOW_DATE
                     | DateUtils.FORMAT_NO_YEAR
                     | DateUtils.FORMAT_ABBREV_ALL
                     | DateUtils.FORMAT_SHOW_WEEKDAY;
 
-            return DateUtils.formatDateTime(context, localDate, flags);
+            return DateUtils.formatDateTime(mContext, localDateMillis, flags);
         }
     }
 
@@ -275,35 +258,4 @@ public final class SunshineDateUtils {
 
         return DateUtils.formatDateTime(context, timeInMillis, flags);
     }
-
-    /**
-     * Given a day, returns just the name to use for that day.
-     *   E.g "today", "tomorrow", "Wednesday".
-     *
-     * @param context      Context to use for resource localization
-     * @param dateInMillis The date in milliseconds (UTC time)
-     *
-     * @return the string day of the week
-     */
-    private static String getDayName(Context context, long dateInMillis) {
-        /*
-         * If the date is today, return the localized version of "Today" instead of the actual
-         * day name.
-         */
-        long daysFromEpochToProvidedDate = elapsedDaysSinceEpoch(dateInMillis);
-        long daysFromEpochToToday = elapsedDaysSinceEpoch(System.currentTimeMillis());
-
-        int daysAfterToday = (int) (daysFromEpochToProvidedDate - daysFromEpochToToday);
-
-        switch (daysAfterToday) {
-            case 0:
-                return context.getString(R.string.today);
-            case 1:
-                return context.getString(R.string.tomorrow);
-
-            default:
-                SimpleDateFormat dayFormat = new SimpleDateFormat("EEEE");
-                return dayFormat.format(dateInMillis);
-        }
-    }
-}
\ No newline at end of file
+}
@@ -16,10 +16,12 @@
 package com.example.android.sunshine.utilities;
 
 import android.content.Context;
-import android.util.Log;
 
 import com.example.android.sunshine.R;
 import com.example.android.sunshine.data.SunshinePreferences;
+import com.example.android.sunshine.weather.WeatherConditions;
+
+import java.util.Locale;
 
 /**
  * Contains useful utilities for a weather app, such as conversion between Celsius and Fahrenheit,
@@ -28,18 +30,116 @@ import com.example.android.sunshine.data.SunshinePreferences;
  */
 public final class SunshineWeatherUtils {
 
-    private static final String LOG_TAG = SunshineWeatherUtils.class.getSimpleName();
+    /* Small icons, indexed by WeatherConditions icon class */
+    private static final int[] SMALL_ICONS = new int[WeatherConditions.ICON_CLASS_COUNT];
+
+    /* Large art, indexed by WeatherConditions icon class */
+    private static final int[] LARGE_ART = new int[WeatherConditions.ICON_CLASS_COUNT];
+
+    /* Condition description strings, indexed by WeatherConditions description key */
+    private static final int[] CONDITION_STRINGS = new int[WeatherConditions.ID_LIMIT];
+
+    static {
+        SMALL_ICONS[WeatherConditions.ICON_STORM] = R.drawable.ic_storm;
+        SMALL_ICONS[WeatherConditions.ICON_LIGHT_RAIN] = R.drawable.ic_light_rain;
+        SMALL_ICONS[WeatherConditions.ICON_RAIN] = R.drawable.ic_rain;
+        SMALL_ICONS[WeatherConditions.ICON_SNOW] = R.drawable.ic_snow;
+        SMALL_ICONS[WeatherConditions.ICON_FOG] = R.drawable.ic_fog;
+        SMALL_ICONS[WeatherConditions.ICON_CLEAR] = R.drawable.ic_clear;
+        SMALL_ICONS[WeatherConditions.ICON_LIGHT_CLOUDS] = R.drawable.ic_light_clouds;
+        SMALL_ICONS[WeatherConditions.ICON_CLOUDS] = R.drawable.ic_cloudy;
+
+        LARGE_ART[WeatherConditions.ICON_STORM] = R.drawable.art_storm;
+        LARGE_ART[WeatherConditions.ICON_LIGHT_RAIN] = R.drawable.art_light_rain;
+        LARGE_ART[WeatherConditions.ICON_RAIN] = R.drawable.art_rain;
+        LARGE_ART[WeatherConditions.ICON_SNOW] = R.drawable.art_snow;
+        LARGE_ART[WeatherConditions.ICON_FOG] = R.drawable.art_fog;
+        LARGE_ART[WeatherConditions.ICON_CLEAR] = R.drawable.art_clear;
+        LARGE_ART[WeatherConditions.ICON_LIGHT_CLOUDS] = R.drawable.art_light_clouds;
+        LARGE_ART[WeatherConditions.ICON_CLOUDS] = R.drawable.art_clouds;
+
+        CONDITION_STRINGS[200] = R.string.condition_2xx;
+        CONDITION_STRINGS[300] = R.string.condition_3xx;
+        CONDITION_STRINGS[500] = R.string.condition_500;
+        CONDITION_STRINGS[501] = R.string.condition_501;
+        CONDITION_STRINGS[502] = R.string.condition_502;
+        CONDITION_STRINGS[503] = R.string.condition_503;
+        CONDITION_STRINGS[504] = R.string.condition_504;
+        CONDITION_STRINGS[511] = R.string.condition_511;
+        CONDITION_STRINGS[520] = R.string.condition_520;
+        CONDITION_STRINGS[531] = R.string.condition_531;
+        CONDITION_STRINGS[600] = R.string.condition_600;
+        CONDITION_STRINGS[601] = R.string.condition_601;
+        CONDITION_STRINGS[602] = R.string.condition_602;
+        CONDITION_STRINGS[611] = R.string.condition_611;
+        CONDITION_STRINGS[612] = R.string.condition_612;
+        CONDITION_STRINGS[615] = R.string.condition_615;
+        CONDITION_STRINGS[616] = R.string.condition_616;
+        CONDITION_STRINGS[620] = R.string.condition_620;
+        CONDITION_STRINGS[621] = R.string.condition_621;
+        CONDITION_STRINGS[622] = R.string.condition_622;
+        CONDITION_STRINGS[701] = R.string.condition_701;
+        CONDITION_STRINGS[711] = R.string.condition_711;
+        CONDITION_STRINGS[721] = R.string.condition_721;
+        CONDITION_STRINGS[731] = R.string.condition_731;
+        CONDITION_STRINGS[741] = R.string.condition_741;
+        CONDITION_STRINGS[751] = R.string.condition_751;
+        CONDITION_STRINGS[761] = R.string.condition_761;
+        CONDITION_STRINGS[762] = R.string.condition_762;
+        CONDITION_STRINGS[771] = R.string.condition_771;
+        CONDITION_STRINGS[781] = R.string.condition_781;
+        CONDITION_STRINGS[800] = R.string.condition_800;
+        CONDITION_STRINGS[801] = R.string.condition_801;
+        CONDITION_STRINGS[802] = R.string.condition_802;
+        CONDITION_STRINGS[803] = R.string.condition_803;
+        CONDITION_STRINGS[804] = R.string.condition_804;
+        CONDITION_STRINGS[900] = R.string.condition_900;
+        CONDITION_STRINGS[901] = R.string.condition_901;
+        CONDITION_STRINGS[902] = R.string.condition_902;
+        CONDITION_STRINGS[903] = R.string.condition_903;
+        CONDITION_STRINGS[904] = R.string.condition_904;
+        CONDITION_STRINGS[905] = R.string.condition_905;
+        CONDITION_STRINGS[906] = R.string.condition_906;
+        CONDITION_STRINGS[951] = R.string.condition_951;
+        CONDITION_STRINGS[952] = R.string.condition_952;
+        CONDITION_STRINGS[953] = R.string.condition_953;
+        CONDITION_STRINGS[954] = R.string.condition_954;
+        CONDITION_STRINGS[955] = R.string.condition_955;
+        CONDITION_STRINGS[956] = R.string.condition_956;
+        CONDITION_STRINGS[957] = R.string.condition_957;
+        CONDITION_STRINGS[958] = R.string.condition_958;
+        CONDITION_STRINGS[959] = R.string.condition_959;
+        CONDITION_STRINGS[960] = R.string.condition_960;
+        CONDITION_STRINGS[961] = R.string.condition_961;
+        CONDITION_STRINGS[962] = R.string.condition_962;
+    }
+
+    /*
+     * The formatter for the current locale and unit system. Parsing the format strings is done
+     * once here instead of on every call, so the formatter is kept until either one changes.
+     */
+    private static WeatherFormatter sFormatter;
 
     /**
-     * This method will convert a temperature from Celsius to Fahrenheit.
+     * Returns a formatter for the current locale and the user's preferred units. The list, the
+     * detail screen and the notification all format through this, and the same formatter is
+     * returned until the locale or the units preference changes.
      *
-     * @param temperatureInCelsius Temperature in degrees Celsius(°C)
+     * @param context Android Context to access preferences and resources
      *
-     * @return Temperature in degrees Fahrenheit (°F)
+     * @return The formatter to format temperatures and wind with
      */
-    private static double celsiusToFahrenheit(double temperatureInCelsius) {
-        double temperatureInFahrenheit = (temperatureInCelsius * 1.8) + 32;
-        return temperatureInFahrenheit;
+    public static synchronized WeatherFormatter getFormatter(Context context) {
+        Locale locale = Locale.getDefault();
+        boolean isMetric = SunshinePreferences.isMetric(context);
+
+        if (sFormatter == null || !sFormatter.matches(locale, isMetric)) {
+            sFormatter = new WeatherFormatter(locale, isMetric,
+                    context.getString(R.string.format_temperature),
+                    context.getString(R.string.format_wind_kmh),
+                    context.getString(R.string.format_wind_mph));
+        }
+        return sFormatter;
     }
 
     /**
@@ -55,14 +155,7 @@ public final class SunshineWeatherUtils {
      * "21°"
      */
     public static String formatTemperature(Context context, double temperature) {
-        if (!SunshinePreferences.isMetric(context)) {
-            temperature = celsiusToFahrenheit(temperature);
-        }
-
-        int temperatureFormatResourceId = R.string.format_temperature;
-
-        /* For presentation, assume the user doesn't care about tenths of a degree. */
-        return String.format(context.getString(temperatureFormatResourceId), temperature);
+        return getFormatter(context).formatTemperature(temperature);
     }
 
     /**
@@ -76,14 +169,7 @@ public final class SunshineWeatherUtils {
      * @return String in the form: "HIGH° / LOW°"
      */
     public static String formatHighLows(Context context, double high, double low) {
-        long roundedHigh = Math.round(high);
-        long roundedLow = Math.round(low);
-
-        String formattedHigh = formatTemperature(context, roundedHigh);
-        String formattedLow = formatTemperature(context, roundedLow);
-
-        String highLowStr = formattedHigh + " / " + formattedLow;
-        return highLowStr;
+        return getFormatter(context).formatHighLow(high, low);
     }
 
     /**
@@ -98,37 +184,7 @@ public final class SunshineWeatherUtils {
      * @return Wind String in the following form: "2 km/h SW"
      */
     public static String getFormattedWind(Context context, float windSpeed, float degrees) {
-        int windFormat = R.string.format_wind_kmh;
-
-        if (!SunshinePreferences.isMetric(context)) {
-            windFormat = R.string.format_wind_mph;
-            windSpeed = .621371192237334f * windSpeed;
-        }
-
-        /*
-         * You know what's fun? Writing really long if/else statements with tons of possible
-         * conditions. Seriously, try it!
-         */
-        String direction = "Unknown";
-        if (degrees >= 337.5 || degrees < 22.5) {
-            direction = "N";
-        } else if (degrees >= 22.5 && degrees < 67.5) {
-            direction = "NE";
-        } else if (degrees >= 67.5 && degrees < 112.5) {
-            direction = "E";
-        } else if (degrees >= 112.5 && degrees < 157.5) {
-            direction = "SE";
-        } else if (degrees >= 157.5 && degrees < 202.5) {
-            direction = "S";
-        } else if (degrees >= 202.5 && degrees < 247.5) {
-            direction = "SW";
-        } else if (degrees >= 247.5 && degrees < 292.5) {
-            direction = "W";
-        } else if (degrees >= 292.5 && degrees < 337.5) {
-            direction = "NW";
-        }
-
-        return String.format(context.getString(windFormat), windSpeed, direction);
+        return getFormatter(context).formatWind(windSpeed, degrees);
     }
 
     /**
@@ -142,173 +198,12 @@ public final class SunshineWeatherUtils {
      * @return String for the weather condition, null if no relation is found.
      */
     public static String getStringForWeatherCondition(Context context, int weatherId) {
-        int stringId;
-        if (weatherId >= 200 && weatherId <= 232) {
-            stringId = R.string.condition_2xx;
-        } else if (weatherId >= 300 && weatherId <= 321) {
-            stringId = R.string.condition_3xx;
-        } else switch (weatherId) {
-            case 500:
-                stringId = R.string.condition_500;
-                break;
-            case 501:
-                stringId = R.string.condition_501;
-                break;
-            case 502:
-                stringId = R.string.condition_502;
-                break;
-            case 503:
-                stringId = R.string.condition_503;
-                break;
-            case 504:
-                stringId = R.string.condition_504;
-                break;
-            case 511:
-                stringId = R.string.condition_511;
-                break;
-            case 520:
-                stringId = R.string.condition_520;
-                break;
-            case 531:
-                stringId = R.string.condition_531;
-                break;
-            case 600:
-                stringId = R.string.condition_600;
-                break;
-            case 601:
-                stringId = R.string.condition_601;
-                break;
-            case 602:
-                stringId = R.string.condition_602;
-                break;
-            case 611:
-                stringId = R.string.condition_611;
-                break;
-            case 612:
-                stringId = R.string.condition_612;
-                break;
-            case 615:
-                stringId = R.string.condition_615;
-                break;
-            case 616:
-                stringId = R.string.condition_616;
-                break;
-            case 620:
-                stringId = R.string.condition_620;
-                break;
-            case 621:
-                stringId = R.string.condition_621;
-                break;
-            case 622:
-                stringId = R.string.condition_622;
-                break;
-            case 701:
-                stringId = R.string.condition_701;
-                break;
-            case 711:
-                stringId = R.string.condition_711;
-                break;
-            case 721:
-                stringId = R.string.condition_721;
-                break;
-            case 731:
-                stringId = R.string.condition_731;
-                break;
-            case 741:
-                stringId = R.string.condition_741;
-                break;
-            case 751:
-                stringId = R.string.condition_751;
-                break;
-            case 761:
-                stringId = R.string.condition_761;
-                break;
-            case 762:
-                stringId = R.string.condition_762;
-                break;
-            case 771:
-                stringId = R.string.condition_771;
-                break;
-            case 781:
-                stringId = R.string.condition_781;
-                break;
-            case 800:
-                stringId = R.string.condition_800;
-                break;
-            case 801:
-                stringId = R.string.condition_801;
-                break;
-            case 802:
-                stringId = R.string.condition_802;
-                break;
-            case 803:
-                stringId = R.string.condition_803;
-                break;
-            case 804:
-                stringId = R.string.condition_804;
-                break;
-            case 900:
-                stringId = R.string.condition_900;
-                break;
-            case 901:
-                stringId = R.string.condition_901;
-                break;
-            case 902:
-                stringId = R.string.condition_902;
-                break;
-            case 903:
-                stringId = R.string.condition_903;
-                break;
-            case 904:
-                stringId = R.string.condition_904;
-                break;
-            case 905:
-                stringId = R.string.condition_905;
-                break;
-            case 906:
-                stringId = R.string.condition_906;
-                break;
-            case 951:
-                stringId = R.string.condition_951;
-                break;
-            case 952:
-                stringId = R.string.condition_952;
-                break;
-            case 953:
-                stringId = R.string.condition_953;
-                break;
-            case 954:
-                stringId = R.string.condition_954;
-                break;
-            case 955:
-                stringId = R.string.condition_955;
-                break;
-            case 956:
-                stringId = R.string.condition_956;
-                break;
-            case 957:
-                stringId = R.string.condition_957;
-                break;
-            case 958:
-                stringId = R.string.condition_958;
-                break;
-            case 959:
-                stringId = R.string.condition_959;
-                break;
-            case 960:
-                stringId = R.string.condition_960;
-                break;
-            case 961:
-                stringId = R.string.condition_961;
-                break;
-            case 962:
-                stringId = R.string.condition_962;
-                break;
-            default:
-                return context.getString(R.string.condition_unknown, weatherId);
+        int descriptionKey = WeatherConditions.getDescriptionKey(weatherId);
+        if (descriptionKey == WeatherConditions.DESCRIPTION_UNKNOWN) {
+            return context.getString(R.string.condition_unknown, weatherId);
         }
 
-        return context.getString(stringId);
+        return context.getString(CONDITION_STRINGS[descriptionKey]);
     }
 
     /**
@@ -323,45 +218,10 @@ public final class SunshineWeatherUtils {
      * @param weatherId from OpenWeatherMap API response
      *                  See http://openweathermap.org/weather-conditions for a list of all IDs
      *
-     * @return resource id for the corresponding icon. -1 if no relation is found.
+     * @return resource id for the corresponding icon. Unknown conditions get the storm icon.
      */
     public static int getSmallArtResourceIdForWeatherCondition(int weatherId) {
-
-        /*
-         * Based on weather code data for Open Weather Map.
-         */
-        if (weatherId >= 200 && weatherId <= 232) {
-            return R.drawable.ic_storm;
-        } else if (weatherId >= 300 && weatherId <= 321) {
-            return R.drawable.ic_light_rain;
-        } else if (weatherId >= 500 && weatherId <= 504) {
-            return R.drawable.ic_rain;
-        } else if (weatherId == 511) {
-            return R.drawable.ic_snow;
-        } else if (weatherId >= 520 && weatherId <= 531) {
-            return R.drawable.ic_rain;
-        } else if (weatherId >= 600 && weatherId <= 622) {
-            return R.drawable.ic_snow;
-        } else if (weatherId >= 701 && weatherId <= 761) {
-            return R.drawable.ic_fog;
-        } else if (weatherId == 761 || weatherId == 771 || weatherId == 781) {
-            return R.drawable.ic_storm;
-        } else if (weatherId == 800) {
-            return R.drawable.ic_clear;
-        } else if (weatherId == 801) {
-            return R.drawable.ic_light_clouds;
-        } else if (weatherId >= 802 && weatherId <= 804) {
-            return R.drawable.ic_cloudy;
-        } else if (weatherId >= 900 && weatherId <= 906) {
-            return R.drawable.ic_storm;
-        } else if (weatherId >= 958 && weatherId <= 962) {
-            return R.drawable.ic_storm;
-        } else if (weatherId >= 951 && weatherId <= 957) {
-            return R.drawable.ic_clear;
-        }
-
-        Log.e(LOG_TAG, "Unknown Weather: " + weatherId);
-        return R.drawable.ic_storm;
+        return SMALL_ICONS[WeatherConditions.getIconClass(weatherId)];
     }
 
     /**
@@ -376,44 +236,9 @@ public final class SunshineWeatherUtils {
      * @param weatherId from OpenWeatherMap API response
      *                  See http://openweathermap.org/weather-conditions for a list of all IDs
      *
-     * @return resource ID for the corresponding icon. -1 if no relation is found.
+     * @return resource ID for the corresponding art. Unknown conditions get the storm art.
      */
     public static int getLargeArtResourceIdForWeatherCondition(int weatherId) {
-
-        /*
-         * Based on weather code data for Open Weather Map.
-         */
-        if (weatherId >= 200 && weatherId <= 232) {
-            return R.drawable.art_storm;
-        } else if (weatherId >= 300 && weatherId <= 321) {
-            return R.drawable.art_light_rain;
-        } else if (weatherId >= 500 && weatherId <= 504) {
-            return R.drawable.art_rain;
-        } else if (weatherId == 511) {
-            return R.drawable.art_snow;
-        } else if (weatherId >= 520 && weatherId <= 531) {
-            return R.drawable.art_rain;
-        } else if (weatherId >= 600 && weatherId <= 622) {
-            return R.drawable.art_snow;
-        } else if (weatherId >= 701 && weatherId <= 761) {
-            return R.drawable.art_fog;
-        } else if (weatherId == 761 || weatherId == 771 || weatherId == 781) {
-            return R.drawable.art_storm;
-        } else if (weatherId == 800) {
-            return R.drawable.art_clear;
-        } else if (weatherId == 801) {
-            return R.drawable.art_light_clouds;
-        } else if (weatherId >= 802 && weatherId <= 804) {
-            return R.drawable.art_clouds;
-        } else if (weatherId >= 900 && weatherId <= 906) {
-            return R.drawable.art_storm;
-        } else if (weatherId >= 958 && weatherId <= 962) {
-            return R.drawable.art_storm;
-        } else if (weatherId >= 951 && weatherId <= 957) {
-            return R.drawable.art_clear;
-        }
-
-        Log.e(LOG_TAG, "Unknown Weather: " + weatherId);
-        return R.drawable.art_storm;
+        return LARGE_ART[WeatherConditions.getIconClass(weatherId)];
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,268 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.ContextWrapper;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Build;
+
+import com.example.android.sunshine.BuildConfig;
+import com.example.android.sunshine.data.WeatherContract.SyncStateEntry;
+import com.example.android.sunshine.data.WeatherContract.WeatherEntry;
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertNotSame;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.fail;
+
+/**
+ * The provider checks from TestWeatherProvider, run as local unit tests. Robolectric backs
+ * WeatherDbHelper with a real SQLite database, so these run on the JVM in seconds and are the
+ * quickest way to check a change to the data layer before running the instrumentation tests.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = Build.VERSION_CODES.LOLLIPOP)
+public class TestWeatherProviderLocal {
+
+    private static final int DAYS_TO_INSERT = 14;
+
+    private ContentResolver mResolver;
+
+    @Before
+    public void setUp() {
+        Robolectric.buildContentProvider(WeatherProvider.class)
+                .create(WeatherContract.CONTENT_AUTHORITY);
+        mResolver = RuntimeEnvironment.application.getContentResolver();
+        ForecastRepository.invalidate();
+    }
+
+    private static ContentValues[] createForecastFromToday() {
+        ContentValues[] values = new ContentValues[DAYS_TO_INSERT];
+        long today = SunshineDateUtils.normalizeDate(System.currentTimeMillis());
+
+        for (int i = 0; i < DAYS_TO_INSERT; i++) {
+            ContentValues day = new ContentValues();
+            day.put(WeatherEntry.COLUMN_DATE,
+                    SunshineDateUtils.toEpochDay(today + i * SunshineDateUtils.DAY_IN_MILLIS));
+            day.put(WeatherEntry.COLUMN_WEATHER_ID, 800 + i % 5);
+            day.put(WeatherEntry.COLUMN_MAX_TEMP, 20 + i);
+            day.put(WeatherEntry.COLUMN_MIN_TEMP, 10 + i);
+            day.put(WeatherEntry.COLUMN_HUMIDITY, 50);
+            day.put(WeatherEntry.COLUMN_PRESSURE, 1013);
+            day.put(WeatherEntry.COLUMN_WIND_SPEED, 3.5);
+            day.put(WeatherEntry.COLUMN_DEGREES, 180);
+            values[i] = day;
+        }
+        return values;
+    }
+
+    private int countRows() {
+        Cursor cursor = mResolver.query(WeatherEntry.CONTENT_URI, null, null, null, null);
+        try {
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void testBulkInsertThenQueryByDate() {
+        ContentValues[] forecast = createForecastFromToday();
+
+        int inserted = mResolver.bulkInsert(WeatherEntry.CONTENT_URI, forecast);
+        assertEquals(DAYS_TO_INSERT, inserted);
+        assertEquals(DAYS_TO_INSERT, countRows());
+
+        long thirdDay = SunshineDateUtils.fromEpochDay(
+                forecast[2].getAsLong(WeatherEntry.COLUMN_DATE));
+        Cursor cursor = mResolver.query(WeatherEntry.buildWeatherUriWithDate(thirdDay),
+                null, null, null, null);
+        try {
+            assertEquals(1, cursor.getCount());
+            cursor.moveToFirst();
+            assertEquals(802, cursor.getInt(cursor.getColumnIndex(WeatherEntry.COLUMN_WEATHER_ID)));
+            assertEquals(22.0, cursor.getDouble(cursor.getColumnIndex(WeatherEntry.COLUMN_MAX_TEMP)));
+            assertEquals(SunshineDateUtils.toEpochDay(thirdDay),
+                    cursor.getInt(cursor.getColumnIndex(WeatherEntry.COLUMN_DATE)));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * A URI that carries the date in milliseconds, as built before dates were stored as day
+     * numbers, still finds its day.
+     */
+    @Test
+    public void testQueryByMillisecondUriStillWorks() {
+        ContentValues[] forecast = createForecastFromToday();
+        mResolver.bulkInsert(WeatherEntry.CONTENT_URI, forecast);
+
+        long thirdDay = SunshineDateUtils.fromEpochDay(
+                forecast[2].getAsLong(WeatherEntry.COLUMN_DATE));
+        Uri legacyUri = WeatherEntry.CONTENT_URI.buildUpon()
+                .appendPath(Long.toString(thirdDay))
+                .build();
+        Cursor cursor = mResolver.query(legacyUri, null, null, null, null);
+        try {
+            assertEquals(1, cursor.getCount());
+            cursor.moveToFirst();
+            assertEquals(802, cursor.getInt(cursor.getColumnIndex(WeatherEntry.COLUMN_WEATHER_ID)));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void testBulkInsertRejectsMillisecondDates() {
+        ContentValues[] forecast = createForecastFromToday();
+        forecast[0].put(WeatherEntry.COLUMN_DATE, System.currentTimeMillis() | 1);
+
+        try {
+            mResolver.bulkInsert(WeatherEntry.CONTENT_URI, forecast);
+            fail("WeatherProvider should reject a date that isn't a day number");
+        } catch (IllegalArgumentException expected) {
+            /* This is what we want */
+        }
+    }
+
+    @Test
+    public void testDeleteRemovesAllRowsAndInvalidatesSnapshot() {
+        mResolver.bulkInsert(WeatherEntry.CONTENT_URI, createForecastFromToday());
+
+        ForecastSnapshot before = ForecastRepository.getSnapshot(RuntimeEnvironment.application);
+        assertEquals(DAYS_TO_INSERT, before.size());
+        assertSame(before, ForecastRepository.getSnapshot(RuntimeEnvironment.application));
+
+        mResolver.delete(WeatherEntry.CONTENT_URI, null, null);
+
+        assertEquals(0, countRows());
+        ForecastSnapshot after = ForecastRepository.getSnapshot(RuntimeEnvironment.application);
+        assertNotSame(before, after);
+        assertEquals(0, after.size());
+    }
+
+    /**
+     * A snapshot that was being loaded when the provider's data changed is handed to the reader
+     * that loaded it, but not kept for the next one.
+     */
+    @Test
+    public void testALoadRacingAnInvalidateIsNotKept() {
+        mResolver.bulkInsert(WeatherEntry.CONTENT_URI, createForecastFromToday());
+
+        /* Invalidates after getSnapshot has started loading, as a write from a sync would */
+        Context racing = new ContextWrapper(RuntimeEnvironment.application) {
+            @Override
+            public ContentResolver getContentResolver() {
+                ForecastRepository.invalidate();
+                return super.getContentResolver();
+            }
+        };
+        ForecastSnapshot raced = ForecastRepository.getSnapshot(racing);
+        assertEquals(DAYS_TO_INSERT, raced.size());
+
+        ForecastSnapshot next = ForecastRepository.getSnapshot(RuntimeEnvironment.application);
+        assertNotSame(raced, next);
+        assertSame(next, ForecastRepository.getSnapshot(RuntimeEnvironment.application));
+    }
+
+    /**
+     * A bulkInsert to the replace-all URI swaps the whole table in one transaction: either every
+     * old row goes and every new one is in, or, if the insert fails, nothing changes.
+     */
+    @Test
+    public void testReplaceAllSwapsTheWholeTableOrNothing() {
+        mResolver.bulkInsert(WeatherEntry.CONTENT_URI, createForecastFromToday());
+        ForecastSnapshot before = ForecastRepository.getSnapshot(RuntimeEnvironment.application);
+
+        ContentValues[] shorter = new ContentValues[3];
+        System.arraycopy(createForecastFromToday(), 0, shorter, 0, shorter.length);
+        shorter[2].put(WeatherEntry.COLUMN_DATE, System.currentTimeMillis() | 1);
+        try {
+            mResolver.bulkInsert(WeatherEntry.CONTENT_URI_REPLACE_ALL, shorter);
+            fail("WeatherProvider should reject a date that isn't a day number");
+        } catch (IllegalArgumentException expected) {
+            /* The old rows must all still be there */
+        }
+        assertEquals(DAYS_TO_INSERT, countRows());
+        assertSame(before, ForecastRepository.getSnapshot(RuntimeEnvironment.application));
+
+        System.arraycopy(createForecastFromToday(), 0, shorter, 0, shorter.length);
+        assertEquals(shorter.length,
+                mResolver.bulkInsert(WeatherEntry.CONTENT_URI_REPLACE_ALL, shorter));
+        assertEquals(shorter.length, countRows());
+        assertEquals(shorter.length,
+                ForecastRepository.getSnapshot(RuntimeEnvironment.application).size());
+    }
+
+    @Test
+    public void testSyncStateIsReplacedPerLocationAndSurvivesWeatherDelete() {
+        ContentValues[] forecast = createForecastFromToday();
+        SyncState.record(RuntimeEnvironment.application, "94043,USA", 1, forecast, "a");
+        SyncState.record(RuntimeEnvironment.application, "94043,USA", 2, forecast, "b");
+
+        SyncState state = SyncState.query(RuntimeEnvironment.application, "94043,USA");
+        assertNotNull(state);
+        assertEquals(2, state.getLastSync());
+        assertEquals(SyncState.hash("b"), state.getPayloadHash());
+
+        /* Clearing the weather table isn't forgetting when the location was synced */
+        mResolver.delete(WeatherEntry.CONTENT_URI, null, null);
+        assertNotNull(SyncState.query(RuntimeEnvironment.application, "94043,USA"));
+
+        SyncState.forget(RuntimeEnvironment.application, "94043,USA");
+        assertNull(SyncState.query(RuntimeEnvironment.application, "94043,USA"));
+    }
+
+    /**
+     * An empty location, as the settings allow, would build the URI of the whole sync_state
+     * table. It has no state of its own, and looking it up neither reads nor deletes another
+     * location's row.
+     */
+    @Test
+    public void testEmptyLocationHasNoSyncState() {
+        ContentValues[] forecast = createForecastFromToday();
+        SyncState.record(RuntimeEnvironment.application, "94043,USA", 1, forecast, "a");
+
+        assertNull(SyncState.query(RuntimeEnvironment.application, ""));
+        SyncState.forget(RuntimeEnvironment.application, "");
+        assertNotNull(SyncState.query(RuntimeEnvironment.application, "94043,USA"));
+
+        SyncState.record(RuntimeEnvironment.application, "", 2, forecast, "b");
+        assertNull(SyncState.query(RuntimeEnvironment.application, ""));
+        Cursor cursor = mResolver.query(SyncStateEntry.CONTENT_URI, null, null, null, null);
+        try {
+            assertEquals(1, cursor.getCount());
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,617 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.sync;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.os.Build;
+import android.os.CancellationSignal;
+import android.preference.PreferenceManager;
+
+import com.example.android.sunshine.BuildConfig;
+import com.example.android.sunshine.R;
+import com.example.android.sunshine.data.ForecastRepository;
+import com.example.android.sunshine.data.ForecastSnapshot;
+import com.example.android.sunshine.data.SunshinePreferences;
+import com.example.android.sunshine.data.SyncState;
+import com.example.android.sunshine.data.WeatherContract;
+import com.example.android.sunshine.data.WeatherContract.WeatherEntry;
+import com.example.android.sunshine.data.WeatherProvider;
+import com.example.android.sunshine.utilities.GroupForecastParser;
+import com.example.android.sunshine.utilities.OpenWeatherJsonParser;
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+/**
+ * Runs a whole sync, from the JSON response to the rows in the provider and the published
+ * snapshot, on the JVM. The network is replaced by a recorded response from the benchmark
+ * fixtures.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = Build.VERSION_CODES.LOLLIPOP)
+public class TestSunshineSyncTaskLocal {
+
+    private static final int RECORDED_DAYS = 14;
+
+    /* The coordinates of the city in the recorded response */
+    private static final double RECORDED_LATITUDE = 37.3861;
+    private static final double RECORDED_LONGITUDE = -122.0838;
+
+    private Context mContext;
+
+    /**
+     * Hands the sync a fixed response instead of going to the network.
+     */
+    private static SunshineSyncTask.ForecastSource respondWith(final String json) {
+        return new SunshineSyncTask.ForecastSource() {
+            @Override
+            public String fetchForecastJson(Context context, SyncTrace trace,
+                                            CancellationSignal signal) {
+                return json;
+            }
+        };
+    }
+
+    /* A weather server that is down */
+    private static final SunshineSyncTask.ForecastSource UNREACHABLE =
+            new SunshineSyncTask.ForecastSource() {
+                @Override
+                public String fetchForecastJson(Context context, SyncTrace trace,
+                                                CancellationSignal signal) throws IOException {
+                    throw new IOException("Unreachable");
+                }
+            };
+
+    private SyncTrace sync(SunshineSyncTask.ForecastSource source) {
+        return SunshineSyncTask.syncWeather(mContext, source, new CancellationSignal());
+    }
+
+    private static String loadFixture(String name) throws IOException {
+        InputStream in = TestSunshineSyncTaskLocal.class.getResourceAsStream("/fixtures/" + name);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toString("UTF-8");
+        } finally {
+            in.close();
+        }
+    }
+
+    @Before
+    public void setUp() {
+        Robolectric.buildContentProvider(WeatherProvider.class)
+                .create(WeatherContract.CONTENT_AUTHORITY);
+        mContext = RuntimeEnvironment.application;
+        ForecastRepository.invalidate();
+    }
+
+    private int countRows() {
+        Cursor cursor = mContext.getContentResolver()
+                .query(WeatherEntry.CONTENT_URI, null, null, null, null);
+        try {
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private void insertOneDay() {
+        ContentValues day = new ContentValues();
+        day.put(WeatherEntry.COLUMN_DATE,
+                SunshineDateUtils.toEpochDay(SunshineDateUtils.getNormalizedUtcDateForToday()));
+        day.put(WeatherEntry.COLUMN_WEATHER_ID, 500);
+        day.put(WeatherEntry.COLUMN_MAX_TEMP, 15);
+        day.put(WeatherEntry.COLUMN_MIN_TEMP, 5);
+        day.put(WeatherEntry.COLUMN_HUMIDITY, 80);
+        day.put(WeatherEntry.COLUMN_PRESSURE, 1000);
+        day.put(WeatherEntry.COLUMN_WIND_SPEED, 10);
+        day.put(WeatherEntry.COLUMN_DEGREES, 90);
+        mContext.getContentResolver()
+                .bulkInsert(WeatherEntry.CONTENT_URI, new ContentValues[]{day});
+    }
+
+    @Test
+    public void testSyncStoresAndPublishesRecordedForecast() throws IOException {
+        sync(respondWith(loadFixture("forecast_14_days.json")));
+
+        assertEquals(RECORDED_DAYS, countRows());
+
+        ForecastSnapshot published = ForecastRepository.getSnapshot(mContext);
+        assertEquals(RECORDED_DAYS, published.size());
+        assertEquals(SunshineDateUtils.getNormalizedUtcDateForToday(), published.getDate(0));
+        assertEquals(800, published.getWeatherId(0));
+        assertEquals(21.4, published.getMaxTemp(0), 0.001);
+
+        double[] coordinates = SunshinePreferences.getLocationCoordinates(mContext);
+        assertEquals(RECORDED_LATITUDE, coordinates[0], 0.0001);
+        assertEquals(RECORDED_LONGITUDE, coordinates[1], 0.0001);
+    }
+
+    @Test
+    public void testOnlySuccessfulSyncIsRecordedForLocation() throws IOException {
+        String location = SunshinePreferences.getPreferredWeatherLocation(mContext);
+
+        sync(respondWith("{\"cod\":404,\"message\":\"city not found\"}"));
+        assertNull(SyncState.query(mContext, location));
+
+        long beforeSync = System.currentTimeMillis();
+        String json = loadFixture("forecast_14_days.json");
+        sync(respondWith(json));
+
+        SyncState state = SyncState.query(mContext, location);
+        assertTrue(state.getLastSync() >= beforeSync);
+        assertEquals(RECORDED_DAYS, state.getRowCount());
+        long today =
+                SunshineDateUtils.toEpochDay(SunshineDateUtils.getNormalizedUtcDateForToday());
+        assertEquals(today, state.getFirstDate());
+        assertEquals(today + RECORDED_DAYS - 1, state.getLastDate());
+        assertTrue(state.coversDay(today));
+        assertEquals(SyncState.hash(json), state.getPayloadHash());
+
+        assertNull(SyncState.query(mContext, location + "-elsewhere"));
+    }
+
+    @Test
+    public void testErrorResponseKeepsExistingForecast() {
+        insertOneDay();
+
+        sync(respondWith("{\"cod\":404,\"message\":\"city not found\"}"));
+
+        assertEquals(1, countRows());
+    }
+
+    @Test
+    public void testMalformedResponseKeepsExistingForecast() {
+        insertOneDay();
+
+        SyncTrace trace = sync(respondWith("{\"cod\":\"200\",\"list\":["));
+
+        assertEquals(1, countRows());
+        assertEquals(SyncTrace.OUTCOME_FAILED, trace.getOutcome());
+        assertEquals(SyncTrace.STAGE_PARSE, trace.getFailedStage());
+    }
+
+    /*
+     * The recorded response, 5 degrees warmer, with today's "weather" array emptied and
+     * tomorrow's "deg" field taken out
+     */
+    private static String warmerWithTwoMalformedDays() throws IOException, JSONException {
+        JSONObject json = new JSONObject(loadFixture("forecast_14_days.json"));
+        JSONArray days = json.getJSONArray("list");
+        for (int i = 0; i < days.length(); i++) {
+            JSONObject temperature = days.getJSONObject(i).getJSONObject("temp");
+            temperature.put("max", temperature.getDouble("max") + 5);
+        }
+        days.getJSONObject(0).put("weather", new JSONArray());
+        days.getJSONObject(1).remove("deg");
+        return json.toString();
+    }
+
+    @Test
+    public void testMalformedDaysKeepTheStoredForecast() throws IOException, JSONException {
+        sync(respondWith(loadFixture("forecast_14_days.json")));
+        ForecastSnapshot stored = ForecastRepository.getSnapshot(mContext);
+
+        SyncTrace trace = sync(respondWith(warmerWithTwoMalformedDays()));
+
+        assertEquals(SyncTrace.OUTCOME_STORED, trace.getOutcome());
+        assertEquals(2, trace.getMalformedDays());
+        assertEquals(RECORDED_DAYS, countRows());
+        ForecastSnapshot published = ForecastRepository.getSnapshot(mContext);
+        assertEquals(RECORDED_DAYS, published.size());
+        for (int i = 0; i < RECORDED_DAYS; i++) {
+            assertEquals(stored.getDate(i), published.getDate(i));
+            assertEquals(stored.getMaxTemp(i) + (i < 2 ? 0 : 5), published.getMaxTemp(i), 0.001);
+        }
+    }
+
+    @Test
+    public void testMalformedDaysWithNothingStoredAreLeftOut() throws IOException, JSONException {
+        SyncTrace trace = sync(respondWith(warmerWithTwoMalformedDays()));
+
+        assertEquals(SyncTrace.OUTCOME_STORED, trace.getOutcome());
+        assertEquals(2, trace.getMalformedDays());
+        assertEquals(RECORDED_DAYS - 2, trace.getRows());
+        assertEquals(RECORDED_DAYS - 2, countRows());
+
+        /* Without today's weather, there was nothing to show ahead of the rest */
+        assertEquals(SyncTrace.NOT_RUN, trace.getTodayVisibleMicros());
+        long today = SunshineDateUtils.getNormalizedUtcDateForToday();
+        assertEquals(today + 2 * SunshineDateUtils.DAY_IN_MILLIS,
+                ForecastRepository.getSnapshot(mContext).getDate(0));
+    }
+
+    @Test
+    public void testSyncIsTracedAndLogged() throws IOException {
+        SyncTrace trace = sync(respondWith(loadFixture("forecast_14_days.json")));
+
+        assertEquals(SyncTrace.OUTCOME_STORED, trace.getOutcome());
+        assertEquals(RECORDED_DAYS, trace.getRows());
+        int[] stagesRun = {SyncTrace.STAGE_PARSE, SyncTrace.STAGE_INSERT};
+        for (int stage : stagesRun) {
+            assertTrue(SyncTrace.getStageName(stage),
+                    trace.getStageMicros(stage) != SyncTrace.NOT_RUN);
+        }
+        /* The old weather is deleted in the same transaction as the new is inserted */
+        assertEquals(SyncTrace.NOT_RUN, trace.getStageMicros(SyncTrace.STAGE_DELETE));
+        /* The recorded response never went near the network */
+        assertEquals(SyncTrace.NOT_RUN, trace.getStageMicros(SyncTrace.STAGE_CONNECT));
+
+        List<SyncTrace> logged = SyncDiagnostics.getRecentTraces(mContext);
+        assertSame(trace, logged.get(logged.size() - 1));
+    }
+
+    /**
+     * From the start of a sync to today's weather being visible: today's row is stored and
+     * announced before the rest of the forecast is even read, and no reader ever sees some of
+     * the rest written.
+     */
+    @Test
+    public void testTodayIsVisibleBeforeTheRestOfTheForecast() throws IOException {
+        final List<String> seen = new ArrayList<>();
+        mContext.getContentResolver().registerContentObserver(WeatherEntry.CONTENT_URI, true,
+                new ContentObserver(null) {
+                    @Override
+                    public void onChange(boolean selfChange) {
+                        ForecastSnapshot forecast = ForecastRepository.getSnapshot(mContext);
+                        seen.add(forecast.size() + " days, " + forecast.getMaxTemp(0));
+                    }
+                });
+        SyncMetrics metrics = SyncDiagnostics.getMetrics(SyncTrace.TIER_FULL);
+        long timed = metrics.getTodayVisibleMicros().getCount();
+
+        /* With nothing stored, the whole forecast goes in at once, never today's row alone */
+        SyncTrace first = sync(respondWith(loadFixture("forecast_14_days.json")));
+        assertEquals(Arrays.asList(RECORDED_DAYS + " days, 21.4"), seen);
+        assertEquals(RECORDED_DAYS, first.getRows());
+
+        long visible = first.getTodayVisibleMicros();
+        assertTrue(visible >= 0);
+        assertTrue(visible <= first.getTotalMicros());
+        assertEquals(timed + 1, metrics.getTodayVisibleMicros().getCount());
+
+        /* With this location's forecast stored, only today's row changes at first */
+        seen.clear();
+        SyncTrace second = sync(respondWith(loadFixture("forecast_14_days.json")
+                .replaceFirst("\"max\": 21.4", "\"max\": 25.0")));
+        assertEquals(Arrays.asList(RECORDED_DAYS + " days, 25.0", RECORDED_DAYS + " days, 25.0"),
+                seen);
+        assertTrue(second.getTodayVisibleMicros() <= second.getTotalMicros());
+        assertEquals(25.0, ForecastRepository.getSnapshot(mContext).getMaxTemp(0), 0.001);
+    }
+
+    @Test
+    public void testTodayIsStoredBeforeTheRestIsRead() throws IOException {
+        sync(respondWith(loadFixture("forecast_14_days.json")));
+
+        /* Warmer today, and cut off at the start of tomorrow */
+        String json = loadFixture("forecast_14_days.json")
+                .replaceFirst("\"max\": 21.4", "\"max\": 25.0");
+        int tomorrow = json.indexOf("\"dt\"", json.indexOf("\"dt\"") + 1);
+        SyncTrace trace = sync(respondWith(json.substring(0, tomorrow)));
+
+        assertEquals(SyncTrace.OUTCOME_FAILED, trace.getOutcome());
+        assertEquals(SyncTrace.STAGE_PARSE, trace.getFailedStage());
+        assertTrue(trace.getTodayVisibleMicros() >= 0);
+
+        /* Today's row was stored before the damage was reached; the rest is as it was */
+        ForecastSnapshot published = ForecastRepository.getSnapshot(mContext);
+        assertEquals(RECORDED_DAYS, published.size());
+        assertEquals(25.0, published.getMaxTemp(0), 0.001);
+        assertEquals(22.77, published.getMaxTemp(1), 0.001);
+    }
+
+    @Test
+    public void testNearbyLocationIsServedFromTheCache() throws IOException {
+        SunshineSyncTask.RESPONSE_CACHE.clear();
+        SunshinePreferences.setLocationDetails(mContext, RECORDED_LATITUDE, RECORDED_LONGITUDE);
+        sync(SunshineSyncTask.throughCache(respondWith(loadFixture("forecast_14_days.json")),
+                ForecastWindowPolicy.MAX_DAYS, true));
+        int hits = SunshineSyncTask.RESPONSE_CACHE.getHitCount();
+
+        /* A few metres away, in the same cell, with the server down */
+        SunshinePreferences.setLocationDetails(mContext, RECORDED_LATITUDE + 0.0001,
+                RECORDED_LONGITUDE + 0.0001);
+        SyncTrace trace = sync(SunshineSyncTask.throughCache(UNREACHABLE,
+                ForecastWindowPolicy.MAX_DAYS, true));
+
+        assertEquals(SyncTrace.OUTCOME_STORED, trace.getOutcome());
+        assertEquals(RECORDED_DAYS, countRows());
+        assertEquals(hits + 1, SunshineSyncTask.RESPONSE_CACHE.getHitCount());
+
+        /* A user refresh asks the server whatever is cached */
+        trace = sync(SunshineSyncTask.throughCache(UNREACHABLE, ForecastWindowPolicy.MAX_DAYS,
+                false));
+        assertEquals(SyncTrace.OUTCOME_FAILED, trace.getOutcome());
+    }
+
+    @Test
+    public void testAShortResponseIsNotServedToASyncThatWantsMoreDays() throws IOException {
+        SunshineSyncTask.RESPONSE_CACHE.clear();
+        SunshinePreferences.setLocationDetails(mContext, RECORDED_LATITUDE, RECORDED_LONGITUDE);
+        sync(SunshineSyncTask.throughCache(respondWith(loadFixture("forecast_1_day.json")), 1,
+                true));
+
+        /* A sync for the whole forecast, with the server down, isn't given today alone */
+        SyncTrace trace = sync(SunshineSyncTask.throughCache(UNREACHABLE,
+                ForecastWindowPolicy.MAX_DAYS, true));
+        assertEquals(SyncTrace.OUTCOME_FAILED, trace.getOutcome());
+
+        /* One that asks for no more than was cached is */
+        trace = sync(SunshineSyncTask.throughCache(UNREACHABLE, 1, true));
+        assertEquals(SyncTrace.OUTCOME_STORED, trace.getOutcome());
+    }
+
+    @Test
+    public void testPrefetchedLocationIsServedFromTheCache() throws IOException {
+        SunshineSyncTask.RESPONSE_CACHE.clear();
+        final String json = loadFixture("forecast_14_days.json");
+        final List<List<String>> asked = new ArrayList<>();
+        SunshineSyncTask.PrefetchSource source = new SunshineSyncTask.PrefetchSource() {
+            @Override
+            public void fetchForecasts(List<String> locations, GroupForecastParser.Sink sink)
+                    throws JSONException {
+                asked.add(new ArrayList<>(locations));
+                for (String location : locations) {
+                    /* The server has no forecast for Atlantis, so it's left out */
+                    if (!location.equals("Atlantis")) {
+                        sink.onForecast(location, json, OpenWeatherJsonParser.parse(json,
+                                SunshineDateUtils.getNormalizedUtcDateForToday()));
+                    }
+                }
+            }
+        };
+
+        /* Both are asked for together, and only the one with a forecast is kept */
+        assertEquals(1, SunshineSyncTask.prefetch(Arrays.asList("London, UK", "Atlantis"),
+                source));
+        /* Already cached, so not asked for again */
+        assertEquals(0, SunshineSyncTask.prefetch(Arrays.asList(" london, uk"), source));
+        assertEquals(1, asked.size());
+        assertEquals(Arrays.asList("London, UK", "Atlantis"), asked.get(0));
+
+        /* The user chooses it, with the server down */
+        PreferenceManager.getDefaultSharedPreferences(mContext).edit()
+                .putString(mContext.getString(R.string.pref_location_key), "London, UK")
+                .commit();
+        SunshinePreferences.resetLocationCoordinates(mContext);
+        SyncTrace trace = sync(SunshineSyncTask.throughCache(UNREACHABLE,
+                ForecastWindowPolicy.MAX_DAYS, true));
+
+        assertEquals(SyncTrace.OUTCOME_STORED, trace.getOutcome());
+        assertEquals(RECORDED_DAYS, countRows());
+        assertEquals("London, UK", SunshinePreferences.getRecentLocations(mContext).get(0));
+    }
+
+    @Test
+    public void testCancelledBeforeFetchingFetchesAndWritesNothing() {
+        insertOneDay();
+        CancellationSignal signal = new CancellationSignal();
+        signal.cancel();
+
+        SyncTrace trace = SunshineSyncTask.syncWeather(mContext,
+                new SunshineSyncTask.ForecastSource() {
+                    @Override
+                    public String fetchForecastJson(Context context, SyncTrace trace,
+                                                    CancellationSignal signal) {
+                        fail("A cancelled sync shouldn't fetch");
+                        return null;
+                    }
+                }, signal);
+
+        assertEquals(SyncTrace.OUTCOME_CANCELLED, trace.getOutcome());
+        assertEquals(1, countRows());
+    }
+
+    @Test
+    public void testCancelledWhileFetchingWritesNothing() throws IOException {
+        insertOneDay();
+        final String json = loadFixture("forecast_14_days.json");
+        final CancellationSignal signal = new CancellationSignal();
+
+        /* The response arrives, but the job was stopped while it was on its way */
+        SyncTrace trace = SunshineSyncTask.syncWeather(mContext,
+                new SunshineSyncTask.ForecastSource() {
+                    @Override
+                    public String fetchForecastJson(Context context, SyncTrace trace,
+                                                    CancellationSignal signal) {
+                        signal.cancel();
+                        return json;
+                    }
+                }, signal);
+
+        assertEquals(SyncTrace.OUTCOME_CANCELLED, trace.getOutcome());
+        assertEquals(SyncTrace.NOT_RUN, trace.getStageMicros(SyncTrace.STAGE_PARSE));
+        assertEquals(1, countRows());
+        assertEquals(1, ForecastRepository.getSnapshot(mContext).size());
+        assertNull(SyncState.query(mContext,
+                SunshinePreferences.getPreferredWeatherLocation(mContext)));
+    }
+
+    @Test
+    public void testCancelledWhileWritingFinishesWriting() throws IOException {
+        insertOneDay();
+        final CancellationSignal signal = new CancellationSignal();
+
+        /* Cancel as soon as today's weather is stored, which is the first write */
+        mContext.getContentResolver().registerContentObserver(WeatherEntry.CONTENT_URI, true,
+                new ContentObserver(null) {
+                    @Override
+                    public void onChange(boolean selfChange) {
+                        signal.cancel();
+                    }
+                });
+        SyncTrace trace = SunshineSyncTask.syncWeather(mContext,
+                respondWith(loadFixture("forecast_14_days.json")), signal);
+
+        assertTrue(signal.isCanceled());
+        assertEquals(SyncTrace.OUTCOME_STORED, trace.getOutcome());
+        assertEquals(RECORDED_DAYS, countRows());
+        assertEquals(RECORDED_DAYS, ForecastRepository.getSnapshot(mContext).size());
+        assertEquals(RECORDED_DAYS, SyncState.query(mContext,
+                SunshinePreferences.getPreferredWeatherLocation(mContext)).getRowCount());
+    }
+
+    @Test
+    public void testJobEndsExactlyOnce() throws IOException {
+        final int[] finished = new int[1];
+        CancellableSync.Listener listener = new CancellableSync.Listener() {
+            @Override
+            public void onSyncFinished() {
+                finished[0]++;
+            }
+        };
+
+        /* Runs to its end, then the job is stopped anyway: no retry, and only one finish */
+        CancellableSync completed = new CancellableSync(mContext, SyncTrace.TIER_FULL,
+                respondWith(loadFixture("forecast_14_days.json")), listener);
+        completed.run();
+        assertFalse(completed.cancel());
+        assertEquals(1, finished[0]);
+        assertEquals(RECORDED_DAYS, countRows());
+
+        /* Stopped before it ran: retried, and never reported as finished */
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        CancellableSync stopped = new CancellableSync(mContext, SyncTrace.TIER_FULL,
+                respondWith(loadFixture("forecast_14_days.json")), listener);
+        assertTrue(stopped.cancel());
+        stopped.run();
+        assertEquals(1, finished[0]);
+        assertEquals(0, countRows());
+    }
+
+    @Test
+    public void testTodaySyncLeavesAnotherLocationsForecastAlone() throws IOException {
+        String today = "{\"cod\":\"200\",\"cnt\":1,\"city\":{\"coord\":{\"lat\":0,\"lon\":0}},"
+                + "\"list\":[{\"temp\":{\"min\":9.5,\"max\":14.5},\"pressure\":1002,"
+                + "\"humidity\":90,\"weather\":[{\"id\":501}],\"speed\":6.5,\"deg\":200}]}";
+        String first = SunshinePreferences.getPreferredWeatherLocation(mContext);
+        sync(respondWith(loadFixture("forecast_14_days.json")));
+
+        /* Another location is synced, and then the user switches back */
+        setLocation("London, UK");
+        sync(respondWith(loadFixture("forecast_14_days.json")
+                .replaceFirst("\"max\": 21.4", "\"max\": 25.0")));
+        setLocation(first);
+
+        /* The first location's sync_state row is still there, but its forecast isn't */
+        assertTrue(SyncState.query(mContext, first).coversDay(SunshineDateUtils.toEpochDay(
+                SunshineDateUtils.getNormalizedUtcDateForToday())));
+        SyncTrace trace = SunshineSyncTask.syncToday(mContext, respondWith(today),
+                new CancellationSignal());
+
+        assertEquals(SyncTrace.OUTCOME_NO_WEATHER, trace.getOutcome());
+        ForecastSnapshot stored = ForecastRepository.getSnapshot(mContext);
+        assertEquals(RECORDED_DAYS, stored.size());
+        assertEquals(25.0, stored.getMaxTemp(0), 0.001);
+
+        /* A full sync doesn't store today's row on its own either */
+        trace = sync(respondWith(loadFixture("forecast_14_days.json")));
+        assertEquals(SyncTrace.OUTCOME_STORED, trace.getOutcome());
+        assertEquals(RECORDED_DAYS, trace.getRows());
+        assertEquals(first, SunshinePreferences.getStoredLocation(mContext));
+    }
+
+    private void setLocation(String location) {
+        PreferenceManager.getDefaultSharedPreferences(mContext).edit()
+                .putString(mContext.getString(R.string.pref_location_key), location)
+                .commit();
+        SunshinePreferences.resetLocationCoordinates(mContext);
+    }
+
+    @Test
+    public void testTodaySyncReplacesOnlyTodaysRow() throws IOException {
+        /* One day of rain for the recorded city, as a current-conditions request returns it */
+        String today = "{\"cod\":\"200\",\"cnt\":1,\"city\":{\"coord\":{\"lat\":"
+                + RECORDED_LATITUDE + ",\"lon\":" + RECORDED_LONGITUDE + "}},\"list\":[{"
+                + "\"temp\":{\"min\":9.5,\"max\":14.5},\"pressure\":1002,\"humidity\":90,"
+                + "\"weather\":[{\"id\":501}],\"speed\":6.5,\"deg\":200}]}";
+        String location = SunshinePreferences.getPreferredWeatherLocation(mContext);
+
+        /* Without a full forecast to refresh, nothing is fetched or stored */
+        SyncTrace skipped = SunshineSyncTask.syncToday(mContext, UNREACHABLE,
+                new CancellationSignal());
+        assertEquals(SyncTrace.OUTCOME_NO_WEATHER, skipped.getOutcome());
+        assertEquals(0, countRows());
+
+        sync(respondWith(loadFixture("forecast_14_days.json")));
+        SyncState fullSync = SyncState.query(mContext, location);
+        ForecastSnapshot before = ForecastRepository.getSnapshot(mContext);
+        SyncMetrics fullMetrics = SyncDiagnostics.getMetrics(SyncTrace.TIER_FULL);
+        SyncMetrics todayMetrics = SyncDiagnostics.getMetrics(SyncTrace.TIER_TODAY);
+        long fullStored = fullMetrics.getOutcomeCount(SyncTrace.OUTCOME_STORED);
+        long todayStored = todayMetrics.getOutcomeCount(SyncTrace.OUTCOME_STORED);
+
+        SyncTrace trace = SunshineSyncTask.syncToday(mContext, respondWith(today),
+                new CancellationSignal());
+
+        assertEquals(SyncTrace.TIER_TODAY, trace.getTier());
+        assertEquals(SyncTrace.OUTCOME_STORED, trace.getOutcome());
+        assertEquals(1, trace.getRows());
+        assertEquals(SyncTrace.NOT_RUN, trace.getStageMicros(SyncTrace.STAGE_DELETE));
+        assertEquals(RECORDED_DAYS, countRows());
+
+        ForecastSnapshot after = ForecastRepository.getSnapshot(mContext);
+        assertEquals(RECORDED_DAYS, after.size());
+        assertEquals(SunshineDateUtils.getNormalizedUtcDateForToday(), after.getDate(0));
+        assertEquals(501, after.getWeatherId(0));
+        assertEquals(14.5, after.getMaxTemp(0), 0.001);
+        for (int i = 1; i < RECORDED_DAYS; i++) {
+            assertEquals(before.getDate(i), after.getDate(i));
+            assertEquals(before.getWeatherId(i), after.getWeatherId(i));
+            assertEquals(before.getMaxTemp(i), after.getMaxTemp(i), 0.001);
+        }
+
+        /* The sync_state row still describes the full sync */
+        SyncState state = SyncState.query(mContext, location);
+        assertEquals(fullSync.getLastSync(), state.getLastSync());
+        assertEquals(fullSync.getPayloadHash(), state.getPayloadHash());
+
+        /* Each tier is counted on its own */
+        assertEquals(fullStored, fullMetrics.getOutcomeCount(SyncTrace.OUTCOME_STORED));
+        assertEquals(todayStored + 1, todayMetrics.getOutcomeCount(SyncTrace.OUTCOME_STORED));
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utilities;
+
+import android.os.Build;
+import android.os.CancellationSignal;
+import android.os.OperationCanceledException;
+
+import com.example.android.sunshine.BuildConfig;
+import com.example.android.sunshine.sync.Backoff;
+import com.example.android.sunshine.sync.CircuitBreaker;
+import com.example.android.sunshine.sync.FetchException;
+import com.example.android.sunshine.sync.RetryingFetcher;
+import com.example.android.sunshine.sync.SyncTrace;
+import com.example.android.sunshine.utils.FaultInjectingServer;
+import com.example.android.sunshine.utils.FaultInjectingServer.Fault;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+/**
+ * Fetches from a scripted local server that fails in the ways a real weather server does, and
+ * checks that each failure is classified, retried or given up on as it should be.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = Build.VERSION_CODES.LOLLIPOP)
+public class TestNetworkUtilsLocal {
+
+    private static final String FORECAST = "{\"cod\":\"200\",\"list\":[]}";
+
+    /* Retries straight away, so the tests don't wait out real backoff */
+    private static final RetryingFetcher.Clock NO_WAIT = new RetryingFetcher.Clock() {
+        @Override
+        public long now() {
+            return 0;
+        }
+
+        @Override
+        public void sleep(long millis) {
+        }
+    };
+
+    private static final RetryingFetcher.Listener IGNORE = new RetryingFetcher.Listener() {
+        @Override
+        public void onAttemptFailed(int attempt, int kind, long retryMillis) {
+        }
+    };
+
+    private FaultInjectingServer mServer;
+
+    @After
+    public void tearDown() throws IOException {
+        if (mServer != null) {
+            mServer.close();
+        }
+    }
+
+    private String fetch(SyncTrace trace, CancellationSignal signal) throws IOException {
+        return NetworkUtils.getResponseFromHttpUrl(mServer.getUrl("/weather"), trace, signal);
+    }
+
+    private int fetchAndClassifyFailure() {
+        try {
+            fetch(new SyncTrace(0), new CancellationSignal());
+            fail("The fetch should have failed");
+        } catch (IOException e) {
+            return FetchException.classify(e);
+        }
+        return -1;
+    }
+
+    @Test
+    public void testResponseIsReturnedAndTraced() throws IOException {
+        mServer = new FaultInjectingServer(Fault.respond(200, FORECAST));
+        SyncTrace trace = new SyncTrace(0);
+
+        assertEquals(FORECAST, fetch(trace, new CancellationSignal()));
+        assertEquals(FORECAST.length(), trace.getBytes());
+        int[] stages = {SyncTrace.STAGE_CONNECT, SyncTrace.STAGE_FIRST_BYTE,
+                SyncTrace.STAGE_DOWNLOAD};
+        for (int stage : stages) {
+            assertTrue(trace.getStageMicros(stage) != SyncTrace.NOT_RUN);
+        }
+    }
+
+    @Test
+    public void testErrorStatusesAreClassified() throws IOException {
+        mServer = new FaultInjectingServer(Fault.respond(503, "{}"), Fault.respond(404, "{}"));
+
+        assertEquals(FetchException.KIND_SERVER, fetchAndClassifyFailure());
+        assertEquals(FetchException.KIND_CLIENT, fetchAndClassifyFailure());
+    }
+
+    @Test
+    public void testDroppedAndTruncatedResponsesAreNetworkFailures() throws IOException {
+        mServer = new FaultInjectingServer(Fault.reset(), Fault.truncate(FORECAST));
+
+        assertEquals(FetchException.KIND_NETWORK, fetchAndClassifyFailure());
+        assertEquals(FetchException.KIND_NETWORK, fetchAndClassifyFailure());
+    }
+
+    @Test
+    public void testCancellingAbortsAStalledRequest() throws Exception {
+        mServer = new FaultInjectingServer(Fault.stall());
+        final CancellationSignal signal = new CancellationSignal();
+
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(200);
+                } catch (InterruptedException ignored) {
+                }
+                signal.cancel();
+            }
+        }).start();
+
+        long start = System.nanoTime();
+        try {
+            fetch(new SyncTrace(0), signal);
+            fail("The request should have been cancelled");
+        } catch (OperationCanceledException expected) {
+            /* This is what we want */
+        }
+        /* Well before the read timeout would have given up on it */
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+    }
+
+    @Test
+    public void testRetriesThroughAnOutage() throws IOException {
+        mServer = new FaultInjectingServer(Fault.respond(503, "{}"), Fault.reset(),
+                Fault.respond(200, FORECAST));
+        final URL url = mServer.getUrl("/weather");
+        RetryingFetcher fetcher = new RetryingFetcher(3, new Backoff(1, 1, new Random(0)),
+                new CircuitBreaker(5, 60000), NO_WAIT, IGNORE);
+
+        String response = fetcher.fetch(new RetryingFetcher.Attempt() {
+            @Override
+            public String fetch() throws IOException {
+                return NetworkUtils.getResponseFromHttpUrl(url, new SyncTrace(0),
+                        new CancellationSignal());
+            }
+        });
+
+        assertEquals(FORECAST, response);
+        assertEquals(3, mServer.getRequestCount());
+    }
+
+    @Test
+    public void testOpenBreakerLeavesTheServerAlone() throws IOException {
+        mServer = new FaultInjectingServer(Fault.respond(500, "{}"));
+        final URL url = mServer.getUrl("/weather");
+        CircuitBreaker breaker = new CircuitBreaker(2, 60000);
+        RetryingFetcher.Attempt attempt = new RetryingFetcher.Attempt() {
+            @Override
+            public String fetch() throws IOException {
+                return NetworkUtils.getResponseFromHttpUrl(url, new SyncTrace(0),
+                        new CancellationSignal());
+            }
+        };
+
+        for (int sync = 0; sync < 3; sync++) {
+            try {
+                new RetryingFetcher(2, new Backoff(1, 1, new Random(0)), breaker, NO_WAIT,
+                        IGNORE).fetch(attempt);
+                fail("The server is down");
+            } catch (FetchException expected) {
+                /* This is what we want */
+            }
+        }
+        assertEquals(CircuitBreaker.STATE_OPEN, breaker.getState());
+        assertEquals(2, mServer.getRequestCount());
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A tiny HTTP server on the loopback interface that answers requests from a script, for testing
+ * how fetches cope with a misbehaving weather server. The nth request gets the nth
+ * {@link Fault}; once the script runs out, every request gets the last one. Connections are
+ * handled one at a time, in the order they arrive, so a test always sees the same sequence.
+ */
+public final class FaultInjectingServer {
+
+    /**
+     * What the server does with one request.
+     */
+    public static final class Fault {
+
+        static final int RESPOND = 0;
+        static final int STALL = 1;
+        static final int RESET = 2;
+        static final int TRUNCATE = 3;
+
+        final int mType;
+        final int mStatus;
+        final String mBody;
+
+        private Fault(int type, int status, String body) {
+            mType = type;
+            mStatus = status;
+            mBody = body;
+        }
+
+        /**
+         * @return A fault that answers properly with the given status and body
+         */
+        public static Fault respond(int status, String body) {
+            return new Fault(RESPOND, status, body);
+        }
+
+        /**
+         * @return A fault that reads the request and then never answers, until the server is
+         * closed
+         */
+        public static Fault stall() {
+            return new Fault(STALL, 0, null);
+        }
+
+        /**
+         * @return A fault that starts a response and then drops the connection partway through
+         * it. Dropping it before answering at all would be hidden by HttpURLConnection, which
+         * quietly repeats a GET whose connection was reset before the response began.
+         */
+        public static Fault reset() {
+            return new Fault(RESET, 0, null);
+        }
+
+        /**
+         * @return A fault that promises the whole body but sends only the first half of it
+         */
+        public static Fault truncate(String body) {
+            return new Fault(TRUNCATE, 200, body);
+        }
+    }
+
+    private final ServerSocket mServerSocket;
+    private final List<Fault> mScript;
+    private final AtomicInteger mRequests = new AtomicInteger();
+    private final List<Socket> mStalled = new ArrayList<>();
+    private final Thread mThread;
+
+    /**
+     * Starts serving straight away.
+     *
+     * @param script What to do with each request, in order
+     * @throws IOException If the server can't listen
+     */
+    public FaultInjectingServer(Fault... script) throws IOException {
+        mScript = Arrays.asList(script);
+        mServerSocket = new ServerSocket();
+        mServerSocket.bind(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), 0));
+        mThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                serve();
+            }
+        }, "FaultInjectingServer");
+        mThread.setDaemon(true);
+        mThread.start();
+    }
+
+    /**
+     * @param path The path to request, starting with a slash
+     * @return The URL of that path on this server
+     */
+    public URL getUrl(String path) throws IOException {
+        return new URL("http", "127.0.0.1", mServerSocket.getLocalPort(), path);
+    }
+
+    /**
+     * @return How many requests the server has read so far
+     */
+    public int getRequestCount() {
+        return mRequests.get();
+    }
+
+    private void serve() {
+        while (!mServerSocket.isClosed()) {
+            try {
+                Socket socket = mServerSocket.accept();
+                readRequest(socket);
+                int request = mRequests.getAndIncrement();
+                handle(socket, mScript.get(Math.min(request, mScript.size() - 1)));
+            } catch (IOException e) {
+                /* Closed, or the client gave up on a connection; either way, on to the next */
+            }
+        }
+    }
+
+    private static void readRequest(Socket socket) throws IOException {
+        BufferedReader reader = new BufferedReader(
+                new InputStreamReader(socket.getInputStream(), "US-ASCII"));
+        String line;
+        while ((line = reader.readLine()) != null && !line.isEmpty()) {
+            /* Only the end of the headers matters; requests are GETs without a body */
+        }
+    }
+
+    private void handle(Socket socket, Fault fault) throws IOException {
+        switch (fault.mType) {
+            case Fault.STALL:
+                synchronized (mStalled) {
+                    mStalled.add(socket);
+                }
+                return;
+            case Fault.RESET:
+                respond(socket, 200, "{\"cod\":\"200\",\"list\":[]}", true);
+                socket.setSoLinger(true, 0);
+                socket.close();
+                return;
+            default:
+                respond(socket, fault.mStatus, fault.mBody, fault.mType == Fault.TRUNCATE);
+                socket.close();
+        }
+    }
+
+    private static void respond(Socket socket, int status, String response, boolean half)
+            throws IOException {
+        byte[] body = response.getBytes("UTF-8");
+        String headers = "HTTP/1.1 " + status + " Scripted\r\n"
+                + "Content-Type: application/json; charset=utf-8\r\n"
+                + "Content-Length: " + body.length + "\r\n"
+                + "Connection: close\r\n\r\n";
+        OutputStream out = socket.getOutputStream();
+        out.write(headers.getBytes("US-ASCII"));
+        out.write(body, 0, half ? body.length / 2 : body.length);
+        out.flush();
+    }
+
+    /**
+     * Stops serving and drops every connection, including stalled ones.
+     */
+    public void close() throws IOException {
+        mServerSocket.close();
+        synchronized (mStalled) {
+            for (Socket socket : mStalled) {
+                socket.close();
+            }
+        }
+        try {
+            mThread.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
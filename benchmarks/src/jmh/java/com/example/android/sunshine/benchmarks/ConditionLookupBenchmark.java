@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.benchmarks;
+
+import com.example.android.sunshine.weather.WeatherConditions;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+
+/**
+ * Condition lookups, done for every row bound in the forecast list, compared against the chains
+ * they replaced. Each invocation looks up a batch of ids drawn from the documented conditions,
+ * weighted towards the common ones, with a few unknown ids mixed in. Shuffling the batch keeps
+ * the branch predictor from learning a fixed order, as it can't on a real forecast either.
+ */
+@State(Scope.Benchmark)
+public class ConditionLookupBenchmark {
+
+    private static final int BATCH_SIZE = 256;
+
+    private static final int[] COMMON_IDS = {800, 801, 802, 803, 804, 500, 501, 300, 600, 701};
+    private static final int[] RARE_IDS = {211, 502, 511, 531, 622, 741, 761, 781, 905, 957, 962};
+    private static final int[] UNKNOWN_IDS = {0, 505, 999, -1};
+
+    private final int[] mWeatherIds = new int[BATCH_SIZE];
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            int roll = random.nextInt(100);
+            if (roll < 80) {
+                mWeatherIds[i] = COMMON_IDS[random.nextInt(COMMON_IDS.length)];
+            } else if (roll < 98) {
+                mWeatherIds[i] = RARE_IDS[random.nextInt(RARE_IDS.length)];
+            } else {
+                mWeatherIds[i] = UNKNOWN_IDS[random.nextInt(UNKNOWN_IDS.length)];
+            }
+        }
+    }
+
+    @Benchmark
+    public int iconClassChain() {
+        int sum = 0;
+        for (int weatherId : mWeatherIds) {
+            sum += LegacyConditionLookup.iconClass(weatherId);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public int iconClassTable() {
+        int sum = 0;
+        for (int weatherId : mWeatherIds) {
+            sum += WeatherConditions.getIconClass(weatherId);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public int descriptionKeyChain() {
+        int sum = 0;
+        for (int weatherId : mWeatherIds) {
+            sum += LegacyConditionLookup.descriptionKey(weatherId);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public int descriptionKeyTable() {
+        int sum = 0;
+        for (int weatherId : mWeatherIds) {
+            sum += WeatherConditions.getDescriptionKey(weatherId);
+        }
+        return sum;
+    }
+}
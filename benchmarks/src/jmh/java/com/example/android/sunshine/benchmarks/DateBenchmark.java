@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.benchmarks;
+
+import com.example.android.sunshine.utilities.DayContext;
+import com.example.android.sunshine.utilities.FriendlyDates;
+import com.example.android.sunshine.utilities.NormalizedDates;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * SunshineDateUtils.normalizeDate, run for every row the provider inserts, and
+ * SunshineDateUtils.getFriendlyDateString, run for every list item bound and every notification.
+ * The *CachedDay variants format with a long-lived DayContext, the way SunshineDateUtils does,
+ * rather than working out today, the offsets and the weekday formatter for every call.
+ */
+@State(Scope.Benchmark)
+public class DateBenchmark {
+
+    /*
+     * How many days after "today" the formatted date is. 0 and 1 take the "Today" / "Tomorrow"
+     * path, 3 returns a day name, and 10 returns an abbreviated date.
+     */
+    @Param({"0", "1", "3", "10"})
+    public int daysAfterToday;
+
+    private TimeZone mTimeZone;
+    private long mNow;
+    private long mDate;
+    private FriendlyDates.Labels mLabels;
+    private DayContext mDayContext;
+
+    /**
+     * Stands in for the resources and android.text.format.DateUtils with the closest
+     * java.text equivalents, which do comparable work.
+     */
+    static final class JavaLabels implements FriendlyDates.Labels {
+        @Override
+        public String today() {
+            return "Today";
+        }
+
+        @Override
+        public String tomorrow() {
+            return "Tomorrow";
+        }
+
+        @Override
+        public String readableDate(long localDateMillis) {
+            return new SimpleDateFormat("EEEE, MMMM d").format(localDateMillis);
+        }
+
+        @Override
+        public String abbreviatedDate(long localDateMillis) {
+            return new SimpleDateFormat("EEE, MMM d").format(localDateMillis);
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        mTimeZone = TimeZone.getTimeZone("America/Los_Angeles");
+        /* 6:30 PM on the day the fixture was recorded, in Mountain View */
+        mNow = Fixtures.RECORDED_START_DAY + 25 * 60 * 60 * 1000L + 30 * 60 * 1000L;
+        mDate = Fixtures.RECORDED_START_DAY + daysAfterToday * NormalizedDates.DAY_IN_MILLIS;
+        mLabels = new JavaLabels();
+        mDayContext = new DayContext(new DayContext.Clock() {
+            @Override
+            public long currentTimeMillis() {
+                return mNow;
+            }
+        }, mTimeZone, Locale.getDefault());
+    }
+
+    @Benchmark
+    public long normalizeDate() {
+        return NormalizedDates.normalize(mNow);
+    }
+
+    @Benchmark
+    public String friendlyDateString() {
+        return FriendlyDates.format(mLabels, mDate, false, mNow, mTimeZone);
+    }
+
+    @Benchmark
+    public String friendlyDateStringShowFullDate() {
+        return FriendlyDates.format(mLabels, mDate, true, mNow, mTimeZone);
+    }
+
+    /* What SunshineDateUtils.getNormalizedUtcDateForToday did before it kept a DayContext */
+    @Benchmark
+    public long normalizedUtcDateForToday() {
+        return NormalizedDates.normalizedUtcDateForToday(System.currentTimeMillis(),
+                TimeZone.getDefault());
+    }
+
+    @Benchmark
+    public long normalizedUtcDateForTodayCachedDay() {
+        return mDayContext.getNormalizedUtcDateForToday();
+    }
+
+    @Benchmark
+    public String friendlyDateStringCachedDay() {
+        return FriendlyDates.format(mLabels, mDate, false, mDayContext);
+    }
+
+    @Benchmark
+    public String friendlyDateStringShowFullDateCachedDay() {
+        return FriendlyDates.format(mLabels, mDate, true, mDayContext);
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.benchmarks;
+
+import com.example.android.sunshine.utilities.NormalizedDates;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * The weather table's unique date index with dates stored in milliseconds (schema version 3)
+ * and as day numbers (version 4), at row counts far beyond the couple of weeks Sunshine keeps,
+ * so that the size of the keys dominates. Runs against SQLite through the sqlite-jdbc driver.
+ * <p>
+ * Measures looking up one day, the provider's "today onwards" query for the list, and writing a
+ * two week forecast (the sync's bulkInsert). The size of the index and of the whole database are
+ * printed once per trial, as JMH has no way of reporting them as results.
+ */
+@State(Scope.Benchmark)
+public class DateIndexBenchmark {
+
+    /* The CREATE statement from WeatherDbHelper; both layouts use the same schema */
+    private static final String CREATE_TABLE = "CREATE TABLE weather ("
+            + "_id INTEGER PRIMARY KEY AUTOINCREMENT, "
+            + "date INTEGER NOT NULL, "
+            + "weather_id INTEGER NOT NULL,"
+            + "min REAL NOT NULL, "
+            + "max REAL NOT NULL, "
+            + "humidity REAL NOT NULL, "
+            + "pressure REAL NOT NULL, "
+            + "wind REAL NOT NULL, "
+            + "degrees REAL NOT NULL, "
+            + " UNIQUE (date) ON CONFLICT REPLACE);";
+
+    private static final String INSERT = "INSERT INTO weather "
+            + "(date, weather_id, min, max, humidity, pressure, wind, degrees) "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private static final int FORECAST_DAYS = 14;
+
+    @Param({"10000", "1000000"})
+    public int rows;
+
+    @Param({"millis", "epochDay"})
+    public String layout;
+
+    private File mFile;
+    private Connection mConnection;
+    private PreparedStatement mLookup;
+    private PreparedStatement mTodayOnwards;
+    private PreparedStatement mInsert;
+
+    /* The first stored day, and a cursor that walks through the stored days for lookups */
+    private long mFirstDay;
+    private int mNextLookup;
+
+    private long key(long epochDay) {
+        return "millis".equals(layout) ? NormalizedDates.fromEpochDay(epochDay) : epochDay;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, SQLException {
+        mFile = File.createTempFile("weather", ".db");
+        mConnection = DriverManager.getConnection("jdbc:sqlite:" + mFile.getAbsolutePath());
+
+        Statement statement = mConnection.createStatement();
+        statement.execute(CREATE_TABLE);
+        statement.close();
+
+        /* The stored days start with the recorded forecast's first day */
+        mFirstDay = NormalizedDates.toEpochDay(Fixtures.RECORDED_START_DAY);
+        mInsert = mConnection.prepareStatement(INSERT);
+        mConnection.setAutoCommit(false);
+        for (int i = 0; i < rows; i++) {
+            bindDay(mFirstDay + i, i);
+            mInsert.executeUpdate();
+        }
+        mConnection.commit();
+        mConnection.setAutoCommit(true);
+
+        Statement vacuum = mConnection.createStatement();
+        vacuum.execute("VACUUM");
+        vacuum.close();
+        printSizes();
+
+        mLookup = mConnection.prepareStatement(
+                "SELECT weather_id, max, min FROM weather WHERE date = ?");
+        mTodayOnwards = mConnection.prepareStatement("SELECT date, weather_id, max, min"
+                + " FROM weather WHERE date >= ? ORDER BY date ASC");
+    }
+
+    private void bindDay(long epochDay, int i) throws SQLException {
+        mInsert.setLong(1, key(epochDay));
+        mInsert.setInt(2, 800 + i % 5);
+        mInsert.setDouble(3, 10 + i % 7);
+        mInsert.setDouble(4, 20 + i % 11);
+        mInsert.setDouble(5, 50);
+        mInsert.setDouble(6, 1013);
+        mInsert.setDouble(7, 3.5);
+        mInsert.setDouble(8, 180);
+    }
+
+    private void printSizes() throws SQLException {
+        Statement statement = mConnection.createStatement();
+        ResultSet pages = statement.executeQuery(
+                "SELECT page_count * page_size FROM pragma_page_count, pragma_page_size");
+        long databaseBytes = pages.next() ? pages.getLong(1) : -1;
+        pages.close();
+
+        long indexBytes = -1;
+        try {
+            ResultSet index = statement.executeQuery("SELECT SUM(pgsize) FROM dbstat"
+                    + " WHERE name = 'sqlite_autoindex_weather_1'");
+            indexBytes = index.next() ? index.getLong(1) : -1;
+            index.close();
+        } catch (SQLException e) {
+            /* This build of SQLite doesn't have the dbstat table; the database size will do */
+        }
+        statement.close();
+
+        System.out.println("\n" + layout + ", " + rows + " rows: index " + indexBytes
+                + " bytes, database " + databaseBytes + " bytes");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        mConnection.close();
+        if (!mFile.delete()) {
+            mFile.deleteOnExit();
+        }
+    }
+
+    @Benchmark
+    public int lookupDay() throws SQLException {
+        /* Step through the stored days with a stride, so lookups don't hit the same pages */
+        mNextLookup = (mNextLookup + 7919) % rows;
+        mLookup.setLong(1, key(mFirstDay + mNextLookup));
+        ResultSet result = mLookup.executeQuery();
+        int weatherId = result.next() ? result.getInt(1) : -1;
+        result.close();
+        return weatherId;
+    }
+
+    @Benchmark
+    public int queryTodayOnwards() throws SQLException {
+        mTodayOnwards.setLong(1, key(mFirstDay + rows - FORECAST_DAYS));
+        ResultSet result = mTodayOnwards.executeQuery();
+        int count = 0;
+        while (result.next()) {
+            count += result.getInt(2);
+        }
+        result.close();
+        return count;
+    }
+
+    @Benchmark
+    public void replaceForecast() throws SQLException {
+        mConnection.setAutoCommit(false);
+        long today = mFirstDay + rows - FORECAST_DAYS;
+        for (int i = 0; i < FORECAST_DAYS; i++) {
+            bindDay(today + i, i);
+            mInsert.executeUpdate();
+        }
+        mConnection.commit();
+        mConnection.setAutoCommit(true);
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+
+/**
+ * Loads the recorded server responses under src/jmh/resources/fixtures.
+ */
+final class Fixtures {
+
+    /* A 14 day forecast for Mountain View, as returned by the daily forecast endpoint */
+    static final String FORECAST_14_DAYS = "forecast_14_days.json";
+
+    /* The first day of the same forecast on its own, the size of a today-only response */
+    static final String FORECAST_1_DAY = "forecast_1_day.json";
+
+    /* The normalized UTC date the recorded forecast was fetched on (September 22, 2016) */
+    static final long RECORDED_START_DAY = 1474502400000L;
+
+    private Fixtures() {
+    }
+
+    static String load(String name) {
+        InputStream in = Fixtures.class.getResourceAsStream("/fixtures/" + name);
+        if (in == null) {
+            throw new IllegalStateException("Missing fixture: " + name);
+        }
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return new String(out.toByteArray(), Charset.forName("UTF-8"));
+        } catch (IOException e) {
+            throw new IllegalStateException("Couldn't read fixture: " + name, e);
+        } finally {
+            try {
+                in.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.benchmarks;
+
+import com.example.android.sunshine.utilities.ForecastJsonBinder;
+import com.example.android.sunshine.utilities.OpenWeatherJsonParser;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Parsing of a recorded forecast response, the first thing a sync does with the network result.
+ * A sync binds the response with the generated {@link ForecastJsonBinder}; {@link #parseDom()}
+ * is the JSONObject path it replaced, which OpenWeatherJsonParser still offers, kept here for
+ * comparison. Each is run on a one-day response, the size the today-only sync fetches, and on a
+ * full fourteen-day one.
+ */
+@State(Scope.Benchmark)
+public class ForecastParsingBenchmark {
+
+    /* The recorded response to parse: one day, or fourteen */
+    @Param({Fixtures.FORECAST_1_DAY, Fixtures.FORECAST_14_DAYS})
+    public String fixture;
+
+    private String mForecastJson;
+
+    @Setup
+    public void loadFixture() {
+        mForecastJson = Fixtures.load(fixture);
+    }
+
+    @Benchmark
+    public OpenWeatherJsonParser.ParsedForecast parseDom() throws JSONException {
+        return OpenWeatherJsonParser.parse(mForecastJson, Fixtures.RECORDED_START_DAY);
+    }
+
+    @Benchmark
+    public OpenWeatherJsonParser.ParsedForecast parseDomToday() throws JSONException {
+        return OpenWeatherJsonParser.parse(new JSONObject(mForecastJson),
+                Fixtures.RECORDED_START_DAY, 0, 1);
+    }
+
+    @Benchmark
+    public OpenWeatherJsonParser.ParsedForecast bind() throws JSONException {
+        return ForecastJsonBinder.bind(mForecastJson, Fixtures.RECORDED_START_DAY);
+    }
+}
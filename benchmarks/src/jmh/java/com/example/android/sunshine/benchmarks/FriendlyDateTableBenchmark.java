@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.benchmarks;
+
+import com.example.android.sunshine.utilities.DayContext;
+import com.example.android.sunshine.utilities.FriendlyDateTable;
+import com.example.android.sunshine.utilities.FriendlyDates;
+import com.example.android.sunshine.utilities.NormalizedDates;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * The date strings of binding the whole forecast list once, as happens on every scroll through it
+ * and every rebind after a sync: the 14 short labels of the list plus the full label of the
+ * details. Compares formatting each one with FriendlyDates against looking it up in a
+ * FriendlyDateTable, which is what SunshineDateUtils.getFriendlyDateString does.
+ */
+@State(Scope.Benchmark)
+public class FriendlyDateTableBenchmark {
+
+    private static final int FORECAST_DAYS = 14;
+
+    private FriendlyDates.Labels mLabels;
+    private DayContext mDayContext;
+    private FriendlyDateTable mTable;
+    private long mToday;
+
+    @Setup
+    public void setUp() {
+        /* 6:30 PM on the day the fixture was recorded, in Mountain View */
+        final long now = Fixtures.RECORDED_START_DAY + 25 * 60 * 60 * 1000L + 30 * 60 * 1000L;
+        mLabels = new DateBenchmark.JavaLabels();
+        mDayContext = new DayContext(new DayContext.Clock() {
+            @Override
+            public long currentTimeMillis() {
+                return now;
+            }
+        }, TimeZone.getTimeZone("America/Los_Angeles"), Locale.getDefault());
+        mTable = new FriendlyDateTable(mLabels, mDayContext, 16);
+        mToday = mDayContext.getNormalizedUtcDateForToday();
+    }
+
+    @Benchmark
+    public void bindForecast(Blackhole blackhole) {
+        for (int i = 0; i < FORECAST_DAYS; i++) {
+            long date = mToday + i * NormalizedDates.DAY_IN_MILLIS;
+            blackhole.consume(FriendlyDates.format(mLabels, date, false, mDayContext));
+        }
+        blackhole.consume(FriendlyDates.format(mLabels, mToday, true, mDayContext));
+    }
+
+    @Benchmark
+    public void bindForecastFromTable(Blackhole blackhole) {
+        if (!mTable.isCurrent(mDayContext)) {
+            mTable = new FriendlyDateTable(mLabels, mDayContext, 16);
+        }
+        for (int i = 0; i < FORECAST_DAYS; i++) {
+            long date = mToday + i * NormalizedDates.DAY_IN_MILLIS;
+            blackhole.consume(mTable.get(date, false));
+        }
+        blackhole.consume(mTable.get(mToday, true));
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.benchmarks;
+
+import com.example.android.sunshine.weather.WeatherConditions;
+
+/**
+ * The if/else and switch chains SunshineWeatherUtils and the watch face used before the
+ * WeatherConditions tables, kept as the baseline for {@link ConditionLookupBenchmark}. They
+ * return icon classes and description keys instead of resource ids, which doesn't change the
+ * shape of the work.
+ */
+final class LegacyConditionLookup {
+
+    private LegacyConditionLookup() {
+    }
+
+    static int iconClass(int weatherId) {
+        if (weatherId >= 200 && weatherId <= 232) {
+            return WeatherConditions.ICON_STORM;
+        } else if (weatherId >= 300 && weatherId <= 321) {
+            return WeatherConditions.ICON_LIGHT_RAIN;
+        } else if (weatherId >= 500 && weatherId <= 504) {
+            return WeatherConditions.ICON_RAIN;
+        } else if (weatherId == 511) {
+            return WeatherConditions.ICON_SNOW;
+        } else if (weatherId >= 520 && weatherId <= 531) {
+            return WeatherConditions.ICON_RAIN;
+        } else if (weatherId >= 600 && weatherId <= 622) {
+            return WeatherConditions.ICON_SNOW;
+        } else if (weatherId >= 701 && weatherId <= 761) {
+            return WeatherConditions.ICON_FOG;
+        } else if (weatherId == 761 || weatherId == 771 || weatherId == 781) {
+            return WeatherConditions.ICON_STORM;
+        } else if (weatherId == 800) {
+            return WeatherConditions.ICON_CLEAR;
+        } else if (weatherId == 801) {
+            return WeatherConditions.ICON_LIGHT_CLOUDS;
+        } else if (weatherId >= 802 && weatherId <= 804) {
+            return WeatherConditions.ICON_CLOUDS;
+        } else if (weatherId >= 900 && weatherId <= 906) {
+            return WeatherConditions.ICON_STORM;
+        } else if (weatherId >= 958 && weatherId <= 962) {
+            return WeatherConditions.ICON_STORM;
+        } else if (weatherId >= 951 && weatherId <= 957) {
+            return WeatherConditions.ICON_CLEAR;
+        }
+        return WeatherConditions.ICON_STORM;
+    }
+
+    static int descriptionKey(int weatherId) {
+        if (weatherId >= 200 && weatherId <= 232) {
+            return 200;
+        } else if (weatherId >= 300 && weatherId <= 321) {
+            return 300;
+        } else switch (weatherId) {
+            case 500:
+                return 500;
+            case 501:
+                return 501;
+            case 502:
+                return 502;
+            case 503:
+                return 503;
+            case 504:
+                return 504;
+            case 511:
+                return 511;
+            case 520:
+                return 520;
+            case 531:
+                return 531;
+            case 600:
+                return 600;
+            case 601:
+                return 601;
+            case 602:
+                return 602;
+            case 611:
+                return 611;
+            case 612:
+                return 612;
+            case 615:
+                return 615;
+            case 616:
+                return 616;
+            case 620:
+                return 620;
+            case 621:
+                return 621;
+            case 622:
+                return 622;
+            case 701:
+                return 701;
+            case 711:
+                return 711;
+            case 721:
+                return 721;
+            case 731:
+                return 731;
+            case 741:
+                return 741;
+            case 751:
+                return 751;
+            case 761:
+                return 761;
+            case 762:
+                return 762;
+            case 771:
+                return 771;
+            case 781:
+                return 781;
+            case 800:
+                return 800;
+            case 801:
+                return 801;
+            case 802:
+                return 802;
+            case 803:
+                return 803;
+            case 804:
+                return 804;
+            case 900:
+                return 900;
+            case 901:
+                return 901;
+            case 902:
+                return 902;
+            case 903:
+                return 903;
+            case 904:
+                return 904;
+            case 905:
+                return 905;
+            case 906:
+                return 906;
+            case 951:
+                return 951;
+            case 952:
+                return 952;
+            case 953:
+                return 953;
+            case 954:
+                return 954;
+            case 955:
+                return 955;
+            case 956:
+                return 956;
+            case 957:
+                return 957;
+            case 958:
+                return 958;
+            case 959:
+                return 959;
+            case 960:
+                return 960;
+            case 961:
+                return 961;
+            case 962:
+                return 962;
+            default:
+                return WeatherConditions.DESCRIPTION_UNKNOWN;
+        }
+    }
+}
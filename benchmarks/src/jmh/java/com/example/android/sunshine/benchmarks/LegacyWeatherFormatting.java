@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.benchmarks;
+
+/**
+ * How SunshineWeatherUtils formatted temperatures and wind before WeatherFormatter: a
+ * String.format per value and a chain of comparisons for the compass direction. Kept as the
+ * baseline for {@link WeatherFormattingBenchmark}.
+ */
+final class LegacyWeatherFormatting {
+
+    /* Kilometers per hour to miles per hour */
+    private static final float KMH_TO_MPH = .621371192237334f;
+
+    private LegacyWeatherFormatting() {
+    }
+
+    /**
+     * @param temperatureInCelsius Temperature in degrees Celsius(°C)
+     * @return Temperature in degrees Fahrenheit (°F)
+     */
+    static double celsiusToFahrenheit(double temperatureInCelsius) {
+        return (temperatureInCelsius * 1.8) + 32;
+    }
+
+    /**
+     * @param format      The temperature format, such as "%1.0f°"
+     * @param temperature Temperature in degrees Celsius (°C)
+     * @param isMetric    false to display the temperature in Fahrenheit
+     * @return The formatted temperature
+     */
+    static String formatTemperature(String format, double temperature, boolean isMetric) {
+        if (!isMetric) {
+            temperature = celsiusToFahrenheit(temperature);
+        }
+
+        /* For presentation, assume the user doesn't care about tenths of a degree. */
+        return String.format(format, temperature);
+    }
+
+    /**
+     * @param degrees Degrees as measured on a compass, NOT temperature degrees!
+     * @return The compass direction, such as "NW", or "Unknown" for a value outside [0, 360)
+     */
+    static String windDirection(float degrees) {
+        if (degrees >= 337.5 || degrees < 22.5) {
+            return "N";
+        } else if (degrees >= 22.5 && degrees < 67.5) {
+            return "NE";
+        } else if (degrees >= 67.5 && degrees < 112.5) {
+            return "E";
+        } else if (degrees >= 112.5 && degrees < 157.5) {
+            return "SE";
+        } else if (degrees >= 157.5 && degrees < 202.5) {
+            return "S";
+        } else if (degrees >= 202.5 && degrees < 247.5) {
+            return "SW";
+        } else if (degrees >= 247.5 && degrees < 292.5) {
+            return "W";
+        } else if (degrees >= 292.5 && degrees < 337.5) {
+            return "NW";
+        }
+        return "Unknown";
+    }
+
+    /**
+     * @param kmhFormat Wind format for kilometers per hour, such as "%1$1.0f km/h %2$s"
+     * @param mphFormat Wind format for miles per hour
+     * @param windSpeed Wind speed in kilometers / hour
+     * @param degrees   Wind direction in compass degrees
+     * @param isMetric  false to display the wind speed in miles per hour
+     * @return Wind String in the following form: "2 km/h SW"
+     */
+    static String formatWind(String kmhFormat, String mphFormat, float windSpeed,
+                                    float degrees, boolean isMetric) {
+        String windFormat = kmhFormat;
+
+        if (!isMetric) {
+            windFormat = mphFormat;
+            windSpeed = KMH_TO_MPH * windSpeed;
+        }
+
+        return String.format(windFormat, windSpeed, windDirection(degrees));
+    }
+}
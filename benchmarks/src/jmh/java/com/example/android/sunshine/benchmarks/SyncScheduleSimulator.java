@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.benchmarks;
+
+import com.example.android.sunshine.sync.SyncSchedule;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Simulates a day of periodic syncs from 100,000 installs and prints the request rate the
+ * weather server would see, once with the old scheduling and once with {@link SyncSchedule}.
+ * <p>
+ * Most of the installs start the app within the same few minutes, as they do when an update is
+ * rolled out, and the rest started it at random times over the interval before. Jobs are assumed
+ * to run soon after their window opens, as they do on an idle device with a network:
+ * <ul>
+ * <li>The old scheduling is a recurring job whose window opens one interval after the app
+ * started, and after that one interval after each run.</li>
+ * <li>The new scheduling is a one-off job at the install's next sync time, which each run
+ * replaces with the one after.</li>
+ * </ul>
+ * Run with: ./gradlew :benchmarks:simulateSyncSchedule
+ */
+public final class SyncScheduleSimulator {
+
+    private static final int INSTALLS = 100000;
+
+    /* How many of them start the app in the burst */
+    private static final double BURST_SHARE = 0.6;
+    private static final long BURST_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    /* The same as SunshineSyncUtils */
+    private static final long INTERVAL_MILLIS = TimeUnit.HOURS.toMillis(3);
+    private static final long PUBLICATION_DELAY_MILLIS = TimeUnit.MINUTES.toMillis(10);
+    private static final long MIN_SPACING_MILLIS = INTERVAL_MILLIS / 2;
+
+    /* How long after its window opens a job actually runs, at most */
+    private static final long RUN_DELAY_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    /* The burst starts at 09:17 UTC on September 22, 2016, between two publications */
+    private static final long BURST_START = 1474502400000L + TimeUnit.MINUTES.toMillis(9 * 60 + 17);
+
+    private static final long DAY_MILLIS = TimeUnit.DAYS.toMillis(1);
+    private static final long MINUTE_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    /* How wide each bar of the printed chart is */
+    private static final int CHART_BUCKET_MINUTES = 10;
+    private static final int CHART_WIDTH = 60;
+
+    private SyncScheduleSimulator() {
+    }
+
+    public static void main(String[] args) {
+        Random random = new Random(args.length > 0 ? Long.parseLong(args[0]) : 42);
+
+        int[] legacy = new int[(int) (DAY_MILLIS / MINUTE_MILLIS)];
+        int[] phased = new int[legacy.length];
+        int phasedSoonAfterPublication = 0;
+        int legacySoonAfterPublication = 0;
+
+        for (int i = 0; i < INSTALLS; i++) {
+            long started = random.nextDouble() < BURST_SHARE
+                    ? BURST_START + (long) (random.nextDouble() * BURST_MILLIS)
+                    : BURST_START - (long) (random.nextDouble() * INTERVAL_MILLIS);
+
+            /* The old way: every interval, counted from when the app started */
+            long run = started + INTERVAL_MILLIS + runDelay(random);
+            while (run < BURST_START + DAY_MILLIS) {
+                legacySoonAfterPublication += count(legacy, run);
+                run += INTERVAL_MILLIS + runDelay(random);
+            }
+
+            /* The new way: at the install's own time in each interval */
+            String installId = new UUID(random.nextLong(), random.nextLong()).toString();
+            SyncSchedule schedule =
+                    new SyncSchedule(INTERVAL_MILLIS, PUBLICATION_DELAY_MILLIS, installId);
+            run = schedule.getNextSyncTime(started) + runDelay(random);
+            while (run < BURST_START + DAY_MILLIS) {
+                phasedSoonAfterPublication += count(phased, run);
+                run = schedule.getNextSyncTime(run + MIN_SPACING_MILLIS) + runDelay(random);
+            }
+        }
+
+        System.out.println(String.format(Locale.US,
+                "%,d installs, %.0f%% of them starting the app within %d minutes at 09:17 UTC;"
+                        + " requests over the following day", INSTALLS, BURST_SHARE * 100,
+                TimeUnit.MILLISECONDS.toMinutes(BURST_MILLIS)));
+        System.out.println();
+        report("Old: recurring every 3 hours from when the app started", legacy,
+                legacySoonAfterPublication);
+        report("New: at each install's phase after each publication", phased,
+                phasedSoonAfterPublication);
+    }
+
+    private static long runDelay(Random random) {
+        return (long) (random.nextDouble() * RUN_DELAY_MILLIS);
+    }
+
+    /**
+     * Counts a request in its minute, if it falls in the simulated day.
+     *
+     * @return 1 if the request was made within the publication delay of a publication
+     */
+    private static int count(int[] perMinute, long time) {
+        if (time < BURST_START) {
+            return 0;
+        }
+        perMinute[(int) ((time - BURST_START) / MINUTE_MILLIS)]++;
+        return time % INTERVAL_MILLIS < PUBLICATION_DELAY_MILLIS ? 1 : 0;
+    }
+
+    private static void report(String title, int[] perMinute, int soonAfterPublication) {
+        long total = 0;
+        for (int requests : perMinute) {
+            total += requests;
+        }
+        int[] sorted = perMinute.clone();
+        Arrays.sort(sorted);
+        double mean = (double) total / perMinute.length;
+        int peak = sorted[sorted.length - 1];
+
+        System.out.println(title);
+        System.out.println(String.format(Locale.US,
+                "  %,d requests; per minute: mean %.1f, median %d, p99 %d, peak %d"
+                        + " (%.1fx the mean)", total, mean, sorted[sorted.length / 2],
+                sorted[(int) (sorted.length * 0.99)], peak, peak / mean));
+        System.out.println(String.format(Locale.US,
+                "  %.1f%% made within %d minutes of a forecast being published, before it has"
+                        + " reached every server",
+                100.0 * soonAfterPublication / total,
+                TimeUnit.MILLISECONDS.toMinutes(PUBLICATION_DELAY_MILLIS)));
+
+        /* Two intervals from the first publication after the burst's syncs began */
+        long chartStart = BURST_START + INTERVAL_MILLIS;
+        chartStart -= chartStart % INTERVAL_MILLIS;
+        int firstMinute = (int) ((chartStart - BURST_START) / MINUTE_MILLIS);
+        int buckets = (int) (TimeUnit.MILLISECONDS.toMinutes(2 * INTERVAL_MILLIS)
+                / CHART_BUCKET_MINUTES);
+        int[] chart = new int[buckets];
+        int highest = 1;
+        for (int bucket = 0; bucket < buckets; bucket++) {
+            for (int i = 0; i < CHART_BUCKET_MINUTES; i++) {
+                chart[bucket] += perMinute[firstMinute + bucket * CHART_BUCKET_MINUTES + i];
+            }
+            highest = Math.max(highest, chart[bucket]);
+        }
+        for (int bucket = 0; bucket < buckets; bucket++) {
+            long minuteOfDay = TimeUnit.MILLISECONDS.toMinutes(
+                    (chartStart + bucket * CHART_BUCKET_MINUTES * MINUTE_MILLIS) % DAY_MILLIS);
+            char[] bar = new char[chart[bucket] * CHART_WIDTH / highest];
+            Arrays.fill(bar, '#');
+            System.out.println(String.format(Locale.US, "  %02d:%02d %,7d %s",
+                    minuteOfDay / 60, minuteOfDay % 60, chart[bucket], new String(bar)));
+        }
+        System.out.println();
+    }
+}
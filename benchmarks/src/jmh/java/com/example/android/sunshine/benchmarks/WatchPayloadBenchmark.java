@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.benchmarks;
+
+import com.example.android.sunshine.data.ForecastSnapshot;
+import com.example.android.sunshine.utilities.OpenWeatherJsonParser;
+import com.example.android.sunshine.utilities.WatchWeatherPayload;
+
+import org.json.JSONException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Building today's weather message on the phone and reading it back on the watch.
+ */
+@State(Scope.Benchmark)
+public class WatchPayloadBenchmark {
+
+    private int mWeatherId;
+    private double mHigh;
+    private double mLow;
+    private String mMessage;
+
+    @Setup
+    public void setUp() throws JSONException {
+        ForecastSnapshot forecast = OpenWeatherJsonParser.parse(
+                Fixtures.load(Fixtures.FORECAST_14_DAYS), Fixtures.RECORDED_START_DAY).days;
+        mWeatherId = forecast.getWeatherId(0);
+        mHigh = forecast.getMaxTemp(0);
+        mLow = forecast.getMinTemp(0);
+        mMessage = WatchWeatherPayload.encode(mWeatherId, mHigh, mLow);
+    }
+
+    @Benchmark
+    public String encode() {
+        return WatchWeatherPayload.encode(mWeatherId, mHigh, mLow);
+    }
+
+    @Benchmark
+    public int[] decode() {
+        return WatchWeatherPayload.decode(mMessage);
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.benchmarks;
+
+import com.example.android.sunshine.data.ForecastSnapshot;
+import com.example.android.sunshine.utilities.OpenWeatherJsonParser;
+import com.example.android.sunshine.utilities.WeatherFormatter;
+
+import org.json.JSONException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Locale;
+
+/**
+ * The temperature and wind formatting done when a forecast is bound to the list, the detail
+ * screen and the notification. Each benchmark formats every day of the recorded forecast, either
+ * the way SunshineWeatherUtils used to (String.format per value) or with WeatherFormatter.
+ * The append* variants write into one reused StringBuilder, the way the watch face does, and
+ * should show no allocation at all under the gc profiler.
+ */
+@State(Scope.Benchmark)
+public class WeatherFormattingBenchmark {
+
+    /* The format strings from values/strings.xml, with the xliff markup and whitespace removed */
+    private static final String FORMAT_TEMPERATURE = "%1.0f\u00B0";
+    private static final String FORMAT_WIND_KMH = "%1$1.0f km/h %2$s";
+    private static final String FORMAT_WIND_MPH = "%1$1.0f mph %2$s";
+
+    @Param({"true", "false"})
+    public boolean isMetric;
+
+    private ForecastSnapshot mForecast;
+    private WeatherFormatter mFormatter;
+    private final StringBuilder mOut = new StringBuilder(64);
+
+    @Setup
+    public void setUp() throws JSONException {
+        mForecast = OpenWeatherJsonParser.parse(Fixtures.load(Fixtures.FORECAST_14_DAYS),
+                Fixtures.RECORDED_START_DAY).days;
+        mFormatter = new WeatherFormatter(Locale.getDefault(), isMetric,
+                FORMAT_TEMPERATURE, FORMAT_WIND_KMH, FORMAT_WIND_MPH);
+    }
+
+    @Benchmark
+    public void formatHighLowsLegacy(Blackhole blackhole) {
+        for (int i = 0; i < mForecast.size(); i++) {
+            String high = LegacyWeatherFormatting.formatTemperature(FORMAT_TEMPERATURE,
+                    Math.round(mForecast.getMaxTemp(i)), isMetric);
+            String low = LegacyWeatherFormatting.formatTemperature(FORMAT_TEMPERATURE,
+                    Math.round(mForecast.getMinTemp(i)), isMetric);
+            blackhole.consume(high + " / " + low);
+        }
+    }
+
+    @Benchmark
+    public void formatHighLows(Blackhole blackhole) {
+        for (int i = 0; i < mForecast.size(); i++) {
+            blackhole.consume(mFormatter.formatHighLow(
+                    mForecast.getMaxTemp(i), mForecast.getMinTemp(i)));
+        }
+    }
+
+    @Benchmark
+    public int appendHighLows() {
+        int length = 0;
+        for (int i = 0; i < mForecast.size(); i++) {
+            mOut.setLength(0);
+            mFormatter.appendHighLow(mOut, mForecast.getMaxTemp(i), mForecast.getMinTemp(i));
+            length += mOut.length();
+        }
+        return length;
+    }
+
+    @Benchmark
+    public void formatWindLegacy(Blackhole blackhole) {
+        for (int i = 0; i < mForecast.size(); i++) {
+            blackhole.consume(LegacyWeatherFormatting.formatWind(FORMAT_WIND_KMH, FORMAT_WIND_MPH,
+                    (float) mForecast.getWindSpeed(i), (float) mForecast.getDegrees(i), isMetric));
+        }
+    }
+
+    @Benchmark
+    public void formatWind(Blackhole blackhole) {
+        for (int i = 0; i < mForecast.size(); i++) {
+            blackhole.consume(mFormatter.formatWind(
+                    (float) mForecast.getWindSpeed(i), (float) mForecast.getDegrees(i)));
+        }
+    }
+
+    @Benchmark
+    public int appendWind() {
+        int length = 0;
+        for (int i = 0; i < mForecast.size(); i++) {
+            mOut.setLength(0);
+            mFormatter.appendWind(mOut,
+                    (float) mForecast.getWindSpeed(i), (float) mForecast.getDegrees(i));
+            length += mOut.length();
+        }
+        return length;
+    }
+}
@@ -40,6 +40,9 @@ import android.util.Log;
 import android.view.SurfaceHolder;
 import android.view.WindowInsets;
 
+import com.example.android.sunshine.utilities.FormatTemplate;
+import com.example.android.sunshine.utilities.WatchWeatherPayload;
+import com.example.android.sunshine.weather.WeatherConditions;
 import com.google.android.gms.wearable.MessageEvent;
 import com.google.android.gms.wearable.WearableListenerService;
 
@@ -47,7 +50,6 @@ import java.lang.ref.WeakReference;
 import java.text.SimpleDateFormat;
 import java.util.Calendar;
 import java.util.Locale;
-import java.util.StringTokenizer;
 import java.util.TimeZone;
 import java.util.concurrent.TimeUnit;
 
@@ -75,6 +77,20 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
     private static final int MSG_UPDATE_TIME = 0;
     private static final String TAG = SunshineWatchFace.class.getSimpleName();
 
+    /* Weather icons, indexed by WeatherConditions icon class */
+    private static final int[] SMALL_ICONS = new int[WeatherConditions.ICON_CLASS_COUNT];
+
+    static {
+        SMALL_ICONS[WeatherConditions.ICON_STORM] = R.drawable.ic_storm;
+        SMALL_ICONS[WeatherConditions.ICON_LIGHT_RAIN] = R.drawable.ic_light_rain;
+        SMALL_ICONS[WeatherConditions.ICON_RAIN] = R.drawable.ic_rain;
+        SMALL_ICONS[WeatherConditions.ICON_SNOW] = R.drawable.ic_snow;
+        SMALL_ICONS[WeatherConditions.ICON_FOG] = R.drawable.ic_fog;
+        SMALL_ICONS[WeatherConditions.ICON_CLEAR] = R.drawable.ic_clear;
+        SMALL_ICONS[WeatherConditions.ICON_LIGHT_CLOUDS] = R.drawable.ic_light_clouds;
+        SMALL_ICONS[WeatherConditions.ICON_CLOUDS] = R.drawable.ic_cloudy;
+    }
+
     @Override
     public Engine onCreateEngine() {
         return new Engine();
@@ -106,7 +122,11 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
         Paint mBackgroundPaint, mIconPaint;
         Paint mHoursPaint, mMinutesPaint;
         Paint mDatePaint, mHighPaint, mLowPaint;
-        String mHighText, mLowText;
+        int mHigh, mLow;
+        /* Today's temperatures, formatted once per weather update instead of on every frame */
+        FormatTemplate mTemperatureTemplate;
+        final StringBuilder mHighText = new StringBuilder();
+        final StringBuilder mLowText = new StringBuilder();
         int mWeatherId;
         Bitmap mIcon;
         boolean mAmbient;
@@ -161,8 +181,11 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
             mCalendar = Calendar.getInstance();
             int[] todayWeather = SunshineWatchFacePreferences.getTodayWeather(getApplicationContext());
             mWeatherId = todayWeather[0];
-            mHighText = todayWeather[1]+""; //string format
-            mLowText = todayWeather[2]+"";  //string format
+            mHigh = todayWeather[1];
+            mLow = todayWeather[2];
+            mTemperatureTemplate = FormatTemplate.parse(
+                    getString(R.string.format_temperature), Locale.getDefault());
+            updateTemperatureText();
             mIcon = BitmapFactory.decodeResource(getResources(), getSmallArtResourceIdForWeatherCondition(mWeatherId));
             mIcon = Bitmap.createScaledBitmap(mIcon,
                     (int) getResources().getDimension(R.dimen.image_size),
@@ -183,55 +206,17 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
 
 
         /**
-         * Helper method to provide the icon resource id according to the weather condition id returned
-         * by the OpenWeatherMap call. This method is very similar to
-         *
-         *
-         * The difference between these two methods is that this method provides smaller assets, used
-         * in the list item layout for a "future day", as well as
+         * Helper method to provide the icon resource id according to the weather condition id
+         * returned by the OpenWeatherMap call. The condition table is shared with the phone app
+         * through weather-core, so both always pick the same icon.
          *
          * @param weatherId from OpenWeatherMap API response
          *                  See http://openweathermap.org/weather-conditions for a list of all IDs
          *
-         * @return resource id for the corresponding icon. -1 if no relation is found.
+         * @return resource id for the corresponding icon. Unknown conditions get the storm icon.
          */
         public int getSmallArtResourceIdForWeatherCondition(int weatherId) {
-
-        /*
-         * Based on weather code data for Open Weather Map.
-         */
-            if (weatherId >= 200 && weatherId <= 232) {
-                return R.drawable.ic_storm;
-            } else if (weatherId >= 300 && weatherId <= 321) {
-                return R.drawable.ic_light_rain;
-            } else if (weatherId >= 500 && weatherId <= 504) {
-                return R.drawable.ic_rain;
-            } else if (weatherId == 511) {
-                return R.drawable.ic_snow;
-            } else if (weatherId >= 520 && weatherId <= 531) {
-                return R.drawable.ic_rain;
-            } else if (weatherId >= 600 && weatherId <= 622) {
-                return R.drawable.ic_snow;
-            } else if (weatherId >= 701 && weatherId <= 761) {
-                return R.drawable.ic_fog;
-            } else if (weatherId == 761 || weatherId == 771 || weatherId == 781) {
-                return R.drawable.ic_storm;
-            } else if (weatherId == 800) {
-                return R.drawable.ic_clear;
-            } else if (weatherId == 801) {
-                return R.drawable.ic_light_clouds;
-            } else if (weatherId >= 802 && weatherId <= 804) {
-                return R.drawable.ic_cloudy;
-            } else if (weatherId >= 900 && weatherId <= 906) {
-                return R.drawable.ic_storm;
-            } else if (weatherId >= 958 && weatherId <= 962) {
-                return R.drawable.ic_storm;
-            } else if (weatherId >= 951 && weatherId <= 957) {
-                return R.drawable.ic_clear;
-            }
-
-            Log.e(TAG, "Unknown Weather: " + weatherId);
-            return R.drawable.ic_storm;
+            return SMALL_ICONS[WeatherConditions.getIconClass(weatherId)];
         }
 
         @Override
@@ -385,22 +370,20 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
                         posX,
                         bounds.centerY()+ getResources().getDimension(R.dimen.image_top_padding),
                         mIconPaint);
-                text = getApplicationContext().getString(R.string.format_temperature, mHighText);
                 posX = (float) (posX +
                         (getResources().getDimension(R.dimen.image_size)/2) +
                         (mHighPaint.measureText("99")*0.25)) +
                         getResources().getDimension(R.dimen.temp_inner_spacing) +
                         getResources().getDimension(R.dimen.image_end_padding);
-                canvas.drawText(text,
+                canvas.drawText(mHighText, 0, mHighText.length(),
                         posX,
                         bounds.centerY()+ getResources().getDimension(R.dimen.temp_top_padding),
                         mHighPaint
                 );
-                text = getApplicationContext().getString(R.string.format_temperature,mLowText);
                 posX = posX +
                         (mLowPaint.measureText("99°")) +
                         getResources().getDimension(R.dimen.temp_inner_spacing);
-                canvas.drawText(text,
+                canvas.drawText(mLowText, 0, mLowText.length(),
                         posX,
                         bounds.centerY()+ getResources().getDimension(R.dimen.temp_top_padding),
                         mLowPaint
@@ -440,13 +423,22 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
             }
         }
 
+        /**
+         * Formats today's high and low into the buffers onDraw draws from.
+         */
+        private void updateTemperatureText() {
+            mHighText.setLength(0);
+            mTemperatureTemplate.appendTo(mHighText, mHigh, null);
+            mLowText.setLength(0);
+            mTemperatureTemplate.appendTo(mLowText, mLow, null);
+        }
+
         @Override
         public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String s) {
             mWeatherId = sharedPreferences.getInt(getString(R.string.pref_today_weather_id), mWeatherId);
-            int high = sharedPreferences.getInt(getString(R.string.pref_today_high), Integer.parseInt(mHighText));
-            int low = sharedPreferences.getInt(getString(R.string.pref_today_low), Integer.parseInt(mLowText));
-            mHighText = high+"";
-            mLowText = low+"";
+            mHigh = sharedPreferences.getInt(getString(R.string.pref_today_high), mHigh);
+            mLow = sharedPreferences.getInt(getString(R.string.pref_today_low), mLow);
+            updateTemperatureText();
             mIcon = BitmapFactory.decodeResource(getResources(), getSmallArtResourceIdForWeatherCondition(mWeatherId));
             mIcon = Bitmap.createScaledBitmap(mIcon,
                     (int) getResources().getDimension(R.dimen.image_size),
@@ -470,20 +462,9 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
             if (BuildConfig.DEBUG) {
                 Log.d(TAG, "onMessageReceived: "+messageEvent.getPath());
             }
-            int[] todayWeather = weatherToInt(messageEvent.getPath());
+            int[] todayWeather = WatchWeatherPayload.decode(messageEvent.getPath());
             SunshineWatchFacePreferences.setTodayWeather(this, todayWeather[0], todayWeather[1], todayWeather[2]);
 
         }
-
-        private int[] weatherToInt(String message) {
-            int[] ret = new int[3];
-            StringTokenizer stringTokenizer = new StringTokenizer(message);
-            int i = 0;
-            while (stringTokenizer.hasMoreTokens()){
-                ret[i] = Integer.parseInt(stringTokenizer.nextToken());
-                i++;
-            }
-            return ret;
-        }
     }
 }
@@ -0,0 +1,591 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utilities;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Generates ForecastJsonBinder, which binds OpenWeatherMap's daily forecast JSON straight into
+ * the arrays of a ForecastSnapshot while a JsonCursor tokenizes it. The build runs this
+ * before compiling weather-core, see build.gradle, so the binder always matches the schema below.
+ * <p>
+ * Each object in the schema becomes a method that reads the object's fields in whatever order
+ * they come. A field is found by switching on the hash of its name, which the cursor computes
+ * while reading the name, and confirmed with a comparison of the name itself; fields that aren't
+ * in the schema are skipped without being read. Every field of an object is required, except
+ * where the schema says otherwise, and a missing one throws a JSONException naming it.
+ * <p>
+ * A row of the forecast that throws, because a field is missing or holds the wrong kind of
+ * value, is stepped over and reported as a {@link MalformedDay} rather than failing the whole
+ * response. Only a response that isn't well-formed JSON, or whose city can't be read, fails.
+ * <p>
+ * The rows are bound at the top level of the response, where the binder can stop after the
+ * first of them and carry on later. A sync stores today's weather while the rest of the
+ * response is still unread.
+ */
+public final class ForecastBinderGenerator {
+
+    /* How a field's value is bound */
+    private static final int BIND_DOUBLE = 0;
+    private static final int BIND_INT = 1;
+    private static final int BIND_OBJECT = 2;
+    private static final int BIND_EACH_ROW = 3;
+    private static final int BIND_FIRST = 4;
+
+    private static final String PACKAGE = "com.example.android.sunshine.utilities";
+    private static final String CLASS_NAME = "ForecastJsonBinder";
+
+    /* An object in the schema */
+    private static final class Type {
+        final String name;
+        final Field[] fields;
+
+        Type(String name, Field... fields) {
+            this.name = name;
+            this.fields = fields;
+        }
+
+        String constantPrefix() {
+            return name.toUpperCase(Locale.US);
+        }
+    }
+
+    /* A field of an object, and what its value is bound to */
+    private static final class Field {
+        final String json;
+        final int bind;
+        final String target;
+        final Type type;
+        final boolean required;
+
+        Field(String json, int bind, String target, Type type, boolean required) {
+            this.json = json;
+            this.bind = bind;
+            this.target = target;
+            this.type = type;
+            this.required = required;
+        }
+    }
+
+    private static Field number(String json, String target) {
+        return new Field(json, BIND_DOUBLE, target, null, true);
+    }
+
+    private static Field integer(String json, String target) {
+        return new Field(json, BIND_INT, target, null, true);
+    }
+
+    private static Field object(String json, Type type) {
+        return new Field(json, BIND_OBJECT, null, type, true);
+    }
+
+    /*
+     * The columns of a ForecastSnapshot that are bound from each day, in the order the
+     * snapshot's constructor takes them. The dates aren't read from the JSON but follow from
+     * each day's place in the list, see OpenWeatherJsonParser.
+     */
+    private static final String[][] COLUMNS = {
+            {"long", "mDates"},
+            {"int", "mWeatherIds"},
+            {"double", "mMaxTemps"},
+            {"double", "mMinTemps"},
+            {"double", "mHumidities"},
+            {"double", "mPressures"},
+            {"double", "mWindSpeeds"},
+            {"double", "mDegrees"},
+    };
+
+    /* The schema: the parts of a daily forecast response that Sunshine reads */
+    private static final Type WEATHER = new Type("Weather",
+            integer("id", "mWeatherIds[mDays]"));
+
+    private static final Type TEMPERATURE = new Type("Temperature",
+            number("max", "mMaxTemps[mDays]"),
+            number("min", "mMinTemps[mDays]"));
+
+    private static final Type DAY = new Type("Day",
+            number("pressure", "mPressures[mDays]"),
+            integer("humidity", "mHumidities[mDays]"),
+            number("speed", "mWindSpeeds[mDays]"),
+            number("deg", "mDegrees[mDays]"),
+            object("temp", TEMPERATURE),
+            /* The "weather" array has one element */
+            new Field("weather", BIND_FIRST, null, WEATHER, true));
+
+    private static final Type COORDINATES = new Type("Coordinates",
+            number("lat", "mLatitude"),
+            number("lon", "mLongitude"));
+
+    private static final Type CITY = new Type("City",
+            object("coord", COORDINATES));
+
+    /*
+     * The response as a whole. A response that carries an error code has no forecast in it, so
+     * its fields are only required once bind has checked the code.
+     */
+    private static final Type FORECAST = new Type("Forecast",
+            new Field("cod", BIND_INT, "mCode", null, false),
+            object("city", CITY),
+            new Field("list", BIND_EACH_ROW, null, DAY, true));
+
+    private static final Type[] TYPES = {FORECAST, CITY, COORDINATES, DAY, TEMPERATURE, WEATHER};
+
+    /* The field of FORECAST that holds the rows */
+    private static final Field ROWS = FORECAST.fields[2];
+
+    private final StringBuilder mOut = new StringBuilder(16384);
+    private int mIndent;
+
+    private ForecastBinderGenerator() {
+    }
+
+    /**
+     * @param args The directory to write the binder's source to, under its package's directories
+     * @throws IOException If it can't be written
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("Usage: ForecastBinderGenerator <source directory>");
+            System.exit(1);
+        }
+        File directory = new File(args[0], PACKAGE.replace('.', File.separatorChar));
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Couldn't create " + directory);
+        }
+        File file = new File(directory, CLASS_NAME + ".java");
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            writer.write(generate());
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * @return The source of ForecastJsonBinder
+     */
+    static String generate() {
+        ForecastBinderGenerator generator = new ForecastBinderGenerator();
+        generator.writeClass();
+        return generator.mOut.toString();
+    }
+
+    private void line(String text) {
+        if (text.startsWith("}")) {
+            mIndent--;
+        }
+        if (!text.isEmpty()) {
+            for (int i = 0; i < mIndent; i++) {
+                mOut.append("    ");
+            }
+        }
+        mOut.append(text).append('\n');
+        if (text.endsWith("{")) {
+            mIndent++;
+        }
+    }
+
+    /* Lines that continue a statement, indented past it */
+    private void continuation(String text) {
+        mIndent += 2;
+        line(text);
+        mIndent -= 2;
+    }
+
+    private void writeClass() {
+        line("/*");
+        line(" * Generated by ForecastBinderGenerator from its forecast schema; don't edit it.");
+        line(" */");
+        line("package " + PACKAGE + ";");
+        line("");
+        line("import com.example.android.sunshine.data.ForecastSnapshot;");
+        line("");
+        line("import org.json.JSONException;");
+        line("");
+        line("import java.net.HttpURLConnection;");
+        line("import java.util.ArrayList;");
+        line("import java.util.Arrays;");
+        line("import java.util.Collections;");
+        line("import java.util.List;");
+        line("");
+        line("/**");
+        line(" * Binds OpenWeatherMap's daily forecast JSON straight into the arrays of a");
+        line(" * {@link ForecastSnapshot}, in one pass over the text and without building a");
+        line(" * JSONObject tree. It gives the same forecast as {@link OpenWeatherJsonParser}.");
+        line(" * <p>");
+        line(" * A response can be bound in one go, with {@link #bind}, or in two steps: up to");
+        line(" * the first day of its list with {@link #begin}, and the rest of it with");
+        line(" * {@link #finish}, so that the first day can be used before the others are read.");
+        line(" */");
+        line("public final class " + CLASS_NAME + " {");
+        line("");
+        writeHashes();
+        writeFieldBits();
+        line("/* The days a binder starts with room for; the server sends at most 16 */");
+        line("private static final int INITIAL_DAYS = 16;");
+        line("");
+        line("private final JsonCursor mCursor;");
+        line("private final long mStartDay;");
+        line("");
+        line("private int mCode;");
+        line("private double mLatitude;");
+        line("private double mLongitude;");
+        line("");
+        line("/* How far the response has been read, and the fields of it read so far */");
+        line("private boolean mBegun;");
+        line("private boolean mInRows;");
+        line("private boolean mDone;");
+        line("private int mSeen;");
+        line("");
+        line("/* The rows of the list read so far, days or malformed, and where to stop */");
+        line("private int mRows;");
+        line("private int mRowLimit;");
+        line("");
+        line("/* The days that couldn't be read, which are left out of the columns */");
+        line("private final List<MalformedDay> mMalformedDays = new ArrayList<>();");
+        line("");
+        line("/* The days read so far, and a column for each of their fields */");
+        line("private int mDays;");
+        for (String[] column : COLUMNS) {
+            line("private " + column[0] + "[] " + column[1] + " = new " + column[0]
+                    + "[INITIAL_DAYS];");
+        }
+        line("");
+        line("private " + CLASS_NAME + "(String json, long normalizedUtcStartDay) {");
+        line("mCursor = new JsonCursor(json);");
+        line("mStartDay = normalizedUtcStartDay;");
+        line("}");
+        line("");
+        writeEntryPoints();
+        writeRootReader();
+        writeRowsReader();
+        for (Type type : TYPES) {
+            if (type != FORECAST) {
+                writeReader(type);
+            }
+        }
+        writeHelpers();
+        line("}");
+    }
+
+    /* The hash of every field name in the schema, sorted by name */
+    private void writeHashes() {
+        Map<String, Integer> hashes = new TreeMap<>();
+        for (Type type : TYPES) {
+            for (Field field : type.fields) {
+                hashes.put(field.json, field.json.hashCode());
+            }
+        }
+        line("/* The String.hashCode of each field name in the schema */");
+        for (Map.Entry<String, Integer> hash : hashes.entrySet()) {
+            line("private static final int " + hashConstant(hash.getKey()) + " = "
+                    + hash.getValue() + ";");
+        }
+        line("");
+    }
+
+    /* A bit for each field of each object, marking that the field was read */
+    private void writeFieldBits() {
+        for (Type type : TYPES) {
+            line("/* The fields of the " + type.name + " object */");
+            int required = 0;
+            StringBuilder names = new StringBuilder();
+            for (int i = 0; i < type.fields.length; i++) {
+                Field field = type.fields[i];
+                line("private static final int " + bitConstant(type, field) + " = 1 << " + i + ";");
+                if (field.required) {
+                    required |= 1 << i;
+                }
+                names.append(i == 0 ? "" : ", ").append('"').append(field.json).append('"');
+            }
+            line("private static final int " + type.constantPrefix() + "_REQUIRED = " + required
+                    + ";");
+            line("private static final String[] " + type.constantPrefix() + "_FIELDS = {"
+                    + names + "};");
+            line("");
+        }
+    }
+
+    private void writeEntryPoints() {
+        line("/**");
+        line(" * Binds a forecast response.");
+        line(" *");
+        line(" * @param json                  JSON response from server");
+        line(" * @param normalizedUtcStartDay The normalized UTC date of the first day in the");
+        line(" *                              response");
+        line(" * @return The forecast, or null if the response carries an error code. A day that");
+        line(" * can't be read is left out of it and listed in its malformedDays.");
+        line(" * @throws JSONException If the response isn't well-formed JSON, or lacks the city");
+        line(" *                       or the list of days");
+        line(" */");
+        line("public static OpenWeatherJsonParser.ParsedForecast bind(String json,");
+        continuation("long normalizedUtcStartDay) throws JSONException {");
+        line("return begin(json, normalizedUtcStartDay).finish();");
+        line("}");
+        line("");
+        line("/**");
+        line(" * Starts binding a forecast response, and stops once the first day of its list");
+        line(" * has been read; see {@link #getFirstDay()} and {@link #finish()}.");
+        line(" *");
+        line(" * @param json                  JSON response from server");
+        line(" * @param normalizedUtcStartDay The normalized UTC date of the first day in the");
+        line(" *                              response");
+        line(" * @return The binder, part way through the response");
+        line(" * @throws JSONException If what was read of the response isn't well-formed JSON");
+        line(" */");
+        line("public static " + CLASS_NAME + " begin(String json, long normalizedUtcStartDay)");
+        continuation("throws JSONException {");
+        line(CLASS_NAME + " binder = new " + CLASS_NAME + "(json, normalizedUtcStartDay);");
+        line("binder.mRowLimit = 1;");
+        line("binder.read" + FORECAST.name + "();");
+        line("return binder;");
+        line("}");
+        line("");
+        line("/**");
+        line(" * @return The first day of the list as a one day forecast, or null if the list has");
+        line(" * no first day, it couldn't be read, or the response has carried an error code");
+        line(" */");
+        line("public ForecastSnapshot getFirstDay() {");
+        line("if (mDays == 0 || " + COLUMNS[0][1] + "[0] != mStartDay || hasErrorCode()) {");
+        line("return null;");
+        line("}");
+        line("return snapshot(1);");
+        line("}");
+        line("");
+        line("/**");
+        line(" * Binds the rest of the response that {@link #begin} started on. It is only called");
+        line(" * once.");
+        line(" *");
+        line(" * @return The whole forecast, as {@link #bind} returns it");
+        line(" * @throws JSONException As {@link #bind} throws it");
+        line(" */");
+        line("public OpenWeatherJsonParser.ParsedForecast finish() throws JSONException {");
+        line("mRowLimit = Integer.MAX_VALUE;");
+        line("read" + FORECAST.name + "();");
+        line("mCursor.endDocument();");
+        line("");
+        line("if (hasErrorCode()) {");
+        line("/* Location invalid, or server probably down */");
+        line("return null;");
+        line("}");
+        line("requireFields(\"forecast\", mSeen, " + FORECAST.constantPrefix() + "_REQUIRED, "
+                + FORECAST.constantPrefix() + "_FIELDS);");
+        line("");
+        line("return new OpenWeatherJsonParser.ParsedForecast(mLatitude, mLongitude,");
+        continuation("snapshot(mDays), Collections.unmodifiableList(mMalformedDays));");
+        line("}");
+        line("");
+        line("private boolean hasErrorCode() {");
+        line("return (mSeen & " + bitConstant(FORECAST, FORECAST.fields[0])
+                + ") != 0 && mCode != HttpURLConnection.HTTP_OK;");
+        line("}");
+        line("");
+        line("/* The first days read, as a forecast */");
+        line("private ForecastSnapshot snapshot(int days) {");
+        line("return new ForecastSnapshot(");
+        for (int i = 0; i < COLUMNS.length; i++) {
+            continuation("Arrays.copyOf(" + COLUMNS[i][1] + ", days)"
+                    + (i == COLUMNS.length - 1 ? ");" : ","));
+        }
+        line("}");
+        line("");
+    }
+
+    /*
+     * The reader of the response as a whole, which stops once it has read mRowLimit rows and
+     * carries on from there when it is called again
+     */
+    private void writeRootReader() {
+        line("/*");
+        line(" * Reads the response's fields, stopping once mRowLimit rows of its list have been");
+        line(" * read. Called again, it carries on from where it stopped.");
+        line(" */");
+        line("private void read" + FORECAST.name + "() throws JSONException {");
+        line("if (mDone) {");
+        line("return;");
+        line("}");
+        line("if (!mBegun) {");
+        line("mCursor.beginObject();");
+        line("mBegun = true;");
+        line("}");
+        line("if (mInRows && !readRows()) {");
+        line("return;");
+        line("}");
+        writeFieldLoop(FORECAST, "mSeen");
+        line("mDone = true;");
+        line("}");
+        line("");
+    }
+
+    /* The reader of the rows, which can stop after any of them */
+    private void writeRowsReader() {
+        line("/*");
+        line(" * Reads rows of the list until it ends, returning true, or until mRowLimit rows");
+        line(" * have been read, returning false with the cursor just after the last of them.");
+        line(" */");
+        line("private boolean readRows() throws JSONException {");
+        line("while (mRows < mRowLimit) {");
+        line("if (!mCursor.nextElement()) {");
+        line("mInRows = false;");
+        line("return true;");
+        line("}");
+        line("ensureRoom();");
+        line("long date = mStartDay + NormalizedDates.DAY_IN_MILLIS * mRows;");
+        line("int start = mCursor.position();");
+        line("try {");
+        line("read" + ROWS.type.name + "();");
+        line("mDates[mDays++] = date;");
+        line("} catch (JSONException e) {");
+        line("/* Steps over the row, which fails again if it isn't well-formed JSON */");
+        line("mCursor.rewind(start);");
+        line("mCursor.skipValue();");
+        line("mMalformedDays.add(new MalformedDay(mRows, date, e.getMessage()));");
+        line("}");
+        line("mRows++;");
+        line("}");
+        line("return false;");
+        line("}");
+        line("");
+    }
+
+    private void writeReader(Type type) {
+        String prefix = type.constantPrefix();
+
+        line("private int read" + type.name + "() throws JSONException {");
+        line("int seen = 0;");
+        line("mCursor.beginObject();");
+        writeFieldLoop(type, "seen");
+        line("requireFields(\"" + type.name.toLowerCase(Locale.US) + "\", seen, " + prefix
+                + "_REQUIRED, " + prefix + "_FIELDS);");
+        line("return seen;");
+        line("}");
+        line("");
+    }
+
+    /* Reads the fields of an object, noting each one read in the seen variable */
+    private void writeFieldLoop(Type type, String seen) {
+        line("while (mCursor.nextField()) {");
+        line("switch (mCursor.keyHash()) {");
+
+        /* Fields whose names share a hash share a case */
+        Map<Integer, List<Field>> cases = new LinkedHashMap<>();
+        for (Field field : type.fields) {
+            Integer hash = field.json.hashCode();
+            if (!cases.containsKey(hash)) {
+                cases.put(hash, new ArrayList<Field>());
+            }
+            cases.get(hash).add(field);
+        }
+        for (List<Field> fields : cases.values()) {
+            line("case " + hashConstant(fields.get(0).json) + ":");
+            mIndent++;
+            for (Field field : fields) {
+                line("if (mCursor.keyIs(\"" + field.json + "\")) {");
+                writeBinding(type, field, seen);
+                line("continue;");
+                line("}");
+            }
+            line("break;");
+            mIndent--;
+        }
+        line("}");
+        line("mCursor.skipValue();");
+        line("}");
+    }
+
+    private void writeBinding(Type type, Field field, String seenVariable) {
+        String seen = seenVariable + " |= " + bitConstant(type, field) + ";";
+        switch (field.bind) {
+            case BIND_DOUBLE:
+                line(field.target + " = mCursor.readDouble();");
+                line(seen);
+                break;
+            case BIND_INT:
+                line(field.target + " = mCursor.readInt();");
+                line(seen);
+                break;
+            case BIND_OBJECT:
+                line("read" + field.type.name + "();");
+                line(seen);
+                break;
+            case BIND_EACH_ROW:
+                if (field != ROWS) {
+                    throw new IllegalStateException("Only " + ROWS.json + " is bound by row");
+                }
+                line("mCursor.beginArray();");
+                line(seen);
+                line("mRows = 0;");
+                line("mInRows = true;");
+                line("if (!readRows()) {");
+                line("return;");
+                line("}");
+                break;
+            case BIND_FIRST:
+                /* An empty array counts as the field not being there */
+                line("mCursor.beginArray();");
+                line("if (mCursor.nextElement()) {");
+                line("read" + field.type.name + "();");
+                line(seen);
+                line("while (mCursor.nextElement()) {");
+                line("mCursor.skipValue();");
+                line("}");
+                line("}");
+                break;
+            default:
+                throw new IllegalStateException("Unknown binding " + field.bind);
+        }
+    }
+
+    private void writeHelpers() {
+        line("/* Makes room in every column for one more day */");
+        line("private void ensureRoom() {");
+        line("if (mDays < " + COLUMNS[0][1] + ".length) {");
+        line("return;");
+        line("}");
+        line("int room = 2 * mDays;");
+        for (String[] column : COLUMNS) {
+            line(column[1] + " = Arrays.copyOf(" + column[1] + ", room);");
+        }
+        line("}");
+        line("");
+        line("private static void requireFields(String object, int seen, int required,");
+        continuation("String[] names) throws JSONException {");
+        line("int missing = required & ~seen;");
+        line("if (missing != 0) {");
+        line("throw new JSONException(\"The \" + object + \" has no \\\"\"");
+        continuation("+ names[Integer.numberOfTrailingZeros(missing)] + \"\\\" field\");");
+        line("}");
+        line("}");
+    }
+
+    private static String hashConstant(String json) {
+        return "HASH_" + json.toUpperCase(Locale.US);
+    }
+
+    private static String bitConstant(Type type, Field field) {
+        return type.constantPrefix() + "_" + field.json.toUpperCase(Locale.US);
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data;
+
+/**
+ * An immutable, column-oriented copy of the forecast rows written by the last sync. Each column
+ * of the weather table is held in its own primitive array, and row i of the forecast is found at
+ * index i of every array. Reading a value is a plain array access, with no Cursor, binder call or
+ * boxing involved.
+ * <p>
+ * This class deliberately has no Android dependencies so it can be built and read from plain
+ * JVM code as well.
+ */
+public final class ForecastSnapshot {
+
+    /* A snapshot with no rows, used before anything has been synced */
+    public static final ForecastSnapshot EMPTY = new ForecastSnapshot(
+            new long[0], new int[0],
+            new double[0], new double[0],
+            new double[0], new double[0],
+            new double[0], new double[0]);
+
+    private final long[] mDates;
+    private final int[] mWeatherIds;
+    private final double[] mMaxTemps;
+    private final double[] mMinTemps;
+    private final double[] mHumidities;
+    private final double[] mPressures;
+    private final double[] mWindSpeeds;
+    private final double[] mDegrees;
+
+    /**
+     * Creates a snapshot that takes ownership of the given column arrays. They must all have the
+     * same length and must not be modified after being handed over.
+     *
+     * @param dates      Normalized UTC dates in milliseconds. The weather table stores these as
+     *                   day numbers, see WeatherContract.WeatherEntry.COLUMN_DATE
+     * @param weatherIds Weather condition IDs as returned by the API
+     * @param maxTemps   Max temperatures in °C
+     * @param minTemps   Min temperatures in °C
+     * @param humidities Humidity as a percentage
+     * @param pressures  Pressure in hPa
+     * @param windSpeeds Wind speeds
+     * @param degrees    Meteorological wind directions in degrees
+     */
+    public ForecastSnapshot(long[] dates, int[] weatherIds,
+                            double[] maxTemps, double[] minTemps,
+                            double[] humidities, double[] pressures,
+                            double[] windSpeeds, double[] degrees) {
+        int size = dates.length;
+        if (weatherIds.length != size
+                || maxTemps.length != size || minTemps.length != size
+                || humidities.length != size || pressures.length != size
+                || windSpeeds.length != size || degrees.length != size) {
+            throw new IllegalArgumentException("All forecast columns must have the same length");
+        }
+
+        mDates = dates;
+        mWeatherIds = weatherIds;
+        mMaxTemps = maxTemps;
+        mMinTemps = minTemps;
+        mHumidities = humidities;
+        mPressures = pressures;
+        mWindSpeeds = windSpeeds;
+        mDegrees = degrees;
+    }
+
+    /**
+     * @return The number of days held in this snapshot
+     */
+    public int size() {
+        return mDates.length;
+    }
+
+    /**
+     * Finds the row for a particular day. A forecast window is at most a couple of weeks long,
+     * so a linear scan is as quick as anything fancier and doesn't rely on the row order.
+     *
+     * @param normalizedUtcDate The normalized UTC date of the day to look for
+     * @return The index of that day, or -1 if it isn't part of this snapshot
+     */
+    public int indexOfDate(long normalizedUtcDate) {
+        for (int i = 0; i < mDates.length; i++) {
+            if (mDates[i] == normalizedUtcDate) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns a copy of this snapshot with one row of another in place of the row for the same
+     * date, such as a freshly fetched today in place of today's row from the last sync. If this
+     * snapshot has no row for that date, the row is added in date order.
+     *
+     * @param days  The snapshot to take the row from
+     * @param index The index of the row in days
+     * @return A new snapshot; this one is left as it was
+     */
+    public ForecastSnapshot withDay(ForecastSnapshot days, int index) {
+        long date = days.getDate(index);
+        int replaced = indexOfDate(date);
+        int size = replaced == -1 ? mDates.length + 1 : mDates.length;
+
+        long[] dates = new long[size];
+        int[] weatherIds = new int[size];
+        double[] maxTemps = new double[size];
+        double[] minTemps = new double[size];
+        double[] humidities = new double[size];
+        double[] pressures = new double[size];
+        double[] windSpeeds = new double[size];
+        double[] degrees = new double[size];
+
+        /* Where the row goes, and the rows of this snapshot around it */
+        int at = replaced;
+        if (at == -1) {
+            at = 0;
+            while (at < mDates.length && mDates[at] < date) {
+                at++;
+            }
+        }
+        int after = replaced == -1 ? at : at + 1;
+        copyRows(0, at, dates, weatherIds, maxTemps, minTemps, humidities, pressures,
+                windSpeeds, degrees, 0);
+        copyRows(after, mDates.length, dates, weatherIds, maxTemps, minTemps, humidities,
+                pressures, windSpeeds, degrees, at + 1);
+
+        dates[at] = date;
+        weatherIds[at] = days.getWeatherId(index);
+        maxTemps[at] = days.getMaxTemp(index);
+        minTemps[at] = days.getMinTemp(index);
+        humidities[at] = days.getHumidity(index);
+        pressures[at] = days.getPressure(index);
+        windSpeeds[at] = days.getWindSpeed(index);
+        degrees[at] = days.getDegrees(index);
+
+        return new ForecastSnapshot(dates, weatherIds, maxTemps, minTemps,
+                humidities, pressures, windSpeeds, degrees);
+    }
+
+    /* Copies rows from up to to of this snapshot into the given columns, starting at into */
+    private void copyRows(int from, int to, long[] dates, int[] weatherIds,
+                          double[] maxTemps, double[] minTemps,
+                          double[] humidities, double[] pressures,
+                          double[] windSpeeds, double[] degrees, int into) {
+        int length = to - from;
+        System.arraycopy(mDates, from, dates, into, length);
+        System.arraycopy(mWeatherIds, from, weatherIds, into, length);
+        System.arraycopy(mMaxTemps, from, maxTemps, into, length);
+        System.arraycopy(mMinTemps, from, minTemps, into, length);
+        System.arraycopy(mHumidities, from, humidities, into, length);
+        System.arraycopy(mPressures, from, pressures, into, length);
+        System.arraycopy(mWindSpeeds, from, windSpeeds, into, length);
+        System.arraycopy(mDegrees, from, degrees, into, length);
+    }
+
+    public long getDate(int index) {
+        return mDates[index];
+    }
+
+    public int getWeatherId(int index) {
+        return mWeatherIds[index];
+    }
+
+    public double getMaxTemp(int index) {
+        return mMaxTemps[index];
+    }
+
+    public double getMinTemp(int index) {
+        return mMinTemps[index];
+    }
+
+    public double getHumidity(int index) {
+        return mHumidities[index];
+    }
+
+    public double getPressure(int index) {
+        return mPressures[index];
+    }
+
+    public double getWindSpeed(int index) {
+        return mWindSpeeds[index];
+    }
+
+    public double getDegrees(int index) {
+        return mDegrees[index];
+    }
+}
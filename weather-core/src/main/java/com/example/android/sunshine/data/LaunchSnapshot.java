@@ -0,0 +1,267 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The forecast list exactly as the main screen shows it: for each day, the strings that go into
+ * its list item, already formatted. After every sync it is written to a small file, and on a cold
+ * start the main screen reads that file and draws the list straight away, instead of showing a
+ * spinner until the loader has been through the ContentProvider and SQLite.
+ * <p>
+ * The strings are only right for the day, locale and units they were formatted with ("Today"
+ * becomes wrong at midnight, "21°C" when the user switches to Fahrenheit), so the snapshot
+ * records both and {@link #isCurrent(int, String)} tells the reader whether it may still be shown.
+ * <p>
+ * The file is a header followed by the rows, all big-endian:
+ * <pre>
+ *   int    MAGIC
+ *   int    VERSION
+ *   int    the epoch day the strings were formatted on
+ *   string the format key (locale and units)
+ *   int    the number of rows, then for each row:
+ *     int    the epoch day of the forecast
+ *     int    the weather condition id, for the icon
+ *     string date, description, high and low
+ * </pre>
+ * where a string is an unsigned short byte count followed by that many bytes of UTF-8. Reading
+ * works on a ByteBuffer so the file can be memory-mapped rather than copied into a stream.
+ * <p>
+ * Like ForecastSnapshot, this class has no Android dependencies.
+ */
+public final class LaunchSnapshot {
+
+    /* "SNAP", so that a file of some other kind is never mistaken for a snapshot */
+    static final int MAGIC = 0x534E4150;
+
+    /* Bump this whenever the layout above changes; older files are then ignored */
+    static final int VERSION = 1;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /* A list never has more than a couple of weeks in it; anything bigger is a corrupt file */
+    private static final int MAX_ROWS = 64;
+
+    private static final int MAX_STRING_BYTES = 0xFFFF;
+
+    private final int mFormattedOnEpochDay;
+    private final String mFormatKey;
+
+    private final int[] mEpochDays;
+    private final int[] mWeatherIds;
+    private final String[] mDates;
+    private final String[] mDescriptions;
+    private final String[] mHighs;
+    private final String[] mLows;
+
+    private LaunchSnapshot(int formattedOnEpochDay, String formatKey, int[] epochDays,
+                           int[] weatherIds, String[] dates, String[] descriptions,
+                           String[] highs, String[] lows) {
+        mFormattedOnEpochDay = formattedOnEpochDay;
+        mFormatKey = formatKey;
+        mEpochDays = epochDays;
+        mWeatherIds = weatherIds;
+        mDates = dates;
+        mDescriptions = descriptions;
+        mHighs = highs;
+        mLows = lows;
+    }
+
+    /**
+     * Collects the rows of a snapshot, in the order they are shown.
+     */
+    public static final class Builder {
+        private final int mFormattedOnEpochDay;
+        private final String mFormatKey;
+
+        private final List<int[]> mNumbers = new ArrayList<>();
+        private final List<String[]> mStrings = new ArrayList<>();
+
+        /**
+         * @param formattedOnEpochDay The day, as a day number, whose "Today" the dates refer to
+         * @param formatKey           Identifies the locale and units the strings were formatted
+         *                            with; the reader compares it with its own
+         */
+        public Builder(int formattedOnEpochDay, String formatKey) {
+            mFormattedOnEpochDay = formattedOnEpochDay;
+            mFormatKey = formatKey;
+        }
+
+        /**
+         * @param epochDay    The day of this forecast, as a day number
+         * @param weatherId   The weather condition id
+         * @param date        The friendly date, such as "Tomorrow"
+         * @param description The condition, such as "Clear"
+         * @param high        The formatted high, such as "21°"
+         * @param low         The formatted low
+         * @return This builder
+         */
+        public Builder addRow(int epochDay, int weatherId, String date, String description,
+                              String high, String low) {
+            if (mNumbers.size() == MAX_ROWS) {
+                throw new IllegalStateException("A snapshot holds at most " + MAX_ROWS + " rows");
+            }
+            mNumbers.add(new int[]{epochDay, weatherId});
+            mStrings.add(new String[]{date, description, high, low});
+            return this;
+        }
+
+        public LaunchSnapshot build() {
+            int size = mNumbers.size();
+            int[] epochDays = new int[size];
+            int[] weatherIds = new int[size];
+            String[] dates = new String[size];
+            String[] descriptions = new String[size];
+            String[] highs = new String[size];
+            String[] lows = new String[size];
+            for (int i = 0; i < size; i++) {
+                epochDays[i] = mNumbers.get(i)[0];
+                weatherIds[i] = mNumbers.get(i)[1];
+                dates[i] = mStrings.get(i)[0];
+                descriptions[i] = mStrings.get(i)[1];
+                highs[i] = mStrings.get(i)[2];
+                lows[i] = mStrings.get(i)[3];
+            }
+            return new LaunchSnapshot(mFormattedOnEpochDay, mFormatKey, epochDays, weatherIds,
+                    dates, descriptions, highs, lows);
+        }
+    }
+
+    /**
+     * Writes the snapshot in the layout described above. The stream is not closed.
+     *
+     * @param out Where to write the snapshot
+     * @throws IOException If writing fails
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+        data.writeInt(mFormattedOnEpochDay);
+        writeString(data, mFormatKey);
+        data.writeInt(size());
+        for (int i = 0; i < size(); i++) {
+            data.writeInt(mEpochDays[i]);
+            data.writeInt(mWeatherIds[i]);
+            writeString(data, mDates[i]);
+            writeString(data, mDescriptions[i]);
+            writeString(data, mHighs[i]);
+            writeString(data, mLows[i]);
+        }
+        data.flush();
+    }
+
+    /*
+     * DataOutputStream.writeUTF would do, except that it writes "modified" UTF-8, which
+     * ByteBuffer has no way of reading back without a stream around it.
+     */
+    private static void writeString(DataOutputStream data, String value) throws IOException {
+        byte[] bytes = value.getBytes(UTF_8);
+        if (bytes.length > MAX_STRING_BYTES) {
+            throw new IOException("String too long for a snapshot: " + bytes.length + " bytes");
+        }
+        data.writeShort(bytes.length);
+        data.write(bytes);
+    }
+
+    /**
+     * Reads a snapshot written by {@link #writeTo(OutputStream)}, starting at the buffer's
+     * position.
+     *
+     * @param buffer The snapshot, typically a memory-mapped file
+     * @return The snapshot
+     * @throws IllegalArgumentException If the buffer doesn't hold a complete snapshot of this
+     *                                  version
+     */
+    public static LaunchSnapshot read(ByteBuffer buffer) {
+        try {
+            if (buffer.getInt() != MAGIC) {
+                throw new IllegalArgumentException("Not a forecast snapshot");
+            }
+            int version = buffer.getInt();
+            if (version != VERSION) {
+                throw new IllegalArgumentException("Unsupported snapshot version " + version);
+            }
+            Builder builder = new Builder(buffer.getInt(), readString(buffer));
+
+            int size = buffer.getInt();
+            if (size < 0 || size > MAX_ROWS) {
+                throw new IllegalArgumentException("Bad snapshot row count " + size);
+            }
+            for (int i = 0; i < size; i++) {
+                builder.addRow(buffer.getInt(), buffer.getInt(), readString(buffer),
+                        readString(buffer), readString(buffer), readString(buffer));
+            }
+            return builder.build();
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated forecast snapshot", e);
+        }
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    /**
+     * @param todayEpochDay Today, as a day number
+     * @param formatKey     The reader's locale and units, built the same way as the writer's
+     * @return true if the strings are still the ones the list would show today
+     */
+    public boolean isCurrent(int todayEpochDay, String formatKey) {
+        return mFormattedOnEpochDay == todayEpochDay && mFormatKey.equals(formatKey);
+    }
+
+    /**
+     * @return The number of rows in the list
+     */
+    public int size() {
+        return mEpochDays.length;
+    }
+
+    public int getEpochDay(int index) {
+        return mEpochDays[index];
+    }
+
+    public int getWeatherId(int index) {
+        return mWeatherIds[index];
+    }
+
+    public String getDate(int index) {
+        return mDates[index];
+    }
+
+    public String getDescription(int index) {
+        return mDescriptions[index];
+    }
+
+    public String getHigh(int index) {
+        return mHighs[index];
+    }
+
+    public String getLow(int index) {
+        return mLows[index];
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.sync;
+
+import java.util.Random;
+
+/**
+ * How long to wait before retrying: capped exponential backoff with full jitter. The ceiling
+ * doubles with each attempt up to the cap, and the actual wait is picked uniformly between zero
+ * and that ceiling.
+ * <p>
+ * The jitter is what matters when a backend comes back from an outage: without it every device
+ * that failed at the same moment would retry at the same moments too, and the recovery would
+ * arrive as one burst after another.
+ */
+public final class Backoff {
+
+    private final long mBaseMillis;
+    private final long mCapMillis;
+    private final Random mRandom;
+
+    /**
+     * @param baseMillis The ceiling for the first retry
+     * @param capMillis  The ceiling is never more than this
+     * @param random     Picks the waits; tests pass a seeded one
+     */
+    public Backoff(long baseMillis, long capMillis, Random random) {
+        mBaseMillis = baseMillis;
+        mCapMillis = capMillis;
+        mRandom = random;
+    }
+
+    /**
+     * @param attempt The number of attempts that have failed so far, less one: 0 before the
+     *                first retry
+     * @return The ceiling for that retry's wait
+     */
+    public long getCeilingMillis(int attempt) {
+        /* Stop doubling well before the shift overflows */
+        if (attempt >= 62 || mBaseMillis << attempt >= mCapMillis || mBaseMillis << attempt < 0) {
+            return mCapMillis;
+        }
+        return mBaseMillis << attempt;
+    }
+
+    /**
+     * @param attempt As for {@link #getCeilingMillis}
+     * @return How long to wait before that retry, between 0 and its ceiling inclusive
+     */
+    public long getDelayMillis(int attempt) {
+        long ceiling = getCeilingMillis(attempt);
+        return Math.min(ceiling, (long) (mRandom.nextDouble() * (ceiling + 1)));
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.sync;
+
+import com.example.android.sunshine.utilities.GroupForecastParser;
+import com.example.android.sunshine.utilities.OpenWeatherJsonParser;
+
+import org.json.JSONException;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.HttpURLConnection;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Fetches the forecasts for several locations with as few requests as possible. The locations
+ * are asked for together from the server's group endpoint, up to {@link #MAX_GROUP_SIZE} at a
+ * time, which costs one connection and one request per group instead of one per location. Each
+ * city's forecast is handed on as soon as it has been parsed, see {@link GroupForecastParser}.
+ * <p>
+ * A server without the group endpoint answers a group request with 404 or 501. The fetcher then
+ * asks for each location on its own, and keeps doing so without trying the group endpoint
+ * again for as long as it lives. Locations that a group response leaves out are also asked for
+ * on their own.
+ */
+public final class BatchForecastFetcher {
+
+    /* The most locations the group endpoint answers for in one request */
+    public static final int MAX_GROUP_SIZE = 20;
+
+    private static final String GROUP_PATH = "/group";
+    private static final String QUERY_PARAM = "q";
+
+    /**
+     * Makes the requests. The app's goes through NetworkUtils, so that each request is traced
+     * and can be cancelled.
+     */
+    public interface Transport {
+
+        /**
+         * @param url The URL to fetch
+         * @return The response, or null if there was none
+         * @throws IOException If the request failed; a {@link FetchException} for an error status
+         */
+        String get(String url) throws IOException;
+    }
+
+    private final String mBaseUrl;
+    private final String mCommonQuery;
+
+    private volatile boolean mGroupSupported = true;
+
+    /**
+     * @param baseUrl     The URL of the forecast endpoint; the group endpoint is /group under it
+     * @param commonQuery The query parameters every request carries, such as the units, already
+     *                    encoded and joined with '&amp;'
+     */
+    public BatchForecastFetcher(String baseUrl, String commonQuery) {
+        mBaseUrl = baseUrl;
+        mCommonQuery = commonQuery;
+    }
+
+    /**
+     * Fetches the forecasts for the given locations, handing each one to the sink as soon as it
+     * has been parsed.
+     *
+     * @param locations             The location queries to fetch the forecasts for
+     * @param normalizedUtcStartDay The normalized UTC date of the first day in the forecasts
+     * @param transport             Makes the requests
+     * @param sink                  Takes each location's forecast
+     * @return The locations the server had no forecast for, in the order they were asked for
+     * @throws IOException   If a request failed. The forecasts handed to the sink before it
+     *                       are still good.
+     * @throws JSONException If a response couldn't be parsed
+     */
+    public List<String> fetch(List<String> locations, long normalizedUtcStartDay,
+                              Transport transport, final GroupForecastParser.Sink sink)
+            throws IOException, JSONException {
+        final Set<String> remaining = new LinkedHashSet<>(locations);
+
+        GroupForecastParser.Sink routing = new GroupForecastParser.Sink() {
+            @Override
+            public void onForecast(String location, String json,
+                                   OpenWeatherJsonParser.ParsedForecast forecast) {
+                /* Only once per location, and only for locations that were asked for */
+                if (remaining.remove(location)) {
+                    sink.onForecast(location, json, forecast);
+                }
+            }
+        };
+
+        if (mGroupSupported && remaining.size() > 1) {
+            List<String> pending = new ArrayList<>(remaining);
+            for (int start = 0; start < pending.size() && mGroupSupported;
+                    start += MAX_GROUP_SIZE) {
+                List<String> group =
+                        pending.subList(start, Math.min(pending.size(), start + MAX_GROUP_SIZE));
+                fetchGroup(group, normalizedUtcStartDay, transport, routing);
+            }
+        }
+
+        /* Whatever the group requests didn't answer for, one location at a time */
+        List<String> missing = new ArrayList<>();
+        for (String location : new ArrayList<>(remaining)) {
+            String response = transport.get(buildUrl(location));
+            OpenWeatherJsonParser.ParsedForecast forecast = response == null
+                    ? null
+                    : OpenWeatherJsonParser.parse(response, normalizedUtcStartDay);
+            if (forecast == null) {
+                missing.add(location);
+            } else {
+                routing.onForecast(location, response, forecast);
+            }
+        }
+        return missing;
+    }
+
+    private void fetchGroup(List<String> group, long normalizedUtcStartDay, Transport transport,
+                            GroupForecastParser.Sink routing) throws IOException, JSONException {
+        String response;
+        try {
+            response = transport.get(buildGroupUrl(group));
+        } catch (FetchException e) {
+            if (isMissingEndpoint(e.getStatus())) {
+                mGroupSupported = false;
+                return;
+            }
+            throw e;
+        }
+        if (response == null) {
+            return;
+        }
+        int code = GroupForecastParser.parse(response, normalizedUtcStartDay, routing);
+        if (isMissingEndpoint(code)) {
+            mGroupSupported = false;
+        }
+    }
+
+    private static boolean isMissingEndpoint(int status) {
+        return status == HttpURLConnection.HTTP_NOT_FOUND
+                || status == HttpURLConnection.HTTP_NOT_IMPLEMENTED;
+    }
+
+    /**
+     * @return false once the server has shown it has no group endpoint
+     */
+    public boolean isGroupSupported() {
+        return mGroupSupported;
+    }
+
+    private String buildGroupUrl(List<String> group) {
+        StringBuilder url = new StringBuilder(mBaseUrl).append(GROUP_PATH).append('?');
+        for (String location : group) {
+            url.append(QUERY_PARAM).append('=').append(encode(location)).append('&');
+        }
+        return url.append(mCommonQuery).toString();
+    }
+
+    private String buildUrl(String location) {
+        return mBaseUrl + '?' + QUERY_PARAM + '=' + encode(location) + '&' + mCommonQuery;
+    }
+
+    private static String encode(String value) {
+        try {
+            return URLEncoder.encode(value, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            /* Every JVM supports UTF-8 */
+            throw new AssertionError(e);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.sync;
+
+/**
+ * Stops fetching from an endpoint that keeps failing. After a number of failures in a row the
+ * breaker opens, and requests fail straight away without touching the network. Once it has been
+ * open for a while it lets a single trial request through: if that succeeds the breaker closes
+ * again, and if it fails the breaker stays open for another while.
+ * <p>
+ * Times are passed in rather than read from a clock, the same as {@link SyncFreshnessPolicy}.
+ */
+public final class CircuitBreaker {
+
+    public static final int STATE_CLOSED = 0;
+    public static final int STATE_OPEN = 1;
+    public static final int STATE_HALF_OPEN = 2;
+
+    private final int mFailureThreshold;
+    private final long mOpenMillis;
+
+    private int mState = STATE_CLOSED;
+    private int mConsecutiveFailures;
+    private long mOpenedAt;
+
+    /**
+     * @param failureThreshold The number of failures in a row that opens the breaker
+     * @param openMillis       How long it stays open before letting a trial request through
+     */
+    public CircuitBreaker(int failureThreshold, long openMillis) {
+        mFailureThreshold = failureThreshold;
+        mOpenMillis = openMillis;
+    }
+
+    /**
+     * @param now The current time
+     * @return true if a request may be made now. While half open, only the first caller is let
+     * through, until it reports back.
+     */
+    public synchronized boolean allowRequest(long now) {
+        switch (mState) {
+            case STATE_CLOSED:
+                return true;
+            case STATE_OPEN:
+                /* A clock set back leaves the breaker open no longer than it would have been */
+                if (now - mOpenedAt >= mOpenMillis || now < mOpenedAt) {
+                    mState = STATE_HALF_OPEN;
+                    return true;
+                }
+                return false;
+            default:
+                /* A trial request is already out */
+                return false;
+        }
+    }
+
+    /**
+     * Reports that a request reached the endpoint and got an answer, which closes the breaker.
+     */
+    public synchronized void onSuccess() {
+        mState = STATE_CLOSED;
+        mConsecutiveFailures = 0;
+    }
+
+    /**
+     * Reports a failure that suggests the endpoint is down.
+     *
+     * @param now The current time
+     */
+    public synchronized void onFailure(long now) {
+        mConsecutiveFailures++;
+        if (mState == STATE_HALF_OPEN || mConsecutiveFailures >= mFailureThreshold) {
+            mState = STATE_OPEN;
+            mOpenedAt = now;
+        }
+    }
+
+    /**
+     * Reports that a request went out but neither got an answer nor failed in a way that says
+     * anything about the endpoint, such as a fetch cancelled when its job was stopped. If it was
+     * the trial request, the breaker opens again for another while, so that a later caller gets
+     * the next trial instead of the breaker waiting forever for this one to report.
+     *
+     * @param now The current time
+     */
+    public synchronized void onAbandoned(long now) {
+        if (mState == STATE_HALF_OPEN) {
+            mState = STATE_OPEN;
+            mOpenedAt = now;
+        }
+    }
+
+    /**
+     * @return One of the STATE constants
+     */
+    public synchronized int getState() {
+        return mState;
+    }
+}
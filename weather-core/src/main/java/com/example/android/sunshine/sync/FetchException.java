@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.sync;
+
+import org.json.JSONException;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
+
+/**
+ * A failed forecast fetch, classified by what went wrong, which decides whether it is worth
+ * trying again. A timeout, a dropped connection or a 5xx may well go away on their own; a 4xx
+ * or a response that doesn't parse will come back the same however often it is asked for. The
+ * exceptions are a 429, which asks the app to back off and try again later, and a 501, which
+ * says the server has no such endpoint.
+ */
+public class FetchException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    /* What went wrong */
+    public static final int KIND_TIMEOUT = 0;
+    public static final int KIND_NETWORK = 1;
+    public static final int KIND_SERVER = 2;
+    public static final int KIND_CLIENT = 3;
+    public static final int KIND_PARSE = 4;
+    public static final int KIND_CIRCUIT_OPEN = 5;
+    public static final int KIND_THROTTLED = 6;
+
+    private static final String[] KIND_NAMES = {
+            "timeout", "network", "server", "client", "parse", "circuit_open", "throttled",
+    };
+
+    /* Too Many Requests, which HttpURLConnection has no constant for */
+    private static final int HTTP_TOO_MANY_REQUESTS = 429;
+
+    /* Stored when the failure wasn't an HTTP response */
+    public static final int NO_STATUS = -1;
+
+    private final int mKind;
+    private final int mStatus;
+
+    /**
+     * @param kind    One of the KIND constants
+     * @param status  The HTTP status code, or {@link #NO_STATUS}
+     * @param message What happened
+     */
+    public FetchException(int kind, int status, String message) {
+        super(message);
+        mKind = kind;
+        mStatus = status;
+    }
+
+    /**
+     * @param status An HTTP status code of 400 or above
+     * @return The exception for a response with that status
+     */
+    public static FetchException forStatus(int status) {
+        int kind;
+        if (status == HttpURLConnection.HTTP_NOT_IMPLEMENTED) {
+            /* The server doesn't do what was asked, such as a group request, and never will */
+            kind = KIND_CLIENT;
+        } else if (status >= 500) {
+            kind = KIND_SERVER;
+        } else if (status == HTTP_TOO_MANY_REQUESTS) {
+            kind = KIND_THROTTLED;
+        } else {
+            kind = KIND_CLIENT;
+        }
+        return new FetchException(kind, status, "HTTP " + status);
+    }
+
+    /**
+     * @param error Anything a fetch or the parse after it threw
+     * @return One of the KIND constants
+     */
+    public static int classify(Throwable error) {
+        if (error instanceof FetchException) {
+            return ((FetchException) error).mKind;
+        }
+        if (error instanceof SocketTimeoutException) {
+            return KIND_TIMEOUT;
+        }
+        if (error instanceof JSONException) {
+            return KIND_PARSE;
+        }
+        /* Refused, reset, unreachable, unknown host, cut short: the network, in other words */
+        return KIND_NETWORK;
+    }
+
+    /**
+     * @param kind One of the KIND constants
+     * @return true if trying again might get a different result
+     */
+    public static boolean isRetryable(int kind) {
+        return kind == KIND_TIMEOUT || kind == KIND_NETWORK || kind == KIND_SERVER
+                || kind == KIND_THROTTLED;
+    }
+
+    /**
+     * @param kind One of the KIND constants
+     * @return Its name, for logs
+     */
+    public static String getKindName(int kind) {
+        return KIND_NAMES[kind];
+    }
+
+    public int getKind() {
+        return mKind;
+    }
+
+    public int getStatus() {
+        return mStatus;
+    }
+}
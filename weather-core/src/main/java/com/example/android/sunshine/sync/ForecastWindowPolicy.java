@@ -0,0 +1,187 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.sync;
+
+/**
+ * Decides how many days of forecast a sync asks for. On an unmetered connection that is every
+ * day the server has. On a metered or constrained one, it is only as many days as users actually
+ * look at, plus a couple to spare; the rest are fetched when the list is scrolled near the end of
+ * what is stored, see {@link #shouldExtend}.
+ * <p>
+ * How far users look is measured as the deepest day the forecast list showed on each visit, and
+ * kept as a count of visits per day. Counts are halved once there are more than
+ * {@link #MAX_VISITS} of them, so the policy follows recent habits rather than those of a year
+ * ago. The counts can be saved and restored with {@link #toPreference} and
+ * {@link #fromPreference}.
+ */
+public final class ForecastWindowPolicy {
+
+    /* What the current connection costs */
+    public static final int NETWORK_UNMETERED = 0;
+    public static final int NETWORK_METERED = 1;
+    public static final int NETWORK_CONSTRAINED = 2;
+
+    /* The most days the weather server forecasts */
+    public static final int MAX_DAYS = 14;
+
+    /* The fewest days a sync asks for: today, and enough of the week to fill the first screen */
+    public static final int MIN_DAYS = 5;
+
+    /* What a metered sync asks for before any visits have been measured */
+    static final int DEFAULT_METERED_DAYS = 7;
+
+    /* Days asked for beyond the deepest one users usually reach */
+    static final int SPARE_DAYS = 2;
+
+    /*
+     * How close to the last stored day the list may show before the rest is fetched. It is less
+     * than SPARE_DAYS, so that a visit reaching the deepest day users usually reach is served by
+     * what is stored; only one going further fetches the rest.
+     */
+    static final int PREFETCH_DAYS = 1;
+
+    /* Past this many visits, the counts are halved */
+    static final int MAX_VISITS = 1000;
+
+    /* The visits whose deepest day was each day, today being 0 */
+    private final long[] mVisits = new long[MAX_DAYS];
+    private long mTotal;
+
+    /**
+     * Counts a visit to the forecast list.
+     *
+     * @param deepestDay The furthest day the list showed during the visit, today being 0. Days
+     *                   beyond the forecast are counted as its last day.
+     */
+    public synchronized void recordVisit(int deepestDay) {
+        if (deepestDay < 0) {
+            return;
+        }
+        mVisits[Math.min(deepestDay, MAX_DAYS - 1)]++;
+        mTotal++;
+        if (mTotal > MAX_VISITS) {
+            mTotal = 0;
+            for (int day = 0; day < MAX_DAYS; day++) {
+                mVisits[day] /= 2;
+                mTotal += mVisits[day];
+            }
+        }
+    }
+
+    /**
+     * @return How many visits are counted
+     */
+    public synchronized long getVisitCount() {
+        return mTotal;
+    }
+
+    /**
+     * @param fraction From 0 to 1
+     * @return The deepest day that at least that fraction of visits went no further than, or -1
+     * if no visits are counted
+     */
+    public synchronized int getDeepestDay(double fraction) {
+        if (mTotal == 0) {
+            return -1;
+        }
+        long wanted = (long) Math.ceil(fraction * mTotal);
+        long seen = 0;
+        for (int day = 0; day < MAX_DAYS; day++) {
+            seen += mVisits[day];
+            if (seen >= wanted && seen > 0) {
+                return day;
+            }
+        }
+        return MAX_DAYS - 1;
+    }
+
+    /**
+     * @param network One of the NETWORK constants, for the connection the sync will use
+     * @return How many days the sync should ask for
+     */
+    public int getDaysToFetch(int network) {
+        if (network == NETWORK_UNMETERED) {
+            return MAX_DAYS;
+        }
+        /*
+         * A metered connection fetches what nine visits in ten look at; a constrained one, such
+         * as roaming or with the data saver on, only what half of them do.
+         */
+        int deepest = getDeepestDay(network == NETWORK_METERED ? 0.9 : 0.5);
+        if (deepest < 0) {
+            return network == NETWORK_METERED ? DEFAULT_METERED_DAYS : MIN_DAYS;
+        }
+        return Math.max(MIN_DAYS, Math.min(MAX_DAYS, deepest + 1 + SPARE_DAYS));
+    }
+
+    /**
+     * Only to be asked when the user has scrolled the list down; a list that merely shows the
+     * last stored days on its first screen, as a short window does on a tall screen, doesn't
+     * need more.
+     *
+     * @param lastVisibleDay The furthest day the list is showing, today being 0
+     * @param storedDays     How many days, from today, are stored
+     * @return true if the list is near enough the end of what is stored, and there is more to
+     * fetch, that the rest of the forecast should be fetched now. An empty list is left to the
+     * sync that fills it.
+     */
+    public static boolean shouldExtend(int lastVisibleDay, int storedDays) {
+        return storedDays > 0 && storedDays < MAX_DAYS
+                && lastVisibleDay >= storedDays - 1 - PREFETCH_DAYS;
+    }
+
+    /**
+     * @return The counts, as a string for {@link #fromPreference}
+     */
+    public synchronized String toPreference() {
+        StringBuilder value = new StringBuilder(3 * MAX_DAYS);
+        for (int day = 0; day < MAX_DAYS; day++) {
+            value.append(day == 0 ? "" : ",").append(mVisits[day]);
+        }
+        return value.toString();
+    }
+
+    /**
+     * @param value Counts written by {@link #toPreference}, or null
+     * @return A policy with those counts, or with none if there were none or they were damaged
+     */
+    public static ForecastWindowPolicy fromPreference(String value) {
+        ForecastWindowPolicy policy = new ForecastWindowPolicy();
+        if (value == null) {
+            return policy;
+        }
+        String[] counts = value.split(",");
+        if (counts.length != MAX_DAYS) {
+            return policy;
+        }
+        long[] visits = new long[MAX_DAYS];
+        long total = 0;
+        try {
+            for (int day = 0; day < MAX_DAYS; day++) {
+                visits[day] = Long.parseLong(counts[day]);
+                if (visits[day] < 0) {
+                    return policy;
+                }
+                total += visits[day];
+            }
+        } catch (NumberFormatException e) {
+            return policy;
+        }
+        System.arraycopy(visits, 0, policy.mVisits, 0, MAX_DAYS);
+        policy.mTotal = total;
+        return policy;
+    }
+}
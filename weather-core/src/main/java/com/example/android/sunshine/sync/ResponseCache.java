@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.sync;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Recent forecast responses, keyed by the location they are for. The app keys a location given
+ * by its coordinates by its {@link com.example.android.sunshine.utilities.GeoCell}, so nearby
+ * locations share one entry.
+ * <p>
+ * Each response remembers how many days of forecast were asked for. A request for more days than
+ * that is a miss, so a short response fetched over a metered connection is never served to a sync
+ * that wants the whole forecast, while a longer response serves a shorter request as it is.
+ * <p>
+ * A response is served for a limited time after it was fetched, and the least recently used
+ * entries make way for new ones once the cache is full. Like {@link SyncFreshnessPolicy}, the
+ * cache treats a response fetched "in the future" as expired, since the clock must have been set
+ * back since and its age is unknown.
+ */
+public final class ResponseCache {
+
+    private static final class Entry {
+        final String mResponse;
+        final int mDays;
+        final long mFetched;
+
+        Entry(String response, int days, long fetched) {
+            mResponse = response;
+            mDays = days;
+            mFetched = fetched;
+        }
+    }
+
+    private final long mMaxAgeMillis;
+    private final Map<String, Entry> mEntries;
+
+    private int mHits;
+    private int mMisses;
+
+    /**
+     * @param maxEntries   How many responses to keep
+     * @param maxAgeMillis How long after it was fetched a response is served
+     */
+    public ResponseCache(final int maxEntries, long maxAgeMillis) {
+        mMaxAgeMillis = maxAgeMillis;
+        mEntries = new LinkedHashMap<String, Entry>(maxEntries + 1, 1f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * @param key  The location
+     * @param days How many days of forecast the caller asks for
+     * @param now  The current time
+     * @return The response for the location, or null if there is none young enough to serve or
+     * it has fewer days than were asked for
+     */
+    public synchronized String get(String key, int days, long now) {
+        Entry entry = mEntries.get(key);
+        if (entry != null && (entry.mFetched > now || now - entry.mFetched >= mMaxAgeMillis)) {
+            mEntries.remove(key);
+            entry = null;
+        }
+        if (entry == null || entry.mDays < days) {
+            mMisses++;
+            return null;
+        }
+        mHits++;
+        return entry.mResponse;
+    }
+
+    /**
+     * Like {@link #get}, but without counting a hit or a miss, for a caller that only wants to
+     * know whether a request can be skipped. Like a hit, it keeps the entry from being evicted
+     * soon.
+     *
+     * @param key  The location
+     * @param days How many days of forecast the caller asks for
+     * @param now  The current time
+     * @return true if there is a response for the location young enough to serve, with at least
+     * that many days
+     */
+    public synchronized boolean contains(String key, int days, long now) {
+        Entry entry = mEntries.get(key);
+        return entry != null && entry.mDays >= days && entry.mFetched <= now
+                && now - entry.mFetched < mMaxAgeMillis;
+    }
+
+    /**
+     * @param key      The location
+     * @param response The response for it
+     * @param days     How many days of forecast were asked for
+     * @param now      When the response was fetched
+     */
+    public synchronized void put(String key, String response, int days, long now) {
+        mEntries.put(key, new Entry(response, days, now));
+    }
+
+    /**
+     * Forgets every response.
+     */
+    public synchronized void clear() {
+        mEntries.clear();
+    }
+
+    public synchronized int getHitCount() {
+        return mHits;
+    }
+
+    public synchronized int getMissCount() {
+        return mMisses;
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.sync;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+
+/**
+ * Makes a fetch survive the failures that go away on their own. A failure that
+ * {@link FetchException#isRetryable} is retried after a {@link Backoff} wait, up to a maximum
+ * number of attempts; anything else is thrown straight away. Every attempt goes through a
+ * {@link CircuitBreaker} shared by all fetches from the same endpoint, so that once it is
+ * clearly down the app stops asking until it has had time to recover.
+ */
+public final class RetryingFetcher {
+
+    /**
+     * One attempt at the fetch.
+     */
+    public interface Attempt {
+
+        /**
+         * @return The response
+         * @throws IOException If the attempt failed; a {@link FetchException} says how
+         */
+        String fetch() throws IOException;
+    }
+
+    /**
+     * The time, and a way to wait. The app's waits end early when the sync is cancelled; the
+     * tests' don't wait at all.
+     */
+    public interface Clock {
+
+        long now();
+
+        void sleep(long millis) throws InterruptedException;
+    }
+
+    /**
+     * Told about each failed attempt, for logging.
+     */
+    public interface Listener {
+
+        /**
+         * @param attempt     The number of the attempt that failed, from 1
+         * @param kind        What went wrong, one of the FetchException.KIND constants
+         * @param retryMillis How long until the next attempt, or -1 if there won't be one
+         */
+        void onAttemptFailed(int attempt, int kind, long retryMillis);
+    }
+
+    private final int mMaxAttempts;
+    private final Backoff mBackoff;
+    private final CircuitBreaker mBreaker;
+    private final Clock mClock;
+    private final Listener mListener;
+
+    /**
+     * @param maxAttempts The most attempts one fetch may make, including the first
+     * @param backoff     How long to wait between them
+     * @param breaker     The breaker for the endpoint being fetched from
+     * @param clock       The time, and how to wait
+     * @param listener    Told about each failed attempt
+     */
+    public RetryingFetcher(int maxAttempts, Backoff backoff, CircuitBreaker breaker, Clock clock,
+                           Listener listener) {
+        mMaxAttempts = maxAttempts;
+        mBackoff = backoff;
+        mBreaker = breaker;
+        mClock = clock;
+        mListener = listener;
+    }
+
+    /**
+     * Makes attempts until one succeeds, one fails in a way that isn't worth retrying, the
+     * attempts run out or the breaker opens. An attempt that throws anything other than an
+     * IOException, such as OperationCanceledException when the sync is stopped, is passed on
+     * and reported to the breaker as abandoned.
+     *
+     * @param attempt The fetch to attempt
+     * @return The first successful attempt's response
+     * @throws IOException The last attempt's failure, or a {@link FetchException} of kind
+     *                     {@link FetchException#KIND_CIRCUIT_OPEN} if the breaker is open
+     */
+    public String fetch(Attempt attempt) throws IOException {
+        for (int number = 1; ; number++) {
+            if (!mBreaker.allowRequest(mClock.now())) {
+                throw new FetchException(FetchException.KIND_CIRCUIT_OPEN,
+                        FetchException.NO_STATUS, "Not fetching while the endpoint is failing");
+            }
+
+            /* Whether the breaker has been told how the attempt went */
+            boolean reported = false;
+            try {
+                String response = attempt.fetch();
+                reported = true;
+                mBreaker.onSuccess();
+                return response;
+            } catch (IOException e) {
+                reported = true;
+                int kind = FetchException.classify(e);
+                if (!FetchException.isRetryable(kind)) {
+                    /* The endpoint answered; it just didn't like the question */
+                    mBreaker.onSuccess();
+                    mListener.onAttemptFailed(number, kind, -1);
+                    throw e;
+                }
+
+                mBreaker.onFailure(mClock.now());
+                if (number >= mMaxAttempts) {
+                    mListener.onAttemptFailed(number, kind, -1);
+                    throw e;
+                }
+
+                long delay = mBackoff.getDelayMillis(number - 1);
+                mListener.onAttemptFailed(number, kind, delay);
+                try {
+                    mClock.sleep(delay);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while backing off");
+                }
+            } finally {
+                if (!reported) {
+                    /* Cancelled, or a bug; either way the breaker mustn't wait for it forever */
+                    mBreaker.onAbandoned(mClock.now());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.sync;
+
+/**
+ * Decides whether a requested sync is worth doing. MainActivity asks for a sync every time it is
+ * created, which includes every rotation and every return from the details screen, and each sync
+ * downloads the whole forecast and rewrites the weather table. The forecast is daily and the
+ * periodic job already keeps it up to date, so a launch sync is only done when the data for the
+ * current location is older than the freshness window.
+ * <p>
+ * Syncs the user asked for, by refreshing or by choosing another location, are always done, as
+ * are those that fetch the rest of a shortened forecast as the list is scrolled towards its end.
+ * <p>
+ * The policy counts the syncs it was asked for and the ones it skipped, for as long as it lives;
+ * the app keeps one for the lifetime of its process, so those are per session.
+ */
+public final class SyncFreshnessPolicy {
+
+    /* Why a sync was requested */
+    public static final int REASON_LAUNCH = 0;
+    public static final int REASON_USER_REFRESH = 1;
+    public static final int REASON_LOCATION_CHANGED = 2;
+    public static final int REASON_EXTEND_WINDOW = 3;
+
+    /* Returned by the store when a location has never been synced */
+    public static final long NEVER_SYNCED = -1;
+
+    private final long mFreshnessWindowMillis;
+
+    private int mRequested;
+    private int mAvoided;
+
+    /**
+     * @param freshnessWindowMillis How long after a successful sync its data counts as fresh
+     */
+    public SyncFreshnessPolicy(long freshnessWindowMillis) {
+        mFreshnessWindowMillis = freshnessWindowMillis;
+    }
+
+    /**
+     * @param lastSuccessfulSync When the current location was last synced successfully, or
+     *                           {@link #NEVER_SYNCED}
+     * @param now                The current time
+     * @return true if that data is recent enough that syncing again would change nothing
+     */
+    public boolean isFresh(long lastSuccessfulSync, long now) {
+        /*
+         * A sync "in the future" means the clock has been set back since; the age of the data is
+         * unknown, so it's treated as stale rather than as fresh for however long it takes the
+         * clock to catch up.
+         */
+        return lastSuccessfulSync != NEVER_SYNCED
+                && lastSuccessfulSync <= now
+                && now - lastSuccessfulSync < mFreshnessWindowMillis;
+    }
+
+    /**
+     * Decides whether to go ahead with a sync, and counts the decision.
+     *
+     * @param reason             One of the REASON constants
+     * @param lastSuccessfulSync When the current location was last synced successfully, or
+     *                           {@link #NEVER_SYNCED}
+     * @param now                The current time
+     * @return true if the sync should be done
+     */
+    public synchronized boolean shouldSync(int reason, long lastSuccessfulSync, long now) {
+        mRequested++;
+        if (reason == REASON_LAUNCH && isFresh(lastSuccessfulSync, now)) {
+            mAvoided++;
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return How many syncs this policy has been asked about
+     */
+    public synchronized int getRequestedCount() {
+        return mRequested;
+    }
+
+    /**
+     * @return How many of those it skipped because the data was fresh
+     */
+    public synchronized int getAvoidedCount() {
+        return mAvoided;
+    }
+}
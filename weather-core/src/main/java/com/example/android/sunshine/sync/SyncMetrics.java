@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.sync;
+
+import java.io.PrintWriter;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Aggregates the {@link SyncTrace}s of a process: a {@link Histogram} of the time spent in each
+ * stage, in the sync as a whole and until today's weather was stored, histograms of bytes
+ * downloaded and rows stored, and how many syncs ended each way. Everything is recorded with
+ * atomic operations, so recording never blocks.
+ */
+public final class SyncMetrics {
+
+    private final Histogram[] mStageMicros = new Histogram[SyncTrace.STAGE_COUNT];
+    private final Histogram mTotalMicros = new Histogram();
+    private final Histogram mTodayVisibleMicros = new Histogram();
+    private final Histogram mBytes = new Histogram();
+    private final Histogram mRows = new Histogram();
+    private final AtomicLongArray mOutcomes = new AtomicLongArray(SyncTrace.OUTCOME_COUNT);
+    private final AtomicLongArray mFailedStages = new AtomicLongArray(SyncTrace.STAGE_COUNT);
+
+    public SyncMetrics() {
+        for (int stage = 0; stage < SyncTrace.STAGE_COUNT; stage++) {
+            mStageMicros[stage] = new Histogram();
+        }
+    }
+
+    /**
+     * Adds a finished sync to the metrics. Stages that didn't run aren't counted.
+     *
+     * @param trace The sync's trace
+     */
+    public void record(SyncTrace trace) {
+        for (int stage = 0; stage < SyncTrace.STAGE_COUNT; stage++) {
+            long micros = trace.getStageMicros(stage);
+            if (micros != SyncTrace.NOT_RUN) {
+                mStageMicros[stage].record(micros);
+            }
+        }
+        mTotalMicros.record(trace.getTotalMicros());
+        if (trace.getTodayVisibleMicros() != SyncTrace.NOT_RUN) {
+            mTodayVisibleMicros.record(trace.getTodayVisibleMicros());
+        }
+        mOutcomes.incrementAndGet(trace.getOutcome());
+        if (trace.getOutcome() == SyncTrace.OUTCOME_FAILED) {
+            if (trace.getFailedStage() != -1) {
+                mFailedStages.incrementAndGet(trace.getFailedStage());
+            }
+        } else {
+            mBytes.record(trace.getBytes());
+            mRows.record(trace.getRows());
+        }
+    }
+
+    /**
+     * @param stage One of the SyncTrace.STAGE constants
+     * @return The times that stage took, in microseconds
+     */
+    public Histogram getStageMicros(int stage) {
+        return mStageMicros[stage];
+    }
+
+    public Histogram getTotalMicros() {
+        return mTotalMicros;
+    }
+
+    /**
+     * @return The times from the start of a sync to today's weather being stored, in
+     * microseconds
+     */
+    public Histogram getTodayVisibleMicros() {
+        return mTodayVisibleMicros;
+    }
+
+    public Histogram getBytes() {
+        return mBytes;
+    }
+
+    public Histogram getRows() {
+        return mRows;
+    }
+
+    /**
+     * @param outcome One of the SyncTrace.OUTCOME constants
+     * @return How many syncs ended that way
+     */
+    public long getOutcomeCount(int outcome) {
+        return mOutcomes.get(outcome);
+    }
+
+    /**
+     * @param stage One of the SyncTrace.STAGE constants
+     * @return How many syncs failed in that stage
+     */
+    public long getFailureCount(int stage) {
+        return mFailedStages.get(stage);
+    }
+
+    /**
+     * Writes a table of the metrics, one line per histogram, with times in milliseconds.
+     *
+     * @param writer Where to write them
+     */
+    public void dump(PrintWriter writer) {
+        writer.print("syncs:");
+        for (int outcome = 0; outcome < SyncTrace.OUTCOME_COUNT; outcome++) {
+            writer.print(' ');
+            writer.print(SyncTrace.getOutcomeName(outcome));
+            writer.print('=');
+            writer.print(mOutcomes.get(outcome));
+        }
+        writer.println();
+
+        writer.println("stage            count   mean    p50    p95    max  failed  (ms)");
+        for (int stage = 0; stage < SyncTrace.STAGE_COUNT; stage++) {
+            dumpTimes(writer, SyncTrace.getStageName(stage), mStageMicros[stage],
+                    mFailedStages.get(stage));
+        }
+        dumpTimes(writer, "total", mTotalMicros, mOutcomes.get(SyncTrace.OUTCOME_FAILED));
+        dumpTimes(writer, "today_visible", mTodayVisibleMicros, 0);
+
+        writer.println("bytes: mean=" + mBytes.getMean() + " p95<=" + mBytes.getPercentile(0.95)
+                + " max=" + mBytes.getMax() + " total=" + mBytes.getSum());
+        writer.println("rows: mean=" + mRows.getMean() + " max=" + mRows.getMax()
+                + " total=" + mRows.getSum());
+    }
+
+    private static void dumpTimes(PrintWriter writer, String name, Histogram micros,
+                                  long failures) {
+        writer.println(String.format(Locale.US, "%-15s %6d %6s %6s %6s %6s %7d",
+                name,
+                micros.getCount(),
+                SyncTrace.formatMillis(micros.getMean()),
+                SyncTrace.formatMillis(micros.getPercentile(0.5)),
+                SyncTrace.formatMillis(micros.getPercentile(0.95)),
+                SyncTrace.formatMillis(micros.getMax()),
+                failures));
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.sync;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * When one install's periodic syncs happen. Time is divided into intervals that start on the
+ * hour, in UTC, which is when new forecasts are published; each install syncs once per interval,
+ * at its own fixed offset into it.
+ * <p>
+ * The offset, or phase, is derived from the install's id, so it is the same every time the app
+ * starts and different installs are spread evenly across the interval. Scheduling relative to
+ * "now" instead would line up every install that updated or rebooted at the same moment, and
+ * they would keep syncing together for as long as they stayed up. No install syncs in the first
+ * minutes after a publication, while the new forecast may not have reached every server.
+ */
+public final class SyncSchedule {
+
+    private static final long HOUR_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    /* FNV-1a, which spreads even similar ids well enough for picking a phase */
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final long mIntervalMillis;
+    private final long mPhaseMillis;
+
+    /**
+     * @param intervalMillis         How often to sync; a whole number of hours that divides a
+     *                               day, so the intervals start at the same hours every day
+     * @param publicationDelayMillis How long after the start of an interval before any install
+     *                               syncs
+     * @param installId              Identifies the install; the same id always gets the same
+     *                               phase
+     */
+    public SyncSchedule(long intervalMillis, long publicationDelayMillis, String installId) {
+        if (intervalMillis <= 0 || intervalMillis % HOUR_MILLIS != 0
+                || TimeUnit.DAYS.toMillis(1) % intervalMillis != 0) {
+            throw new IllegalArgumentException("Not a whole number of hours that divides a day: "
+                    + intervalMillis);
+        }
+        if (publicationDelayMillis < 0 || publicationDelayMillis >= intervalMillis) {
+            throw new IllegalArgumentException("Publication delay out of range: "
+                    + publicationDelayMillis);
+        }
+        mIntervalMillis = intervalMillis;
+        mPhaseMillis = publicationDelayMillis
+                + phaseFor(installId, intervalMillis - publicationDelayMillis);
+    }
+
+    /**
+     * @param installId Identifies the install
+     * @param span      How many phases there are to choose from
+     * @return The install's phase, from 0 up to but not including span
+     */
+    static long phaseFor(String installId, long span) {
+        long hash = FNV_OFFSET_BASIS;
+        for (int i = 0; i < installId.length(); i++) {
+            hash ^= installId.charAt(i);
+            hash *= FNV_PRIME;
+        }
+        /* FNV leaves its low bits the least mixed, so fold the high bits down first */
+        hash ^= hash >>> 32;
+        return (hash >>> 1) % span;
+    }
+
+    /**
+     * @return How far into each interval this install syncs
+     */
+    public long getPhaseMillis() {
+        return mPhaseMillis;
+    }
+
+    /**
+     * @return How often this install syncs
+     */
+    public long getIntervalMillis() {
+        return mIntervalMillis;
+    }
+
+    /**
+     * @param earliest The earliest time the sync may happen
+     * @return The first of this install's sync times that isn't before earliest
+     */
+    public long getNextSyncTime(long earliest) {
+        long intervalStart = earliest - floorMod(earliest, mIntervalMillis);
+        long next = intervalStart + mPhaseMillis;
+        return next < earliest ? next + mIntervalMillis : next;
+    }
+
+    /* Times before 1970 are negative, and % would give a negative remainder for them */
+    private static long floorMod(long value, long divisor) {
+        long remainder = value % divisor;
+        return remainder < 0 ? remainder + divisor : remainder;
+    }
+}
@@ -0,0 +1,423 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.sync;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * What happened during one sync: which tier of sync it was, how long each stage took, how many
+ * bytes were downloaded and rows stored, and how it ended. A sync fills one in as it goes by
+ * calling {@link #begin} and {@link #end} around each stage; if it throws, {@link #fail} records
+ * the stage it was in.
+ * <p>
+ * A trace is written by the one thread running the sync and only read once it is finished, so
+ * it isn't synchronized.
+ */
+public final class SyncTrace {
+
+    /* The stages of a sync, in the order they run */
+    public static final int STAGE_BUILD_URL = 0;
+    public static final int STAGE_CONNECT = 1;
+    public static final int STAGE_FIRST_BYTE = 2;
+    public static final int STAGE_DOWNLOAD = 3;
+    public static final int STAGE_PARSE = 4;
+    public static final int STAGE_DELETE = 5;
+    public static final int STAGE_INSERT = 6;
+    public static final int STAGE_NOTIFY = 7;
+    public static final int STAGE_WATCH = 8;
+    public static final int STAGE_LAUNCH_SNAPSHOT = 9;
+
+    public static final int STAGE_COUNT = 10;
+
+    private static final String[] STAGE_NAMES = {
+            "build_url",
+            "connect",
+            "first_byte",
+            "download",
+            "parse",
+            "delete",
+            "insert",
+            "notify",
+            "watch",
+            "launch_snapshot",
+    };
+
+    /* How a sync ended */
+    public static final int OUTCOME_STORED = 0;
+    public static final int OUTCOME_NO_WEATHER = 1;
+    public static final int OUTCOME_FAILED = 2;
+    public static final int OUTCOME_CANCELLED = 3;
+
+    public static final int OUTCOME_COUNT = 4;
+
+    private static final String[] OUTCOME_NAMES = {"stored", "no_weather", "failed", "cancelled"};
+
+    /*
+     * The tiers of sync. A full sync fetches the whole 14 day forecast and replaces the weather
+     * table; a today sync fetches only today's weather and replaces only today's row.
+     */
+    public static final int TIER_FULL = 0;
+    public static final int TIER_TODAY = 1;
+
+    public static final int TIER_COUNT = 2;
+
+    private static final String[] TIER_NAMES = {"full", "today"};
+
+    /* Stored for a stage that didn't run */
+    public static final long NOT_RUN = -1;
+
+    private static final int NO_STAGE = -1;
+
+    private final long mStartedAt;
+    private final int mTier;
+    private final long mStartNanos;
+
+    private final long[] mStageMicros = new long[STAGE_COUNT];
+    private long mTotalMicros;
+
+    private long mBytes;
+    private int mRows;
+
+    private int mOutcome = OUTCOME_NO_WEATHER;
+    private int mFailedStage = NO_STAGE;
+    private String mError;
+
+    private int mCurrentStage = NO_STAGE;
+    private long mStageStartNanos;
+
+    /* What the stage being timed had already taken, if it was resumed rather than begun */
+    private long mStageBaseMicros;
+
+    /* From the start of the sync to today's weather being stored; not kept in the log */
+    private long mTodayVisibleMicros = NOT_RUN;
+
+    /* The days of the response that couldn't be read; not kept in the log either */
+    private int mMalformedDays;
+
+    /**
+     * Starts the trace of a full sync.
+     *
+     * @param startedAt When the sync started, in milliseconds since the epoch
+     */
+    public SyncTrace(long startedAt) {
+        this(startedAt, TIER_FULL);
+    }
+
+    /**
+     * @param startedAt When the sync started, in milliseconds since the epoch
+     * @param tier      One of the TIER constants
+     */
+    public SyncTrace(long startedAt, int tier) {
+        if (tier < 0 || tier >= TIER_COUNT) {
+            throw new IllegalArgumentException("Not a sync tier: " + tier);
+        }
+        mStartedAt = startedAt;
+        mTier = tier;
+        mStartNanos = System.nanoTime();
+        Arrays.fill(mStageMicros, NOT_RUN);
+    }
+
+    /**
+     * @param tier One of the TIER constants
+     * @return Its name, as used in dumps
+     */
+    public static String getTierName(int tier) {
+        return TIER_NAMES[tier];
+    }
+
+    /**
+     * @param stage One of the STAGE constants
+     * @return Its name, as used in dumps and in the persisted log
+     */
+    public static String getStageName(int stage) {
+        return STAGE_NAMES[stage];
+    }
+
+    /**
+     * @param outcome One of the OUTCOME constants
+     * @return Its name, as used in dumps and in the persisted log
+     */
+    public static String getOutcomeName(int outcome) {
+        return OUTCOME_NAMES[outcome];
+    }
+
+    /**
+     * Starts timing a stage.
+     *
+     * @param stage One of the STAGE constants
+     */
+    public void begin(int stage) {
+        mCurrentStage = stage;
+        mStageBaseMicros = 0;
+        mStageStartNanos = System.nanoTime();
+    }
+
+    /**
+     * Times a stage again, adding to the time it has already taken. This is for a stage that
+     * runs in more than one step, such as parsing a forecast today's weather first; a stage
+     * that is simply run again, such as connecting on a retry, uses {@link #begin}.
+     *
+     * @param stage One of the STAGE constants
+     */
+    public void resume(int stage) {
+        begin(stage);
+        mStageBaseMicros = Math.max(0, mStageMicros[stage]);
+    }
+
+    /**
+     * Stops timing the stage started by the last call to {@link #begin} or {@link #resume}.
+     */
+    public void end() {
+        if (mCurrentStage == NO_STAGE) {
+            throw new IllegalStateException("No stage was started");
+        }
+        mStageMicros[mCurrentStage] =
+                mStageBaseMicros + (System.nanoTime() - mStageStartNanos) / 1000;
+        mCurrentStage = NO_STAGE;
+    }
+
+    /**
+     * Marks the moment today's weather was stored, where readers can see it. Only the first
+     * call counts.
+     */
+    public void todayVisible() {
+        if (mTodayVisibleMicros == NOT_RUN) {
+            mTodayVisibleMicros = (System.nanoTime() - mStartNanos) / 1000;
+        }
+    }
+
+    /**
+     * @param days The number of days of the response that couldn't be read, and were left out
+     *             or filled from the stored forecast
+     */
+    public void setMalformedDays(int days) {
+        mMalformedDays = days;
+    }
+
+    /**
+     * @param bytes The size of the response body
+     */
+    public void setBytes(long bytes) {
+        mBytes = bytes;
+    }
+
+    /**
+     * Marks the sync as having stored weather.
+     *
+     * @param rows The number of days it stored
+     */
+    public void stored(int rows) {
+        mRows = rows;
+        mOutcome = OUTCOME_STORED;
+    }
+
+    /**
+     * Marks the sync as failed in the stage that was being timed when the error was thrown.
+     *
+     * @param error What was thrown
+     */
+    public void fail(Throwable error) {
+        mOutcome = OUTCOME_FAILED;
+        mFailedStage = mCurrentStage;
+        mCurrentStage = NO_STAGE;
+        String message = error.getMessage();
+        mError = error.getClass().getSimpleName() + (message == null ? "" : ": " + message);
+    }
+
+    /**
+     * Marks the sync as cancelled in the stage that was being timed, or between stages.
+     */
+    public void cancelled() {
+        mOutcome = OUTCOME_CANCELLED;
+        mFailedStage = mCurrentStage;
+        mCurrentStage = NO_STAGE;
+    }
+
+    /**
+     * Stops the clock for the sync as a whole. Called once, after the last stage.
+     */
+    public void finish() {
+        mTotalMicros = (System.nanoTime() - mStartNanos) / 1000;
+    }
+
+    public long getStartedAt() {
+        return mStartedAt;
+    }
+
+    /**
+     * @return One of the TIER constants
+     */
+    public int getTier() {
+        return mTier;
+    }
+
+    /**
+     * @param stage One of the STAGE constants
+     * @return How long it took in microseconds, or {@link #NOT_RUN}
+     */
+    public long getStageMicros(int stage) {
+        return mStageMicros[stage];
+    }
+
+    public long getTotalMicros() {
+        return mTotalMicros;
+    }
+
+    /**
+     * @return How long after the sync started today's weather was stored, in microseconds, or
+     * {@link #NOT_RUN} if it wasn't. This isn't written to the log, so a trace read from it
+     * never has one.
+     */
+    public long getTodayVisibleMicros() {
+        return mTodayVisibleMicros;
+    }
+
+    /**
+     * @return The number of days of the response that couldn't be read. This isn't written to
+     * the log, so a trace read from it has none.
+     */
+    public int getMalformedDays() {
+        return mMalformedDays;
+    }
+
+    public long getBytes() {
+        return mBytes;
+    }
+
+    public int getRows() {
+        return mRows;
+    }
+
+    public int getOutcome() {
+        return mOutcome;
+    }
+
+    /**
+     * @return The stage a failed or cancelled sync was in, or -1 if it ran to the end or stopped
+     * between stages
+     */
+    public int getFailedStage() {
+        return mFailedStage;
+    }
+
+    /**
+     * @return What a failed sync threw, as its class name and message, or null
+     */
+    public String getError() {
+        return mError;
+    }
+
+    /**
+     * Writes the trace as one line of text, in the format {@link #fromLine} reads: the start
+     * time, outcome, failed stage, total time, bytes, rows and tier, then each stage's time, then
+     * the error if there was one.
+     *
+     * @return The trace, without a line terminator
+     */
+    public String toLine() {
+        StringBuilder line = new StringBuilder(128);
+        line.append(mStartedAt)
+                .append(' ').append(mOutcome)
+                .append(' ').append(mFailedStage)
+                .append(' ').append(mTotalMicros)
+                .append(' ').append(mBytes)
+                .append(' ').append(mRows)
+                .append(' ').append(mTier);
+        for (long micros : mStageMicros) {
+            line.append(' ').append(micros);
+        }
+        if (mError != null) {
+            /* The error goes last, so it may contain spaces but not line breaks */
+            line.append(' ').append(mError.replace('\n', ' ').replace('\r', ' '));
+        }
+        return line.toString();
+    }
+
+    /**
+     * Reads a trace written by {@link #toLine}.
+     *
+     * @param line One line of the persisted log
+     * @return The trace it describes
+     * @throws IllegalArgumentException If the line isn't a trace
+     */
+    public static SyncTrace fromLine(String line) {
+        String[] fields = line.split(" ", 8 + STAGE_COUNT);
+        if (fields.length < 7 + STAGE_COUNT) {
+            throw new IllegalArgumentException("Not a sync trace: " + line);
+        }
+        try {
+            int tier = Integer.parseInt(fields[6]);
+            if (tier < 0 || tier >= TIER_COUNT) {
+                throw new IllegalArgumentException("Not a sync trace: " + line);
+            }
+            SyncTrace trace = new SyncTrace(Long.parseLong(fields[0]), tier);
+            trace.mOutcome = Integer.parseInt(fields[1]);
+            trace.mFailedStage = Integer.parseInt(fields[2]);
+            trace.mTotalMicros = Long.parseLong(fields[3]);
+            trace.mBytes = Long.parseLong(fields[4]);
+            trace.mRows = Integer.parseInt(fields[5]);
+            for (int stage = 0; stage < STAGE_COUNT; stage++) {
+                trace.mStageMicros[stage] = Long.parseLong(fields[7 + stage]);
+            }
+            if (fields.length > 7 + STAGE_COUNT) {
+                trace.mError = fields[7 + STAGE_COUNT];
+            }
+            if (trace.mOutcome < 0 || trace.mOutcome >= OUTCOME_COUNT
+                    || trace.mFailedStage < NO_STAGE || trace.mFailedStage >= STAGE_COUNT) {
+                throw new IllegalArgumentException("Not a sync trace: " + line);
+            }
+            return trace;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Not a sync trace: " + line, e);
+        }
+    }
+
+    /**
+     * @return A readable summary, such as
+     * "full: stored 14 rows, 5120 bytes in 412.3 ms: build_url=0.2 connect=120.5 ..."
+     */
+    @Override
+    public String toString() {
+        StringBuilder summary = new StringBuilder(160);
+        summary.append(TIER_NAMES[mTier]).append(": ").append(OUTCOME_NAMES[mOutcome]);
+        if (mOutcome == OUTCOME_FAILED || mOutcome == OUTCOME_CANCELLED) {
+            summary.append(" in ")
+                    .append(mFailedStage == NO_STAGE ? "?" : STAGE_NAMES[mFailedStage]);
+            if (mError != null) {
+                summary.append(" (").append(mError).append(')');
+            }
+        } else {
+            summary.append(' ').append(mRows).append(" rows");
+        }
+        if (mMalformedDays > 0) {
+            summary.append(" (").append(mMalformedDays).append(" malformed days)");
+        }
+        summary.append(", ").append(mBytes).append(" bytes in ")
+                .append(formatMillis(mTotalMicros)).append(" ms:");
+        for (int stage = 0; stage < STAGE_COUNT; stage++) {
+            if (mStageMicros[stage] != NOT_RUN) {
+                summary.append(' ').append(STAGE_NAMES[stage]).append('=')
+                        .append(formatMillis(mStageMicros[stage]));
+            }
+        }
+        return summary.toString();
+    }
+
+    static String formatMillis(long micros) {
+        return String.format(Locale.US, "%.1f", micros / 1000.0);
+    }
+}
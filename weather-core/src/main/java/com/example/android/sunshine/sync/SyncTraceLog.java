@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.sync;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The last few {@link SyncTrace}s, oldest first. Once it holds its capacity, adding a trace drops
+ * the oldest one. The log is written out as one line per trace, so that the traces survive the
+ * process and a slow sync can still be looked at after the fact.
+ */
+public final class SyncTraceLog {
+
+    private final SyncTrace[] mTraces;
+
+    /* The index the next trace goes in, and how many of the slots hold one */
+    private int mNext;
+    private int mSize;
+
+    /**
+     * @param capacity The number of traces to keep
+     */
+    public SyncTraceLog(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        mTraces = new SyncTrace[capacity];
+    }
+
+    /**
+     * @param trace A finished sync's trace, which replaces the oldest one if the log is full
+     */
+    public synchronized void add(SyncTrace trace) {
+        mTraces[mNext] = trace;
+        mNext = (mNext + 1) % mTraces.length;
+        mSize = Math.min(mSize + 1, mTraces.length);
+    }
+
+    /**
+     * @return The traces in the log, oldest first
+     */
+    public synchronized List<SyncTrace> getTraces() {
+        List<SyncTrace> traces = new ArrayList<>(mSize);
+        int oldest = (mNext - mSize + mTraces.length) % mTraces.length;
+        for (int i = 0; i < mSize; i++) {
+            traces.add(mTraces[(oldest + i) % mTraces.length]);
+        }
+        return traces;
+    }
+
+    /**
+     * Writes the traces, oldest first, one per line.
+     *
+     * @param writer Where to write them; it's left open
+     * @throws IOException If writing fails
+     */
+    public void writeTo(Writer writer) throws IOException {
+        for (SyncTrace trace : getTraces()) {
+            writer.write(trace.toLine());
+            writer.write('\n');
+        }
+        writer.flush();
+    }
+
+    /**
+     * Reads a log written by {@link #writeTo}. Lines that aren't traces, such as the last line
+     * of a log that was cut short, are skipped, and only the newest traces that fit are kept.
+     *
+     * @param reader   Where to read the traces from; it's left open
+     * @param capacity The number of traces the log keeps
+     * @return The log
+     * @throws IOException If reading fails
+     */
+    public static SyncTraceLog readFrom(Reader reader, int capacity) throws IOException {
+        SyncTraceLog log = new SyncTraceLog(capacity);
+        BufferedReader lines = new BufferedReader(reader);
+        String line;
+        while ((line = lines.readLine()) != null) {
+            try {
+                log.add(SyncTrace.fromLine(line));
+            } catch (IllegalArgumentException skipped) {
+                /* One damaged trace shouldn't cost the others */
+            }
+        }
+        return log;
+    }
+}
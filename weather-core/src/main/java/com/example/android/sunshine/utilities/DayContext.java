@@ -0,0 +1,242 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utilities;
+
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Everything about "today" that Sunshine's date code needs, for one clock, time zone and locale:
+ * today's normalized UTC date, today's day number in UTC, the time zone offsets of the forecast
+ * days and the formatter for weekday names.
+ * <p>
+ * These values only change at a few instants: UTC midnight, local midnight and the time zone's
+ * offset transitions, such as the start and end of daylight savings time. When the context
+ * computes them, it also works out the window of time around "now" in which none of those
+ * instants fall, and it hands out the cached values for as long as the clock stays inside that
+ * window. Once the clock leaves it (usually because the day rolled over) everything is computed
+ * again. A change of time zone or locale can't be detected this way, so whoever owns the context
+ * must replace it when that happens; on Android that means on ACTION_TIMEZONE_CHANGED.
+ * <p>
+ * Every value is computed with exactly the arithmetic of {@link NormalizedDates}, so the context
+ * only changes how often that work is done, never its result.
+ */
+public final class DayContext {
+
+    /**
+     * The source of the current time. Tests supply their own to move the clock around.
+     */
+    public interface Clock {
+
+        /* The current time in milliseconds since the epoch */
+        long currentTimeMillis();
+    }
+
+    /* The system clock */
+    public static final Clock SYSTEM_CLOCK = new Clock() {
+        @Override
+        public long currentTimeMillis() {
+            return System.currentTimeMillis();
+        }
+    };
+
+    /*
+     * How many days, starting with today, we keep time zone offsets for. That covers the 14 days
+     * of a forecast with a couple to spare.
+     */
+    private static final int OFFSET_WINDOW_DAYS = 16;
+
+    /* Marks a slot in mOffsets that hasn't been looked up yet. No time zone is this far off. */
+    private static final int OFFSET_UNKNOWN = Integer.MIN_VALUE;
+
+    private final Clock mClock;
+    private final TimeZone mTimeZone;
+    private final Locale mLocale;
+
+    /* "EEEE" in the context's locale and time zone, for the name of a day */
+    private final SimpleDateFormat mDayNameFormat;
+
+    /* The cached values, valid while mValidFrom <= now < mValidUntil */
+    private long mValidFrom = Long.MAX_VALUE;
+    private long mValidUntil = Long.MIN_VALUE;
+    private long mNormalizedUtcDateForToday;
+    private long mUtcDaysSinceEpoch;
+
+    /* The offsets of the days from mNormalizedUtcDateForToday on, filled in as they are used */
+    private final int[] mOffsets = new int[OFFSET_WINDOW_DAYS];
+
+    /**
+     * @param clock    Where to read the current time from
+     * @param timeZone The user's time zone. The context keeps its own copy.
+     * @param locale   The locale to name days in
+     */
+    public DayContext(Clock clock, TimeZone timeZone, Locale locale) {
+        mClock = clock;
+        mTimeZone = (TimeZone) timeZone.clone();
+        mLocale = locale;
+        mDayNameFormat = new SimpleDateFormat("EEEE", locale);
+        mDayNameFormat.setTimeZone(mTimeZone);
+        Arrays.fill(mOffsets, OFFSET_UNKNOWN);
+    }
+
+    /**
+     * @return The time zone the context was made for
+     */
+    public TimeZone getTimeZone() {
+        return (TimeZone) mTimeZone.clone();
+    }
+
+    /**
+     * @return true if the context was made for the given locale
+     */
+    public boolean matches(Locale locale) {
+        return mLocale.equals(locale);
+    }
+
+    /**
+     * @return The current time, read from the context's clock
+     */
+    public long currentTimeMillis() {
+        return mClock.currentTimeMillis();
+    }
+
+    /**
+     * @return The number of milliseconds (UTC / GMT) for today's date at midnight in the
+     * context's time zone
+     * @see NormalizedDates#normalizedUtcDateForToday(long, TimeZone)
+     */
+    public synchronized long getNormalizedUtcDateForToday() {
+        refreshIfNeeded(mClock.currentTimeMillis());
+        return mNormalizedUtcDateForToday;
+    }
+
+    /**
+     * @return The number of days from the epoch to the current time in UTC, which is what
+     * FriendlyDates measures "today" by
+     * @see NormalizedDates#elapsedDaysSinceEpoch(long)
+     */
+    public synchronized long getUtcDaysSinceEpoch() {
+        refreshIfNeeded(mClock.currentTimeMillis());
+        return mUtcDaysSinceEpoch;
+    }
+
+    /**
+     * @param normalizedUtcDate UTC time at midnight for a given date
+     * @return The local date corresponding to the given normalized UTC date
+     * @see NormalizedDates#localMidnightFromNormalizedUtcDate(long, TimeZone)
+     */
+    public synchronized long localMidnightFromNormalizedUtcDate(long normalizedUtcDate) {
+        refreshIfNeeded(mClock.currentTimeMillis());
+
+        long dayAfterToday = (normalizedUtcDate - mNormalizedUtcDateForToday)
+                / NormalizedDates.DAY_IN_MILLIS;
+        if (!NormalizedDates.isNormalized(normalizedUtcDate)
+                || normalizedUtcDate < mNormalizedUtcDateForToday
+                || dayAfterToday >= OFFSET_WINDOW_DAYS) {
+            return NormalizedDates.localMidnightFromNormalizedUtcDate(normalizedUtcDate,
+                    mTimeZone);
+        }
+
+        int slot = (int) dayAfterToday;
+        if (mOffsets[slot] == OFFSET_UNKNOWN) {
+            mOffsets[slot] = mTimeZone.getOffset(normalizedUtcDate);
+        }
+        return normalizedUtcDate - mOffsets[slot];
+    }
+
+    /**
+     * @param dateInMillis A time in milliseconds since the epoch
+     * @return The name of the day the time falls on in the context's time zone, such as
+     * "Wednesday"
+     */
+    public synchronized String formatDayName(long dateInMillis) {
+        return mDayNameFormat.format(new Date(dateInMillis));
+    }
+
+    /**
+     * Recomputes the cached values if now is outside of the window they were computed for.
+     */
+    private void refreshIfNeeded(long now) {
+        if (now >= mValidFrom && now < mValidUntil) {
+            return;
+        }
+
+        long normalizedUtcDateForToday = NormalizedDates.normalizedUtcDateForToday(now, mTimeZone);
+        if (normalizedUtcDateForToday != mNormalizedUtcDateForToday) {
+            Arrays.fill(mOffsets, OFFSET_UNKNOWN);
+        }
+        mNormalizedUtcDateForToday = normalizedUtcDateForToday;
+        mUtcDaysSinceEpoch = NormalizedDates.elapsedDaysSinceEpoch(now);
+
+        /*
+         * The window is the overlap of today in UTC and today in the time zone, as long as the
+         * offset stays what it is now. The local day's bounds are worked out with the current
+         * offset; if the offset is different at either bound, a transition falls inside the
+         * window and we cut the window off there.
+         */
+        int offset = mTimeZone.getOffset(now);
+        long utcDayStart = NormalizedDates.normalize(now);
+        long localDayStart = normalizedUtcDateForToday - offset;
+        long from = Math.max(utcDayStart, localDayStart);
+        long until = Math.min(utcDayStart + NormalizedDates.DAY_IN_MILLIS,
+                localDayStart + NormalizedDates.DAY_IN_MILLIS);
+
+        if (mTimeZone.getOffset(from) != offset) {
+            from = firstInstantWithOffset(from, now, offset);
+        }
+        if (mTimeZone.getOffset(until - 1) != offset) {
+            until = firstInstantWithoutOffset(now, until - 1, offset);
+        }
+
+        mValidFrom = from;
+        mValidUntil = until;
+    }
+
+    /**
+     * Binary search for the first instant in (low, high] that has the given offset, where high
+     * has it and low doesn't.
+     */
+    private long firstInstantWithOffset(long low, long high, int offset) {
+        while (high - low > 1) {
+            long middle = low + (high - low) / 2;
+            if (mTimeZone.getOffset(middle) == offset) {
+                high = middle;
+            } else {
+                low = middle;
+            }
+        }
+        return high;
+    }
+
+    /**
+     * Binary search for the first instant in (low, high] that doesn't have the given offset,
+     * where low has it and high doesn't.
+     */
+    private long firstInstantWithoutOffset(long low, long high, int offset) {
+        while (high - low > 1) {
+            long middle = low + (high - low) / 2;
+            if (mTimeZone.getOffset(middle) == offset) {
+                low = middle;
+            } else {
+                high = middle;
+            }
+        }
+        return high;
+    }
+}
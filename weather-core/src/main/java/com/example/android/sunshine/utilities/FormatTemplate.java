@@ -0,0 +1,266 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utilities;
+
+import java.text.DecimalFormatSymbols;
+import java.util.Locale;
+
+/**
+ * A format string such as "%1$1.0f km/h %2$s", parsed once so it can be applied many times
+ * without going through {@link String#format}. Applying a template appends straight into a
+ * caller-supplied StringBuilder and allocates nothing.
+ * <p>
+ * A template takes two arguments: a number (argument 1) and a piece of text (argument 2). It
+ * understands the subset of the Formatter syntax Sunshine's resources use: %f with a precision of
+ * 0 and %s, each with an optional explicit argument index and width, plus %%. For %f the number is
+ * written with the locale's digits and rounded half-up, exactly like Formatter does. %s of a whole
+ * number writes it like Long.toString, the way the watch face shows temperatures it received as
+ * ints. Any other format string, or a number that doesn't fit in a long, is handed to
+ * String.format instead.
+ */
+public final class FormatTemplate {
+
+    private static final int ARG_NUMBER = 0;
+    private static final int ARG_TEXT = 1;
+
+    private final String mPattern;
+    private final Locale mLocale;
+    private final char mZeroDigit;
+
+    /* Null if the pattern uses syntax we don't handle ourselves */
+    private final String[] mLiterals;
+    private final int[] mArgs;
+    private final char[] mConversions;
+    private final int[] mWidths;
+
+    private FormatTemplate(String pattern, Locale locale, String[] literals, int[] args,
+                           char[] conversions, int[] widths) {
+        mPattern = pattern;
+        mLocale = locale;
+        mZeroDigit = DecimalFormatSymbols.getInstance(locale).getZeroDigit();
+        mLiterals = literals;
+        mArgs = args;
+        mConversions = conversions;
+        mWidths = widths;
+    }
+
+    /**
+     * @param pattern A format string in the syntax of {@link java.util.Formatter}
+     * @param locale  The locale to format numbers in
+     * @return The parsed template
+     */
+    public static FormatTemplate parse(String pattern, Locale locale) {
+        int count = 0;
+        for (int i = 0; i < pattern.length(); i++) {
+            if (pattern.charAt(i) == '%') {
+                count++;
+                i++;
+            }
+        }
+
+        String[] literals = new String[count + 1];
+        int[] args = new int[count];
+        char[] conversions = new char[count];
+        int[] widths = new int[count];
+
+        StringBuilder literal = new StringBuilder();
+        int placeholder = 0;
+        int nextSequentialArg = 0;
+        int i = 0;
+        while (i < pattern.length()) {
+            char c = pattern.charAt(i++);
+            if (c != '%') {
+                literal.append(c);
+                continue;
+            }
+            if (i == pattern.length()) {
+                return unsupported(pattern, locale);
+            }
+            if (pattern.charAt(i) == '%') {
+                literal.append('%');
+                i++;
+                continue;
+            }
+
+            /* [argument_index$][width][.precision]conversion */
+            int start = i;
+            int number = 0;
+            while (i < pattern.length() && isDigit(pattern.charAt(i))) {
+                number = number * 10 + (pattern.charAt(i++) - '0');
+            }
+            int arg;
+            int width = 0;
+            if (i < pattern.length() && pattern.charAt(i) == '$' && i > start) {
+                arg = number - 1;
+                i++;
+                while (i < pattern.length() && isDigit(pattern.charAt(i))) {
+                    width = width * 10 + (pattern.charAt(i++) - '0');
+                }
+            } else {
+                if (i > start && pattern.charAt(start) == '0') {
+                    /* Zero padding is a flag we don't handle */
+                    return unsupported(pattern, locale);
+                }
+                arg = nextSequentialArg++;
+                width = number;
+            }
+            if (i < pattern.length() && pattern.charAt(i) == '.') {
+                i++;
+                int precisionStart = i;
+                int precision = 0;
+                while (i < pattern.length() && isDigit(pattern.charAt(i))) {
+                    precision = precision * 10 + (pattern.charAt(i++) - '0');
+                }
+                if (i == precisionStart || precision != 0) {
+                    return unsupported(pattern, locale);
+                }
+            }
+            if (i == pattern.length()) {
+                return unsupported(pattern, locale);
+            }
+            char conversion = pattern.charAt(i++);
+            boolean supported = (arg == ARG_NUMBER && (conversion == 'f' || conversion == 's'))
+                    || (arg == ARG_TEXT && conversion == 's');
+            if (!supported) {
+                return unsupported(pattern, locale);
+            }
+
+            literals[placeholder] = literal.toString();
+            literal.setLength(0);
+            args[placeholder] = arg;
+            conversions[placeholder] = conversion;
+            widths[placeholder] = width;
+            placeholder++;
+        }
+        literals[placeholder] = literal.toString();
+
+        if (placeholder != args.length) {
+            /* Some of the % signs were %% escapes; trim the arrays to the placeholders we found */
+            String[] trimmedLiterals = new String[placeholder + 1];
+            System.arraycopy(literals, 0, trimmedLiterals, 0, placeholder + 1);
+            int[] trimmedArgs = new int[placeholder];
+            System.arraycopy(args, 0, trimmedArgs, 0, placeholder);
+            char[] trimmedConversions = new char[placeholder];
+            System.arraycopy(conversions, 0, trimmedConversions, 0, placeholder);
+            int[] trimmedWidths = new int[placeholder];
+            System.arraycopy(widths, 0, trimmedWidths, 0, placeholder);
+            return new FormatTemplate(pattern, locale, trimmedLiterals, trimmedArgs,
+                    trimmedConversions, trimmedWidths);
+        }
+        return new FormatTemplate(pattern, locale, literals, args, conversions, widths);
+    }
+
+    private static FormatTemplate unsupported(String pattern, Locale locale) {
+        return new FormatTemplate(pattern, locale, null, null, null, null);
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    /**
+     * @return The locale numbers are formatted in
+     */
+    public Locale getLocale() {
+        return mLocale;
+    }
+
+    /**
+     * Appends the template, applied to the given arguments, to out.
+     *
+     * @param out    Where to write the result
+     * @param number Argument 1
+     * @param text   Argument 2, or null if the template doesn't use it
+     */
+    public void appendTo(StringBuilder out, double number, CharSequence text) {
+        /* Anything we can't write as a long goes through the Formatter, as do NaN and infinity */
+        if (mLiterals == null || !(Math.abs(number) < Long.MAX_VALUE)) {
+            out.append(String.format(mLocale, mPattern, number, text));
+            return;
+        }
+
+        for (int i = 0; i < mArgs.length; i++) {
+            out.append(mLiterals[i]);
+            if (mArgs[i] == ARG_TEXT) {
+                int padding = mWidths[i] - (text == null ? 4 : text.length());
+                appendSpaces(out, padding);
+                out.append(text);
+            } else if (mConversions[i] == 's') {
+                if (number != Math.rint(number)) {
+                    out.append(String.format(mLocale, mPattern, number, text));
+                    return;
+                }
+                appendWholeNumber(out, (long) number, '0', mWidths[i]);
+            } else {
+                appendRounded(out, number, mZeroDigit, mWidths[i]);
+            }
+        }
+        out.append(mLiterals[mArgs.length]);
+    }
+
+    /**
+     * Rounds half-up to a whole number, as Formatter does for a precision of 0. Taking the
+     * fraction by subtraction is exact, so values just below .5 are never rounded up.
+     */
+    private static void appendRounded(StringBuilder out, double number, char zeroDigit,
+                                      int width) {
+        boolean negative = number < 0 || (number == 0 && 1 / number < 0);
+        double magnitude = Math.abs(number);
+        long whole = (long) magnitude;
+        if (magnitude - whole >= 0.5) {
+            whole++;
+        }
+        appendDigits(out, whole, negative, zeroDigit, width);
+    }
+
+    private static void appendWholeNumber(StringBuilder out, long number, char zeroDigit,
+                                          int width) {
+        if (number < 0) {
+            appendDigits(out, -number, true, zeroDigit, width);
+        } else {
+            appendDigits(out, number, false, zeroDigit, width);
+        }
+    }
+
+    /**
+     * Writes the digits of a non-negative number from the most significant one down, so no
+     * scratch buffer is needed.
+     */
+    private static void appendDigits(StringBuilder out, long magnitude, boolean negative,
+                                     char zeroDigit, int width) {
+        long divisor = 1;
+        int digits = 1;
+        while (divisor <= magnitude / 10) {
+            divisor *= 10;
+            digits++;
+        }
+
+        appendSpaces(out, width - digits - (negative ? 1 : 0));
+        if (negative) {
+            out.append('-');
+        }
+        while (divisor > 0) {
+            out.append((char) (zeroDigit + (magnitude / divisor) % 10));
+            divisor /= 10;
+        }
+    }
+
+    private static void appendSpaces(StringBuilder out, int count) {
+        for (int i = 0; i < count; i++) {
+            out.append(' ');
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utilities;
+
+/**
+ * The friendly date strings of every day in the forecast window, for one "today", time zone and
+ * locale. A forecast only ever shows a couple of weeks, so while the user scrolls the list back
+ * and forth, opens details and shares them, the same few dozen strings are asked for over and
+ * over. The table formats each one the first time it's asked for and hands out the same String
+ * from then on, looked up by how many days after today the date is.
+ * <p>
+ * The strings depend on the day the DayContext considers "today", which changes when the day
+ * rolls over, so callers should check {@link #isCurrent(DayContext)} before using a table and
+ * build a new one when it returns false. Dates outside of the window, or dates that aren't
+ * normalized, are formatted on the spot.
+ */
+public final class FriendlyDateTable {
+
+    /*
+     * The window starts the day before today. The provider's "today onwards" selection
+     * normalizes the current time in UTC, which east of Greenwich can still be yesterday.
+     */
+    private static final int DAYS_BEFORE_TODAY = 1;
+
+    private final FriendlyDates.Labels mLabels;
+    private final DayContext mDay;
+
+    /* What mDay considered today when the table was made */
+    private final long mNormalizedUtcDateForToday;
+    private final long mUtcDaysSinceEpoch;
+
+    /* The normalized date of the first slot */
+    private final long mFirstDate;
+
+    /* Labels by slot, filled in as they are asked for */
+    private final String[] mShortLabels;
+    private final String[] mFullLabels;
+
+    /**
+     * @param labels Supplies the localized strings. The table holds on to it, so it shouldn't
+     *               hold on to anything short-lived.
+     * @param day    The current day, time zone and locale
+     * @param days   How many days, starting with today, the table covers
+     */
+    public FriendlyDateTable(FriendlyDates.Labels labels, DayContext day, int days) {
+        mLabels = labels;
+        mDay = day;
+        mNormalizedUtcDateForToday = day.getNormalizedUtcDateForToday();
+        mUtcDaysSinceEpoch = day.getUtcDaysSinceEpoch();
+        mFirstDate = mNormalizedUtcDateForToday - DAYS_BEFORE_TODAY * NormalizedDates.DAY_IN_MILLIS;
+        mShortLabels = new String[DAYS_BEFORE_TODAY + days];
+        mFullLabels = new String[DAYS_BEFORE_TODAY + days];
+    }
+
+    /**
+     * @param day The DayContext the caller is using now
+     * @return true if the table's strings are still right for that context's "today"
+     */
+    public boolean isCurrent(DayContext day) {
+        return day == mDay
+                && day.getNormalizedUtcDateForToday() == mNormalizedUtcDateForToday
+                && day.getUtcDaysSinceEpoch() == mUtcDaysSinceEpoch;
+    }
+
+    /**
+     * See SunshineDateUtils.getFriendlyDateString for the format of the returned string.
+     *
+     * @param normalizedUtcMidnight The date in milliseconds (UTC midnight)
+     * @param showFullDate          Whether to always include the date
+     * @return A user-friendly representation of the date
+     */
+    public synchronized String get(long normalizedUtcMidnight, boolean showFullDate) {
+        long slot = (normalizedUtcMidnight - mFirstDate) / NormalizedDates.DAY_IN_MILLIS;
+        if (normalizedUtcMidnight < mFirstDate
+                || slot >= mShortLabels.length
+                || !NormalizedDates.isNormalized(normalizedUtcMidnight)) {
+            return FriendlyDates.format(mLabels, normalizedUtcMidnight, showFullDate, mDay);
+        }
+
+        String[] labels = showFullDate ? mFullLabels : mShortLabels;
+        String label = labels[(int) slot];
+        if (label == null) {
+            label = FriendlyDates.format(mLabels, normalizedUtcMidnight, showFullDate, mDay);
+            labels[(int) slot] = label;
+        }
+        return label;
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utilities;
+
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * The decision logic behind SunshineDateUtils.getFriendlyDateString. The strings that
+ * need Android resources or android.text.format.DateUtils are supplied through {@link Labels},
+ * which keeps this class runnable on a plain JVM. Today's date, the time zone offsets and the
+ * weekday formatter come from a {@link DayContext}, so callers that keep one around don't redo
+ * that work for every date they format.
+ */
+public final class FriendlyDates {
+
+    /**
+     * The localized pieces a friendly date string is assembled from.
+     */
+    public interface Labels {
+
+        /* The localized word for "Today" */
+        String today();
+
+        /* The localized word for "Tomorrow" */
+        String tomorrow();
+
+        /* A date with its weekday and without a year, such as "Wednesday, June 8" */
+        String readableDate(long localDateMillis);
+
+        /* An abbreviated date with its weekday and without a year, such as "Mon, Jun 8" */
+        String abbreviatedDate(long localDateMillis);
+    }
+
+    private FriendlyDates() {
+    }
+
+    /**
+     * See SunshineDateUtils.getFriendlyDateString for the format of the returned string.
+     *
+     * @param labels                Supplies the localized strings
+     * @param normalizedUtcMidnight The date in milliseconds (UTC midnight)
+     * @param showFullDate          Whether to always include the date
+     * @param utcNowMillis          The current time
+     * @param timeZone              The user's time zone
+     * @return A user-friendly representation of the date
+     */
+    public static String format(Labels labels, long normalizedUtcMidnight, boolean showFullDate,
+                                final long utcNowMillis, TimeZone timeZone) {
+        DayContext.Clock fixedClock = new DayContext.Clock() {
+            @Override
+            public long currentTimeMillis() {
+                return utcNowMillis;
+            }
+        };
+        return format(labels, normalizedUtcMidnight, showFullDate,
+                new DayContext(fixedClock, timeZone, Locale.getDefault()));
+    }
+
+    /**
+     * See SunshineDateUtils.getFriendlyDateString for the format of the returned string.
+     *
+     * @param labels                Supplies the localized strings
+     * @param normalizedUtcMidnight The date in milliseconds (UTC midnight)
+     * @param showFullDate          Whether to always include the date
+     * @param day                   The current day, time zone and locale
+     * @return A user-friendly representation of the date
+     */
+    public static String format(Labels labels, long normalizedUtcMidnight, boolean showFullDate,
+                                DayContext day) {
+
+        long localDate = day.localMidnightFromNormalizedUtcDate(normalizedUtcMidnight);
+
+        long daysFromEpochToProvidedDate = NormalizedDates.elapsedDaysSinceEpoch(localDate);
+        long daysFromEpochToToday = day.getUtcDaysSinceEpoch();
+
+        if (daysFromEpochToProvidedDate == daysFromEpochToToday || showFullDate) {
+            String dayName = getDayName(labels, day, localDate, daysFromEpochToToday);
+            String readableDate = labels.readableDate(localDate);
+            if (daysFromEpochToProvidedDate - daysFromEpochToToday < 2) {
+                /* Swap the weekday inside the readable date for "Today" or "Tomorrow" */
+                String localizedDayName = day.formatDayName(localDate);
+                return readableDate.replace(localizedDayName, dayName);
+            } else {
+                return readableDate;
+            }
+        } else if (daysFromEpochToProvidedDate < daysFromEpochToToday + 7) {
+            /* If the input date is less than a week in the future, just return the day name. */
+            return getDayName(labels, day, localDate, daysFromEpochToToday);
+        } else {
+            return labels.abbreviatedDate(localDate);
+        }
+    }
+
+    /**
+     * Given a day, returns just the name to use for that day.
+     *   E.g "today", "tomorrow", "Wednesday".
+     */
+    private static String getDayName(Labels labels, DayContext day, long dateInMillis,
+                                     long daysFromEpochToToday) {
+        long daysFromEpochToProvidedDate = NormalizedDates.elapsedDaysSinceEpoch(dateInMillis);
+
+        int daysAfterToday = (int) (daysFromEpochToProvidedDate - daysFromEpochToToday);
+
+        switch (daysAfterToday) {
+            case 0:
+                return labels.today();
+            case 1:
+                return labels.tomorrow();
+
+            default:
+                return day.formatDayName(dateInMillis);
+        }
+    }
+}
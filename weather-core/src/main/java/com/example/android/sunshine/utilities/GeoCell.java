@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utilities;
+
+/**
+ * The cell of the geohash grid that a point falls in. A geohash halves the range of longitude
+ * and of latitude in turn, five times per character, so a longer hash is a smaller cell: at 5
+ * characters a cell is about 5 km across, at 6 about 1 km. All the points in a cell share its
+ * hash, and its center stands in for any of them.
+ * <p>
+ * Forecasts are no more precise than a few kilometres, so two locations in the same cell can
+ * share one forecast, and one request for it.
+ */
+public final class GeoCell {
+
+    public static final int MAX_PRECISION = 12;
+
+    private static final char[] BASE32 = "0123456789bcdefghjkmnpqrstuvwxyz".toCharArray();
+
+    private final String mHash;
+    private final double mCenterLatitude;
+    private final double mCenterLongitude;
+
+    private GeoCell(String hash, double centerLatitude, double centerLongitude) {
+        mHash = hash;
+        mCenterLatitude = centerLatitude;
+        mCenterLongitude = centerLongitude;
+    }
+
+    /**
+     * @param latitude  The point's latitude, from -90 to 90
+     * @param longitude The point's longitude, from -180 to 180
+     * @param precision The length of the cell's geohash, from 1 to {@link #MAX_PRECISION}
+     * @return The cell the point falls in
+     */
+    public static GeoCell of(double latitude, double longitude, int precision) {
+        if (!(latitude >= -90 && latitude <= 90) || !(longitude >= -180 && longitude <= 180)) {
+            throw new IllegalArgumentException("Not a point: " + latitude + ", " + longitude);
+        }
+        if (precision < 1 || precision > MAX_PRECISION) {
+            throw new IllegalArgumentException("Precision out of range: " + precision);
+        }
+
+        double minLatitude = -90;
+        double maxLatitude = 90;
+        double minLongitude = -180;
+        double maxLongitude = 180;
+        char[] hash = new char[precision];
+        boolean even = true;
+
+        for (int i = 0; i < precision; i++) {
+            int bits = 0;
+            for (int bit = 0; bit < 5; bit++) {
+                /* Even bits split the longitude, odd bits the latitude */
+                if (even) {
+                    double middle = (minLongitude + maxLongitude) / 2;
+                    if (longitude >= middle) {
+                        bits = (bits << 1) | 1;
+                        minLongitude = middle;
+                    } else {
+                        bits <<= 1;
+                        maxLongitude = middle;
+                    }
+                } else {
+                    double middle = (minLatitude + maxLatitude) / 2;
+                    if (latitude >= middle) {
+                        bits = (bits << 1) | 1;
+                        minLatitude = middle;
+                    } else {
+                        bits <<= 1;
+                        maxLatitude = middle;
+                    }
+                }
+                even = !even;
+            }
+            hash[i] = BASE32[bits];
+        }
+
+        return new GeoCell(new String(hash), (minLatitude + maxLatitude) / 2,
+                (minLongitude + maxLongitude) / 2);
+    }
+
+    /**
+     * @return The cell's geohash, which is the same for every point in it
+     */
+    public String getHash() {
+        return mHash;
+    }
+
+    public double getCenterLatitude() {
+        return mCenterLatitude;
+    }
+
+    public double getCenterLongitude() {
+        return mCenterLongitude;
+    }
+
+    @Override
+    public String toString() {
+        return mHash;
+    }
+}
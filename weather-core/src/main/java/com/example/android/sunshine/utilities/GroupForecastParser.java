@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utilities;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+import java.net.HttpURLConnection;
+
+/**
+ * Parses the response to a group request, which carries the forecasts for several locations:
+ * <pre>
+ * {"cod": "200", "cnt": 2, "list": [
+ *     {"q": "Mountain View, CA", "city": {...}, "list": [...]},
+ *     {"q": "London, UK", "city": {...}, "list": [...]}
+ * ]}
+ * </pre>
+ * Each element of the outer list is a forecast in the same form as the response to a single
+ * request, plus the location query it answers.
+ * <p>
+ * The response is read in one pass. Each city's forecast is handed to the {@link Sink} as soon
+ * as it has been read, and only that one city's JSON is held as objects at a time, however many
+ * cities the response carries.
+ */
+public final class GroupForecastParser {
+
+    private static final String OWM_MESSAGE_CODE = "cod";
+    private static final String OWM_LIST = "list";
+
+    /* The location query that a group element answers */
+    private static final String OWM_QUERY = "q";
+
+    /**
+     * Takes each city's forecast as it is read.
+     */
+    public interface Sink {
+
+        /**
+         * @param location The location query the forecast answers
+         * @param json     The forecast's JSON, which reads like the response to a request for
+         *                 that location alone
+         * @param forecast The forecast
+         */
+        void onForecast(String location, String json,
+                        OpenWeatherJsonParser.ParsedForecast forecast);
+    }
+
+    private GroupForecastParser() {
+    }
+
+    /**
+     * Parses a group response. An element that carries an error code of its own is skipped.
+     *
+     * @param groupJsonStr          JSON response from server
+     * @param normalizedUtcStartDay The normalized UTC date of the first day in the forecasts
+     * @param sink                  Takes each city's forecast
+     * @return The response's error code, or HTTP_OK if it carries none. Any forecasts that came
+     * before a late error code have already been handed to the sink.
+     * @throws JSONException If JSON data cannot be properly parsed
+     */
+    public static int parse(String groupJsonStr, long normalizedUtcStartDay, Sink sink)
+            throws JSONException {
+        JSONTokener tokener = new JSONTokener(groupJsonStr);
+        expect(tokener, '{');
+        int code = HttpURLConnection.HTTP_OK;
+
+        if (tokener.nextClean() == '}') {
+            return code;
+        }
+        tokener.back();
+
+        while (true) {
+            String key = tokener.nextValue().toString();
+            expect(tokener, ':');
+
+            if (OWM_MESSAGE_CODE.equals(key)) {
+                Object value = tokener.nextValue();
+                try {
+                    code = Integer.parseInt(value.toString());
+                } catch (NumberFormatException e) {
+                    throw tokener.syntaxError("Not a code: " + value);
+                }
+                if (code != HttpURLConnection.HTTP_OK) {
+                    /* Nothing after an error is worth reading */
+                    return code;
+                }
+            } else if (OWM_LIST.equals(key)) {
+                parseList(tokener, normalizedUtcStartDay, sink);
+            } else {
+                tokener.nextValue();
+            }
+
+            char separator = tokener.nextClean();
+            if (separator == '}') {
+                return code;
+            }
+            if (separator != ',') {
+                throw tokener.syntaxError("Expected a ',' or '}'");
+            }
+        }
+    }
+
+    private static void parseList(JSONTokener tokener, long normalizedUtcStartDay, Sink sink)
+            throws JSONException {
+        expect(tokener, '[');
+        if (tokener.nextClean() == ']') {
+            return;
+        }
+        tokener.back();
+
+        while (true) {
+            Object element = tokener.nextValue();
+            if (!(element instanceof JSONObject)) {
+                throw tokener.syntaxError("Expected a city's forecast");
+            }
+            JSONObject cityJson = (JSONObject) element;
+            OpenWeatherJsonParser.ParsedForecast forecast =
+                    OpenWeatherJsonParser.parse(cityJson, normalizedUtcStartDay);
+            if (forecast != null) {
+                sink.onForecast(cityJson.getString(OWM_QUERY), cityJson.toString(), forecast);
+            }
+
+            char separator = tokener.nextClean();
+            if (separator == ']') {
+                return;
+            }
+            if (separator != ',') {
+                throw tokener.syntaxError("Expected a ',' or ']'");
+            }
+        }
+    }
+
+    private static void expect(JSONTokener tokener, char expected) throws JSONException {
+        if (tokener.nextClean() != expected) {
+            throw tokener.syntaxError("Expected a '" + expected + "'");
+        }
+    }
+}
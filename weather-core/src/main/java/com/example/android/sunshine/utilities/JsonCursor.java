@@ -0,0 +1,439 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utilities;
+
+import org.json.JSONException;
+
+/**
+ * Walks a JSON document one token at a time, for the binders generated by
+ * ForecastBinderGenerator. Nothing is built along the way: a field name is only hashed, the way
+ * String.hashCode would hash it, so that a binder can switch on the hash and then confirm the
+ * name with {@link #keyIs}; a number is converted straight to a double; and a value the binder
+ * has no use for is skipped over without being looked at.
+ * <p>
+ * The cursor accepts what org.json's JSONObject accepts for the documents the binders read, and
+ * turns numbers into the same doubles, so that a binder and the JSONObject path agree.
+ */
+final class JsonCursor {
+
+    /* Powers of ten that a double holds exactly, for the fast path of readDouble */
+    private static final double[] EXACT_POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22,
+    };
+
+    /* The largest mantissa a double holds exactly, 2^53 */
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+    private final String mJson;
+    private final int mLength;
+    private int mPosition;
+
+    /* Whether the object or array being read hasn't had a member yet, so needs no comma */
+    private boolean mFirst;
+
+    /* The field name last read by nextField */
+    private int mKeyHash;
+    private int mKeyStart;
+    private int mKeyLength;
+
+    /* The field name, if it had escapes in it; otherwise null and it's read from mJson */
+    private String mEscapedKey;
+
+    JsonCursor(String json) {
+        mJson = json;
+        mLength = json.length();
+    }
+
+    /**
+     * Reads the opening brace of an object.
+     *
+     * @throws JSONException If the next value isn't an object
+     */
+    void beginObject() throws JSONException {
+        expect('{');
+        mFirst = true;
+    }
+
+    /**
+     * Moves to the next field of the object being read, and reads its name.
+     *
+     * @return true if there is one, in which case the cursor is at its value; false if the
+     * object has ended
+     * @throws JSONException If the object is malformed
+     */
+    boolean nextField() throws JSONException {
+        char c = peekNonWhitespace();
+        if (c == '}') {
+            mPosition++;
+            mFirst = false;
+            return false;
+        }
+        if (!mFirst) {
+            expect(',');
+            c = peekNonWhitespace();
+        }
+        mFirst = false;
+        if (c != '"') {
+            throw syntaxError("Expected a field name");
+        }
+        readKey();
+        expect(':');
+        return true;
+    }
+
+    /**
+     * @return The String.hashCode of the name of the field last read by {@link #nextField}
+     */
+    int keyHash() {
+        return mKeyHash;
+    }
+
+    /**
+     * @param name A field name the binder wants
+     * @return Whether the field last read by {@link #nextField} has that name
+     */
+    boolean keyIs(String name) {
+        if (mEscapedKey != null) {
+            return mEscapedKey.equals(name);
+        }
+        return mKeyLength == name.length() && mJson.regionMatches(mKeyStart, name, 0, mKeyLength);
+    }
+
+    /**
+     * Reads the opening bracket of an array.
+     *
+     * @throws JSONException If the next value isn't an array
+     */
+    void beginArray() throws JSONException {
+        expect('[');
+        mFirst = true;
+    }
+
+    /**
+     * Moves to the next element of the array being read.
+     *
+     * @return true if there is one, in which case the cursor is at it; false if the array has
+     * ended
+     * @throws JSONException If the array is malformed
+     */
+    boolean nextElement() throws JSONException {
+        char c = peekNonWhitespace();
+        if (c == ']') {
+            mPosition++;
+            mFirst = false;
+            return false;
+        }
+        if (!mFirst) {
+            expect(',');
+        }
+        mFirst = false;
+        return true;
+    }
+
+    /**
+     * Reads a number, or a string holding one, as JSONObject.getDouble would.
+     *
+     * @return The number
+     * @throws JSONException If the next value isn't a number
+     */
+    double readDouble() throws JSONException {
+        char c = peekNonWhitespace();
+        if (c == '"') {
+            String value = readString();
+            try {
+                return Double.parseDouble(value);
+            } catch (NumberFormatException e) {
+                throw syntaxError("Expected a number, not \"" + value + "\"");
+            }
+        }
+        if (c != '-' && (c < '0' || c > '9')) {
+            throw syntaxError("Expected a number");
+        }
+
+        int start = mPosition;
+        boolean negative = c == '-';
+        if (negative) {
+            mPosition++;
+        }
+
+        /* The digits, as a whole number, and where the decimal point goes */
+        long mantissa = 0;
+        int digits = 0;
+        int exponent = 0;
+        boolean exact = true;
+        for (; mPosition < mLength; mPosition++) {
+            c = mJson.charAt(mPosition);
+            if (c >= '0' && c <= '9') {
+                if (mantissa < MAX_EXACT_MANTISSA / 10) {
+                    mantissa = mantissa * 10 + (c - '0');
+                } else {
+                    exact = false;
+                }
+                digits++;
+            } else if (c == '.') {
+                int point = mPosition;
+                for (mPosition++; mPosition < mLength; mPosition++) {
+                    c = mJson.charAt(mPosition);
+                    if (c < '0' || c > '9') {
+                        break;
+                    }
+                    if (mantissa < MAX_EXACT_MANTISSA / 10) {
+                        mantissa = mantissa * 10 + (c - '0');
+                        exponent--;
+                    } else {
+                        exact = false;
+                    }
+                    digits++;
+                }
+                if (mPosition == point + 1) {
+                    exact = false;
+                }
+                break;
+            } else {
+                break;
+            }
+        }
+        if (mPosition < mLength && (c == 'e' || c == 'E')) {
+            /* Rare in the forecast; left to the slow path */
+            exact = false;
+            for (mPosition++; mPosition < mLength; mPosition++) {
+                c = mJson.charAt(mPosition);
+                if ((c < '0' || c > '9') && c != '-' && c != '+') {
+                    break;
+                }
+            }
+        }
+        if (digits == 0) {
+            throw syntaxError("Expected a number");
+        }
+
+        /*
+         * A mantissa and a power of ten that are both exact give a correctly rounded double
+         * with a single multiplication or division, which is what Double.parseDouble returns
+         */
+        if (exact && -exponent < EXACT_POWERS_OF_TEN.length) {
+            double value = exponent == 0
+                    ? mantissa
+                    : mantissa / EXACT_POWERS_OF_TEN[-exponent];
+            return negative ? -value : value;
+        }
+        try {
+            return Double.parseDouble(mJson.substring(start, mPosition));
+        } catch (NumberFormatException e) {
+            throw syntaxError("Expected a number, not " + mJson.substring(start, mPosition));
+        }
+    }
+
+    /**
+     * Reads a number, or a string holding one, dropping any fraction, as JSONObject.getInt would.
+     *
+     * @return The number
+     * @throws JSONException If the next value isn't a number
+     */
+    int readInt() throws JSONException {
+        return (int) readDouble();
+    }
+
+    /**
+     * Steps over the next value, whatever it is, without reading it.
+     *
+     * @throws JSONException If the value is malformed
+     */
+    void skipValue() throws JSONException {
+        char c = peekNonWhitespace();
+        switch (c) {
+            case '{':
+                beginObject();
+                while (nextField()) {
+                    skipValue();
+                }
+                break;
+            case '[':
+                beginArray();
+                while (nextElement()) {
+                    skipValue();
+                }
+                break;
+            case '"':
+                skipString();
+                break;
+            case 't':
+                expectWord("true");
+                break;
+            case 'f':
+                expectWord("false");
+                break;
+            case 'n':
+                expectWord("null");
+                break;
+            default:
+                readDouble();
+                break;
+        }
+    }
+
+    /**
+     * @return Where the cursor is, for {@link #rewind}
+     */
+    int position() {
+        return mPosition;
+    }
+
+    /**
+     * Moves back to the start of a value that is an element of an array or the value of a
+     * field, so that it can be read again or skipped, such as after a binder failed to read it.
+     *
+     * @param position Where the value started, as {@link #position()} returned it then
+     */
+    void rewind(int position) {
+        mPosition = position;
+        /* Whatever separated the value from the one before it has already been read */
+        mFirst = false;
+    }
+
+    /**
+     * Checks that nothing but whitespace follows the value that was read.
+     *
+     * @throws JSONException If something else does
+     */
+    void endDocument() throws JSONException {
+        if (mPosition < mLength && peekNonWhitespace() != 0) {
+            throw syntaxError("Expected the end of the document");
+        }
+    }
+
+    /* Hashes the field name at the cursor, and steps past it */
+    private void readKey() throws JSONException {
+        int start = ++mPosition;
+        int hash = 0;
+        for (; mPosition < mLength; mPosition++) {
+            char c = mJson.charAt(mPosition);
+            if (c == '"') {
+                mKeyHash = hash;
+                mKeyStart = start;
+                mKeyLength = mPosition - start;
+                mEscapedKey = null;
+                mPosition++;
+                return;
+            }
+            if (c == '\\') {
+                /* Rare enough that it can build the name */
+                mPosition = start - 1;
+                mEscapedKey = readString();
+                mKeyHash = mEscapedKey.hashCode();
+                return;
+            }
+            hash = 31 * hash + c;
+        }
+        throw syntaxError("Unterminated string");
+    }
+
+    private void skipString() throws JSONException {
+        for (mPosition++; mPosition < mLength; mPosition++) {
+            char c = mJson.charAt(mPosition);
+            if (c == '"') {
+                mPosition++;
+                return;
+            }
+            if (c == '\\') {
+                mPosition++;
+            }
+        }
+        throw syntaxError("Unterminated string");
+    }
+
+    /* Reads the string at the cursor, unescaping it */
+    private String readString() throws JSONException {
+        StringBuilder value = new StringBuilder();
+        for (mPosition++; mPosition < mLength; mPosition++) {
+            char c = mJson.charAt(mPosition);
+            if (c == '"') {
+                mPosition++;
+                return value.toString();
+            }
+            if (c == '\\') {
+                if (++mPosition == mLength) {
+                    break;
+                }
+                c = mJson.charAt(mPosition);
+                switch (c) {
+                    case 'b':
+                        c = '\b';
+                        break;
+                    case 'f':
+                        c = '\f';
+                        break;
+                    case 'n':
+                        c = '\n';
+                        break;
+                    case 'r':
+                        c = '\r';
+                        break;
+                    case 't':
+                        c = '\t';
+                        break;
+                    case 'u':
+                        if (mPosition + 4 >= mLength) {
+                            throw syntaxError("Illegal escape");
+                        }
+                        try {
+                            c = (char) Integer.parseInt(
+                                    mJson.substring(mPosition + 1, mPosition + 5), 16);
+                        } catch (NumberFormatException e) {
+                            throw syntaxError("Illegal escape");
+                        }
+                        mPosition += 4;
+                        break;
+                    default:
+                        /* \" \\ \/ and, as JSONObject allows, any other character */
+                        break;
+                }
+            }
+            value.append(c);
+        }
+        throw syntaxError("Unterminated string");
+    }
+
+    /* Returns the next character that isn't whitespace, or 0 at the end, without reading it */
+    private char peekNonWhitespace() {
+        for (; mPosition < mLength; mPosition++) {
+            char c = mJson.charAt(mPosition);
+            if (c != ' ' && c != '\n' && c != '\r' && c != '\t') {
+                return c;
+            }
+        }
+        return 0;
+    }
+
+    private void expect(char expected) throws JSONException {
+        if (peekNonWhitespace() != expected) {
+            throw syntaxError("Expected '" + expected + "'");
+        }
+        mPosition++;
+    }
+
+    private void expectWord(String word) throws JSONException {
+        if (!mJson.startsWith(word, mPosition)) {
+            throw syntaxError("Expected " + word);
+        }
+        mPosition += word.length();
+    }
+
+    private JSONException syntaxError(String message) {
+        return new JSONException(message + " at character " + mPosition);
+    }
+}
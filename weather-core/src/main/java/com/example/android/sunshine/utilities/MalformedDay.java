@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utilities;
+
+/**
+ * A day of a forecast response that was left out of the parsed forecast because it couldn't be
+ * read, such as one without a "deg" field or with an empty "weather" array. The rest of the
+ * response is still parsed; only a response that isn't well-formed JSON at all, or whose city
+ * can't be read, fails as a whole.
+ */
+public final class MalformedDay {
+
+    private final int mIndex;
+    private final long mDate;
+    private final String mReason;
+
+    /**
+     * @param index  The day's position in the response's "list" array
+     * @param date   The normalized UTC date the day would have had
+     * @param reason What was wrong with it
+     */
+    public MalformedDay(int index, long date, String reason) {
+        mIndex = index;
+        mDate = date;
+        mReason = reason;
+    }
+
+    public int getIndex() {
+        return mIndex;
+    }
+
+    public long getDate() {
+        return mDate;
+    }
+
+    public String getReason() {
+        return mReason;
+    }
+
+    /**
+     * @return A readable description, such as "day 3: The day has no "deg" field"
+     */
+    @Override
+    public String toString() {
+        return "day " + mIndex + ": " + mReason;
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utilities;
+
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The date arithmetic behind SunshineDateUtils, with the clock and time zone passed in
+ * rather than read from the system. This class has no Android dependencies, so it can be run on
+ * a plain JVM. See SunshineDateUtils for what "normalized" means in Sunshine.
+ */
+public final class NormalizedDates {
+
+    /* Milliseconds in a day */
+    public static final long DAY_IN_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+    private NormalizedDates() {
+    }
+
+    /**
+     * @param utcDate A date in milliseconds in UTC time.
+     * @return The number of days from the epoch to the date argument.
+     */
+    public static long elapsedDaysSinceEpoch(long utcDate) {
+        return TimeUnit.MILLISECONDS.toDays(utcDate);
+    }
+
+    /**
+     * @param date The date (in milliseconds) to normalize
+     * @return The UTC date at 12 midnight of the date
+     */
+    public static long normalize(long date) {
+        return elapsedDaysSinceEpoch(date) * DAY_IN_MILLIS;
+    }
+
+    /**
+     * @param millisSinceEpoch Milliseconds since January 1, 1970 at midnight
+     * @return true if the date represents the beginning of a day in Unix time, false otherwise
+     */
+    public static boolean isNormalized(long millisSinceEpoch) {
+        return millisSinceEpoch % DAY_IN_MILLIS == 0;
+    }
+
+    /**
+     * Converts a normalized date to the number of its day since the epoch, which is how the
+     * weather table stores dates. A day number fits in an int and takes three bytes in SQLite,
+     * where the same date in milliseconds takes six.
+     *
+     * @param normalizedUtcDate UTC time at midnight for a given date
+     * @return The number of days from the epoch to that date
+     */
+    public static int toEpochDay(long normalizedUtcDate) {
+        return (int) (normalizedUtcDate / DAY_IN_MILLIS);
+    }
+
+    /**
+     * @param epochDay The number of days since the epoch, as stored in the weather table
+     * @return UTC time at midnight of that day
+     */
+    public static long fromEpochDay(long epochDay) {
+        return epochDay * DAY_IN_MILLIS;
+    }
+
+    /**
+     * @param utcNowMillis The current time
+     * @param timeZone     The time zone whose local date we want
+     * @return The number of milliseconds (UTC / GMT) for today's date at midnight in the given
+     * time zone
+     */
+    public static long normalizedUtcDateForToday(long utcNowMillis, TimeZone timeZone) {
+        long gmtOffsetMillis = timeZone.getOffset(utcNowMillis);
+        long timeSinceEpochLocalTimeMillis = utcNowMillis + gmtOffsetMillis;
+        long daysSinceEpochLocal = TimeUnit.MILLISECONDS.toDays(timeSinceEpochLocalTimeMillis);
+        return TimeUnit.DAYS.toMillis(daysSinceEpochLocal);
+    }
+
+    /**
+     * @param normalizedUtcDate UTC time at midnight for a given date
+     * @param timeZone          The time zone to convert to
+     * @return The local date corresponding to the given normalized UTC date
+     */
+    public static long localMidnightFromNormalizedUtcDate(long normalizedUtcDate,
+                                                          TimeZone timeZone) {
+        long gmtOffset = timeZone.getOffset(normalizedUtcDate);
+        return normalizedUtcDate - gmtOffset;
+    }
+}
@@ -0,0 +1,304 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utilities;
+
+import com.example.android.sunshine.data.ForecastSnapshot;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Parses OpenWeatherMap's daily forecast JSON into a {@link ForecastSnapshot}. This is the part
+ * of OpenWeatherJsonUtils that doesn't need a Context, kept free of Android classes so
+ * that it can also be run (and benchmarked) on a plain JVM.
+ */
+public final class OpenWeatherJsonParser {
+
+    /* Location information */
+    private static final String OWM_CITY = "city";
+    private static final String OWM_COORD = "coord";
+
+    /* Location coordinate */
+    private static final String OWM_LATITUDE = "lat";
+    private static final String OWM_LONGITUDE = "lon";
+
+    /* Weather information. Each day's forecast info is an element of the "list" array */
+    private static final String OWM_LIST = "list";
+
+    private static final String OWM_PRESSURE = "pressure";
+    private static final String OWM_HUMIDITY = "humidity";
+    private static final String OWM_WINDSPEED = "speed";
+    private static final String OWM_WIND_DIRECTION = "deg";
+
+    /* All temperatures are children of the "temp" object */
+    private static final String OWM_TEMPERATURE = "temp";
+
+    /* Max temperature for the day */
+    private static final String OWM_MAX = "max";
+    private static final String OWM_MIN = "min";
+
+    private static final String OWM_WEATHER = "weather";
+    private static final String OWM_WEATHER_ID = "id";
+
+    private static final String OWM_MESSAGE_CODE = "cod";
+
+    /**
+     * The result of parsing a forecast response: the days themselves and the coordinates of the
+     * city they are for, and the days of the response that couldn't be read.
+     */
+    public static final class ParsedForecast {
+        public final double latitude;
+        public final double longitude;
+        public final ForecastSnapshot days;
+
+        /* The days left out of days, in the order they came in the response */
+        public final List<MalformedDay> malformedDays;
+
+        ParsedForecast(double latitude, double longitude, ForecastSnapshot days) {
+            this(latitude, longitude, days, Collections.<MalformedDay>emptyList());
+        }
+
+        ParsedForecast(double latitude, double longitude, ForecastSnapshot days,
+                       List<MalformedDay> malformedDays) {
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.days = days;
+            this.malformedDays = malformedDays;
+        }
+
+        /**
+         * Fills the days that couldn't be read with what was stored for the same dates, so that
+         * one bad day in a response leaves that day as the last sync had it rather than costing
+         * the whole response.
+         *
+         * @param stored The forecast stored for the same city
+         * @return The forecast with the stored days put in date order among the parsed ones.
+         * Its {@link #malformedDays} are those that had nothing stored to fill them. If none
+         * could be filled, this forecast itself.
+         */
+        public ParsedForecast withStoredDays(ForecastSnapshot stored) {
+            List<MalformedDay> unfilled = new ArrayList<>();
+            int[] storedRows = new int[malformedDays.size()];
+            int filled = 0;
+            for (MalformedDay day : malformedDays) {
+                int row = stored.indexOfDate(day.getDate());
+                if (row < 0) {
+                    unfilled.add(day);
+                } else {
+                    storedRows[filled++] = row;
+                }
+            }
+            if (filled == 0) {
+                return this;
+            }
+
+            int size = days.size() + filled;
+            long[] dates = new long[size];
+            int[] weatherIds = new int[size];
+            double[] maxTemps = new double[size];
+            double[] minTemps = new double[size];
+            double[] humidities = new double[size];
+            double[] pressures = new double[size];
+            double[] windSpeeds = new double[size];
+            double[] degrees = new double[size];
+
+            /* Both the parsed days and the filled ones are in date order, so they're merged */
+            int parsed = 0;
+            int kept = 0;
+            for (int i = 0; i < size; i++) {
+                ForecastSnapshot from;
+                int row;
+                if (kept < filled && (parsed == days.size()
+                        || stored.getDate(storedRows[kept]) < days.getDate(parsed))) {
+                    from = stored;
+                    row = storedRows[kept++];
+                } else {
+                    from = days;
+                    row = parsed++;
+                }
+                dates[i] = from.getDate(row);
+                weatherIds[i] = from.getWeatherId(row);
+                maxTemps[i] = from.getMaxTemp(row);
+                minTemps[i] = from.getMinTemp(row);
+                humidities[i] = from.getHumidity(row);
+                pressures[i] = from.getPressure(row);
+                windSpeeds[i] = from.getWindSpeed(row);
+                degrees[i] = from.getDegrees(row);
+            }
+
+            return new ParsedForecast(latitude, longitude,
+                    new ForecastSnapshot(dates, weatherIds, maxTemps, minTemps,
+                            humidities, pressures, windSpeeds, degrees),
+                    Collections.unmodifiableList(unfilled));
+        }
+    }
+
+    private OpenWeatherJsonParser() {
+    }
+
+    /**
+     * Parses a forecast response.
+     *
+     * @param forecastJsonStr       JSON response from server
+     * @param normalizedUtcStartDay The normalized UTC date of the first day in the response
+     * @return The parsed forecast, or null if the response carries an error code
+     * @throws JSONException If JSON data cannot be properly parsed
+     */
+    public static ParsedForecast parse(String forecastJsonStr, long normalizedUtcStartDay)
+            throws JSONException {
+        return parse(new JSONObject(forecastJsonStr), normalizedUtcStartDay);
+    }
+
+    /**
+     * Parses one city's forecast, which is the whole of a forecast response or one element of a
+     * group response.
+     *
+     * @param forecastJson          The city's forecast
+     * @param normalizedUtcStartDay The normalized UTC date of the first day in the forecast
+     * @return The parsed forecast, or null if the forecast carries an error code
+     * @throws JSONException If JSON data cannot be properly parsed
+     */
+    static ParsedForecast parse(JSONObject forecastJson, long normalizedUtcStartDay)
+            throws JSONException {
+        return parse(forecastJson, normalizedUtcStartDay, 0, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Parses some of one city's days, so that a sync can store today's weather before it has
+     * parsed the rest. The days are dated from the first day of the forecast, whichever of them
+     * are parsed.
+     *
+     * @param forecastJson          The city's forecast
+     * @param normalizedUtcStartDay The normalized UTC date of the first day in the forecast
+     * @param from                  The index of the first day to parse
+     * @param to                    The index after the last day to parse. Days past the end of
+     *                              the forecast are left out.
+     * @return The parsed days, or null if the forecast carries an error code. A day that can't
+     * be read is left out of them and listed in {@link ParsedForecast#malformedDays}.
+     * @throws JSONException If the city's coordinates or the list of days can't be read
+     */
+    public static ParsedForecast parse(JSONObject forecastJson, long normalizedUtcStartDay,
+                                       int from, int to) throws JSONException {
+
+        /* Is there an error? */
+        if (forecastJson.has(OWM_MESSAGE_CODE)) {
+            int errorCode = forecastJson.getInt(OWM_MESSAGE_CODE);
+
+            switch (errorCode) {
+                case HttpURLConnection.HTTP_OK:
+                    break;
+                case HttpURLConnection.HTTP_NOT_FOUND:
+                    /* Location invalid */
+                    return null;
+                default:
+                    /* Server probably down */
+                    return null;
+            }
+        }
+
+        JSONArray jsonWeatherArray = forecastJson.getJSONArray(OWM_LIST);
+
+        JSONObject cityJson = forecastJson.getJSONObject(OWM_CITY);
+
+        JSONObject cityCoord = cityJson.getJSONObject(OWM_COORD);
+        double cityLatitude = cityCoord.getDouble(OWM_LATITUDE);
+        double cityLongitude = cityCoord.getDouble(OWM_LONGITUDE);
+
+        int size = Math.max(0, Math.min(to, jsonWeatherArray.length()) - from);
+
+        long[] dates = new long[size];
+        int[] weatherIds = new int[size];
+        double[] maxTemps = new double[size];
+        double[] minTemps = new double[size];
+        double[] humidities = new double[size];
+        double[] pressures = new double[size];
+        double[] windSpeeds = new double[size];
+        double[] degrees = new double[size];
+
+        /* The days read so far; a malformed one is left out, and reported instead */
+        int parsed = 0;
+        List<MalformedDay> malformedDays = new ArrayList<>();
+
+        for (int i = 0; i < size; i++) {
+
+            /*
+             * We ignore all the datetime values embedded in the JSON and assume that
+             * the values are returned in-order by day (which is not guaranteed to be correct).
+             */
+            long date = normalizedUtcStartDay + NormalizedDates.DAY_IN_MILLIS * (from + i);
+
+            try {
+                /* Get the JSON object representing the day */
+                JSONObject dayForecast = jsonWeatherArray.getJSONObject(from + i);
+
+                pressures[parsed] = dayForecast.getDouble(OWM_PRESSURE);
+                humidities[parsed] = dayForecast.getInt(OWM_HUMIDITY);
+                windSpeeds[parsed] = dayForecast.getDouble(OWM_WINDSPEED);
+                degrees[parsed] = dayForecast.getDouble(OWM_WIND_DIRECTION);
+
+                /*
+                 * Description is in a child array called "weather", which is 1 element long.
+                 * That element also contains a weather code.
+                 */
+                JSONObject weatherObject =
+                        dayForecast.getJSONArray(OWM_WEATHER).getJSONObject(0);
+
+                weatherIds[parsed] = weatherObject.getInt(OWM_WEATHER_ID);
+
+                /*
+                 * Temperatures are sent by Open Weather Map in a child object called "temp".
+                 *
+                 * Editor's Note: Try not to name variables "temp" when working with temperature.
+                 * It confuses everybody. Temp could easily mean any number of things, including
+                 * temperature, temporary variable, temporary folder, temporary employee, or many
+                 * others, and is just a bad variable name.
+                 */
+                JSONObject temperatureObject = dayForecast.getJSONObject(OWM_TEMPERATURE);
+                maxTemps[parsed] = temperatureObject.getDouble(OWM_MAX);
+                minTemps[parsed] = temperatureObject.getDouble(OWM_MIN);
+
+                dates[parsed] = date;
+                parsed++;
+            } catch (JSONException e) {
+                malformedDays.add(new MalformedDay(from + i, date, e.getMessage()));
+            }
+        }
+
+        if (parsed < size) {
+            dates = Arrays.copyOf(dates, parsed);
+            weatherIds = Arrays.copyOf(weatherIds, parsed);
+            maxTemps = Arrays.copyOf(maxTemps, parsed);
+            minTemps = Arrays.copyOf(minTemps, parsed);
+            humidities = Arrays.copyOf(humidities, parsed);
+            pressures = Arrays.copyOf(pressures, parsed);
+            windSpeeds = Arrays.copyOf(windSpeeds, parsed);
+            degrees = Arrays.copyOf(degrees, parsed);
+        }
+
+        ForecastSnapshot days = new ForecastSnapshot(dates, weatherIds, maxTemps, minTemps,
+                humidities, pressures, windSpeeds, degrees);
+
+        return new ParsedForecast(cityLatitude, cityLongitude, days,
+                Collections.unmodifiableList(malformedDays));
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utilities;
+
+import java.util.StringTokenizer;
+
+/**
+ * The message today's weather is sent to the watch face in: the weather id, the high and the low,
+ * separated by spaces, such as "800 21 12". Temperatures are floored to whole degrees Celsius.
+ */
+public final class WatchWeatherPayload {
+
+    private WatchWeatherPayload() {
+    }
+
+    /**
+     * @param weatherId The OpenWeatherMap weather id
+     * @param high      High temperature in degrees Celsius
+     * @param low       Low temperature in degrees Celsius
+     * @return The message to send to the watch
+     */
+    public static String encode(int weatherId, double high, double low) {
+        return weatherId + " " + (int) Math.floor(high) + " " + (int) Math.floor(low);
+    }
+
+    /**
+     * Reads a message built by {@link #encode}. Like the watch face always has, this tolerates a
+     * short message by leaving the missing fields at 0, and ignores any extra fields.
+     *
+     * @param message The message received by the watch
+     * @return {weatherId, high, low}
+     * @throws NumberFormatException If a field isn't a number
+     */
+    public static int[] decode(String message) {
+        StringTokenizer tokens = new StringTokenizer(message);
+        int[] weather = new int[3];
+        for (int i = 0; i < weather.length && tokens.hasMoreTokens(); i++) {
+            weather[i] = Integer.parseInt(tokens.nextToken());
+        }
+        return weather;
+    }
+}
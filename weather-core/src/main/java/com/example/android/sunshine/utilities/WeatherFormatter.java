@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utilities;
+
+import java.util.Locale;
+
+/**
+ * Formats temperatures and wind for one locale and one unit system. Temperature data is stored in
+ * Celsius and wind speeds in kilometers per hour; the formatter converts them if the user prefers
+ * imperial units.
+ * <p>
+ * The format strings are parsed into {@link FormatTemplate}s once, when the formatter is created,
+ * and the append* methods write straight into a caller's StringBuilder without allocating. The
+ * format* methods return Strings built in a scratch buffer owned by the formatter. Create a new
+ * formatter when the locale or the unit preference changes.
+ */
+public final class WeatherFormatter {
+
+    /* Kilometers per hour to miles per hour */
+    private static final float KMH_TO_MPH = .621371192237334f;
+
+    /* The eight compass sectors, starting with north and going clockwise */
+    private static final String[] COMPASS_DIRECTIONS = {"N", "NE", "E", "SE", "S", "SW", "W", "NW"};
+
+    private static final String HIGH_LOW_SEPARATOR = " / ";
+
+    private final boolean mIsMetric;
+    private final FormatTemplate mTemperatureTemplate;
+    private final FormatTemplate mWindTemplate;
+
+    /* Scratch space for the format* methods */
+    private final StringBuilder mScratch = new StringBuilder(32);
+
+    /**
+     * @param locale            The locale to format numbers in
+     * @param isMetric          false to show temperatures in Fahrenheit and wind in mph
+     * @param temperatureFormat The temperature format, such as "%1.0f°"
+     * @param kmhFormat         Wind format for kilometers per hour, such as "%1$1.0f km/h %2$s"
+     * @param mphFormat         Wind format for miles per hour
+     */
+    public WeatherFormatter(Locale locale, boolean isMetric, String temperatureFormat,
+                            String kmhFormat, String mphFormat) {
+        mIsMetric = isMetric;
+        mTemperatureTemplate = FormatTemplate.parse(temperatureFormat, locale);
+        mWindTemplate = FormatTemplate.parse(isMetric ? kmhFormat : mphFormat, locale);
+    }
+
+    /**
+     * @return true if this formatter was made for the given locale and unit system
+     */
+    public boolean matches(Locale locale, boolean isMetric) {
+        return mIsMetric == isMetric && mTemperatureTemplate.getLocale().equals(locale);
+    }
+
+    /**
+     * @param temperatureInCelsius Temperature in degrees Celsius(°C)
+     * @return Temperature in degrees Fahrenheit (°F)
+     */
+    public static double celsiusToFahrenheit(double temperatureInCelsius) {
+        return (temperatureInCelsius * 1.8) + 32;
+    }
+
+    /**
+     * Finds the compass direction by dividing the circle into eight 45° sectors centered on N,
+     * NE, E and so on. Anything outside of [22.5, 337.5) is north, as it always was in Sunshine.
+     *
+     * @param degrees Degrees as measured on a compass, NOT temperature degrees!
+     * @return The compass direction, such as "NW", or "Unknown" if degrees isn't a number
+     */
+    public static String compassDirection(float degrees) {
+        if (degrees != degrees) {
+            return "Unknown";
+        }
+        int sector = (int) ((degrees + 22.5) / 45.0);
+        return COMPASS_DIRECTIONS[sector >= 1 && sector <= 7 ? sector : 0];
+    }
+
+    /**
+     * Appends a temperature such as "21°", converted to Fahrenheit if needed.
+     *
+     * @param out                  Where to write the temperature
+     * @param temperatureInCelsius Temperature in degrees Celsius (°C)
+     */
+    public void appendTemperature(StringBuilder out, double temperatureInCelsius) {
+        double temperature = mIsMetric
+                ? temperatureInCelsius
+                : celsiusToFahrenheit(temperatureInCelsius);
+        mTemperatureTemplate.appendTo(out, temperature, null);
+    }
+
+    /**
+     * Appends the day's temperatures in the form "HIGH° / LOW°". Like formatHighLows always has,
+     * this rounds the Celsius values before converting them.
+     *
+     * @param out  Where to write the temperatures
+     * @param high High temperature in degrees Celsius (°C)
+     * @param low  Low temperature in degrees Celsius (°C)
+     */
+    public void appendHighLow(StringBuilder out, double high, double low) {
+        appendTemperature(out, Math.round(high));
+        out.append(HIGH_LOW_SEPARATOR);
+        appendTemperature(out, Math.round(low));
+    }
+
+    /**
+     * Appends wind in the form "2 km/h SW", converted to mph if needed.
+     *
+     * @param out       Where to write the wind
+     * @param windSpeed Wind speed in kilometers / hour
+     * @param degrees   Wind direction in compass degrees
+     */
+    public void appendWind(StringBuilder out, float windSpeed, float degrees) {
+        float speed = mIsMetric ? windSpeed : KMH_TO_MPH * windSpeed;
+        mWindTemplate.appendTo(out, speed, compassDirection(degrees));
+    }
+
+    /**
+     * @see #appendTemperature(StringBuilder, double)
+     */
+    public synchronized String formatTemperature(double temperatureInCelsius) {
+        mScratch.setLength(0);
+        appendTemperature(mScratch, temperatureInCelsius);
+        return mScratch.toString();
+    }
+
+    /**
+     * @see #appendHighLow(StringBuilder, double, double)
+     */
+    public synchronized String formatHighLow(double high, double low) {
+        mScratch.setLength(0);
+        appendHighLow(mScratch, high, low);
+        return mScratch.toString();
+    }
+
+    /**
+     * @see #appendWind(StringBuilder, float, float)
+     */
+    public synchronized String formatWind(float windSpeed, float degrees) {
+        mScratch.setLength(0);
+        appendWind(mScratch, windSpeed, degrees);
+        return mScratch.toString();
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.weather;
+
+import java.util.Arrays;
+
+/**
+ * Everything Sunshine derives from an OpenWeatherMap condition id: which icon to draw, which
+ * description to show and how severe the weather is. See
+ * http://openweathermap.org/weather-conditions for a list of all IDs.
+ * <p>
+ * Condition ids are all below 1000, so each property is kept in a dense table with one slot per
+ * id and looked up by index. That makes every lookup a single array read, with no chain of range
+ * checks to walk through. Ids outside of the table (including negative ones) are clamped onto one
+ * extra "unknown" slot at the end, so looking one up doesn't need a branch either.
+ * <p>
+ * The phone app and the watch face both map icon classes onto their own drawables.
+ */
+public final class WeatherConditions {
+
+    /* Icon classes. Each one has a small icon and a large piece of art in the app. */
+    public static final int ICON_STORM = 0;
+    public static final int ICON_LIGHT_RAIN = 1;
+    public static final int ICON_RAIN = 2;
+    public static final int ICON_SNOW = 3;
+    public static final int ICON_FOG = 4;
+    public static final int ICON_CLEAR = 5;
+    public static final int ICON_LIGHT_CLOUDS = 6;
+    public static final int ICON_CLOUDS = 7;
+
+    /* The number of icon classes, for sizing tables indexed by icon class */
+    public static final int ICON_CLASS_COUNT = 8;
+
+    /*
+     * Description keys are condition ids, except that every thunderstorm shares the key 200 and
+     * every drizzle shares the key 300, matching the condition_* strings. No condition has the
+     * id 0, so that is the key for a condition we have no description for.
+     */
+    public static final int DESCRIPTION_UNKNOWN = 0;
+
+    /* Severities, in increasing order */
+    public static final int SEVERITY_NONE = 0;
+    public static final int SEVERITY_LOW = 1;
+    public static final int SEVERITY_MODERATE = 2;
+    public static final int SEVERITY_HIGH = 3;
+
+    /* One past the largest condition id; tables indexed by description key can use this size */
+    public static final int ID_LIMIT = 1000;
+
+    /* The slot every id outside [0, ID_LIMIT) is looked up in */
+    private static final int UNKNOWN_SLOT = ID_LIMIT;
+
+    private static final byte[] ICON_CLASSES = new byte[ID_LIMIT + 1];
+    private static final short[] DESCRIPTION_KEYS = new short[ID_LIMIT + 1];
+    private static final byte[] SEVERITIES = new byte[ID_LIMIT + 1];
+
+    static {
+        /*
+         * The icon ranges are listed in the order the original if/else chain checked them, and a
+         * slot keeps the first icon class assigned to it. That preserves the chain's overlaps,
+         * such as 761 being drawn as fog rather than as a storm.
+         */
+        Arrays.fill(ICON_CLASSES, (byte) -1);
+        icon(200, 232, ICON_STORM);
+        icon(300, 321, ICON_LIGHT_RAIN);
+        icon(500, 504, ICON_RAIN);
+        icon(511, 511, ICON_SNOW);
+        icon(520, 531, ICON_RAIN);
+        icon(600, 622, ICON_SNOW);
+        icon(701, 761, ICON_FOG);
+        icon(761, 761, ICON_STORM);
+        icon(771, 771, ICON_STORM);
+        icon(781, 781, ICON_STORM);
+        icon(800, 800, ICON_CLEAR);
+        icon(801, 801, ICON_LIGHT_CLOUDS);
+        icon(802, 804, ICON_CLOUDS);
+        icon(900, 906, ICON_STORM);
+        icon(958, 962, ICON_STORM);
+        icon(951, 957, ICON_CLEAR);
+        /* Anything we don't recognize is drawn as a storm */
+        for (int i = 0; i < ICON_CLASSES.length; i++) {
+            if (ICON_CLASSES[i] == -1) {
+                ICON_CLASSES[i] = ICON_STORM;
+            }
+        }
+
+        for (int id = 200; id <= 232; id++) {
+            DESCRIPTION_KEYS[id] = 200;
+        }
+        for (int id = 300; id <= 321; id++) {
+            DESCRIPTION_KEYS[id] = 300;
+        }
+        describe(500, 501, 502, 503, 504, 511, 520, 531,
+                600, 601, 602, 611, 612, 615, 616, 620, 621, 622,
+                701, 711, 721, 731, 741, 751, 761, 762, 771, 781,
+                800, 801, 802, 803, 804,
+                900, 901, 902, 903, 904, 905, 906,
+                951, 952, 953, 954, 955, 956, 957, 958, 959, 960, 961, 962);
+
+        /*
+         * Severity follows the categories OpenWeatherMap groups its conditions in: light
+         * precipitation, mist and breezes are low; steady rain, snow, haze and strong winds are
+         * moderate; thunderstorms, extreme conditions and anything we don't recognize are high.
+         */
+        severity(300, 321, SEVERITY_LOW);
+        severity(500, 501, SEVERITY_LOW);
+        severity(502, 531, SEVERITY_MODERATE);
+        severity(600, 600, SEVERITY_LOW);
+        severity(601, 622, SEVERITY_MODERATE);
+        severity(701, 761, SEVERITY_LOW);
+        severity(711, 711, SEVERITY_MODERATE);
+        severity(751, 751, SEVERITY_MODERATE);
+        severity(761, 761, SEVERITY_MODERATE);
+        severity(200, 232, SEVERITY_HIGH);
+        severity(762, 781, SEVERITY_HIGH);
+        severity(800, 804, SEVERITY_NONE);
+        severity(900, 906, SEVERITY_HIGH);
+        severity(951, 956, SEVERITY_NONE);
+        severity(957, 957, SEVERITY_MODERATE);
+        severity(958, 962, SEVERITY_HIGH);
+        for (int id = 0; id < SEVERITIES.length; id++) {
+            if (DESCRIPTION_KEYS[id] == DESCRIPTION_UNKNOWN) {
+                SEVERITIES[id] = SEVERITY_HIGH;
+            }
+        }
+    }
+
+    private WeatherConditions() {
+    }
+
+    private static void icon(int firstId, int lastId, int iconClass) {
+        for (int id = firstId; id <= lastId; id++) {
+            if (ICON_CLASSES[id] == -1) {
+                ICON_CLASSES[id] = (byte) iconClass;
+            }
+        }
+    }
+
+    private static void describe(int... ids) {
+        for (int id : ids) {
+            DESCRIPTION_KEYS[id] = (short) id;
+        }
+    }
+
+    private static void severity(int firstId, int lastId, int severity) {
+        for (int id = firstId; id <= lastId; id++) {
+            SEVERITIES[id] = (byte) severity;
+        }
+    }
+
+    /**
+     * Maps a condition id onto its table slot. Reading the id as unsigned turns negative ids into
+     * huge ones, so a single min() sends everything out of range to the unknown slot.
+     */
+    private static int slot(int weatherId) {
+        return (int) Math.min(weatherId & 0xFFFFFFFFL, UNKNOWN_SLOT);
+    }
+
+    /**
+     * @param weatherId from OpenWeatherMap API response
+     * @return One of the ICON_* classes. Unknown conditions are drawn as {@link #ICON_STORM}.
+     */
+    public static int getIconClass(int weatherId) {
+        return ICON_CLASSES[slot(weatherId)];
+    }
+
+    /**
+     * @param weatherId from OpenWeatherMap API response
+     * @return The key of the condition's description, or {@link #DESCRIPTION_UNKNOWN}
+     */
+    public static int getDescriptionKey(int weatherId) {
+        return DESCRIPTION_KEYS[slot(weatherId)];
+    }
+
+    /**
+     * @param weatherId from OpenWeatherMap API response
+     * @return One of the SEVERITY_* constants. Unknown conditions are {@link #SEVERITY_HIGH}.
+     */
+    public static int getSeverity(int weatherId) {
+        return SEVERITIES[slot(weatherId)];
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data;
+
+import org.junit.Test;
+
+import static junit.framework.Assert.assertEquals;
+
+/**
+ * Putting a freshly fetched day into a published forecast.
+ */
+public class TestForecastSnapshot {
+
+    /* September 22nd, 2016 */
+    private static final long TODAY = 1474502400000L;
+    private static final long DAY = 24 * 60 * 60 * 1000;
+
+    @Test
+    public void testADayReplacesTheRowForItsDate() {
+        ForecastSnapshot stored = snapshot(500, TODAY, TODAY + DAY, TODAY + 2 * DAY);
+        ForecastSnapshot fresh = snapshot(800, TODAY + DAY);
+
+        ForecastSnapshot merged = stored.withDay(fresh, 0);
+        assertDates(merged, TODAY, TODAY + DAY, TODAY + 2 * DAY);
+        assertEquals(500, merged.getWeatherId(0));
+        assertEquals(800, merged.getWeatherId(1));
+        assertEquals(800.0, merged.getMaxTemp(1));
+        assertEquals(500, merged.getWeatherId(2));
+
+        /* The stored snapshot is left as it was */
+        assertEquals(500, stored.getWeatherId(1));
+    }
+
+    @Test
+    public void testADayWithNoRowIsAddedInDateOrder() {
+        ForecastSnapshot stored = snapshot(500, TODAY, TODAY + 2 * DAY);
+
+        assertDates(stored.withDay(snapshot(800, TODAY - DAY), 0),
+                TODAY - DAY, TODAY, TODAY + 2 * DAY);
+        assertDates(stored.withDay(snapshot(800, TODAY + DAY), 0),
+                TODAY, TODAY + DAY, TODAY + 2 * DAY);
+        assertDates(stored.withDay(snapshot(800, TODAY + 3 * DAY), 0),
+                TODAY, TODAY + 2 * DAY, TODAY + 3 * DAY);
+        assertDates(ForecastSnapshot.EMPTY.withDay(snapshot(800, TODAY), 0), TODAY);
+    }
+
+    private static void assertDates(ForecastSnapshot days, long... dates) {
+        assertEquals(dates.length, days.size());
+        for (int i = 0; i < dates.length; i++) {
+            assertEquals(dates[i], days.getDate(i));
+        }
+    }
+
+    /* Days with the given weather on the given dates, every value of them set to the weather */
+    private static ForecastSnapshot snapshot(int weatherId, long... dates) {
+        int size = dates.length;
+        int[] weatherIds = new int[size];
+        double[] values = new double[size];
+        for (int i = 0; i < size; i++) {
+            weatherIds[i] = weatherId;
+            values[i] = weatherId;
+        }
+        return new ForecastSnapshot(dates, weatherIds, values, values, values, values, values,
+                values);
+    }
+}
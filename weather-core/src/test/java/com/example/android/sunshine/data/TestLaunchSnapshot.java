@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+/**
+ * A snapshot has to read back exactly as it was written, and a file that is truncated, damaged or
+ * from another version has to be rejected rather than drawn.
+ */
+public class TestLaunchSnapshot {
+
+    /* September 22nd, 2016 */
+    private static final int TODAY = 17066;
+
+    private static final String FORMAT_KEY = "de_DE|metric";
+
+    private static LaunchSnapshot createSnapshot() {
+        return new LaunchSnapshot.Builder(TODAY, FORMAT_KEY)
+                .addRow(TODAY, 800, "Heute, 22. September", "Klar", "21°", "12°")
+                .addRow(TODAY + 1, 501, "Morgen", "Mäßiger Regen", "18°", "-3°")
+                .addRow(TODAY + 2, 600, "Samstag", "", "9°", "1°")
+                .build();
+    }
+
+    private static byte[] write(LaunchSnapshot snapshot) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        snapshot.writeTo(out);
+        return out.toByteArray();
+    }
+
+    private static void assertReadFails(byte[] bytes) {
+        try {
+            LaunchSnapshot.read(ByteBuffer.wrap(bytes));
+            fail("Expected " + bytes.length + " bytes to be rejected");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        LaunchSnapshot written = createSnapshot();
+        LaunchSnapshot read = LaunchSnapshot.read(ByteBuffer.wrap(write(written)));
+
+        assertEquals(written.size(), read.size());
+        for (int i = 0; i < written.size(); i++) {
+            assertEquals(written.getEpochDay(i), read.getEpochDay(i));
+            assertEquals(written.getWeatherId(i), read.getWeatherId(i));
+            assertEquals(written.getDate(i), read.getDate(i));
+            assertEquals(written.getDescription(i), read.getDescription(i));
+            assertEquals(written.getHigh(i), read.getHigh(i));
+            assertEquals(written.getLow(i), read.getLow(i));
+        }
+        assertTrue(read.isCurrent(TODAY, FORMAT_KEY));
+    }
+
+    @Test
+    public void testReadsFromTheBufferPosition() throws IOException {
+        byte[] snapshot = write(createSnapshot());
+        ByteBuffer buffer = ByteBuffer.allocate(snapshot.length + 3);
+        buffer.position(3);
+        buffer.put(snapshot);
+        buffer.position(3);
+
+        assertEquals(3, LaunchSnapshot.read(buffer).size());
+    }
+
+    @Test
+    public void testIsOnlyCurrentForItsDayAndFormat() {
+        LaunchSnapshot snapshot = createSnapshot();
+        assertFalse("Today and Tomorrow are wrong the next day",
+                snapshot.isCurrent(TODAY + 1, FORMAT_KEY));
+        assertFalse(snapshot.isCurrent(TODAY, "de_DE|imperial"));
+        assertFalse(snapshot.isCurrent(TODAY, "en_US|metric"));
+    }
+
+    @Test
+    public void testEveryTruncationIsRejected() throws IOException {
+        byte[] snapshot = write(createSnapshot());
+        for (int length = 0; length < snapshot.length; length++) {
+            assertReadFails(Arrays.copyOf(snapshot, length));
+        }
+    }
+
+    @Test
+    public void testOtherFilesAreRejected() throws IOException {
+        byte[] snapshot = write(createSnapshot());
+
+        byte[] wrongMagic = snapshot.clone();
+        wrongMagic[0] = 'X';
+        assertReadFails(wrongMagic);
+
+        byte[] nextVersion = snapshot.clone();
+        nextVersion[7] = (byte) (LaunchSnapshot.VERSION + 1);
+        assertReadFails(nextVersion);
+    }
+
+    @Test
+    public void testEmptySnapshot() throws IOException {
+        LaunchSnapshot empty = new LaunchSnapshot.Builder(TODAY, FORMAT_KEY).build();
+        assertEquals(0, LaunchSnapshot.read(ByteBuffer.wrap(write(empty))).size());
+    }
+}
@@ -0,0 +1,313 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.sync;
+
+import com.example.android.sunshine.utilities.GroupForecastParser;
+import com.example.android.sunshine.utilities.OpenWeatherJsonParser;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.json.JSONException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+/**
+ * Fetches forecasts for several locations from a stub weather server on the loopback interface,
+ * with and without a group endpoint.
+ */
+public class TestBatchForecastFetcher {
+
+    private static final long START_DAY = 1474502400000L;
+
+    private static final List<String> CITIES =
+            Arrays.asList("Mountain View, CA", "London, UK", "Sydney, AU");
+
+    /* Each known city's latitude, which tells the forecasts apart */
+    private static final Map<String, Double> LATITUDES = new LinkedHashMap<>();
+
+    static {
+        LATITUDES.put("Mountain View, CA", 37.4);
+        LATITUDES.put("London, UK", 51.5);
+        LATITUDES.put("Sydney, AU", -33.9);
+    }
+
+    private HttpServer mServer;
+    private final List<String> mRequests = Collections.synchronizedList(new ArrayList<String>());
+    private volatile boolean mGroupEndpoint = true;
+    private volatile int mMissingGroupStatus = 404;
+    private volatile int mGroupLeavesOut;
+
+    /* Gets each URL the plain way, with error statuses thrown as FetchExceptions */
+    private static final BatchForecastFetcher.Transport HTTP =
+            new BatchForecastFetcher.Transport() {
+                @Override
+                public String get(String url) throws IOException {
+                    HttpURLConnection connection =
+                            (HttpURLConnection) new URL(url).openConnection();
+                    try {
+                        int status = connection.getResponseCode();
+                        if (status >= HttpURLConnection.HTTP_BAD_REQUEST) {
+                            throw FetchException.forStatus(status);
+                        }
+                        return read(connection.getInputStream());
+                    } finally {
+                        connection.disconnect();
+                    }
+                }
+            };
+
+    /* Collects what the fetcher hands on */
+    private static class Collected implements GroupForecastParser.Sink {
+
+        final Map<String, Double> mLatitudes = new LinkedHashMap<>();
+
+        @Override
+        public void onForecast(String location, String json,
+                               OpenWeatherJsonParser.ParsedForecast forecast) {
+            assertEquals(1, forecast.days.size());
+            mLatitudes.put(location, forecast.latitude);
+
+            /* The JSON handed on reads as the same forecast on its own */
+            try {
+                assertEquals(forecast.latitude,
+                        OpenWeatherJsonParser.parse(json, START_DAY).latitude);
+            } catch (JSONException e) {
+                throw new AssertionError(e);
+            }
+        }
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        mServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        mServer.createContext("/weather", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                mRequests.add(exchange.getRequestURI().getPath());
+                List<String> queries = queries(exchange.getRequestURI().getRawQuery());
+                boolean group = exchange.getRequestURI().getPath().endsWith("/group");
+                if (group && !mGroupEndpoint) {
+                    respond(exchange, mMissingGroupStatus,
+                            "{\"cod\":\"" + mMissingGroupStatus + "\"}");
+                } else if (group) {
+                    StringBuilder list = new StringBuilder();
+                    for (String query : queries.subList(0, queries.size() - mGroupLeavesOut)) {
+                        if (LATITUDES.containsKey(query)) {
+                            list.append(list.length() == 0 ? "" : ",").append(forecast(query));
+                        }
+                    }
+                    respond(exchange, 200, "{\"cod\":\"200\",\"cnt\":" + queries.size()
+                            + ",\"list\":[" + list + "]}");
+                } else if (LATITUDES.containsKey(queries.get(0))) {
+                    respond(exchange, 200, forecast(queries.get(0)));
+                } else {
+                    respond(exchange, 200, "{\"cod\":\"404\",\"message\":\"city not found\"}");
+                }
+            }
+        });
+        mServer.start();
+    }
+
+    @After
+    public void tearDown() {
+        mServer.stop(0);
+    }
+
+    private BatchForecastFetcher newFetcher() {
+        return new BatchForecastFetcher("http://127.0.0.1:" + mServer.getAddress().getPort()
+                + "/weather", "mode=json&units=metric&cnt=1");
+    }
+
+    private static String forecast(String query) {
+        return "{\"q\":\"" + query + "\",\"city\":{\"coord\":{\"lat\":" + LATITUDES.get(query)
+                + ",\"lon\":0}},\"list\":[{\"pressure\":1013,\"humidity\":50,\"speed\":2,"
+                + "\"deg\":90,\"weather\":[{\"id\":800}],\"temp\":{\"max\":20,\"min\":10}}]}";
+    }
+
+    private static List<String> queries(String rawQuery) throws IOException {
+        List<String> queries = new ArrayList<>();
+        for (String parameter : rawQuery.split("&")) {
+            if (parameter.startsWith("q=")) {
+                queries.add(URLDecoder.decode(parameter.substring(2), "UTF-8"));
+            }
+        }
+        return queries;
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body)
+            throws IOException {
+        byte[] bytes = body.getBytes("UTF-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        OutputStream out = exchange.getResponseBody();
+        out.write(bytes);
+        out.close();
+    }
+
+    private static String read(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        in.close();
+        return out.toString("UTF-8");
+    }
+
+    @Test
+    public void testOneGroupRequestAnswersForEveryLocation() throws Exception {
+        Collected collected = new Collected();
+
+        List<String> missing = newFetcher().fetch(CITIES, START_DAY, HTTP, collected);
+
+        assertTrue(missing.isEmpty());
+        assertEquals(LATITUDES, collected.mLatitudes);
+        assertEquals(Arrays.asList("/weather/group"), mRequests);
+    }
+
+    @Test
+    public void testWithoutAGroupEndpointEachLocationIsFetchedOnItsOwn() throws Exception {
+        mGroupEndpoint = false;
+        BatchForecastFetcher fetcher = newFetcher();
+        Collected collected = new Collected();
+
+        fetcher.fetch(CITIES, START_DAY, HTTP, collected);
+
+        assertEquals(LATITUDES, collected.mLatitudes);
+        assertEquals(Arrays.asList("/weather/group", "/weather", "/weather", "/weather"),
+                mRequests);
+        assertFalse(fetcher.isGroupSupported());
+
+        /* Having found out once, it doesn't ask the group endpoint again */
+        mRequests.clear();
+        fetcher.fetch(CITIES, START_DAY, HTTP, new Collected());
+        assertEquals(Arrays.asList("/weather", "/weather", "/weather"), mRequests);
+    }
+
+    @Test
+    public void testAMissingGroupEndpointIsNotRetriedOrCountedAsAFailure() throws Exception {
+        mGroupEndpoint = false;
+        mMissingGroupStatus = 501;
+        CircuitBreaker breaker = new CircuitBreaker(1, 60000);
+        final RetryingFetcher retrying = new RetryingFetcher(3, new Backoff(1, 1, new Random(42)),
+                breaker, new RetryingFetcher.Clock() {
+                    @Override
+                    public long now() {
+                        return START_DAY;
+                    }
+
+                    @Override
+                    public void sleep(long millis) {
+                        fail("Waited to retry");
+                    }
+                }, new RetryingFetcher.Listener() {
+                    @Override
+                    public void onAttemptFailed(int attempt, int kind, long retryMillis) {
+                    }
+                });
+        BatchForecastFetcher.Transport transport = new BatchForecastFetcher.Transport() {
+            @Override
+            public String get(final String url) throws IOException {
+                return retrying.fetch(new RetryingFetcher.Attempt() {
+                    @Override
+                    public String fetch() throws IOException {
+                        return HTTP.get(url);
+                    }
+                });
+            }
+        };
+        Collected collected = new Collected();
+
+        newFetcher().fetch(CITIES, START_DAY, transport, collected);
+
+        assertEquals(LATITUDES, collected.mLatitudes);
+        assertEquals(Arrays.asList("/weather/group", "/weather", "/weather", "/weather"),
+                mRequests);
+        assertEquals(CircuitBreaker.STATE_CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void testLocationsTheGroupLeavesOutAreFetchedOnTheirOwn() throws Exception {
+        mGroupLeavesOut = 1;
+        List<String> locations = new ArrayList<>(CITIES);
+        locations.add(1, "Atlantis");
+        Collected collected = new Collected();
+
+        List<String> missing = newFetcher().fetch(locations, START_DAY, HTTP, collected);
+
+        /* Atlantis isn't known, and Sydney was left out of the group response */
+        assertEquals(LATITUDES, collected.mLatitudes);
+        assertEquals(Arrays.asList("Atlantis"), missing);
+        assertEquals(Arrays.asList("/weather/group", "/weather", "/weather"), mRequests);
+    }
+
+    @Test
+    public void testManyLocationsAreSplitIntoGroups() throws Exception {
+        List<String> locations = new ArrayList<>();
+        for (int i = 0; i < 2 * BatchForecastFetcher.MAX_GROUP_SIZE + 1; i++) {
+            locations.add(CITIES.get(0) + " " + i);
+        }
+
+        List<String> missing = newFetcher().fetch(locations, START_DAY, HTTP, new Collected());
+
+        /* None of them is known, so each group answers with nothing and each is tried alone */
+        assertEquals(locations, missing);
+        assertEquals(Arrays.asList("/weather/group", "/weather/group", "/weather/group"),
+                mRequests.subList(0, 3));
+        assertEquals(3 + locations.size(), mRequests.size());
+    }
+
+    @Test
+    public void testGroupResponseErrorsAndDamage() throws JSONException {
+        Collected collected = new Collected();
+        assertEquals(503, GroupForecastParser.parse("{\"cod\":503,\"list\":[" + forecast(
+                CITIES.get(0)) + "]}", START_DAY, collected));
+        assertTrue(collected.mLatitudes.isEmpty());
+
+        String truncated = "{\"cod\":\"200\",\"list\":[" + forecast(CITIES.get(0)) + ","
+                + forecast(CITIES.get(1)).substring(0, 40);
+        try {
+            GroupForecastParser.parse(truncated, START_DAY, collected);
+            fail("A truncated response should not parse");
+        } catch (JSONException expected) {
+            /* The city before the damage had already been handed on */
+            assertEquals(Collections.singleton(CITIES.get(0)), collected.mLatitudes.keySet());
+        }
+    }
+}
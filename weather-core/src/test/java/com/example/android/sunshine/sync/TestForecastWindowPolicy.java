@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.sync;
+
+import org.junit.Test;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * How many days a sync asks for, given the connection and how far the list has been scrolled.
+ */
+public class TestForecastWindowPolicy {
+
+    private static final int METERED = ForecastWindowPolicy.NETWORK_METERED;
+    private static final int CONSTRAINED = ForecastWindowPolicy.NETWORK_CONSTRAINED;
+
+    @Test
+    public void testWithoutVisitsFallsBackToDefaults() {
+        ForecastWindowPolicy policy = new ForecastWindowPolicy();
+
+        assertEquals(ForecastWindowPolicy.MAX_DAYS,
+                policy.getDaysToFetch(ForecastWindowPolicy.NETWORK_UNMETERED));
+        assertEquals(ForecastWindowPolicy.DEFAULT_METERED_DAYS, policy.getDaysToFetch(METERED));
+        assertEquals(ForecastWindowPolicy.MIN_DAYS, policy.getDaysToFetch(CONSTRAINED));
+        assertEquals(-1, policy.getDeepestDay(0.5));
+    }
+
+    @Test
+    public void testMeteredFetchFollowsHowFarVisitsGo() {
+        ForecastWindowPolicy policy = new ForecastWindowPolicy();
+        /* Most visits stop at day 4; one in ten reaches day 8 */
+        for (int i = 0; i < 90; i++) {
+            policy.recordVisit(4);
+        }
+        for (int i = 0; i < 10; i++) {
+            policy.recordVisit(8);
+        }
+
+        assertEquals(4, policy.getDeepestDay(0.5));
+        assertEquals(4, policy.getDeepestDay(0.9));
+        assertEquals(8, policy.getDeepestDay(0.95));
+        /* Day 4 is the fifth day, plus the spare ones */
+        assertEquals(5 + ForecastWindowPolicy.SPARE_DAYS, policy.getDaysToFetch(METERED));
+
+        /* Visits past the end of the forecast count as reaching its last day */
+        for (int i = 0; i < 20; i++) {
+            policy.recordVisit(30);
+        }
+        assertEquals(ForecastWindowPolicy.MAX_DAYS, policy.getDaysToFetch(METERED));
+        assertEquals(ForecastWindowPolicy.MAX_DAYS - 1, policy.getDeepestDay(1));
+        assertEquals(5 + ForecastWindowPolicy.SPARE_DAYS, policy.getDaysToFetch(CONSTRAINED));
+    }
+
+    @Test
+    public void testNeverAsksForFewerThanTheMinimum() {
+        ForecastWindowPolicy policy = new ForecastWindowPolicy();
+        policy.recordVisit(0);
+
+        assertEquals(ForecastWindowPolicy.MIN_DAYS, policy.getDaysToFetch(METERED));
+        assertEquals(ForecastWindowPolicy.MIN_DAYS, policy.getDaysToFetch(CONSTRAINED));
+    }
+
+    @Test
+    public void testOldVisitsFadeAway() {
+        ForecastWindowPolicy policy = new ForecastWindowPolicy();
+        for (int i = 0; i < ForecastWindowPolicy.MAX_VISITS; i++) {
+            policy.recordVisit(12);
+        }
+        for (int i = 0; i < 3 * ForecastWindowPolicy.MAX_VISITS; i++) {
+            policy.recordVisit(2);
+        }
+
+        assertTrue(policy.getVisitCount() <= ForecastWindowPolicy.MAX_VISITS);
+        assertEquals(2, policy.getDeepestDay(0.9));
+    }
+
+    @Test
+    public void testAVisitEndingAtTheUsualDeepestDayDoesNotExtend() {
+        ForecastWindowPolicy policy = new ForecastWindowPolicy();
+        for (int i = 0; i < 10; i++) {
+            policy.recordVisit(4);
+        }
+        int deepest = policy.getDeepestDay(0.9);
+        int stored = policy.getDaysToFetch(METERED);
+
+        assertEquals(4, deepest);
+        assertFalse(ForecastWindowPolicy.shouldExtend(deepest, stored));
+        assertTrue(ForecastWindowPolicy.shouldExtend(deepest + 1, stored));
+    }
+
+    @Test
+    public void testExtendsNearTheEndOfWhatIsStored() {
+        assertFalse(ForecastWindowPolicy.shouldExtend(2, 7));
+        assertFalse(ForecastWindowPolicy.shouldExtend(4, 7));
+        assertTrue(ForecastWindowPolicy.shouldExtend(5, 7));
+        assertTrue(ForecastWindowPolicy.shouldExtend(6, 7));
+        assertFalse(ForecastWindowPolicy.shouldExtend(13, ForecastWindowPolicy.MAX_DAYS));
+        assertFalse(ForecastWindowPolicy.shouldExtend(-1, 0));
+    }
+
+    @Test
+    public void testPreferenceRoundTrip() {
+        ForecastWindowPolicy policy = new ForecastWindowPolicy();
+        policy.recordVisit(3);
+        policy.recordVisit(3);
+        policy.recordVisit(9);
+
+        ForecastWindowPolicy read = ForecastWindowPolicy.fromPreference(policy.toPreference());
+        assertEquals(policy.toPreference(), read.toPreference());
+        assertEquals(3, read.getVisitCount());
+        assertEquals(9, read.getDeepestDay(1));
+
+        String[] damaged = {null, "", "1,2,3", "0,0,0,0,0,0,0,0,0,0,0,0,0,x",
+                "0,0,0,0,0,0,0,0,0,0,0,0,0,-1"};
+        for (String value : damaged) {
+            assertEquals(0, ForecastWindowPolicy.fromPreference(value).getVisitCount());
+        }
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.sync;
+
+import org.junit.Test;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Expiry and eviction of cached responses.
+ */
+public class TestResponseCache {
+
+    private static final long MAX_AGE = 60 * 60 * 1000;
+    private static final long NOW = 1474502400000L;
+    private static final int DAYS = 14;
+
+    @Test
+    public void testServesAResponseUntilItExpires() {
+        ResponseCache cache = new ResponseCache(4, MAX_AGE);
+        assertNull(cache.get("cell:9q9hr", DAYS, NOW));
+
+        cache.put("cell:9q9hr", "{}", DAYS, NOW);
+        assertEquals("{}", cache.get("cell:9q9hr", DAYS, NOW + MAX_AGE - 1));
+        assertNull(cache.get("cell:9q9hr", DAYS, NOW + MAX_AGE));
+
+        /* Expired entries are gone, not just hidden */
+        assertNull(cache.get("cell:9q9hr", DAYS, NOW));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(3, cache.getMissCount());
+    }
+
+    @Test
+    public void testContainsCountsNeitherHitsNorMisses() {
+        ResponseCache cache = new ResponseCache(4, MAX_AGE);
+        assertFalse(cache.contains("q:london", DAYS, NOW));
+
+        cache.put("q:london", "{}", DAYS, NOW);
+        assertTrue(cache.contains("q:london", DAYS, NOW + MAX_AGE - 1));
+        assertFalse(cache.contains("q:london", DAYS, NOW + MAX_AGE));
+        assertFalse(cache.contains("q:london", DAYS, NOW - 1));
+        assertEquals(0, cache.getHitCount());
+        assertEquals(0, cache.getMissCount());
+    }
+
+    @Test
+    public void testAResponseWithFewerDaysThanAskedForIsAMiss() {
+        ResponseCache cache = new ResponseCache(4, MAX_AGE);
+        cache.put("cell:9q9hr", "{3 days}", 3, NOW);
+        assertNull(cache.get("cell:9q9hr", DAYS, NOW));
+        assertFalse(cache.contains("cell:9q9hr", DAYS, NOW));
+
+        /* It still serves a request for as many days or fewer */
+        assertEquals("{3 days}", cache.get("cell:9q9hr", 3, NOW));
+        assertEquals("{3 days}", cache.get("cell:9q9hr", 1, NOW));
+        assertEquals(2, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+
+        /* The whole forecast replaces it, and serves the shorter request too */
+        cache.put("cell:9q9hr", "{14 days}", DAYS, NOW);
+        assertEquals("{14 days}", cache.get("cell:9q9hr", DAYS, NOW));
+        assertEquals("{14 days}", cache.get("cell:9q9hr", 3, NOW));
+    }
+
+    @Test
+    public void testResponseFromTheFutureIsNotServed() {
+        ResponseCache cache = new ResponseCache(4, MAX_AGE);
+        cache.put("q:london", "{}", DAYS, NOW);
+        assertNull(cache.get("q:london", DAYS, NOW - 1));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedResponseIsEvicted() {
+        ResponseCache cache = new ResponseCache(2, MAX_AGE);
+        cache.put("a", "A", DAYS, NOW);
+        cache.put("b", "B", DAYS, NOW);
+        cache.get("a", DAYS, NOW);
+        cache.put("c", "C", DAYS, NOW);
+
+        assertEquals("A", cache.get("a", DAYS, NOW));
+        assertNull(cache.get("b", DAYS, NOW));
+        assertEquals("C", cache.get("c", DAYS, NOW));
+    }
+}
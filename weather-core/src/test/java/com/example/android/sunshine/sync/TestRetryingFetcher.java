@@ -0,0 +1,302 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.sync;
+
+import org.json.JSONException;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+/**
+ * Error classification, backoff, the circuit breaker and the retry loop that combines them.
+ */
+public class TestRetryingFetcher {
+
+    private static final long BASE = 1000;
+    private static final long CAP = 30000;
+    private static final long OPEN = 15 * 60 * 1000;
+
+    /* Doesn't wait; just moves the time on */
+    private static class FakeClock implements RetryingFetcher.Clock {
+
+        long mNow = 1474502400000L;
+        final List<Long> mSleeps = new ArrayList<>();
+
+        @Override
+        public long now() {
+            return mNow;
+        }
+
+        @Override
+        public void sleep(long millis) {
+            mSleeps.add(millis);
+            mNow += millis;
+        }
+    }
+
+    /* Fails with the given errors in turn, then answers "ok" */
+    private static class ScriptedAttempt implements RetryingFetcher.Attempt {
+
+        final IOException[] mFailures;
+        int mCalls;
+
+        ScriptedAttempt(IOException... failures) {
+            mFailures = failures;
+        }
+
+        @Override
+        public String fetch() throws IOException {
+            if (mCalls < mFailures.length) {
+                throw mFailures[mCalls++];
+            }
+            mCalls++;
+            return "ok";
+        }
+    }
+
+    private static final RetryingFetcher.Listener IGNORE = new RetryingFetcher.Listener() {
+        @Override
+        public void onAttemptFailed(int attempt, int kind, long retryMillis) {
+        }
+    };
+
+    private static RetryingFetcher fetcher(int maxAttempts, CircuitBreaker breaker,
+                                           FakeClock clock) {
+        return new RetryingFetcher(maxAttempts, new Backoff(BASE, CAP, new Random(42)), breaker,
+                clock, IGNORE);
+    }
+
+    @Test
+    public void testClassifiesFailures() {
+        assertEquals(FetchException.KIND_TIMEOUT,
+                FetchException.classify(new SocketTimeoutException()));
+        assertEquals(FetchException.KIND_NETWORK,
+                FetchException.classify(new ConnectException("refused")));
+        assertEquals(FetchException.KIND_SERVER,
+                FetchException.classify(FetchException.forStatus(503)));
+        assertEquals(FetchException.KIND_CLIENT,
+                FetchException.classify(FetchException.forStatus(404)));
+        assertEquals(FetchException.KIND_CLIENT,
+                FetchException.classify(FetchException.forStatus(501)));
+        assertEquals(FetchException.KIND_PARSE,
+                FetchException.classify(new JSONException("Unterminated array")));
+        assertEquals(FetchException.KIND_THROTTLED,
+                FetchException.classify(FetchException.forStatus(429)));
+
+        assertTrue(FetchException.isRetryable(FetchException.KIND_SERVER));
+        assertFalse(FetchException.isRetryable(FetchException.KIND_CLIENT));
+        assertFalse(FetchException.isRetryable(FetchException.KIND_PARSE));
+        assertTrue(FetchException.isRetryable(FetchException.KIND_THROTTLED));
+    }
+
+    @Test
+    public void testBackoffDoublesUpToTheCapWithFullJitter() {
+        Backoff backoff = new Backoff(BASE, CAP, new Random(7));
+        assertEquals(1000, backoff.getCeilingMillis(0));
+        assertEquals(8000, backoff.getCeilingMillis(3));
+        assertEquals(CAP, backoff.getCeilingMillis(5));
+        assertEquals(CAP, backoff.getCeilingMillis(200));
+
+        long lowest = Long.MAX_VALUE;
+        long highest = 0;
+        for (int i = 0; i < 1000; i++) {
+            long delay = backoff.getDelayMillis(3);
+            assertTrue(delay >= 0 && delay <= 8000);
+            lowest = Math.min(lowest, delay);
+            highest = Math.max(highest, delay);
+        }
+        /* Spread over the whole range, not bunched at the ceiling */
+        assertTrue(lowest < 800);
+        assertTrue(highest > 7200);
+
+        /* The same seed, the same waits */
+        Backoff again = new Backoff(BASE, CAP, new Random(7));
+        Backoff other = new Backoff(BASE, CAP, new Random(7));
+        for (int i = 0; i < 10; i++) {
+            assertEquals(again.getDelayMillis(i), other.getDelayMillis(i));
+        }
+    }
+
+    @Test
+    public void testRetriesTransientFailuresUntilOneSucceeds() throws IOException {
+        FakeClock clock = new FakeClock();
+        ScriptedAttempt attempt = new ScriptedAttempt(
+                FetchException.forStatus(503), new SocketTimeoutException());
+
+        assertEquals("ok", fetcher(3, new CircuitBreaker(5, OPEN), clock).fetch(attempt));
+        assertEquals(3, attempt.mCalls);
+        assertEquals(2, clock.mSleeps.size());
+        assertTrue(clock.mSleeps.get(0) <= BASE);
+        assertTrue(clock.mSleeps.get(1) <= 2 * BASE);
+    }
+
+    @Test
+    public void testDoesNotRetryClientErrors() {
+        FakeClock clock = new FakeClock();
+        ScriptedAttempt attempt = new ScriptedAttempt(FetchException.forStatus(404));
+
+        try {
+            fetcher(3, new CircuitBreaker(5, OPEN), clock).fetch(attempt);
+            fail("A 404 should have been thrown");
+        } catch (IOException e) {
+            assertEquals(404, ((FetchException) e).getStatus());
+        }
+        assertEquals(1, attempt.mCalls);
+        assertTrue(clock.mSleeps.isEmpty());
+    }
+
+    @Test
+    public void testGivesUpAfterTheLastAttempt() {
+        FakeClock clock = new FakeClock();
+        IOException last = new ConnectException("refused");
+        ScriptedAttempt attempt = new ScriptedAttempt(FetchException.forStatus(500),
+                FetchException.forStatus(502), last);
+
+        try {
+            fetcher(3, new CircuitBreaker(5, OPEN), clock).fetch(attempt);
+            fail("The fetch should have given up");
+        } catch (IOException e) {
+            assertTrue(e == last);
+        }
+        assertEquals(3, attempt.mCalls);
+    }
+
+    @Test
+    public void testBreakerOpensThenLetsOneTrialThrough() {
+        CircuitBreaker breaker = new CircuitBreaker(3, OPEN);
+        long now = 0;
+        for (int i = 0; i < 3; i++) {
+            assertTrue(breaker.allowRequest(now));
+            breaker.onFailure(now);
+        }
+        assertEquals(CircuitBreaker.STATE_OPEN, breaker.getState());
+        assertFalse(breaker.allowRequest(now + OPEN - 1));
+
+        /* One trial once the breaker has been open long enough; nobody else until it reports */
+        assertTrue(breaker.allowRequest(now + OPEN));
+        assertFalse(breaker.allowRequest(now + OPEN));
+
+        /* A failed trial opens it again straight away */
+        breaker.onFailure(now + OPEN);
+        assertFalse(breaker.allowRequest(now + OPEN + 1));
+
+        assertTrue(breaker.allowRequest(now + 2 * OPEN));
+        breaker.onSuccess();
+        assertEquals(CircuitBreaker.STATE_CLOSED, breaker.getState());
+        assertTrue(breaker.allowRequest(now + 2 * OPEN));
+    }
+
+    @Test
+    public void testOpenBreakerStopsFetchesWithoutTouchingTheEndpoint() {
+        FakeClock clock = new FakeClock();
+        CircuitBreaker breaker = new CircuitBreaker(3, OPEN);
+        ScriptedAttempt down = new ScriptedAttempt(FetchException.forStatus(503),
+                FetchException.forStatus(503), FetchException.forStatus(503),
+                FetchException.forStatus(503));
+
+        try {
+            fetcher(2, breaker, clock).fetch(down);
+            fail("The endpoint is down");
+        } catch (IOException e) {
+            assertEquals(FetchException.KIND_SERVER, FetchException.classify(e));
+        }
+
+        /* The third failure in a row opens the breaker, so there's no fourth attempt */
+        for (int i = 0; i < 2; i++) {
+            try {
+                fetcher(2, breaker, clock).fetch(down);
+                fail("The breaker is open");
+            } catch (IOException e) {
+                assertEquals(FetchException.KIND_CIRCUIT_OPEN, FetchException.classify(e));
+            }
+        }
+        assertEquals(3, down.mCalls);
+        assertEquals(CircuitBreaker.STATE_OPEN, breaker.getState());
+    }
+
+    @Test
+    public void testBeingThrottledCountsAgainstTheEndpoint() {
+        FakeClock clock = new FakeClock();
+        CircuitBreaker breaker = new CircuitBreaker(2, OPEN);
+        ScriptedAttempt attempt = new ScriptedAttempt(FetchException.forStatus(429),
+                FetchException.forStatus(429));
+
+        try {
+            fetcher(3, breaker, clock).fetch(attempt);
+            fail("The endpoint asked for fewer requests");
+        } catch (IOException e) {
+            assertEquals(FetchException.KIND_CIRCUIT_OPEN, FetchException.classify(e));
+        }
+        /* Each 429 was backed off from, and the second opened the breaker */
+        assertEquals(2, clock.mSleeps.size());
+        assertEquals(2, attempt.mCalls);
+        assertEquals(CircuitBreaker.STATE_OPEN, breaker.getState());
+    }
+
+    @Test
+    public void testACancelledTrialLetsALaterOneThrough() throws IOException {
+        FakeClock clock = new FakeClock();
+        CircuitBreaker breaker = new CircuitBreaker(1, OPEN);
+        breaker.onFailure(clock.mNow);
+        clock.mNow += OPEN;
+
+        /* The trial request is cancelled, as when the sync's job is stopped */
+        try {
+            fetcher(3, breaker, clock).fetch(new RetryingFetcher.Attempt() {
+                @Override
+                public String fetch() {
+                    throw new IllegalStateException("Cancelled");
+                }
+            });
+            fail("The cancellation should have been passed on");
+        } catch (IllegalStateException expected) {
+        }
+        assertEquals(CircuitBreaker.STATE_OPEN, breaker.getState());
+        assertFalse(breaker.allowRequest(clock.mNow + OPEN - 1));
+
+        /* Once it has been open for another while, the next fetch is the trial */
+        clock.mNow += OPEN;
+        assertEquals("ok", fetcher(3, breaker, clock).fetch(new ScriptedAttempt()));
+        assertEquals(CircuitBreaker.STATE_CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void testReportsEachFailedAttempt() throws IOException {
+        final List<String> reports = new ArrayList<>();
+        RetryingFetcher fetcher = new RetryingFetcher(3, new Backoff(BASE, CAP, new Random(1)),
+                new CircuitBreaker(5, OPEN), new FakeClock(), new RetryingFetcher.Listener() {
+            @Override
+            public void onAttemptFailed(int attempt, int kind, long retryMillis) {
+                reports.add(attempt + " " + FetchException.getKindName(kind) + " "
+                        + (retryMillis >= 0));
+            }
+        });
+
+        fetcher.fetch(new ScriptedAttempt(new SocketTimeoutException()));
+        assertEquals(Arrays.asList("1 timeout true"), reports);
+    }
+}
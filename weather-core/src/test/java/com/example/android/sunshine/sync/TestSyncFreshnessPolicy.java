@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.sync;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Launch syncs are skipped while the data is fresh; syncs the user asked for never are.
+ */
+public class TestSyncFreshnessPolicy {
+
+    private static final long WINDOW = TimeUnit.HOURS.toMillis(3);
+
+    /* Midnight UTC on September 22nd, 2016 */
+    private static final long NOW = 1474502400000L;
+
+    @Test
+    public void testLaunchSyncSkippedOnlyWithinTheWindow() {
+        SyncFreshnessPolicy policy = new SyncFreshnessPolicy(WINDOW);
+
+        assertFalse(policy.shouldSync(SyncFreshnessPolicy.REASON_LAUNCH, NOW, NOW));
+        assertFalse(policy.shouldSync(SyncFreshnessPolicy.REASON_LAUNCH, NOW - WINDOW + 1, NOW));
+        assertTrue(policy.shouldSync(SyncFreshnessPolicy.REASON_LAUNCH, NOW - WINDOW, NOW));
+    }
+
+    @Test
+    public void testLaunchSyncDoneWhenNeverSynced() {
+        SyncFreshnessPolicy policy = new SyncFreshnessPolicy(WINDOW);
+        assertTrue(policy.shouldSync(SyncFreshnessPolicy.REASON_LAUNCH,
+                SyncFreshnessPolicy.NEVER_SYNCED, NOW));
+    }
+
+    @Test
+    public void testClockSetBackCountsAsStale() {
+        SyncFreshnessPolicy policy = new SyncFreshnessPolicy(WINDOW);
+        assertTrue(policy.shouldSync(SyncFreshnessPolicy.REASON_LAUNCH, NOW + 1, NOW));
+    }
+
+    @Test
+    public void testExplicitSyncsAlwaysHonoured() {
+        SyncFreshnessPolicy policy = new SyncFreshnessPolicy(WINDOW);
+        assertTrue(policy.shouldSync(SyncFreshnessPolicy.REASON_USER_REFRESH, NOW, NOW));
+        assertTrue(policy.shouldSync(SyncFreshnessPolicy.REASON_LOCATION_CHANGED, NOW, NOW));
+    }
+
+    @Test
+    public void testCountsAvoidedSyncs() {
+        SyncFreshnessPolicy policy = new SyncFreshnessPolicy(WINDOW);
+
+        /* A launch that syncs, three rotations while fresh, a refresh, then a stale launch */
+        policy.shouldSync(SyncFreshnessPolicy.REASON_LAUNCH,
+                SyncFreshnessPolicy.NEVER_SYNCED, NOW);
+        for (int i = 0; i < 3; i++) {
+            policy.shouldSync(SyncFreshnessPolicy.REASON_LAUNCH, NOW, NOW + i);
+        }
+        policy.shouldSync(SyncFreshnessPolicy.REASON_USER_REFRESH, NOW, NOW + 5);
+        policy.shouldSync(SyncFreshnessPolicy.REASON_LAUNCH, NOW, NOW + WINDOW);
+
+        assertEquals(6, policy.getRequestedCount());
+        assertEquals(3, policy.getAvoidedCount());
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.sync;
+
+import org.junit.Test;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * The histograms and the registry that feeds them from finished sync traces.
+ */
+public class TestSyncMetrics {
+
+    @Test
+    public void testBucketsArePowersOfTwo() {
+        assertEquals(0, Histogram.bucketOf(0));
+        assertEquals(0, Histogram.bucketOf(1));
+        assertEquals(1, Histogram.bucketOf(2));
+        assertEquals(1, Histogram.bucketOf(3));
+        assertEquals(10, Histogram.bucketOf(1024));
+        assertEquals(62, Histogram.bucketOf(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testPercentilesAreBucketUpperBounds() {
+        Histogram histogram = new Histogram();
+        for (int i = 0; i < 90; i++) {
+            histogram.record(100);
+        }
+        for (int i = 0; i < 10; i++) {
+            histogram.record(5000);
+        }
+
+        assertEquals(100, histogram.getCount());
+        assertEquals(590, histogram.getMean());
+        assertEquals(5000, histogram.getMax());
+        /* 100 is in [64, 128) */
+        assertEquals(127, histogram.getPercentile(0.5));
+        /* 5000 is in [4096, 8192), but nothing above 5000 was ever recorded */
+        assertEquals(5000, histogram.getPercentile(0.95));
+        assertEquals(0, new Histogram().getPercentile(0.5));
+    }
+
+    @Test
+    public void testConcurrentRecordsAreAllCounted() throws InterruptedException {
+        final Histogram histogram = new Histogram();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            final int offset = t;
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 10000; i++) {
+                        histogram.record(i + offset);
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(40000, histogram.getCount());
+        assertEquals(10002, histogram.getMax());
+    }
+
+    @Test
+    public void testRecordsStagesOutcomesAndFailures() {
+        SyncMetrics metrics = new SyncMetrics();
+
+        SyncTrace stored = SyncTrace.fromLine(
+                "1474502400000 0 -1 9000 5120 14 0 10 2000 3000 1000 500 100 800 50 40 60");
+        SyncTrace failed = SyncTrace.fromLine(
+                "1474502500000 2 1 30000 0 0 0 10 -1 -1 -1 -1 -1 -1 -1 -1 -1 "
+                        + "SocketTimeoutException: connect timed out");
+        metrics.record(stored);
+        metrics.record(failed);
+
+        assertEquals(1, metrics.getOutcomeCount(SyncTrace.OUTCOME_STORED));
+        assertEquals(1, metrics.getOutcomeCount(SyncTrace.OUTCOME_FAILED));
+        assertEquals(1, metrics.getFailureCount(SyncTrace.STAGE_CONNECT));
+        assertEquals(2, metrics.getStageMicros(SyncTrace.STAGE_BUILD_URL).getCount());
+        assertEquals(1, metrics.getStageMicros(SyncTrace.STAGE_CONNECT).getCount());
+        assertEquals(3000, metrics.getStageMicros(SyncTrace.STAGE_FIRST_BYTE).getMax());
+        /* A failed sync's bytes and rows would only drag the averages down */
+        assertEquals(1, metrics.getBytes().getCount());
+        assertEquals(14, metrics.getRows().getSum());
+
+        StringWriter dump = new StringWriter();
+        metrics.dump(new PrintWriter(dump));
+        assertTrue(dump.toString().contains("syncs: stored=1 no_weather=0 failed=1"));
+        assertTrue(dump.toString().contains("first_byte"));
+    }
+
+    @Test
+    public void testRecordsWhenTodayBecameVisible() {
+        SyncMetrics metrics = new SyncMetrics();
+        SyncTrace twoSteps = new SyncTrace(1);
+        twoSteps.todayVisible();
+        twoSteps.stored(14);
+        twoSteps.finish();
+        metrics.record(twoSteps);
+        metrics.record(SyncTrace.fromLine(
+                "1474502400000 1 -1 9000 0 0 0 10 -1 -1 -1 -1 -1 -1 -1 -1 -1"));
+
+        assertEquals(1, metrics.getTodayVisibleMicros().getCount());
+        assertTrue(metrics.getTodayVisibleMicros().getMax() <= twoSteps.getTotalMicros());
+
+        StringWriter dump = new StringWriter();
+        metrics.dump(new PrintWriter(dump));
+        assertTrue(dump.toString().contains("today_visible        1"));
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.sync;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+/**
+ * Per-install phases and the sync times they give.
+ */
+public class TestSyncSchedule {
+
+    private static final long INTERVAL = TimeUnit.HOURS.toMillis(3);
+    private static final long DELAY = TimeUnit.MINUTES.toMillis(10);
+
+    /* September 22, 2016 00:00 UTC, when a forecast was published */
+    private static final long PUBLISHED = 1474502400000L;
+
+    private static String randomId(Random random) {
+        return new UUID(random.nextLong(), random.nextLong()).toString();
+    }
+
+    @Test
+    public void testPhaseIsStablePerInstall() {
+        String id = "0f8fad5b-d9cb-469f-a165-70867728950e";
+        long phase = new SyncSchedule(INTERVAL, DELAY, id).getPhaseMillis();
+        assertEquals(phase, new SyncSchedule(INTERVAL, DELAY, id).getPhaseMillis());
+        assertTrue(phase >= DELAY && phase < INTERVAL);
+    }
+
+    @Test
+    public void testPhasesAreSpreadEvenlyAcrossTheInterval() {
+        Random random = new Random(42);
+        int installs = 100000;
+        int[] buckets = new int[12];
+        long span = INTERVAL - DELAY;
+        for (int i = 0; i < installs; i++) {
+            long phase = new SyncSchedule(INTERVAL, DELAY, randomId(random)).getPhaseMillis();
+            buckets[(int) ((phase - DELAY) * buckets.length / span)]++;
+        }
+        int expected = installs / buckets.length;
+        for (int count : buckets) {
+            assertTrue("Bucket of " + count, Math.abs(count - expected) < expected / 20);
+        }
+    }
+
+    @Test
+    public void testSyncTimesFollowEachPublication() {
+        SyncSchedule schedule = new SyncSchedule(INTERVAL, DELAY, "install");
+        long phase = schedule.getPhaseMillis();
+
+        assertEquals(PUBLISHED + phase, schedule.getNextSyncTime(PUBLISHED));
+        assertEquals(PUBLISHED + phase, schedule.getNextSyncTime(PUBLISHED + phase));
+        assertEquals(PUBLISHED + INTERVAL + phase,
+                schedule.getNextSyncTime(PUBLISHED + phase + 1));
+
+        /* Whatever time it is asked from, the answer is the same distance past a publication */
+        Random random = new Random(7);
+        for (int i = 0; i < 1000; i++) {
+            long earliest = PUBLISHED + (long) (random.nextDouble() * TimeUnit.DAYS.toMillis(30));
+            long next = schedule.getNextSyncTime(earliest);
+            assertTrue(next >= earliest && next < earliest + INTERVAL);
+            assertEquals(phase, next % INTERVAL);
+        }
+    }
+
+    @Test
+    public void testTimesBefore1970AreAlignedToo() {
+        SyncSchedule schedule = new SyncSchedule(INTERVAL, DELAY, "install");
+        long next = schedule.getNextSyncTime(-INTERVAL + 1);
+        assertEquals(schedule.getPhaseMillis() - INTERVAL, next);
+    }
+
+    @Test
+    public void testIntervalMustFitTheHoursOfADay() {
+        long[] intervals = {0, TimeUnit.MINUTES.toMillis(90), TimeUnit.HOURS.toMillis(5)};
+        for (long interval : intervals) {
+            try {
+                new SyncSchedule(interval, 0, "install");
+                fail("Accepted an interval of " + interval);
+            } catch (IllegalArgumentException expected) {
+                /* This is what we want */
+            }
+        }
+    }
+}
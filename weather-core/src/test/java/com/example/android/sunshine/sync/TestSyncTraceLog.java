@@ -0,0 +1,220 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.sync;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.List;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+/**
+ * Sync traces, their one-line form and the ring buffer that persists them.
+ */
+public class TestSyncTraceLog {
+
+    private static SyncTrace storedTrace(long startedAt) {
+        SyncTrace trace = new SyncTrace(startedAt);
+        trace.begin(SyncTrace.STAGE_PARSE);
+        trace.end();
+        trace.setBytes(5120);
+        trace.stored(14);
+        trace.finish();
+        return trace;
+    }
+
+    @Test
+    public void testTracesStagesAndOutcome() {
+        SyncTrace trace = storedTrace(1);
+
+        assertEquals(SyncTrace.OUTCOME_STORED, trace.getOutcome());
+        assertEquals(14, trace.getRows());
+        assertTrue(trace.getStageMicros(SyncTrace.STAGE_PARSE) >= 0);
+        assertEquals(SyncTrace.NOT_RUN, trace.getStageMicros(SyncTrace.STAGE_CONNECT));
+        assertEquals(-1, trace.getFailedStage());
+    }
+
+    @Test
+    public void testResumedStageAddsUpButARetriedOneStartsAgain() throws InterruptedException {
+        SyncTrace trace = new SyncTrace(1);
+        trace.begin(SyncTrace.STAGE_PARSE);
+        Thread.sleep(5);
+        trace.end();
+        long today = trace.getStageMicros(SyncTrace.STAGE_PARSE);
+        assertTrue(today >= 5000);
+
+        trace.resume(SyncTrace.STAGE_PARSE);
+        Thread.sleep(5);
+        trace.end();
+        long both = trace.getStageMicros(SyncTrace.STAGE_PARSE);
+        assertTrue(both >= today + 5000);
+
+        trace.begin(SyncTrace.STAGE_PARSE);
+        trace.end();
+        assertTrue(trace.getStageMicros(SyncTrace.STAGE_PARSE) < both);
+
+        /* A stage that never ran is resumed from nothing */
+        trace.resume(SyncTrace.STAGE_INSERT);
+        trace.end();
+        assertTrue(trace.getStageMicros(SyncTrace.STAGE_INSERT) >= 0);
+    }
+
+    @Test
+    public void testTodayVisibleIsTimedFromTheStartOnce() throws InterruptedException {
+        SyncTrace trace = new SyncTrace(1);
+        assertEquals(SyncTrace.NOT_RUN, trace.getTodayVisibleMicros());
+
+        Thread.sleep(5);
+        trace.todayVisible();
+        long visible = trace.getTodayVisibleMicros();
+        Thread.sleep(5);
+        trace.todayVisible();
+        trace.stored(14);
+        trace.finish();
+
+        assertTrue(visible >= 5000);
+        assertEquals(visible, trace.getTodayVisibleMicros());
+        assertTrue(trace.getTotalMicros() >= visible + 5000);
+
+        /* It isn't part of the log */
+        assertEquals(SyncTrace.NOT_RUN,
+                SyncTrace.fromLine(trace.toLine()).getTodayVisibleMicros());
+    }
+
+    @Test
+    public void testMalformedDaysAreSummarizedButNotLogged() {
+        SyncTrace trace = new SyncTrace(1);
+        trace.setMalformedDays(2);
+        trace.stored(14);
+        trace.finish();
+
+        assertEquals(2, trace.getMalformedDays());
+        assertTrue(trace.toString(),
+                trace.toString().startsWith("full: stored 14 rows (2 malformed days), 0 bytes"));
+        assertEquals(0, SyncTrace.fromLine(trace.toLine()).getMalformedDays());
+    }
+
+    @Test
+    public void testFailureRecordsTheStageItHappenedIn() {
+        SyncTrace trace = new SyncTrace(1);
+        trace.begin(SyncTrace.STAGE_DOWNLOAD);
+        trace.fail(new IOException("unexpected end of stream"));
+        trace.finish();
+
+        assertEquals(SyncTrace.OUTCOME_FAILED, trace.getOutcome());
+        assertEquals(SyncTrace.STAGE_DOWNLOAD, trace.getFailedStage());
+        assertEquals("IOException: unexpected end of stream", trace.getError());
+        assertEquals(SyncTrace.NOT_RUN, trace.getStageMicros(SyncTrace.STAGE_DOWNLOAD));
+    }
+
+    @Test
+    public void testCancellationRecordsTheStageButNoError() {
+        SyncTrace trace = new SyncTrace(1);
+        trace.begin(SyncTrace.STAGE_DOWNLOAD);
+        trace.cancelled();
+        trace.finish();
+
+        SyncTrace read = SyncTrace.fromLine(trace.toLine());
+        assertEquals(SyncTrace.OUTCOME_CANCELLED, read.getOutcome());
+        assertEquals(SyncTrace.STAGE_DOWNLOAD, read.getFailedStage());
+        assertNull(read.getError());
+        assertTrue(read.toString().startsWith("full: cancelled in download,"));
+    }
+
+    @Test
+    public void testLineRoundTrip() {
+        SyncTrace trace = new SyncTrace(1474502400000L);
+        trace.begin(SyncTrace.STAGE_PARSE);
+        trace.fail(new IllegalStateException("bad\nJSON"));
+        trace.finish();
+
+        SyncTrace read = SyncTrace.fromLine(trace.toLine());
+        assertEquals(trace.toLine(), read.toLine());
+        assertEquals("IllegalStateException: bad JSON", read.getError());
+        assertEquals(SyncTrace.STAGE_PARSE, read.getFailedStage());
+
+        assertNull(SyncTrace.fromLine(storedTrace(2).toLine()).getError());
+    }
+
+    @Test
+    public void testTierIsKeptAndNamed() {
+        SyncTrace trace = new SyncTrace(1474502400000L, SyncTrace.TIER_TODAY);
+        trace.setBytes(480);
+        trace.stored(1);
+        trace.finish();
+
+        SyncTrace read = SyncTrace.fromLine(trace.toLine());
+        assertEquals(SyncTrace.TIER_TODAY, read.getTier());
+        assertEquals(480, read.getBytes());
+        assertTrue(read.toString().startsWith("today: stored 1 rows, 480 bytes"));
+        assertEquals(SyncTrace.TIER_FULL, new SyncTrace(1).getTier());
+    }
+
+    @Test
+    public void testRejectsLinesThatAreNotTraces() {
+        String[] lines = {"", "1 0 -1 9000", "1 7 -1 0 0 0 0 0 0 0 0 0 0 0 0 0 0",
+                "1 0 -1 0 0 0 2 0 0 0 0 0 0 0 0 0 0", "x y z"};
+        for (String line : lines) {
+            try {
+                SyncTrace.fromLine(line);
+                fail("Accepted \"" + line + "\"");
+            } catch (IllegalArgumentException expected) {
+                /* This is what we want */
+            }
+        }
+    }
+
+    @Test
+    public void testKeepsOnlyTheNewestTraces() {
+        SyncTraceLog log = new SyncTraceLog(3);
+        for (int i = 1; i <= 5; i++) {
+            log.add(storedTrace(i));
+        }
+
+        List<SyncTrace> traces = log.getTraces();
+        assertEquals(3, traces.size());
+        assertEquals(3, traces.get(0).getStartedAt());
+        assertEquals(5, traces.get(2).getStartedAt());
+    }
+
+    @Test
+    public void testPersistedLogSkipsDamagedLines() throws IOException {
+        SyncTraceLog log = new SyncTraceLog(4);
+        for (int i = 1; i <= 3; i++) {
+            log.add(storedTrace(i));
+        }
+        StringWriter out = new StringWriter();
+        log.writeTo(out);
+
+        /* Cut the last line short, as if the process died while writing it */
+        String written = out.toString();
+        String damaged = written.substring(0, written.length() - 10);
+        List<SyncTrace> read = SyncTraceLog.readFrom(new StringReader(damaged), 4).getTraces();
+        assertEquals(2, read.size());
+        assertEquals(1, read.get(0).getStartedAt());
+
+        /* A smaller log keeps the newest */
+        read = SyncTraceLog.readFrom(new StringReader(written), 2).getTraces();
+        assertEquals(2, read.size());
+        assertEquals(2, read.get(0).getStartedAt());
+    }
+}
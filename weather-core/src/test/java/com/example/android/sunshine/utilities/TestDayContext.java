@@ -0,0 +1,293 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utilities;
+
+import org.junit.Test;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * DayContext caches what NormalizedDates computes, so for any clock reading it has to return
+ * exactly what NormalizedDates would. These tests move a clock through daylight savings time
+ * transitions in time zones with unusual rules and compare the two at every step.
+ */
+public class TestDayContext {
+
+    /*
+     * Zones whose transitions are an hour, half an hour (Lord Howe) or fall on midnight (Sao
+     * Paulo skipped from 00:00 to 01:00), plus zones with odd offsets and no DST at all.
+     */
+    private static final String[] ZONES = {
+            "America/Los_Angeles", "Europe/London", "Australia/Lord_Howe", "America/Sao_Paulo",
+            "Pacific/Chatham", "America/St_Johns", "Asia/Kolkata", "Pacific/Kiritimati", "UTC"};
+
+    /* 2015 through 2018 */
+    private static final long START = 1420070400000L;
+    private static final long END = 1546300800000L;
+
+    private static final long MINUTE = TimeUnit.MINUTES.toMillis(1);
+    private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+
+    /**
+     * A clock the test sets by hand.
+     */
+    private static final class ManualClock implements DayContext.Clock {
+        long mNow;
+
+        @Override
+        public long currentTimeMillis() {
+            return mNow;
+        }
+    }
+
+    /**
+     * A time zone that counts how often its offset is looked up. Clones share the counter.
+     */
+    private static final class CountingTimeZone extends TimeZone {
+        private final TimeZone mZone;
+        private final AtomicInteger mLookups;
+
+        CountingTimeZone(TimeZone zone, AtomicInteger lookups) {
+            mZone = zone;
+            mLookups = lookups;
+            setID(zone.getID());
+        }
+
+        @Override
+        public int getOffset(long date) {
+            mLookups.incrementAndGet();
+            return mZone.getOffset(date);
+        }
+
+        @Override
+        public int getOffset(int era, int year, int month, int day, int dayOfWeek, int millis) {
+            mLookups.incrementAndGet();
+            return mZone.getOffset(era, year, month, day, dayOfWeek, millis);
+        }
+
+        @Override
+        public void setRawOffset(int offsetMillis) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int getRawOffset() {
+            return mZone.getRawOffset();
+        }
+
+        @Override
+        public boolean useDaylightTime() {
+            return mZone.useDaylightTime();
+        }
+
+        @Override
+        public boolean inDaylightTime(Date date) {
+            return mZone.inDaylightTime(date);
+        }
+    }
+
+    /**
+     * @return Every instant in [START, END) at which the zone's offset changes
+     */
+    private static List<Long> transitions(TimeZone zone) {
+        List<Long> transitions = new ArrayList<>();
+        for (long time = START; time < END; time += HOUR) {
+            if (zone.getOffset(time) != zone.getOffset(time + HOUR)) {
+                long low = time;
+                long high = time + HOUR;
+                while (high - low > 1) {
+                    long middle = low + (high - low) / 2;
+                    if (zone.getOffset(middle) == zone.getOffset(time)) {
+                        low = middle;
+                    } else {
+                        high = middle;
+                    }
+                }
+                transitions.add(high);
+            }
+        }
+        return transitions;
+    }
+
+    private static void assertMatchesNormalizedDates(DayContext day, TimeZone zone, long now) {
+        String message = zone.getID() + " at " + now;
+        assertEquals(message, NormalizedDates.normalizedUtcDateForToday(now, zone),
+                day.getNormalizedUtcDateForToday());
+        assertEquals(message, NormalizedDates.elapsedDaysSinceEpoch(now),
+                day.getUtcDaysSinceEpoch());
+
+        long today = NormalizedDates.normalizedUtcDateForToday(now, zone);
+        for (int i = -1; i <= 17; i++) {
+            long date = today + i * NormalizedDates.DAY_IN_MILLIS;
+            assertEquals(message + " day " + i,
+                    NormalizedDates.localMidnightFromNormalizedUtcDate(date, zone),
+                    day.localMidnightFromNormalizedUtcDate(date));
+        }
+    }
+
+    @Test
+    public void testMatchesNormalizedDatesAroundEveryTransition() {
+        for (String id : ZONES) {
+            TimeZone zone = TimeZone.getTimeZone(id);
+            ManualClock clock = new ManualClock();
+            DayContext day = new DayContext(clock, zone, Locale.US);
+
+            for (long transition : transitions(zone)) {
+                /* Walk a day either side of the transition a minute at a time... */
+                for (long now = transition - 26 * HOUR; now < transition + 26 * HOUR;
+                        now += MINUTE) {
+                    clock.mNow = now;
+                    assertMatchesNormalizedDates(day, zone, now);
+                }
+                /* ...and check the millisecond on either side of it */
+                for (long now = transition - 2; now <= transition + 1; now++) {
+                    clock.mNow = now;
+                    assertMatchesNormalizedDates(day, zone, now);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testMatchesNormalizedDatesAtRandomTimes() {
+        Random random = new Random(33);
+        for (String id : ZONES) {
+            TimeZone zone = TimeZone.getTimeZone(id);
+            ManualClock clock = new ManualClock();
+            DayContext day = new DayContext(clock, zone, Locale.US);
+
+            /* The clock jumps around, backwards as well as forwards, like a user setting it */
+            for (int i = 0; i < 5000; i++) {
+                long now = START + (long) (random.nextDouble() * (END - START));
+                clock.mNow = now;
+                assertMatchesNormalizedDates(day, zone, now);
+                clock.mNow = now - 1;
+                assertMatchesNormalizedDates(day, zone, now - 1);
+            }
+        }
+    }
+
+    @Test
+    public void testDayNameUsesZoneAndLocale() {
+        TimeZone zone = TimeZone.getTimeZone("Pacific/Kiritimati");
+        DayContext day = new DayContext(new ManualClock(), zone, Locale.FRANCE);
+
+        SimpleDateFormat expected = new SimpleDateFormat("EEEE", Locale.FRANCE);
+        expected.setTimeZone(zone);
+        for (long time = START; time < START + 10 * NormalizedDates.DAY_IN_MILLIS;
+                time += 5 * HOUR) {
+            assertEquals(expected.format(time), day.formatDayName(time));
+        }
+    }
+
+    /**
+     * Within one day, the context shouldn't look anything up again once it has looked up today
+     * and the offsets of the forecast days; the next day it should.
+     */
+    @Test
+    public void testRefreshesOnlyWhenTheDayRollsOver() {
+        AtomicInteger lookups = new AtomicInteger();
+        TimeZone zone = new CountingTimeZone(TimeZone.getTimeZone("America/Los_Angeles"),
+                lookups);
+        ManualClock clock = new ManualClock();
+        DayContext day = new DayContext(clock, zone, Locale.US);
+
+        /* 9 AM on a summer day in California, long after midnight in both UTC and locally */
+        long morning = 1474473600000L + 16 * HOUR;
+        clock.mNow = morning;
+        long today = day.getNormalizedUtcDateForToday();
+        for (int i = 0; i < 14; i++) {
+            day.localMidnightFromNormalizedUtcDate(today + i * NormalizedDates.DAY_IN_MILLIS);
+        }
+        int afterFirstDay = lookups.get();
+
+        for (long now = morning; now < morning + 6 * HOUR; now += MINUTE) {
+            clock.mNow = now;
+            day.getNormalizedUtcDateForToday();
+            day.getUtcDaysSinceEpoch();
+            for (int i = 0; i < 14; i++) {
+                day.localMidnightFromNormalizedUtcDate(today + i * NormalizedDates.DAY_IN_MILLIS);
+            }
+        }
+        assertEquals(afterFirstDay, lookups.get());
+
+        clock.mNow = morning + NormalizedDates.DAY_IN_MILLIS;
+        assertEquals(today + NormalizedDates.DAY_IN_MILLIS, day.getNormalizedUtcDateForToday());
+        assertTrue(lookups.get() > afterFirstDay);
+    }
+
+    @Test
+    public void testLongLivedContextFormatsLikeAFreshOne() {
+        final TimeZone zone = TimeZone.getTimeZone("America/Los_Angeles");
+        FriendlyDates.Labels labels = new FriendlyDates.Labels() {
+            @Override
+            public String today() {
+                return "Today";
+            }
+
+            @Override
+            public String tomorrow() {
+                return "Tomorrow";
+            }
+
+            @Override
+            public String readableDate(long localDateMillis) {
+                SimpleDateFormat format = new SimpleDateFormat("EEEE, MMMM d", Locale.US);
+                format.setTimeZone(zone);
+                return format.format(localDateMillis);
+            }
+
+            @Override
+            public String abbreviatedDate(long localDateMillis) {
+                SimpleDateFormat format = new SimpleDateFormat("EEE, MMM d", Locale.US);
+                format.setTimeZone(zone);
+                return format.format(localDateMillis);
+            }
+        };
+
+        Locale defaultLocale = Locale.getDefault();
+        Locale.setDefault(Locale.US);
+        try {
+            ManualClock clock = new ManualClock();
+            DayContext day = new DayContext(clock, zone, Locale.US);
+            for (long now = START; now < START + 40 * NormalizedDates.DAY_IN_MILLIS;
+                    now += 7 * HOUR) {
+                clock.mNow = now;
+                long today = NormalizedDates.normalizedUtcDateForToday(now, zone);
+                for (int i = 0; i < 14; i++) {
+                    long date = today + i * NormalizedDates.DAY_IN_MILLIS;
+                    for (boolean showFullDate : new boolean[]{false, true}) {
+                        assertEquals(FriendlyDates.format(labels, date, showFullDate, now, zone),
+                                FriendlyDates.format(labels, date, showFullDate, day));
+                    }
+                }
+            }
+        } finally {
+            Locale.setDefault(defaultLocale);
+        }
+    }
+}
@@ -0,0 +1,224 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utilities;
+
+import com.example.android.sunshine.data.ForecastSnapshot;
+
+import org.json.JSONException;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+/**
+ * The generated forecast binder, checked against the JSONObject parser it stands in for.
+ */
+public class TestForecastJsonBinder {
+
+    private static final long START_DAY = 1474502400000L;
+
+    /* A one day forecast, with the fields the binder reads and nothing else */
+    private static final String DAY = "{\"pressure\":1009.8,\"humidity\":55,"
+            + "\"weather\":[{\"id\":800}],\"speed\":1.2,\"deg\":0,"
+            + "\"temp\":{\"min\":12.8,\"max\":21.4}}";
+
+    @Test
+    public void testBindsTheRecordedForecastsAsTheJsonObjectParserDoes() throws Exception {
+        for (String fixture : new String[]{"forecast_1_day.json", "forecast_14_days.json"}) {
+            String json = loadFixture(fixture);
+            assertSameForecast(fixture, OpenWeatherJsonParser.parse(json, START_DAY),
+                    ForecastJsonBinder.bind(json, START_DAY));
+        }
+    }
+
+    @Test
+    public void testBindsTheFirstDayBeforeReadingTheRest() throws Exception {
+        String json = loadFixture("forecast_14_days.json");
+        OpenWeatherJsonParser.ParsedForecast whole = ForecastJsonBinder.bind(json, START_DAY);
+
+        /* Cut off at the start of the second day, which begin doesn't get as far as */
+        int secondDay = json.indexOf("\"dt\"", json.indexOf("\"dt\"") + 1);
+        ForecastJsonBinder binder = ForecastJsonBinder.begin(json.substring(0, secondDay),
+                START_DAY);
+        ForecastSnapshot firstDay = binder.getFirstDay();
+        assertEquals(1, firstDay.size());
+        assertEquals(START_DAY, firstDay.getDate(0));
+        assertEquals(whole.days.getMaxTemp(0), firstDay.getMaxTemp(0));
+        assertEquals(whole.days.getWeatherId(0), firstDay.getWeatherId(0));
+        try {
+            binder.finish();
+            fail("Bound a truncated response");
+        } catch (JSONException expected) {
+        }
+
+        /* Carried on, the whole response gives what bind gives */
+        binder = ForecastJsonBinder.begin(json, START_DAY);
+        assertEquals(1, binder.getFirstDay().size());
+        assertSameForecast("begin", whole, binder.finish());
+    }
+
+    @Test
+    public void testNoFirstDayWithoutOneThatCanBeRead() throws JSONException {
+        assertNull(ForecastJsonBinder.begin(forecast("", DAY.replace("\"deg\":0,", ""), DAY),
+                START_DAY).getFirstDay());
+        assertNull(ForecastJsonBinder.begin(forecast(""), START_DAY).getFirstDay());
+        assertNull(ForecastJsonBinder.begin(forecast("\"cod\":500,", DAY), START_DAY)
+                .getFirstDay());
+
+        /* A day left out doesn't make the next one the first */
+        ForecastJsonBinder binder = ForecastJsonBinder.begin(
+                forecast("", DAY.replace("\"deg\":0,", ""), DAY), START_DAY);
+        assertEquals(1, binder.finish().days.size());
+        assertNull(binder.getFirstDay());
+    }
+
+    @Test
+    public void testAnErrorCodeGivesNoForecast() throws JSONException {
+        assertNull(ForecastJsonBinder.bind("{\"cod\":\"404\",\"message\":\"city not found\"}",
+                START_DAY));
+        assertNull(ForecastJsonBinder.bind("{\"cod\":500}", START_DAY));
+        assertNotNull(ForecastJsonBinder.bind(forecast("\"cod\":200,", DAY), START_DAY));
+        assertNotNull(ForecastJsonBinder.bind(forecast("", DAY), START_DAY));
+    }
+
+    @Test
+    public void testSkipsFieldsItHasNoUseFor() throws JSONException {
+        String day = "{\"dt\":1474534800,\"rain\":null,\"snow\":false,"
+                + "\"extra\":{\"nested\":[1,{\"a\":\"b\\\"}\"},[]],\"more\":true},"
+                + DAY.substring(1);
+        OpenWeatherJsonParser.ParsedForecast forecast =
+                ForecastJsonBinder.bind(forecast("\"message\":\"a \\\"quoted\\\" ]}\",", day),
+                        START_DAY);
+        assertEquals(1, forecast.days.size());
+        assertEquals(800, forecast.days.getWeatherId(0));
+        assertEquals(21.4, forecast.days.getMaxTemp(0));
+    }
+
+    @Test
+    public void testReadsAnEscapedFieldName() throws JSONException {
+        String day = DAY.replace("\"deg\":0", "\"\\u0064eg\":270");
+        assertEquals(270.0,
+                ForecastJsonBinder.bind(forecast("", day), START_DAY).days.getDegrees(0));
+    }
+
+    @Test
+    public void testReadsNumbersAsDoubleParseDoubleDoes() throws JSONException {
+        String[] numbers = {"0", "-0.5", "1e3", "2.5E-2", "-12.75", "1009.80",
+                "0.1234567890123456789", "123456789012345678901234", "\"17.5\"", "3.000000001"};
+        for (String number : numbers) {
+            String day = DAY.replace("\"speed\":1.2", "\"speed\":" + number);
+            double expected = Double.parseDouble(number.replace("\"", ""));
+            assertEquals(number, expected,
+                    ForecastJsonBinder.bind(forecast("", day), START_DAY).days.getWindSpeed(0));
+        }
+    }
+
+    @Test
+    public void testADayThatCantBeReadIsLeftOut() throws JSONException {
+        OpenWeatherJsonParser.ParsedForecast forecast = ForecastJsonBinder.bind(forecast("",
+                DAY, DAY.replace("\"deg\":0,", ""), DAY.replace("{\"id\":800}", ""), DAY),
+                START_DAY);
+        assertEquals(2, forecast.days.size());
+        assertEquals(START_DAY, forecast.days.getDate(0));
+        assertEquals(START_DAY + 3 * NormalizedDates.DAY_IN_MILLIS, forecast.days.getDate(1));
+
+        assertEquals(2, forecast.malformedDays.size());
+        assertEquals(1, forecast.malformedDays.get(0).getIndex());
+        assertEquals(START_DAY + NormalizedDates.DAY_IN_MILLIS,
+                forecast.malformedDays.get(0).getDate());
+        assertEquals("The day has no \"deg\" field", forecast.malformedDays.get(0).getReason());
+        assertEquals(2, forecast.malformedDays.get(1).getIndex());
+    }
+
+    @Test
+    public void testAMissingCityOrListIsAnError() {
+        assertMalformed("{\"list\":[]}");
+        assertMalformed("{\"city\":{\"coord\":{\"lon\":-122.0838,\"lat\":37.3861}}}");
+        assertMalformed("{\"city\":{},\"list\":[]}");
+    }
+
+    @Test
+    public void testMalformedJsonIsAnError() {
+        assertMalformed("");
+        assertMalformed(forecast("", DAY).substring(10));
+        assertMalformed(forecast("", DAY) + "}");
+        assertMalformed(forecast("", DAY.replace("1009.8", "10o9.8")));
+        assertMalformed(forecast("", DAY.replace("\"deg\":0", "\"deg\":0,")));
+    }
+
+    /* A forecast for Mountain View, with the given fields first and the given days */
+    private static String forecast(String fields, String... days) {
+        StringBuilder json = new StringBuilder("{").append(fields)
+                .append("\"city\":{\"coord\":{\"lon\":-122.0838,\"lat\":37.3861}},\"list\":[");
+        for (int i = 0; i < days.length; i++) {
+            json.append(i == 0 ? "" : ",").append(days[i]);
+        }
+        return json.append("]}").toString();
+    }
+
+    private static void assertMalformed(String json) {
+        try {
+            ForecastJsonBinder.bind(json, START_DAY);
+            fail("Bound " + json);
+        } catch (JSONException expected) {
+            assertTrue(expected.getMessage(), expected.getMessage().length() > 0);
+        }
+    }
+
+    private static void assertSameForecast(String message,
+                                           OpenWeatherJsonParser.ParsedForecast expected,
+                                           OpenWeatherJsonParser.ParsedForecast actual) {
+        assertEquals(message, expected.latitude, actual.latitude);
+        assertEquals(message, expected.longitude, actual.longitude);
+        ForecastSnapshot expectedDays = expected.days;
+        ForecastSnapshot actualDays = actual.days;
+        assertEquals(message, expectedDays.size(), actualDays.size());
+        for (int i = 0; i < expectedDays.size(); i++) {
+            assertEquals(message, expectedDays.getDate(i), actualDays.getDate(i));
+            assertEquals(message, expectedDays.getWeatherId(i), actualDays.getWeatherId(i));
+            assertEquals(message, expectedDays.getMaxTemp(i), actualDays.getMaxTemp(i));
+            assertEquals(message, expectedDays.getMinTemp(i), actualDays.getMinTemp(i));
+            assertEquals(message, expectedDays.getHumidity(i), actualDays.getHumidity(i));
+            assertEquals(message, expectedDays.getPressure(i), actualDays.getPressure(i));
+            assertEquals(message, expectedDays.getWindSpeed(i), actualDays.getWindSpeed(i));
+            assertEquals(message, expectedDays.getDegrees(i), actualDays.getDegrees(i));
+        }
+    }
+
+    private static String loadFixture(String name) throws IOException {
+        InputStream in = TestForecastJsonBinder.class.getResourceAsStream("/fixtures/" + name);
+        assertNotNull("Missing fixture: " + name, in);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return new String(out.toByteArray(), Charset.forName("UTF-8"));
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utilities;
+
+import org.junit.Test;
+
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * A FriendlyDateTable has to return what FriendlyDates would have formatted, and stop claiming to
+ * be current once the day rolls over.
+ */
+public class TestFriendlyDateTable {
+
+    private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+
+    /* Midnight UTC on September 22nd, 2016 */
+    private static final long SEPTEMBER_22 = 1474502400000L;
+
+    private static final class ManualClock implements DayContext.Clock {
+        long mNow;
+
+        @Override
+        public long currentTimeMillis() {
+            return mNow;
+        }
+    }
+
+    /**
+     * Formats with SimpleDateFormat and counts how many dates it formatted.
+     */
+    private static final class CountingLabels implements FriendlyDates.Labels {
+        private final TimeZone mZone;
+        int mFormatted;
+
+        CountingLabels(TimeZone zone) {
+            mZone = zone;
+        }
+
+        @Override
+        public String today() {
+            return "Today";
+        }
+
+        @Override
+        public String tomorrow() {
+            return "Tomorrow";
+        }
+
+        @Override
+        public String readableDate(long localDateMillis) {
+            return format("EEEE, MMMM d", localDateMillis);
+        }
+
+        @Override
+        public String abbreviatedDate(long localDateMillis) {
+            return format("EEE, MMM d", localDateMillis);
+        }
+
+        private String format(String pattern, long localDateMillis) {
+            mFormatted++;
+            SimpleDateFormat format = new SimpleDateFormat(pattern, Locale.US);
+            format.setTimeZone(mZone);
+            return format.format(localDateMillis);
+        }
+    }
+
+    @Test
+    public void testMatchesFriendlyDates() {
+        for (String id : new String[]{"America/Los_Angeles", "Asia/Hong_Kong", "Pacific/Apia"}) {
+            TimeZone zone = TimeZone.getTimeZone(id);
+            CountingLabels labels = new CountingLabels(zone);
+            ManualClock clock = new ManualClock();
+            DayContext day = new DayContext(clock, zone, Locale.US);
+
+            /* Every three hours for a couple of weeks, so both UTC and local days roll over */
+            FriendlyDateTable table = null;
+            for (long now = SEPTEMBER_22; now < SEPTEMBER_22 + 14 * 24 * HOUR; now += 3 * HOUR) {
+                clock.mNow = now;
+                if (table == null || !table.isCurrent(day)) {
+                    table = new FriendlyDateTable(labels, day, 16);
+                }
+                long today = day.getNormalizedUtcDateForToday();
+                for (int i = -3; i < 20; i++) {
+                    long date = today + i * NormalizedDates.DAY_IN_MILLIS;
+                    for (boolean showFullDate : new boolean[]{false, true}) {
+                        assertEquals(id + " at " + now + " day " + i,
+                                FriendlyDates.format(labels, date, showFullDate, day),
+                                table.get(date, showFullDate));
+                    }
+                }
+                /* A date that isn't normalized is formatted on the spot */
+                assertEquals(FriendlyDates.format(labels, today + 1, false, day),
+                        table.get(today + 1, false));
+            }
+        }
+    }
+
+    @Test
+    public void testFormatsEachLabelOnce() {
+        TimeZone zone = TimeZone.getTimeZone("America/Los_Angeles");
+        CountingLabels labels = new CountingLabels(zone);
+        ManualClock clock = new ManualClock();
+        clock.mNow = SEPTEMBER_22 + 18 * HOUR;
+        DayContext day = new DayContext(clock, zone, Locale.US);
+        FriendlyDateTable table = new FriendlyDateTable(labels, day, 16);
+        long today = day.getNormalizedUtcDateForToday();
+
+        String first = table.get(today, true);
+        int formatted = labels.mFormatted;
+        for (int pass = 0; pass < 10; pass++) {
+            for (int i = 0; i < 14; i++) {
+                table.get(today + i * NormalizedDates.DAY_IN_MILLIS, false);
+            }
+        }
+        int afterFirstPass = labels.mFormatted;
+        for (int pass = 0; pass < 10; pass++) {
+            for (int i = 0; i < 14; i++) {
+                table.get(today + i * NormalizedDates.DAY_IN_MILLIS, false);
+            }
+        }
+        assertEquals(afterFirstPass, labels.mFormatted);
+        assertTrue(afterFirstPass > formatted);
+        assertSame(first, table.get(today, true));
+    }
+
+    @Test
+    public void testNotCurrentAfterTheDayRollsOver() {
+        TimeZone zone = TimeZone.getTimeZone("America/Los_Angeles");
+        ManualClock clock = new ManualClock();
+        clock.mNow = SEPTEMBER_22 + 18 * HOUR;
+        DayContext day = new DayContext(clock, zone, Locale.US);
+        FriendlyDateTable table = new FriendlyDateTable(new CountingLabels(zone), day, 16);
+
+        clock.mNow += 5 * HOUR;
+        assertTrue(table.isCurrent(day));
+
+        /* Midnight UTC has passed: "today" for FriendlyDates has moved on */
+        clock.mNow += 2 * HOUR;
+        assertFalse(table.isCurrent(day));
+
+        /* A different context, say after the time zone changed, is never current */
+        assertFalse(table.isCurrent(new DayContext(clock, zone, Locale.US)));
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utilities;
+
+import org.junit.Test;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+/**
+ * Geohash cells and their centers.
+ */
+public class TestGeoCell {
+
+    private static final double DELTA = 1e-9;
+
+    @Test
+    public void testMatchesTheReferenceGeohash() {
+        /* The example from the geohash article, in Jutland */
+        assertEquals("u4pruydqqvj", GeoCell.of(57.64911, 10.40744, 11).getHash());
+        assertEquals("u4pru", GeoCell.of(57.64911, 10.40744, 5).getHash());
+    }
+
+    @Test
+    public void testPointsAFewMetresApartShareACell() {
+        /* Mountain View, and about 10 m north-east of it */
+        GeoCell cell = GeoCell.of(37.3861, -122.0838, 5);
+        GeoCell nearby = GeoCell.of(37.3862, -122.0837, 5);
+        assertEquals(cell.getHash(), nearby.getHash());
+        assertEquals(cell.getCenterLatitude(), nearby.getCenterLatitude(), DELTA);
+        assertEquals(cell.getCenterLongitude(), nearby.getCenterLongitude(), DELTA);
+
+        /* A finer grid tells them apart */
+        assertFalse(GeoCell.of(37.3861, -122.0838, 9).getHash()
+                .equals(GeoCell.of(37.3862, -122.0837, 9).getHash()));
+    }
+
+    @Test
+    public void testCenterIsInTheCell() {
+        double[][] points = {{0, 0}, {-90, -180}, {90, 180}, {-33.8688, 151.2093},
+                {51.5074, -0.1278}};
+        for (double[] point : points) {
+            for (int precision = 1; precision <= GeoCell.MAX_PRECISION; precision++) {
+                GeoCell cell = GeoCell.of(point[0], point[1], precision);
+                GeoCell center = GeoCell.of(cell.getCenterLatitude(), cell.getCenterLongitude(),
+                        precision);
+                assertEquals(cell.getHash(), center.getHash());
+                assertTrue(cell.getHash().length() == precision);
+            }
+        }
+    }
+
+    @Test
+    public void testRejectsPointsOffTheMap() {
+        double[][] points = {{91, 0}, {0, -181}, {Double.NaN, 0}};
+        for (double[] point : points) {
+            try {
+                GeoCell.of(point[0], point[1], 5);
+                fail("Accepted " + point[0] + ", " + point[1]);
+            } catch (IllegalArgumentException expected) {
+                /* This is what we want */
+            }
+        }
+    }
+}
@@ -0,0 +1,236 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utilities;
+
+import com.example.android.sunshine.data.ForecastSnapshot;
+
+import org.json.JSONException;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+/**
+ * Forecast responses with days that can't be read: both parsers leave those days out and report
+ * them, and a sync can fill them from what it stored before.
+ */
+public class TestMalformedDays {
+
+    private static final long START_DAY = 1474502400000L;
+    private static final long DAY = NormalizedDates.DAY_IN_MILLIS;
+
+    private static final String GOOD_DAY = "{\"pressure\":1009.8,\"humidity\":55,"
+            + "\"weather\":[{\"id\":800}],\"speed\":1.2,\"deg\":0,"
+            + "\"temp\":{\"min\":12.8,\"max\":21.4}}";
+
+    @Test
+    public void testEveryDayOfTheCorpusIsReadLeftOutOrFailsTheResponse() throws IOException {
+        List<String[]> corpus = loadCorpus();
+        assertTrue(corpus.size() > 50);
+        for (String[] entry : corpus) {
+            String json = forecast(GOOD_DAY, entry[1], GOOD_DAY);
+            if (entry[0].equals("error")) {
+                try {
+                    ForecastJsonBinder.bind(json, START_DAY);
+                    fail("Bound " + entry[1]);
+                } catch (JSONException expected) {
+                }
+                continue;
+            }
+
+            boolean ok = entry[0].equals("ok");
+            try {
+                assertDays(entry[1], ok, ForecastJsonBinder.bind(json, START_DAY));
+                assertDays(entry[1], ok, OpenWeatherJsonParser.parse(json, START_DAY));
+            } catch (JSONException e) {
+                throw new AssertionError("Failed on " + entry[1] + ": " + e);
+            }
+        }
+    }
+
+    @Test
+    public void testMangledResponsesFailOnlyWithAJsonException() throws IOException {
+        String recorded = forecast(GOOD_DAY, GOOD_DAY, GOOD_DAY, GOOD_DAY);
+        String noise = "{}[]\":,0-.e\\ a";
+        Random random = new Random(2016);
+        for (int i = 0; i < 2000; i++) {
+            StringBuilder json = new StringBuilder(recorded);
+            for (int edits = 1 + random.nextInt(3); edits > 0; edits--) {
+                int at = random.nextInt(json.length());
+                switch (random.nextInt(3)) {
+                    case 0:
+                        json.deleteCharAt(at);
+                        break;
+                    case 1:
+                        json.insert(at, noise.charAt(random.nextInt(noise.length())));
+                        break;
+                    default:
+                        json.setCharAt(at, noise.charAt(random.nextInt(noise.length())));
+                        break;
+                }
+            }
+
+            OpenWeatherJsonParser.ParsedForecast forecast;
+            try {
+                forecast = ForecastJsonBinder.bind(json.toString(), START_DAY);
+            } catch (JSONException expected) {
+                continue;
+            }
+            /* Whatever was read is in date order, and no day is both read and reported */
+            for (int day = 1; day < forecast.days.size(); day++) {
+                assertTrue(json.toString(),
+                        forecast.days.getDate(day - 1) < forecast.days.getDate(day));
+            }
+            for (MalformedDay malformed : forecast.malformedDays) {
+                assertEquals(json.toString(), -1, forecast.days.indexOfDate(malformed.getDate()));
+            }
+        }
+    }
+
+    @Test
+    public void testBothParsersReportTheSameDays() throws JSONException {
+        String json = forecast("null", GOOD_DAY, GOOD_DAY.replace("\"deg\":0,", ""),
+                GOOD_DAY, GOOD_DAY.replace("[{\"id\":800}]", "[]"));
+        OpenWeatherJsonParser.ParsedForecast bound = ForecastJsonBinder.bind(json, START_DAY);
+        OpenWeatherJsonParser.ParsedForecast parsed = OpenWeatherJsonParser.parse(json, START_DAY);
+
+        assertDates(bound.days, START_DAY + DAY, START_DAY + 3 * DAY);
+        assertDates(parsed.days, START_DAY + DAY, START_DAY + 3 * DAY);
+        assertEquals(3, bound.malformedDays.size());
+        assertEquals(3, parsed.malformedDays.size());
+        int[] indexes = {0, 2, 4};
+        for (int i = 0; i < indexes.length; i++) {
+            assertEquals(indexes[i], bound.malformedDays.get(i).getIndex());
+            assertEquals(indexes[i], parsed.malformedDays.get(i).getIndex());
+            assertEquals(START_DAY + indexes[i] * DAY, bound.malformedDays.get(i).getDate());
+            assertEquals(START_DAY + indexes[i] * DAY, parsed.malformedDays.get(i).getDate());
+        }
+        assertEquals("day 2: The day has no \"deg\" field",
+                bound.malformedDays.get(1).toString());
+    }
+
+    @Test
+    public void testAnUnreadableDayIsFilledFromTheStoredForecast() throws JSONException {
+        String json = forecast(GOOD_DAY.replace("\"deg\":0,", ""), GOOD_DAY,
+                GOOD_DAY.replace("\"deg\":0,", ""), GOOD_DAY.replace("\"deg\":0,", ""));
+
+        /* What the last sync stored: yesterday to the day after tomorrow, with rain */
+        ForecastSnapshot stored = snapshot(START_DAY - DAY, START_DAY, START_DAY + DAY,
+                START_DAY + 2 * DAY);
+
+        OpenWeatherJsonParser.ParsedForecast forecast =
+                ForecastJsonBinder.bind(json, START_DAY).withStoredDays(stored);
+        assertDates(forecast.days, START_DAY, START_DAY + DAY, START_DAY + 2 * DAY);
+        assertEquals(500, forecast.days.getWeatherId(0));
+        assertEquals(800, forecast.days.getWeatherId(1));
+        assertEquals(500, forecast.days.getWeatherId(2));
+        assertEquals(270.0, forecast.days.getDegrees(2));
+
+        /* The stored forecast didn't reach the last day, so it's still missing */
+        assertEquals(1, forecast.malformedDays.size());
+        assertEquals(3, forecast.malformedDays.get(0).getIndex());
+    }
+
+    @Test
+    public void testNothingToFillLeavesTheForecastAlone() throws JSONException {
+        OpenWeatherJsonParser.ParsedForecast forecast = ForecastJsonBinder.bind(
+                forecast(GOOD_DAY, GOOD_DAY.replace("\"deg\":0,", "")), START_DAY);
+        assertSame(forecast, forecast.withStoredDays(ForecastSnapshot.EMPTY));
+        assertSame(forecast, forecast.withStoredDays(snapshot(START_DAY + 5 * DAY)));
+
+        OpenWeatherJsonParser.ParsedForecast whole =
+                ForecastJsonBinder.bind(forecast(GOOD_DAY), START_DAY);
+        assertSame(whole, whole.withStoredDays(snapshot(START_DAY)));
+    }
+
+    /* Asserts that the middle one of three days was read, or left out and reported */
+    private static void assertDays(String day, boolean ok,
+                                   OpenWeatherJsonParser.ParsedForecast forecast) {
+        assertNotNull(day, forecast);
+        if (ok) {
+            assertEquals(day, 0, forecast.malformedDays.size());
+            assertDates(forecast.days, START_DAY, START_DAY + DAY, START_DAY + 2 * DAY);
+        } else {
+            assertEquals(day, 1, forecast.malformedDays.size());
+            assertEquals(day, 1, forecast.malformedDays.get(0).getIndex());
+            assertDates(forecast.days, START_DAY, START_DAY + 2 * DAY);
+        }
+    }
+
+    private static void assertDates(ForecastSnapshot days, long... dates) {
+        assertEquals(dates.length, days.size());
+        for (int i = 0; i < dates.length; i++) {
+            assertEquals(dates[i], days.getDate(i));
+        }
+    }
+
+    /* Rainy days with a westerly wind on the given dates */
+    private static ForecastSnapshot snapshot(long... dates) {
+        int size = dates.length;
+        int[] weatherIds = new int[size];
+        double[] values = new double[size];
+        double[] degrees = new double[size];
+        for (int i = 0; i < size; i++) {
+            weatherIds[i] = 500;
+            values[i] = 10;
+            degrees[i] = 270;
+        }
+        return new ForecastSnapshot(dates, weatherIds, values, values, values, values, values,
+                degrees);
+    }
+
+    /* A forecast for Mountain View with the given days */
+    private static String forecast(String... days) {
+        StringBuilder json = new StringBuilder(
+                "{\"city\":{\"coord\":{\"lon\":-122.0838,\"lat\":37.3861}},\"list\":[");
+        for (int i = 0; i < days.length; i++) {
+            json.append(i == 0 ? "" : ",").append(days[i]);
+        }
+        return json.append("]}").toString();
+    }
+
+    /* The entries of fuzz/forecast_days.txt, as {outcome, day} */
+    private static List<String[]> loadCorpus() throws IOException {
+        InputStream in = TestMalformedDays.class.getResourceAsStream("/fuzz/forecast_days.txt");
+        assertNotNull("Missing corpus", in);
+        BufferedReader reader =
+                new BufferedReader(new InputStreamReader(in, Charset.forName("UTF-8")));
+        try {
+            List<String[]> corpus = new ArrayList<>();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isEmpty() && !line.startsWith("#")) {
+                    corpus.add(line.split(" ", 2));
+                }
+            }
+            return corpus;
+        } finally {
+            reader.close();
+        }
+    }
+}
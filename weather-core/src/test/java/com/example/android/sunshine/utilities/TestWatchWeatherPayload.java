@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utilities;
+
+import org.junit.Test;
+
+import static junit.framework.Assert.assertEquals;
+
+/**
+ * The phone encodes today's weather and the watch decodes it, so both ends must agree.
+ */
+public class TestWatchWeatherPayload {
+
+    @Test
+    public void testRoundTrip() {
+        String message = WatchWeatherPayload.encode(801, 21.7, -3.2);
+        assertEquals("801 21 -4", message);
+
+        int[] weather = WatchWeatherPayload.decode(message);
+        assertEquals(801, weather[0]);
+        assertEquals(21, weather[1]);
+        assertEquals(-4, weather[2]);
+    }
+
+    @Test
+    public void testShortMessageLeavesMissingFieldsAtZero() {
+        int[] weather = WatchWeatherPayload.decode("500 12");
+        assertEquals(500, weather[0]);
+        assertEquals(12, weather[1]);
+        assertEquals(0, weather[2]);
+    }
+}
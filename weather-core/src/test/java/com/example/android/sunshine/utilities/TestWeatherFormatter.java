@@ -0,0 +1,201 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utilities;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Locale;
+import java.util.Random;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * WeatherFormatter has to produce exactly what String.format did, without allocating.
+ */
+public class TestWeatherFormatter {
+
+    /* The format strings from values/strings.xml, as getString returns them */
+    private static final String FORMAT_TEMPERATURE = "%1.0f°";
+    private static final String FORMAT_WIND_KMH = "%1$1.0f km/h %2$s";
+    private static final String FORMAT_WIND_MPH = "%1$1.0f mph %2$s";
+
+    /* Locales with a comma decimal separator and with non-ASCII digits */
+    private static final Locale[] LOCALES = {
+            Locale.US, Locale.GERMANY, new Locale("ar", "EG"), new Locale("hi", "IN")};
+
+    private static final float KMH_TO_MPH = .621371192237334f;
+
+    /* The compass chain from SunshineWeatherUtils.getFormattedWind */
+    private static String chainDirection(float degrees) {
+        String direction = "Unknown";
+        if (degrees >= 337.5 || degrees < 22.5) {
+            direction = "N";
+        } else if (degrees >= 22.5 && degrees < 67.5) {
+            direction = "NE";
+        } else if (degrees >= 67.5 && degrees < 112.5) {
+            direction = "E";
+        } else if (degrees >= 112.5 && degrees < 157.5) {
+            direction = "SE";
+        } else if (degrees >= 157.5 && degrees < 202.5) {
+            direction = "S";
+        } else if (degrees >= 202.5 && degrees < 247.5) {
+            direction = "SW";
+        } else if (degrees >= 247.5 && degrees < 292.5) {
+            direction = "W";
+        } else if (degrees >= 292.5 && degrees < 337.5) {
+            direction = "NW";
+        }
+        return direction;
+    }
+
+    private static double[] interestingTemperatures() {
+        Random random = new Random(7);
+        double[] values = new double[2000];
+        int i = 0;
+        /* Every half degree, where rounding happens, and the doubles right next to them */
+        for (double value = -60; i < 1440; value += 0.5) {
+            values[i++] = value;
+            values[i++] = Math.nextUp(value);
+            values[i++] = Math.nextAfter(value, Double.NEGATIVE_INFINITY);
+        }
+        values[i++] = 0.0;
+        values[i++] = -0.0;
+        values[i++] = 0.49999999999999994;
+        values[i++] = -0.49999999999999994;
+        while (i < values.length) {
+            values[i++] = (random.nextDouble() - 0.4) * 150;
+        }
+        return values;
+    }
+
+    @Test
+    public void testTemperatureMatchesStringFormat() {
+        for (Locale locale : LOCALES) {
+            for (boolean isMetric : new boolean[]{true, false}) {
+                WeatherFormatter formatter = new WeatherFormatter(locale, isMetric,
+                        FORMAT_TEMPERATURE, FORMAT_WIND_KMH, FORMAT_WIND_MPH);
+                for (double celsius : interestingTemperatures()) {
+                    double shown = isMetric
+                            ? celsius
+                            : WeatherFormatter.celsiusToFahrenheit(celsius);
+                    String expected = String.format(locale, FORMAT_TEMPERATURE, shown);
+                    assertEquals(locale + " " + celsius,
+                            expected, formatter.formatTemperature(celsius));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testHighLowMatchesOldConcatenation() {
+        WeatherFormatter formatter = new WeatherFormatter(Locale.US, true,
+                FORMAT_TEMPERATURE, FORMAT_WIND_KMH, FORMAT_WIND_MPH);
+        assertEquals("22° / 13°", formatter.formatHighLow(21.5, 12.8));
+        /* Math.round rounds -2.5 up to -2, as formatHighLows always did */
+        assertEquals("-2° / -11°", formatter.formatHighLow(-2.5, -10.6));
+    }
+
+    @Test
+    public void testWindMatchesStringFormat() {
+        Random random = new Random(11);
+        for (Locale locale : LOCALES) {
+            for (boolean isMetric : new boolean[]{true, false}) {
+                WeatherFormatter formatter = new WeatherFormatter(locale, isMetric,
+                        FORMAT_TEMPERATURE, FORMAT_WIND_KMH, FORMAT_WIND_MPH);
+                for (int i = 0; i < 2000; i++) {
+                    float speed = random.nextFloat() * 120;
+                    float degrees = random.nextFloat() * 360;
+                    float shown = isMetric ? speed : KMH_TO_MPH * speed;
+                    String expected = String.format(locale,
+                            isMetric ? FORMAT_WIND_KMH : FORMAT_WIND_MPH,
+                            shown, chainDirection(degrees));
+                    assertEquals(expected, formatter.formatWind(speed, degrees));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testCompassDirectionMatchesChain() {
+        float[] edges = {Float.NaN, Float.NEGATIVE_INFINITY, -720, -22.5f, -0.0f,
+                359.99f, 360, 720, Float.POSITIVE_INFINITY};
+        for (float degrees : edges) {
+            assertEquals(String.valueOf(degrees),
+                    chainDirection(degrees), WeatherFormatter.compassDirection(degrees));
+        }
+        /* Both sides of every sector boundary */
+        for (float boundary = 22.5f; boundary < 360; boundary += 45) {
+            for (float degrees : new float[]{Math.nextDown(boundary), boundary,
+                    Math.nextUp(boundary)}) {
+                assertEquals(String.valueOf(degrees),
+                        chainDirection(degrees), WeatherFormatter.compassDirection(degrees));
+            }
+        }
+        for (float degrees = -30; degrees < 400; degrees += 0.01f) {
+            assertEquals(String.valueOf(degrees),
+                    chainDirection(degrees), WeatherFormatter.compassDirection(degrees));
+        }
+    }
+
+    @Test
+    public void testUnsupportedFormatFallsBackToStringFormat() {
+        WeatherFormatter formatter = new WeatherFormatter(Locale.US, true,
+                "%+.1f°", FORMAT_WIND_KMH, FORMAT_WIND_MPH);
+        assertEquals("+21.5°", formatter.formatTemperature(21.46));
+    }
+
+    /**
+     * Formats a forecast's worth of values many times into one StringBuilder and checks that the
+     * thread allocated next to nothing while doing so. Skipped on JVMs that can't count
+     * allocations per thread.
+     */
+    @Test
+    public void testAppendDoesNotAllocate() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threads instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+        Assume.assumeTrue(allocations.isThreadAllocatedMemorySupported());
+        allocations.setThreadAllocatedMemoryEnabled(true);
+
+        WeatherFormatter formatter = new WeatherFormatter(Locale.US, false,
+                FORMAT_TEMPERATURE, FORMAT_WIND_KMH, FORMAT_WIND_MPH);
+        StringBuilder out = new StringBuilder(64);
+
+        /* Warm up so that class loading and compilation don't count */
+        formatMany(formatter, out, 20000);
+
+        long threadId = Thread.currentThread().getId();
+        long before = allocations.getThreadAllocatedBytes(threadId);
+        formatMany(formatter, out, 100000);
+        long allocated = allocations.getThreadAllocatedBytes(threadId) - before;
+
+        /* Allow for the bean's own bookkeeping; a single String per call would be megabytes */
+        assertTrue("Appending allocated " + allocated + " bytes", allocated < 4096);
+    }
+
+    private static void formatMany(WeatherFormatter formatter, StringBuilder out, int count) {
+        for (int i = 0; i < count; i++) {
+            out.setLength(0);
+            formatter.appendHighLow(out, 21.4 + (i % 17), 9.8 - (i % 13));
+            out.append(' ');
+            formatter.appendWind(out, (i % 40) * 1.3f, (i * 7) % 360);
+        }
+    }
+}
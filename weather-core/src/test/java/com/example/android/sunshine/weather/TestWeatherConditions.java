@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.weather;
+
+import org.junit.Test;
+
+import static com.example.android.sunshine.weather.WeatherConditions.*;
+import static junit.framework.Assert.assertEquals;
+
+/**
+ * Checks the condition tables against the if/else chains they replaced, for every id the tables
+ * cover and a margin of ids outside of them.
+ */
+public class TestWeatherConditions {
+
+    /* The ids OpenWeatherMap documents, each of which has its own description */
+    private static final int[] DESCRIBED_IDS = {
+            500, 501, 502, 503, 504, 511, 520, 531,
+            600, 601, 602, 611, 612, 615, 616, 620, 621, 622,
+            701, 711, 721, 731, 741, 751, 761, 762, 771, 781,
+            800, 801, 802, 803, 804,
+            900, 901, 902, 903, 904, 905, 906,
+            951, 952, 953, 954, 955, 956, 957, 958, 959, 960, 961, 962};
+
+    /* The icon chain from SunshineWeatherUtils.getSmallArtResourceIdForWeatherCondition */
+    private static int chainIconClass(int weatherId) {
+        if (weatherId >= 200 && weatherId <= 232) {
+            return ICON_STORM;
+        } else if (weatherId >= 300 && weatherId <= 321) {
+            return ICON_LIGHT_RAIN;
+        } else if (weatherId >= 500 && weatherId <= 504) {
+            return ICON_RAIN;
+        } else if (weatherId == 511) {
+            return ICON_SNOW;
+        } else if (weatherId >= 520 && weatherId <= 531) {
+            return ICON_RAIN;
+        } else if (weatherId >= 600 && weatherId <= 622) {
+            return ICON_SNOW;
+        } else if (weatherId >= 701 && weatherId <= 761) {
+            return ICON_FOG;
+        } else if (weatherId == 761 || weatherId == 771 || weatherId == 781) {
+            return ICON_STORM;
+        } else if (weatherId == 800) {
+            return ICON_CLEAR;
+        } else if (weatherId == 801) {
+            return ICON_LIGHT_CLOUDS;
+        } else if (weatherId >= 802 && weatherId <= 804) {
+            return ICON_CLOUDS;
+        } else if (weatherId >= 900 && weatherId <= 906) {
+            return ICON_STORM;
+        } else if (weatherId >= 958 && weatherId <= 962) {
+            return ICON_STORM;
+        } else if (weatherId >= 951 && weatherId <= 957) {
+            return ICON_CLEAR;
+        }
+        return ICON_STORM;
+    }
+
+    /* The description chain from SunshineWeatherUtils.getStringForWeatherCondition */
+    private static int chainDescriptionKey(int weatherId) {
+        if (weatherId >= 200 && weatherId <= 232) {
+            return 200;
+        } else if (weatherId >= 300 && weatherId <= 321) {
+            return 300;
+        }
+        for (int id : DESCRIBED_IDS) {
+            if (id == weatherId) {
+                return id;
+            }
+        }
+        return DESCRIPTION_UNKNOWN;
+    }
+
+    @Test
+    public void testIconClassMatchesChain() {
+        for (int weatherId = -100; weatherId < ID_LIMIT + 100; weatherId++) {
+            assertEquals("Icon class for " + weatherId,
+                    chainIconClass(weatherId), getIconClass(weatherId));
+        }
+        assertEquals(ICON_STORM, getIconClass(Integer.MIN_VALUE));
+        assertEquals(ICON_STORM, getIconClass(Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void testDescriptionKeyMatchesChain() {
+        for (int weatherId = -100; weatherId < ID_LIMIT + 100; weatherId++) {
+            assertEquals("Description key for " + weatherId,
+                    chainDescriptionKey(weatherId), getDescriptionKey(weatherId));
+        }
+        assertEquals(DESCRIPTION_UNKNOWN, getDescriptionKey(Integer.MIN_VALUE));
+        assertEquals(DESCRIPTION_UNKNOWN, getDescriptionKey(Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void testSeverity() {
+        assertEquals(SEVERITY_NONE, getSeverity(800));
+        assertEquals(SEVERITY_NONE, getSeverity(804));
+        assertEquals(SEVERITY_NONE, getSeverity(951));
+        assertEquals(SEVERITY_LOW, getSeverity(300));
+        assertEquals(SEVERITY_LOW, getSeverity(500));
+        assertEquals(SEVERITY_LOW, getSeverity(701));
+        assertEquals(SEVERITY_MODERATE, getSeverity(502));
+        assertEquals(SEVERITY_MODERATE, getSeverity(601));
+        assertEquals(SEVERITY_MODERATE, getSeverity(957));
+        assertEquals(SEVERITY_HIGH, getSeverity(211));
+        assertEquals(SEVERITY_HIGH, getSeverity(781));
+        assertEquals(SEVERITY_HIGH, getSeverity(962));
+        assertEquals(SEVERITY_HIGH, getSeverity(-1));
+        assertEquals(SEVERITY_HIGH, getSeverity(505));
+    }
+}